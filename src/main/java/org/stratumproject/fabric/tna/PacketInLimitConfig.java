@@ -0,0 +1,46 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.config.Config;
+
+/**
+ * Per-device limits of the packet-ins received on each ingress port, e.g.,
+ * {"rate": 1000, "burst": 200}. Applied as soon as the configuration is
+ * added or updated, the packet-ins of devices without this configuration
+ * are not limited.
+ */
+public class PacketInLimitConfig extends Config<DeviceId> {
+    public static final String KEY = "packetInLimit";
+
+    private static final String RATE = "rate";
+    private static final String BURST = "burst";
+
+    @Override
+    public boolean isValid() {
+        return hasOnlyFields(RATE, BURST)
+                && isNumber(RATE, FieldPresence.MANDATORY, 1)
+                && isNumber(BURST, FieldPresence.OPTIONAL, 1);
+    }
+
+    /**
+     * Returns the packets per second admitted on each ingress port.
+     *
+     * @return rate
+     */
+    public long rate() {
+        return get(RATE, 0L);
+    }
+
+    /**
+     * Returns the packets admitted at once on each ingress port. Defaults to
+     * the rate, i.e., one second worth of packets.
+     *
+     * @return burst
+     */
+    public long burst() {
+        return get(BURST, rate());
+    }
+}
@@ -7,6 +7,9 @@ import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.behaviour.Pipeliner;
 import org.onosproject.net.behaviour.upf.UpfProgrammable;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.pi.model.DefaultPiPipeconf;
 import org.onosproject.net.pi.model.PiPipeconf;
 import org.onosproject.net.pi.model.PiPipeconf.ExtensionType;
@@ -26,13 +29,24 @@ import org.onosproject.p4runtime.model.P4InfoParserException;
 import org.slf4j.Logger;
 import org.stratumproject.fabric.tna.behaviour.FabricIntProgrammable;
 import org.stratumproject.fabric.tna.behaviour.FabricInterpreter;
+import org.stratumproject.fabric.tna.behaviour.FloodPortCache;
+import org.stratumproject.fabric.tna.behaviour.NamedPortCache;
+import org.stratumproject.fabric.tna.behaviour.PacketInLimiter;
+import org.stratumproject.fabric.tna.behaviour.PacketOutBatcher;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.CompletionDispatcher;
 import org.stratumproject.fabric.tna.behaviour.pipeliner.FabricPipeliner;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.PipelinerMetrics;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.TableOccupancy;
 import org.stratumproject.fabric.tna.behaviour.upf.FabricUpfProgrammable;
+import org.stratumproject.fabric.tna.behaviour.upf.UpfPacketOutProgrammable;
 import org.stratumproject.fabric.tna.inbandtelemetry.IntProgrammable;
 import org.stratumproject.fabric.tna.INTDeviceConfig;
 import org.onosproject.net.config.basics.SubjectFactories;
 import org.onosproject.net.config.NetworkConfigService;
 
+import org.onosproject.net.config.NetworkConfigEvent;
+import org.onosproject.net.config.NetworkConfigListener;
 import org.onosproject.net.config.NetworkConfigRegistry;
 import org.onosproject.net.config.ConfigFactory;
 import org.onosproject.net.DeviceId;
@@ -75,6 +89,9 @@ public class PipeconfLoader {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private NetworkConfigRegistry cfgService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DeviceService deviceService;
+
     private Collection<PiPipeconf> pipeconfs;
 
     private static final String P4INFO_TXT = "p4info.txt";
@@ -95,6 +112,29 @@ public class PipeconfLoader {
             }
         };
 
+    private final ConfigFactory<DeviceId, PipelinerConfig> pipelinerConfigFactory =
+        new ConfigFactory<DeviceId, PipelinerConfig>(
+                SubjectFactories.DEVICE_SUBJECT_FACTORY,
+                PipelinerConfig.class, PipelinerConfig.KEY) {
+            @Override
+            public PipelinerConfig createConfig() {
+                return new PipelinerConfig();
+            }
+        };
+
+    private final ConfigFactory<DeviceId, PacketInLimitConfig> packetInLimitConfigFactory =
+        new ConfigFactory<DeviceId, PacketInLimitConfig>(
+                SubjectFactories.DEVICE_SUBJECT_FACTORY,
+                PacketInLimitConfig.class, PacketInLimitConfig.KEY) {
+            @Override
+            public PacketInLimitConfig createConfig() {
+                return new PacketInLimitConfig();
+            }
+        };
+
+    private final NetworkConfigListener packetInLimitListener = new InternalPacketInLimitListener();
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+
     @Activate
     public void activate() {
         coreService.registerApplication(Constants.APP_NAME);
@@ -107,6 +147,14 @@ public class PipeconfLoader {
                 "userDefinedIndex", "true");
 
         cfgService.registerConfigFactory(deviceConfigFactory);
+        cfgService.registerConfigFactory(pipelinerConfigFactory);
+        cfgService.registerConfigFactory(packetInLimitConfigFactory);
+        cfgService.addListener(packetInLimitListener);
+        cfgService.getSubjects(DeviceId.class, PacketInLimitConfig.class)
+                .forEach(this::updatePacketInLimit);
+        deviceService.addListener(deviceListener);
+        FloodPortCache.shared().start(deviceService);
+        NamedPortCache.shared().start(deviceService);
 
         // Registers all pipeconf at component activation.
         pipeconfs = buildAllPipeconfs();
@@ -120,9 +168,29 @@ public class PipeconfLoader {
                 .map(PiPipeconf::id)
                 .forEach(pipeconfService::unregister);
         pipeconfs = null;
+        cfgService.removeListener(packetInLimitListener);
+        cfgService.getSubjects(DeviceId.class, PacketInLimitConfig.class)
+                .forEach(PacketInLimiter::remove);
+        deviceService.removeListener(deviceListener);
+        FloodPortCache.shared().stop(deviceService);
+        NamedPortCache.shared().stop(deviceService);
+        ObjectiveExecutor.shutdownShared();
+        CompletionDispatcher.shutdownShared();
+        PipelinerMetrics.clear();
+        TableOccupancy.clear();
+        PacketOutBatcher.clear();
         log.info("Stopped");
     }
 
+    private void updatePacketInLimit(DeviceId deviceId) {
+        final PacketInLimitConfig config = cfgService.getConfig(deviceId, PacketInLimitConfig.class);
+        if (config == null || !config.isValid()) {
+            PacketInLimiter.remove(deviceId);
+            return;
+        }
+        PacketInLimiter.configure(deviceId, config.rate(), config.burst());
+    }
+
     private Collection<PiPipeconf> buildAllPipeconfs() {
         return FrameworkUtil
                 .getBundle(this.getClass())
@@ -171,6 +239,7 @@ public class PipeconfLoader {
         if (profile.endsWith(UPF_PROFILE_SUFFIX) ||
                 profile.endsWith(FULL_PROFILE_SUFFIX)) {
             builder.addBehaviour(UpfProgrammable.class, FabricUpfProgrammable.class);
+            builder.addBehaviour(UpfPacketOutProgrammable.class, FabricUpfProgrammable.class);
         }
 
 
@@ -222,4 +291,32 @@ public class PipeconfLoader {
             throw new IllegalStateException(e);
         }
     }
+
+    private class InternalPacketInLimitListener implements NetworkConfigListener {
+        @Override
+        public boolean isRelevant(NetworkConfigEvent event) {
+            return event.configClass().equals(PacketInLimitConfig.class);
+        }
+
+        @Override
+        public void event(NetworkConfigEvent event) {
+            updatePacketInLimit((DeviceId) event.subject());
+        }
+    }
+
+    private class InternalDeviceListener implements DeviceListener {
+        @Override
+        public boolean isRelevant(DeviceEvent event) {
+            return event.type() == DeviceEvent.Type.DEVICE_REMOVED;
+        }
+
+        @Override
+        public void event(DeviceEvent event) {
+            // Statistics kept in static registries are forgotten with the device.
+            PipelinerMetrics.remove(event.subject().id());
+            ObjectiveExecutor.removeShared(event.subject().id());
+            TableOccupancy.remove(event.subject().id());
+            PacketOutBatcher.remove(event.subject().id());
+        }
+    }
 }
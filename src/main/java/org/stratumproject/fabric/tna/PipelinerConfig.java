@@ -0,0 +1,125 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.config.Config;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Per-device configuration of the fabric-tna pipeliner. Read when the
+ * pipeliner is initialized, i.e., changes are applied on the next connection
+ * of the device.
+ */
+public class PipelinerConfig extends Config<DeviceId> {
+    public static final String KEY = "pipeliner";
+
+    private static final String ACL_COMPILATION = "aclCompilation";
+    private static final String ROUTE_COMPRESSION = "routeCompression";
+    private static final String CONCURRENCY = "concurrency";
+
+    @Override
+    public boolean isValid() {
+        if (!hasOnlyFields(ACL_COMPILATION, ROUTE_COMPRESSION, CONCURRENCY)) {
+            return false;
+        }
+        final JsonNode concurrency = object.path(CONCURRENCY);
+        if (concurrency.isMissingNode()) {
+            return true;
+        }
+        if (!concurrency.isObject()) {
+            return false;
+        }
+        final String[] priorities = Arrays.stream(ObjectiveExecutor.Priority.values())
+                .map(PipelinerConfig::fieldName)
+                .toArray(String[]::new);
+        if (!hasOnlyFields((ObjectNode) concurrency, priorities)) {
+            return false;
+        }
+        for (String priority : priorities) {
+            final JsonNode n = concurrency.path(priority);
+            if (!n.isMissingNode() && (!n.isInt() || n.asInt() <= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the ACL rules should be compiled, i.e., shadowed rules
+     * dropped and adjacent rules merged, before being programmed in the ACL
+     * table. Disabled by default. The mapping of the ACL rules to the table
+     * entries is kept in memory only: once the pipeliner is initialized
+     * again, e.g., when the device reconnects, the entries installed before
+     * are unknown to the compiler, hence not removed with their rules.
+     *
+     * @return true if ACL compilation is enabled
+     */
+    public boolean aclCompilation() {
+        return get(ACL_COMPILATION, false);
+    }
+
+    /**
+     * Enables or disables the compilation of the ACL rules.
+     *
+     * @param enabled true to enable ACL compilation
+     * @return the pipeliner config
+     */
+    public PipelinerConfig setAclCompilation(boolean enabled) {
+        return (PipelinerConfig) setOrClear(ACL_COMPILATION, enabled);
+    }
+
+    /**
+     * Returns true if the IPv4 routes should be compressed before being
+     * programmed in the routing table. Disabled by default. Like for ACL
+     * compilation, the routes and the compressed entries are kept in memory
+     * only: once the pipeliner is initialized again, the entries installed
+     * before are unknown to the compressor, hence not removed with their
+     * routes.
+     *
+     * @return true if route compression is enabled
+     */
+    public boolean routeCompression() {
+        return get(ROUTE_COMPRESSION, false);
+    }
+
+    /**
+     * Enables or disables the compression of the IPv4 routes.
+     *
+     * @param enabled true to enable route compression
+     * @return the pipeliner config
+     */
+    public PipelinerConfig setRouteCompression(boolean enabled) {
+        return (PipelinerConfig) setOrClear(ROUTE_COMPRESSION, enabled);
+    }
+
+    /**
+     * Returns the maximum number of objectives of each scheduling priority
+     * processed at the same time, e.g., {"filtering": 4, "acl": 1}.
+     * Priorities not configured default to the number of pipeliner workers.
+     *
+     * @return maximum number of running objectives by priority
+     */
+    public Map<ObjectiveExecutor.Priority, Integer> concurrency() {
+        final JsonNode concurrency = object.path(CONCURRENCY);
+        final ImmutableMap.Builder<ObjectiveExecutor.Priority, Integer> builder = ImmutableMap.builder();
+        for (ObjectiveExecutor.Priority p : ObjectiveExecutor.Priority.values()) {
+            final JsonNode n = concurrency.path(fieldName(p));
+            if (n.isInt()) {
+                builder.put(p, n.asInt());
+            }
+        }
+        return builder.build();
+    }
+
+    private static String fieldName(ObjectiveExecutor.Priority priority) {
+        return priority.name().toLowerCase();
+    }
+}
@@ -88,6 +88,6 @@ public abstract class AbstractFabricHandlerBehavior extends AbstractHandlerBehav
                     "Pipeconf for '%s' is not registered ", deviceId));
         }
         this.pipeconf = pipeconfOptional.get();
-        this.capabilities = new FabricCapabilities(this.pipeconf);
+        this.capabilities = FabricCapabilities.of(this.pipeconf);
     }
 }
@@ -3,11 +3,18 @@
 
 package org.stratumproject.fabric.tna.behaviour;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Maps;
+import org.onosproject.net.pi.model.PiActionProfileModel;
 import org.onosproject.net.pi.model.PiPipeconf;
+import org.onosproject.net.pi.model.PiPipeconfId;
+import org.onosproject.net.pi.model.PiTableModel;
 import org.slf4j.Logger;
 import org.stratumproject.fabric.tna.slicing.api.MeterColor;
 
 import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -20,21 +27,70 @@ import static org.stratumproject.fabric.tna.behaviour.P4InfoConstants.FABRIC_ING
 
 /**
  * Representation of the capabilities of a given fabric-tna pipeconf.
+ * <p>
+ * Capabilities are derived from the pipeconf only once, and instances are
+ * shared by all devices using the same pipeconf (see {@link #of(PiPipeconf)}).
  */
 public class FabricCapabilities {
 
     private static final String MAVERICKS = "mavericks";
     private static final String MONTARA = "montara";
 
+    private static final ConcurrentMap<PiPipeconfId, FabricCapabilities> CACHE =
+            Maps.newConcurrentMap();
+
     private final Logger log = getLogger(getClass());
 
     private final PiPipeconf pipeconf;
 
+    private final Supplier<Integer> hwPipeCount = Suppliers.memoize(this::computeHwPipeCount);
+    private final Supplier<Boolean> hasHashedTable = Suppliers.memoize(this::computeHasHashedTable);
+    private final Supplier<Integer> hashedSelectorMaxGroupSize =
+            Suppliers.memoize(this::computeHashedSelectorMaxGroupSize);
+    private final Supplier<Boolean> isArchV1model = Suppliers.memoize(() -> isArch(V1MODEL));
+    private final Supplier<Boolean> isArchTna = Suppliers.memoize(() -> isArch(TNA));
+    private final Supplier<Boolean> supportUpf = Suppliers.memoize(this::computeSupportUpf);
+
     public FabricCapabilities(PiPipeconf pipeconf) {
         this.pipeconf = checkNotNull(pipeconf);
     }
 
+    /**
+     * Returns the capabilities of the given pipeconf, shared by all devices
+     * using a pipeconf with the same ID. Capabilities are computed again if a
+     * different pipeconf is registered with the same ID.
+     *
+     * @param pipeconf pipeconf
+     * @return capabilities
+     */
+    public static FabricCapabilities of(PiPipeconf pipeconf) {
+        checkNotNull(pipeconf);
+        final FabricCapabilities cached = CACHE.get(pipeconf.id());
+        if (cached != null && cached.pipeconf == pipeconf) {
+            return cached;
+        }
+        return CACHE.compute(pipeconf.id(), (id, c) ->
+                c != null && c.pipeconf == pipeconf ? c : new FabricCapabilities(pipeconf));
+    }
+
+    /**
+     * Returns the ID of the pipeconf of these capabilities.
+     *
+     * @return pipeconf ID
+     */
+    public PiPipeconfId pipeconfId() {
+        return pipeconf.id();
+    }
+
     public int hwPipeCount() {
+        final int count = hwPipeCount.get();
+        if (count == 0) {
+            log.error("Unable to derive HW pipe count from pipeconf ID: {}", pipeconf.id());
+        }
+        return count;
+    }
+
+    private int computeHwPipeCount() {
         // FIXME: use chip type (or platform name) when Stratum will support
         //  reading that via gNMI. Until then, we need to rely on the
         //  pipeconf name (which prevents us from using chip-independent
@@ -45,25 +101,65 @@ public class FabricCapabilities {
         } else if (id.contains(MAVERICKS)) {
             return 4;
         } else {
-            log.error("Unable to derive HW pipe count from pipeconf ID: {}", id);
             return 0;
         }
     }
 
     public boolean hasHashedTable() {
+        return hasHashedTable.get();
+    }
+
+    private boolean computeHasHashedTable() {
         return pipeconf.pipelineModel()
                 .table(P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED).isPresent();
     }
 
+    /**
+     * Returns true if the hashed next table is bound to an action selector,
+     * i.e., if HASHED next objectives can be translated to SELECT groups.
+     * Otherwise, the hashed table is a direct table with a single action per
+     * next ID.
+     *
+     * @return true if the hashed table has an action selector
+     */
+    public boolean hasHashedSelector() {
+        return hashedSelectorMaxGroupSize() > 0;
+    }
+
+    /**
+     * Returns the maximum number of members of the groups of the action
+     * selector bound to the hashed next table, i.e., the maximum sum of the
+     * bucket weights of a HASHED next objective.
+     *
+     * @return maximum group size, 0 if the hashed table has no action selector
+     */
+    public int hashedSelectorMaxGroupSize() {
+        return hashedSelectorMaxGroupSize.get();
+    }
+
+    private int computeHashedSelectorMaxGroupSize() {
+        return pipeconf.pipelineModel()
+                .table(P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED)
+                .map(PiTableModel::actionProfile)
+                .filter(PiActionProfileModel::hasSelector)
+                // A max group size of 0 means that groups are limited only
+                // by the size of the action profile.
+                .map(p -> p.maxGroupSize() > 0 ? p.maxGroupSize()
+                        : (int) Math.min(p.size(), Short.MAX_VALUE))
+                .orElse(0);
+    }
+
     public boolean isArchV1model() {
-        return pipeconf.pipelineModel().architecture()
-                .map(a -> a.equals(V1MODEL))
-                .orElse(false);
+        return isArchV1model.get();
     }
 
     public boolean isArchTna() {
+        return isArchTna.get();
+    }
+
+    private boolean isArch(String architecture) {
         return pipeconf.pipelineModel().architecture()
-                .map(a -> a.equals(TNA))
+                .map(a -> a.equals(architecture))
                 .orElse(false);
     }
 
@@ -85,6 +181,10 @@ public class FabricCapabilities {
      * @return boolean
      */
     public boolean supportUpf() {
+        return supportUpf.get();
+    }
+
+    private boolean computeSupportUpf() {
         return pipeconf.pipelineModel()
                 .table(FABRIC_INGRESS_UPF_UPLINK_SESSIONS)
                 .isPresent();
@@ -6,8 +6,8 @@ package org.stratumproject.fabric.tna.behaviour;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.UnsignedInteger;
-import org.onlab.packet.DeserializationException;
 import org.onlab.packet.Ethernet;
 import org.onlab.util.ImmutableByteSequence;
 import org.onosproject.net.ConnectPoint;
@@ -19,10 +19,10 @@ import org.onosproject.net.driver.DriverHandler;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.criteria.Criterion;
 import org.onosproject.net.flow.instructions.Instructions;
-import org.onosproject.net.packet.DefaultInboundPacket;
 import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.OutboundPacket;
 import org.onosproject.net.pi.model.PiMatchFieldId;
+import org.onosproject.net.pi.model.PiPipeconfId;
 import org.onosproject.net.pi.model.PiPipelineInterpreter;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.runtime.PiAction;
@@ -30,11 +30,12 @@ import org.onosproject.net.pi.runtime.PiPacketMetadata;
 import org.onosproject.net.pi.runtime.PiPacketOperation;
 import org.stratumproject.fabric.tna.slicing.api.SlicingService;
 
-import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.String.format;
 import static java.util.stream.Collectors.toList;
@@ -44,8 +45,6 @@ import static org.onosproject.net.PortNumber.FLOOD;
 import static org.onosproject.net.PortNumber.TABLE;
 import static org.onosproject.net.flow.instructions.Instruction.Type.OUTPUT;
 import static org.onosproject.net.pi.model.PiPacketOperationType.PACKET_OUT;
-import static org.stratumproject.fabric.tna.Constants.ONE;
-import static org.stratumproject.fabric.tna.Constants.ZERO;
 import static org.stratumproject.fabric.tna.behaviour.FabricTreatmentInterpreter.mapAclTreatment;
 import static org.stratumproject.fabric.tna.behaviour.FabricTreatmentInterpreter.mapEgressNextTreatment;
 import static org.stratumproject.fabric.tna.behaviour.FabricTreatmentInterpreter.mapForwardingTreatment;
@@ -58,11 +57,6 @@ import static org.stratumproject.fabric.tna.behaviour.FabricTreatmentInterpreter
 public class FabricInterpreter extends AbstractFabricHandlerBehavior
         implements PiPipelineInterpreter {
 
-    private static final int CPU_LOOPBACK_MODE_DISABLED = 0;
-    private static final int CPU_LOOPBACK_MODE_DIRECT = 1;
-    private static final int CPU_LOOPBACK_MODE_INGRESS = 2;
-    private static final int ETHER_TYPE_PACKET_OUT = 0xBF01;
-
     // Group tables by control block.
     private static final Set<PiTableId> FORWARDING_CTRL_TBLS = ImmutableSet.of(
             P4InfoConstants.FABRIC_INGRESS_FORWARDING_MPLS,
@@ -121,6 +115,9 @@ public class FabricInterpreter extends AbstractFabricHandlerBehavior
 
     protected SlicingService slicingService;
 
+    private static final ConcurrentMap<PiPipeconfId, FabricInterpreter> SHARED =
+            Maps.newConcurrentMap();
+
     private FabricTreatmentInterpreter treatmentInterpreter;
 
     /**
@@ -141,6 +138,28 @@ public class FabricInterpreter extends AbstractFabricHandlerBehavior
         super();
     }
 
+    /**
+     * Returns an interpreter for the given capabilities, shared by all
+     * devices using the same pipeconf. The returned interpreter has no driver
+     * handler, hence it can be used only to map flow rules and treatments.
+     *
+     * @param capabilities capabilities
+     * @return interpreter
+     */
+    public static FabricInterpreter shared(FabricCapabilities capabilities) {
+        final PiPipeconfId pipeconfId = capabilities.pipeconfId();
+        if (pipeconfId == null) {
+            // Capabilities not backed by a registered pipeconf.
+            return new FabricInterpreter(capabilities);
+        }
+        final FabricInterpreter cached = SHARED.get(pipeconfId);
+        if (cached != null && cached.capabilities == capabilities) {
+            return cached;
+        }
+        return SHARED.compute(pipeconfId, (id, i) ->
+                i != null && i.capabilities == capabilities ? i : new FabricInterpreter(capabilities));
+    }
+
     private void instantiateTreatmentInterpreter() {
         this.treatmentInterpreter = new FabricTreatmentInterpreter(this.capabilities);
     }
@@ -167,6 +186,13 @@ public class FabricInterpreter extends AbstractFabricHandlerBehavior
     @Override
     public PiAction mapTreatment(TrafficTreatment treatment, PiTableId piTableId)
             throws PiInterpreterException {
+        // Called for every flow rule by the pipeliner and by the flow rule
+        // translation, often with the same treatments.
+        return TreatmentMappingCache.shared().get(treatment, piTableId, FabricInterpreter::doMapTreatment);
+    }
+
+    private static PiAction doMapTreatment(TrafficTreatment treatment, PiTableId piTableId)
+            throws PiInterpreterException {
         if (FORWARDING_CTRL_TBLS.contains(piTableId)) {
             return mapForwardingTreatment(treatment, piTableId);
         } else if (PRE_NEXT_CTRL_TBLS.contains(piTableId)) {
@@ -184,83 +210,68 @@ public class FabricInterpreter extends AbstractFabricHandlerBehavior
     }
 
     private PiPacketOperation createPiPacketOperation(
-            ByteBuffer data, long portNumber, boolean doForwarding)
+            ImmutableByteSequence data, long portNumber, boolean doForwarding, int queueId)
             throws PiInterpreterException {
-        Collection<PiPacketMetadata> metadata = createPacketMetadata(portNumber, doForwarding);
+        Collection<PiPacketMetadata> metadata = createPacketMetadata(portNumber, doForwarding, queueId);
         return PiPacketOperation.builder()
                 .withType(PACKET_OUT)
-                .withData(copyFrom(data))
+                .withData(data)
                 .withMetadatas(metadata)
                 .build();
     }
 
     private Collection<PiPacketMetadata> createPacketMetadata(
-            long portNumber, boolean doForwarding)
+            long portNumber, boolean doForwarding, int queueId)
             throws PiInterpreterException {
         try {
-            int queueId = slicingService.getSystemTrafficClass().queueId().id();
-            ImmutableList.Builder<PiPacketMetadata> builder = ImmutableList.builder();
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.PAD0)
-                    .withValue(copyFrom(0)
-                            .fit(P4InfoConstants.PAD0_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.EGRESS_PORT)
-                    .withValue(copyFrom(portNumber)
-                            .fit(P4InfoConstants.EGRESS_PORT_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.PAD1)
-                    .withValue(copyFrom(0)
-                            .fit(P4InfoConstants.PAD1_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.QUEUE_ID)
-                    .withValue(copyFrom(queueId)
-                            .fit(P4InfoConstants.QUEUE_ID_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.PAD2)
-                    .withValue(copyFrom(0)
-                            .fit(P4InfoConstants.PAD2_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.CPU_LOOPBACK_MODE)
-                    .withValue(copyFrom(CPU_LOOPBACK_MODE_DISABLED)
-                            .fit(P4InfoConstants.CPU_LOOPBACK_MODE_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.DO_FORWARDING)
-                    .withValue(copyFrom(doForwarding ? ONE : ZERO))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.PAD3)
-                    .withValue(copyFrom(0)
-                            .fit(P4InfoConstants.PAD3_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.PAD4)
-                    .withValue(copyFrom(0)
-                            .fit(P4InfoConstants.PAD4_BITWIDTH))
-                    .build());
-            builder.add(PiPacketMetadata.builder()
-                    .withId(P4InfoConstants.ETHER_TYPE)
-                    .withValue(copyFrom(ETHER_TYPE_PACKET_OUT)
-                            .fit(P4InfoConstants.ETHER_TYPE_BITWIDTH))
-                    .build());
-            return builder.build();
+            return PacketOutMetadata.of(portNumber, doForwarding, queueId);
         } catch (ImmutableByteSequence.ByteSequenceTrimException e) {
             throw new PiInterpreterException(format(
                     "Port number '%d' too big, %s", portNumber, e.getMessage()));
         }
     }
 
+    private int systemQueueId() {
+        return slicingService.getSystemTrafficClass().queueId().id();
+    }
+
     @Override
     public Collection<PiPacketOperation> mapOutboundPacket(OutboundPacket packet)
             throws PiInterpreterException {
-        TrafficTreatment treatment = packet.treatment();
+        ImmutableList.Builder<PiPacketOperation> builder = ImmutableList.builder();
+        mapOutboundPacket(packet, outputInstructions(packet.treatment()), systemQueueId(), builder);
+        return builder.build();
+    }
 
+    /**
+     * Maps the given packets to packet operations, in order. The output
+     * instructions of each treatment instance are extracted once per batch,
+     * and the system queue ID is read once for the whole batch.
+     *
+     * @param packets outbound packets
+     * @return packet operations
+     * @throws PiInterpreterException if any of the packets cannot be mapped
+     */
+    public List<PiPacketOperation> mapOutboundPackets(Collection<OutboundPacket> packets)
+            throws PiInterpreterException {
+        // Senders of bursts usually share a single treatment instance.
+        final Map<TrafficTreatment, List<Instructions.OutputInstruction>> templates =
+                Maps.newIdentityHashMap();
+        final int queueId = systemQueueId();
+        ImmutableList.Builder<PiPacketOperation> builder = ImmutableList.builder();
+        for (OutboundPacket packet : packets) {
+            List<Instructions.OutputInstruction> outInstructions = templates.get(packet.treatment());
+            if (outInstructions == null) {
+                outInstructions = outputInstructions(packet.treatment());
+                templates.put(packet.treatment(), outInstructions);
+            }
+            mapOutboundPacket(packet, outInstructions, queueId, builder);
+        }
+        return builder.build();
+    }
+
+    private static List<Instructions.OutputInstruction> outputInstructions(TrafficTreatment treatment)
+            throws PiInterpreterException {
         // We support only OUTPUT instructions.
         List<Instructions.OutputInstruction> outInstructions = treatment
                 .allInstructions()
@@ -273,59 +284,72 @@ public class FabricInterpreter extends AbstractFabricHandlerBehavior
             // There are other instructions that are not of type OUTPUT.
             throw new PiInterpreterException("Treatment not supported: " + treatment);
         }
+        return outInstructions;
+    }
 
-        ImmutableList.Builder<PiPacketOperation> builder = ImmutableList.builder();
+    private void mapOutboundPacket(OutboundPacket packet,
+                                   List<Instructions.OutputInstruction> outInstructions,
+                                   int queueId, ImmutableList.Builder<PiPacketOperation> builder)
+            throws PiInterpreterException {
+        // The payload is copied once and shared by all packet operations.
+        final ImmutableByteSequence data = copyFrom(packet.data());
         for (Instructions.OutputInstruction outInst : outInstructions) {
             if (outInst.port().equals(TABLE)) {
                 // Logical port. Forward using the switch tables like a regular packet.
-                builder.add(createPiPacketOperation(packet.data(), 0, true));
+                builder.add(createPiPacketOperation(data, 0, true, queueId));
             } else if (outInst.port().equals(FLOOD)) {
                 // Logical port. Create a packet operation for each switch port.
                 final DeviceService deviceService = handler().get(DeviceService.class);
-                for (Port port : deviceService.getPorts(packet.sendThrough())) {
-                    builder.add(createPiPacketOperation(packet.data(), port.number().toLong(), false));
+                for (PortNumber port : FloodPortCache.shared().floodPorts(packet.sendThrough(), deviceService)) {
+                    builder.add(createPiPacketOperation(data, port.toLong(), false, queueId));
                 }
             } else if (outInst.port().isLogical()) {
                 throw new PiInterpreterException(format(
                         "Output on logical port '%s' not supported", outInst.port()));
             } else {
                 // Send as-is to given port bypassing all switch tables.
-                builder.add(createPiPacketOperation(packet.data(), outInst.port().toLong(), false));
+                builder.add(createPiPacketOperation(data, outInst.port().toLong(), false, queueId));
             }
         }
-        return builder.build();
     }
 
     @Override
     public InboundPacket mapInboundPacket(PiPacketOperation packetIn, DeviceId deviceId) throws PiInterpreterException {
         // Assuming that the packet is ethernet, which is fine since fabric.p4
-        // can deparse only ethernet packets.
-        Ethernet ethPkt;
-        try {
-            ethPkt = Ethernet.deserializer().deserialize(packetIn.data().asArray(), 0,
-                                                         packetIn.data().size());
-        } catch (DeserializationException dex) {
-            throw new PiInterpreterException(dex.getMessage());
+        // can deparse only ethernet packets. The frame is parsed only when
+        // requested by a packet processor.
+        if (packetIn.data().size() < Ethernet.ETHERNET_HEADER_LENGTH) {
+            throw new PiInterpreterException(format(
+                    "Packet-in received from '%s' too short for an ethernet frame: %s",
+                    deviceId, packetIn));
         }
 
         // Returns the ingress port packet metadata.
-        Optional<PiPacketMetadata> packetMetadata = packetIn.metadatas()
-                .stream().filter(m -> m.id().equals(P4InfoConstants.INGRESS_PORT))
-                .findFirst();
+        PiPacketMetadata packetMetadata = null;
+        for (PiPacketMetadata m : packetIn.metadatas()) {
+            if (m.id().equals(P4InfoConstants.INGRESS_PORT)) {
+                packetMetadata = m;
+                break;
+            }
+        }
 
-        if (packetMetadata.isPresent()) {
+        if (packetMetadata != null) {
             try {
-                ImmutableByteSequence portByteSequence = packetMetadata.get()
+                ImmutableByteSequence portByteSequence = packetMetadata
                         .value().fit(P4InfoConstants.INGRESS_PORT_BITWIDTH);
                 UnsignedInteger ui =
                     UnsignedInteger.fromIntBits(portByteSequence.asReadOnlyBuffer().getInt());
-                ConnectPoint receivedFrom =
-                    new ConnectPoint(deviceId, PortNumber.portNumber(ui.longValue()));
+                PortNumber inPort = PortNumber.portNumber(ui.longValue());
+                if (!PacketInLimiter.admit(deviceId, inPort)) {
+                    // Dropped before parsing or translating the port. The
+                    // packet service ignores null inbound packets.
+                    return null;
+                }
+                ConnectPoint receivedFrom = new ConnectPoint(deviceId, inPort);
                 if (!receivedFrom.port().hasName()) {
                     receivedFrom = translateSwitchPort(receivedFrom);
                 }
-                ByteBuffer rawData = ByteBuffer.wrap(packetIn.data().asArray());
-                return new DefaultInboundPacket(receivedFrom, ethPkt, rawData);
+                return new LazyInboundPacket(receivedFrom, packetIn.data());
             } catch (ImmutableByteSequence.ByteSequenceTrimException e) {
                 throw new PiInterpreterException(format(
                         "Malformed metadata '%s' in packet-in received from '%s': %s",
@@ -352,8 +376,14 @@ public class FabricInterpreter extends AbstractFabricHandlerBehavior
     }
 
     /* Connect point generated using sb metadata does not have port name
-       we use the device service as translation service */
+       we use the device service as translation service, through the cache
+       of named ports when it is started */
     private ConnectPoint translateSwitchPort(ConnectPoint connectPoint) {
+        final PortNumber namedPort = NamedPortCache.shared().namedPort(
+                connectPoint.deviceId(), connectPoint.port());
+        if (namedPort != null) {
+            return new ConnectPoint(connectPoint.deviceId(), namedPort);
+        }
         final DeviceService deviceService = handler().get(DeviceService.class);
         if (deviceService == null) {
             log.warn("Unable to translate switch port due to DeviceService not available");
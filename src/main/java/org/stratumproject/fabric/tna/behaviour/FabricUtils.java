@@ -20,7 +20,6 @@ import org.onosproject.net.flowobjective.Objective;
 import org.onosproject.net.pi.model.PiPipelineInterpreter;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.store.serializers.KryoNamespaces;
-import org.stratumproject.fabric.tna.behaviour.pipeliner.FabricPipeliner;
 
 import java.util.Collection;
 import java.util.List;
@@ -45,7 +44,6 @@ public final class FabricUtils {
 
     public static final KryoNamespace KRYO = new KryoNamespace.Builder()
             .register(KryoNamespaces.API)
-            .register(FabricPipeliner.FabricNextGroup.class)
             .build("FabricTnaPipeconf");
 
     private FabricUtils() {
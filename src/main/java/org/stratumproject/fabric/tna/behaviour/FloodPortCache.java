@@ -0,0 +1,107 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ports of each device used to flood packet-outs, shared by all interpreter
+ * instances. The ports of a device are cached only while the cache listens
+ * to device events, i.e., between {@link #start(DeviceService)} and
+ * {@link #stop(DeviceService)}, and are dropped when a port of the device is
+ * added, updated or removed, or when the device is removed.
+ */
+public final class FloodPortCache implements DeviceListener {
+
+    private static final FloodPortCache SHARED = new FloodPortCache();
+
+    private final ConcurrentMap<DeviceId, List<PortNumber>> ports = Maps.newConcurrentMap();
+    private volatile boolean listening;
+
+    FloodPortCache() {
+    }
+
+    /**
+     * Returns the cache shared by all interpreters.
+     *
+     * @return flood port cache
+     */
+    public static FloodPortCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Starts caching, listening to the events of the given device service.
+     *
+     * @param deviceService device service
+     */
+    public void start(DeviceService deviceService) {
+        deviceService.addListener(this);
+        listening = true;
+    }
+
+    /**
+     * Stops caching and forgets all cached ports.
+     *
+     * @param deviceService device service
+     */
+    public void stop(DeviceService deviceService) {
+        listening = false;
+        deviceService.removeListener(this);
+        ports.clear();
+    }
+
+    /**
+     * Returns the ports of the given device, from the cache or from the
+     * given device service.
+     *
+     * @param deviceId      device ID
+     * @param deviceService device service
+     * @return port numbers
+     */
+    List<PortNumber> floodPorts(DeviceId deviceId, DeviceService deviceService) {
+        if (!listening) {
+            return portNumbers(deviceId, deviceService);
+        }
+        // An event received while computing drops the entry after it is
+        // added, since computeIfAbsent and remove are serialized.
+        return ports.computeIfAbsent(deviceId, id -> portNumbers(id, deviceService));
+    }
+
+    @Override
+    public boolean isRelevant(DeviceEvent event) {
+        switch (event.type()) {
+            case PORT_ADDED:
+            case PORT_UPDATED:
+            case PORT_REMOVED:
+            case DEVICE_REMOVED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void event(DeviceEvent event) {
+        ports.remove(event.subject().id());
+    }
+
+    private static List<PortNumber> portNumbers(DeviceId deviceId, DeviceService deviceService) {
+        final ImmutableList.Builder<PortNumber> builder = ImmutableList.builder();
+        for (Port port : deviceService.getPorts(deviceId)) {
+            builder.add(port.number());
+        }
+        return builder.build();
+    }
+}
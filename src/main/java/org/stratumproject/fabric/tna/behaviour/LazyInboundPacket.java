@@ -0,0 +1,123 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.Data;
+import org.onlab.packet.DeserializationException;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.ImmutableByteSequence;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.packet.InboundPacket;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Optional;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Inbound packet backed by the data of a packet-in, without copying it. The
+ * Ethernet frame is parsed on first access, since many packet processors
+ * look only at the ingress port or skip packets that are not for them.
+ * Packets that cannot be parsed are returned by {@link #parsed()} as an
+ * Ethernet frame with zero addresses and the raw data as payload.
+ */
+final class LazyInboundPacket implements InboundPacket {
+
+    private static final Logger log = getLogger(LazyInboundPacket.class);
+
+    private final ConnectPoint receivedFrom;
+    private final ImmutableByteSequence data;
+    private volatile byte[] bytes;
+    private volatile Ethernet parsed;
+
+    /**
+     * Creates a new inbound packet.
+     *
+     * @param receivedFrom connect point where the packet was received
+     * @param data         packet data
+     */
+    LazyInboundPacket(ConnectPoint receivedFrom, ImmutableByteSequence data) {
+        this.receivedFrom = receivedFrom;
+        this.data = data;
+    }
+
+    @Override
+    public ConnectPoint receivedFrom() {
+        return receivedFrom;
+    }
+
+    @Override
+    public Ethernet parsed() {
+        if (parsed == null) {
+            // Concurrent callers may parse twice, the result is the same.
+            final byte[] array = bytes();
+            Ethernet ethernet;
+            try {
+                ethernet = Ethernet.deserializer().deserialize(array, 0, array.length);
+            } catch (DeserializationException e) {
+                log.debug("Unable to parse packet received from {}: {}", receivedFrom, e.getMessage());
+                ethernet = new Ethernet();
+                ethernet.setDestinationMACAddress(MacAddress.ZERO);
+                ethernet.setSourceMACAddress(MacAddress.ZERO);
+                ethernet.setPayload(new Data(array));
+            }
+            parsed = ethernet;
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns the packet data, backed by an array like the one of
+     * {@link org.onosproject.net.packet.DefaultInboundPacket}. The data is
+     * copied to the array on first access only.
+     *
+     * @return packet data
+     */
+    @Override
+    public ByteBuffer unparsed() {
+        return ByteBuffer.wrap(bytes());
+    }
+
+    private byte[] bytes() {
+        if (bytes == null) {
+            bytes = data.asArray();
+        }
+        return bytes;
+    }
+
+    @Override
+    public Optional<Long> cookie() {
+        return Optional.empty();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(receivedFrom, data);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final LazyInboundPacket other = (LazyInboundPacket) obj;
+        return Objects.equals(this.receivedFrom, other.receivedFrom)
+                && Objects.equals(this.data, other.data);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("receivedFrom", receivedFrom)
+                .add("parsed", parsed())
+                .toString();
+    }
+}
@@ -0,0 +1,113 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named port numbers of each device, used to translate the ingress port of
+ * packet-ins without reading the device store for every packet. Ports are
+ * cached only while the cache listens to device events, i.e., between
+ * {@link #start(DeviceService)} and {@link #stop(DeviceService)}. A port is
+ * dropped when it is added, updated or removed, and all ports of a device
+ * when the device is removed.
+ */
+public final class NamedPortCache implements DeviceListener {
+
+    private static final NamedPortCache SHARED = new NamedPortCache();
+
+    private final ConcurrentMap<DeviceId, ConcurrentMap<PortNumber, PortNumber>> ports =
+            Maps.newConcurrentMap();
+    private volatile DeviceService deviceService;
+
+    NamedPortCache() {
+    }
+
+    /**
+     * Returns the cache shared by all interpreters.
+     *
+     * @return named port cache
+     */
+    public static NamedPortCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Starts caching, reading ports from and listening to the events of the
+     * given device service.
+     *
+     * @param service device service
+     */
+    public void start(DeviceService service) {
+        service.addListener(this);
+        deviceService = service;
+    }
+
+    /**
+     * Stops caching and forgets all cached ports.
+     *
+     * @param service device service
+     */
+    public void stop(DeviceService service) {
+        deviceService = null;
+        service.removeListener(this);
+        ports.clear();
+    }
+
+    /**
+     * Returns the given port of the given device with its name, or the given
+     * port if the device has no such port.
+     *
+     * @param deviceId device ID
+     * @param port     port number without name
+     * @return port number, or null if the cache is stopped
+     */
+    PortNumber namedPort(DeviceId deviceId, PortNumber port) {
+        final DeviceService service = deviceService;
+        if (service == null) {
+            return null;
+        }
+        // An event received while computing drops the entry after it is
+        // added, since computeIfAbsent and remove are serialized.
+        return ports.computeIfAbsent(deviceId, id -> Maps.newConcurrentMap())
+                .computeIfAbsent(port, p -> {
+                    final Port devicePort = service.getPort(deviceId, p);
+                    return devicePort == null ? p : devicePort.number();
+                });
+    }
+
+    @Override
+    public boolean isRelevant(DeviceEvent event) {
+        switch (event.type()) {
+            case PORT_ADDED:
+            case PORT_UPDATED:
+            case PORT_REMOVED:
+            case DEVICE_REMOVED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void event(DeviceEvent event) {
+        final DeviceId deviceId = event.subject().id();
+        if (event.port() == null) {
+            ports.remove(deviceId);
+            return;
+        }
+        final ConcurrentMap<PortNumber, PortNumber> devicePorts = ports.get(deviceId);
+        if (devicePorts != null) {
+            devicePorts.remove(event.port().number());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token-bucket limiter of the packet-ins of a device, with one bucket per
+ * ingress port. Packet-ins are checked before being parsed, so that a host
+ * flooding the controller costs as little as possible. Only devices with a
+ * configured limit are limited, limiters are kept in a static registry
+ * updated from the network configuration.
+ */
+public final class PacketInLimiter {
+
+    private static final ConcurrentMap<DeviceId, PacketInLimiter> LIMITERS =
+            Maps.newConcurrentMap();
+
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<PortNumber, Bucket> buckets = Maps.newConcurrentMap();
+    private volatile long rate;
+    private volatile long burst;
+
+    PacketInLimiter(long rate, long burst, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        setLimits(rate, burst);
+    }
+
+    /**
+     * Sets the packet-in limits of the given device, keeping the drop
+     * counters if the device was already limited.
+     *
+     * @param deviceId device ID
+     * @param rate     packets per second admitted on each port
+     * @param burst    packets admitted at once on each port
+     */
+    public static void configure(DeviceId deviceId, long rate, long burst) {
+        LIMITERS.compute(deviceId, (id, limiter) -> {
+            if (limiter == null) {
+                return new PacketInLimiter(rate, burst, System::nanoTime);
+            }
+            limiter.setLimits(rate, burst);
+            return limiter;
+        });
+    }
+
+    /**
+     * Stops limiting the packet-ins of the given device.
+     *
+     * @param deviceId device ID
+     */
+    public static void remove(DeviceId deviceId) {
+        LIMITERS.remove(deviceId);
+    }
+
+    /**
+     * Returns the limiters of all limited devices.
+     *
+     * @return map of device ID to limiter
+     */
+    public static Map<DeviceId, PacketInLimiter> all() {
+        return ImmutableMap.copyOf(LIMITERS);
+    }
+
+    /**
+     * Returns true if a packet-in received on the given port of the given
+     * device should be processed, false if it should be dropped.
+     *
+     * @param deviceId device ID
+     * @param port     ingress port
+     * @return true if the packet-in is admitted
+     */
+    static boolean admit(DeviceId deviceId, PortNumber port) {
+        final PacketInLimiter limiter = LIMITERS.get(deviceId);
+        return limiter == null || limiter.tryAcquire(port);
+    }
+
+    /**
+     * Takes a token from the bucket of the given port.
+     *
+     * @param port ingress port
+     * @return false if the bucket is empty
+     */
+    boolean tryAcquire(PortNumber port) {
+        Bucket bucket = buckets.get(port);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(port, p -> new Bucket(burst, nanoClock.getAsLong()));
+        }
+        return bucket.tryAcquire(nanoClock.getAsLong());
+    }
+
+    private void setLimits(long rate, long burst) {
+        checkArgument(rate > 0 && burst > 0, "Invalid rate %s or burst %s", rate, burst);
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    /**
+     * Returns the packets per second admitted on each port.
+     *
+     * @return rate
+     */
+    public long rate() {
+        return rate;
+    }
+
+    /**
+     * Returns the packets admitted at once on each port.
+     *
+     * @return burst
+     */
+    public long burst() {
+        return burst;
+    }
+
+    /**
+     * Returns the number of packet-ins dropped on each port.
+     *
+     * @return map of port to drop count
+     */
+    public Map<PortNumber, Long> drops() {
+        final ImmutableMap.Builder<PortNumber, Long> builder = ImmutableMap.builder();
+        buckets.forEach((port, bucket) -> builder.put(port, bucket.drops));
+        return builder.build();
+    }
+
+    /**
+     * Clears the drop counters.
+     */
+    public void reset() {
+        buckets.values().forEach(Bucket::resetDrops);
+    }
+
+    private final class Bucket {
+        // Guarded by this.
+        private double tokens;
+        private long lastRefill;
+        private volatile long drops;
+
+        private Bucket(long tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        private synchronized boolean tryAcquire(long now) {
+            final long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                tokens = Math.min(burst, tokens + (double) elapsed * rate / TimeUnit.SECONDS.toNanos(1));
+                lastRefill = now;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            drops++;
+            return false;
+        }
+
+        private synchronized void resetDrops() {
+            drops = 0;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.pi.runtime.PiPacketOperation;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Batches the packet-outs of a device, so that bursts, e.g., of control
+ * protocol packets or of packets drained from dbuf, are written together.
+ * Packet-outs are queued already mapped to packet operations, so that a
+ * packet that cannot be mapped is reported to its sender only. Operations
+ * are queued until a batch is full or until flushed, and are rejected when
+ * too many operations are pending. Behaviours are instantiated on demand,
+ * hence batchers are kept in a static registry, cleared when the device is
+ * removed.
+ */
+public final class PacketOutBatcher {
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final ConcurrentMap<DeviceId, PacketOutBatcher> BATCHERS =
+            Maps.newConcurrentMap();
+
+    /**
+     * Sends batches of packet-outs to a device.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * Sends the given packet operations, in order.
+         *
+         * @param batch packet operations
+         */
+        void send(List<PiPacketOperation> batch);
+    }
+
+    private final DeviceId deviceId;
+    private final int maxBatchSize;
+    private final int maxPending;
+
+    // Guarded by this.
+    private final Deque<PiPacketOperation> pending = new ArrayDeque<>();
+    // Serializes sinks, so that batches are sent in order.
+    private final Object sendLock = new Object();
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final LatencyHistogram emitLatency = new LatencyHistogram();
+
+    PacketOutBatcher(DeviceId deviceId, int maxBatchSize, int maxPending) {
+        checkArgument(maxBatchSize > 0 && maxPending >= maxBatchSize,
+                      "Invalid batch size %s or max pending %s", maxBatchSize, maxPending);
+        this.deviceId = checkNotNull(deviceId);
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Returns the batcher of the given device, creating it if needed.
+     *
+     * @param deviceId device ID
+     * @return packet-out batcher
+     */
+    public static PacketOutBatcher forDevice(DeviceId deviceId) {
+        return BATCHERS.computeIfAbsent(deviceId, id -> new PacketOutBatcher(
+                id, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_PENDING));
+    }
+
+    /**
+     * Forgets the batcher of the given device, dropping its pending packets.
+     *
+     * @param deviceId device ID
+     */
+    public static void remove(DeviceId deviceId) {
+        BATCHERS.remove(deviceId);
+    }
+
+    /**
+     * Forgets the batchers of all devices.
+     */
+    public static void clear() {
+        BATCHERS.clear();
+    }
+
+    /**
+     * Returns the batchers of all devices.
+     *
+     * @return map of device ID to batcher
+     */
+    public static Map<DeviceId, PacketOutBatcher> all() {
+        return ImmutableMap.copyOf(BATCHERS);
+    }
+
+    /**
+     * Queues the given packet operations, sending the full batches with the
+     * given sink. Either all or none of the operations are queued.
+     *
+     * @param operations packet operations
+     * @param sink       sink of full batches
+     * @return false if the operations were rejected because too many
+     * operations are pending
+     */
+    public boolean offer(Collection<PiPacketOperation> operations, Sink sink) {
+        final boolean full;
+        synchronized (this) {
+            if (pending.size() + operations.size() > maxPending) {
+                rejected.addAndGet(operations.size());
+                return false;
+            }
+            pending.addAll(operations);
+            full = pending.size() >= maxBatchSize;
+        }
+        if (full) {
+            drain(sink, maxBatchSize);
+        }
+        return true;
+    }
+
+    /**
+     * Sends all pending packet operations with the given sink.
+     *
+     * @param sink sink of batches
+     * @return number of packet operations sent
+     */
+    public int flush(Sink sink) {
+        return drain(sink, 1);
+    }
+
+    private int drain(Sink sink, int minBatchSize) {
+        int sent = 0;
+        synchronized (sendLock) {
+            while (true) {
+                final List<PiPacketOperation> batch;
+                synchronized (this) {
+                    if (pending.size() < minBatchSize) {
+                        return sent;
+                    }
+                    batch = Lists.newArrayListWithCapacity(Math.min(pending.size(), maxBatchSize));
+                    while (!pending.isEmpty() && batch.size() < maxBatchSize) {
+                        batch.add(pending.poll());
+                    }
+                }
+                send(batch, sink);
+                sent += batch.size();
+            }
+        }
+    }
+
+    private void send(List<PiPacketOperation> batch, Sink sink) {
+        final long start = System.nanoTime();
+        try {
+            sink.send(batch);
+        } finally {
+            emitLatency.record(System.nanoTime() - start);
+            batches.incrementAndGet();
+            packets.addAndGet(batch.size());
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+        }
+    }
+
+    /**
+     * Returns the device ID of this batcher.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the number of packet operations waiting to be sent.
+     *
+     * @return number of packet operations
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of batches sent.
+     *
+     * @return number of batches
+     */
+    public long batches() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the number of packet operations sent.
+     *
+     * @return number of packet operations
+     */
+    public long packets() {
+        return packets.get();
+    }
+
+    /**
+     * Returns the number of packet operations rejected because too many
+     * operations were pending.
+     *
+     * @return number of packet operations
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the mean number of packet operations per batch.
+     *
+     * @return mean batch size, 0 if no batch was sent
+     */
+    public double meanBatchSize() {
+        final long b = batches.get();
+        return b == 0 ? 0 : (double) packets.get() / b;
+    }
+
+    /**
+     * Returns the size of the largest batch sent.
+     *
+     * @return number of packet operations
+     */
+    public long largestBatch() {
+        return largestBatch.get();
+    }
+
+    /**
+     * Returns the latency of sending a batch.
+     *
+     * @return latency histogram
+     */
+    public LatencyHistogram emitLatency() {
+        return emitLatency;
+    }
+
+    /**
+     * Clears all statistics, pending packet operations are kept.
+     */
+    public void reset() {
+        batches.set(0);
+        packets.set(0);
+        rejected.set(0);
+        largestBatch.set(0);
+        emitLatency.reset();
+    }
+}
@@ -0,0 +1,128 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import org.onlab.util.ImmutableByteSequence;
+import org.onlab.util.ImmutableByteSequence.ByteSequenceTrimException;
+import org.onosproject.net.pi.model.PiPacketMetadataId;
+import org.onosproject.net.pi.runtime.PiPacketMetadata;
+
+import java.util.List;
+
+import static org.onlab.util.ImmutableByteSequence.copyFrom;
+import static org.stratumproject.fabric.tna.Constants.ONE;
+import static org.stratumproject.fabric.tna.Constants.ZERO;
+
+/**
+ * Metadata of the packet-out header. Only the egress port, the queue ID and
+ * do_forwarding vary between packets, the lists of metadata are built once
+ * per combination of these fields and cached. A change of the system traffic
+ * class results in a different queue ID, i.e., a different cache entry.
+ */
+final class PacketOutMetadata {
+
+    static final int MAX_SIZE = 4096;
+
+    private static final int CPU_LOOPBACK_MODE_DISABLED = 0;
+    private static final int CPU_LOOPBACK_MODE_DIRECT = 1;
+    private static final int CPU_LOOPBACK_MODE_INGRESS = 2;
+    private static final int ETHER_TYPE_PACKET_OUT = 0xBF01;
+    private static final long MAX_PORT = 0xFFFFFFFFL;
+    private static final int MAX_QUEUE_ID = (1 << P4InfoConstants.QUEUE_ID_BITWIDTH) - 1;
+
+    private static final PiPacketMetadata PAD0 = constant(
+            P4InfoConstants.PAD0, 0, P4InfoConstants.PAD0_BITWIDTH);
+    private static final PiPacketMetadata PAD1 = constant(
+            P4InfoConstants.PAD1, 0, P4InfoConstants.PAD1_BITWIDTH);
+    private static final PiPacketMetadata PAD2 = constant(
+            P4InfoConstants.PAD2, 0, P4InfoConstants.PAD2_BITWIDTH);
+    private static final PiPacketMetadata PAD3 = constant(
+            P4InfoConstants.PAD3, 0, P4InfoConstants.PAD3_BITWIDTH);
+    private static final PiPacketMetadata PAD4 = constant(
+            P4InfoConstants.PAD4, 0, P4InfoConstants.PAD4_BITWIDTH);
+    private static final PiPacketMetadata CPU_LOOPBACK_MODE = constant(
+            P4InfoConstants.CPU_LOOPBACK_MODE, CPU_LOOPBACK_MODE_DISABLED,
+            P4InfoConstants.CPU_LOOPBACK_MODE_BITWIDTH);
+    private static final PiPacketMetadata ETHER_TYPE = constant(
+            P4InfoConstants.ETHER_TYPE, ETHER_TYPE_PACKET_OUT, P4InfoConstants.ETHER_TYPE_BITWIDTH);
+    private static final PiPacketMetadata DO_FORWARDING = PiPacketMetadata.builder()
+            .withId(P4InfoConstants.DO_FORWARDING)
+            .withValue(copyFrom(ONE))
+            .build();
+    private static final PiPacketMetadata DONT_FORWARD = PiPacketMetadata.builder()
+            .withId(P4InfoConstants.DO_FORWARDING)
+            .withValue(copyFrom(ZERO))
+            .build();
+
+    private static final Cache<Long, List<PiPacketMetadata>> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    private PacketOutMetadata() {
+        // Hides constructor.
+    }
+
+    /**
+     * Returns the packet-out metadata for the given fields.
+     *
+     * @param portNumber   egress port
+     * @param doForwarding true if the packet should be forwarded by the
+     *                     switch tables
+     * @param queueId      egress queue ID
+     * @return list of metadata
+     * @throws ByteSequenceTrimException if the port number or the queue ID do
+     *                                   not fit their metadata
+     */
+    static List<PiPacketMetadata> of(long portNumber, boolean doForwarding, int queueId)
+            throws ByteSequenceTrimException {
+        if (portNumber < 0 || portNumber > MAX_PORT || queueId < 0 || queueId > MAX_QUEUE_ID) {
+            // Not cached, fails to fit.
+            return build(portNumber, doForwarding, queueId);
+        }
+        final long key = portNumber << 6 | (long) queueId << 1 | (doForwarding ? 1 : 0);
+        List<PiPacketMetadata> metadata = CACHE.getIfPresent(key);
+        if (metadata == null) {
+            metadata = build(portNumber, doForwarding, queueId);
+            CACHE.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    private static List<PiPacketMetadata> build(long portNumber, boolean doForwarding, int queueId)
+            throws ByteSequenceTrimException {
+        return ImmutableList.of(
+                PAD0,
+                PiPacketMetadata.builder()
+                        .withId(P4InfoConstants.EGRESS_PORT)
+                        .withValue(copyFrom(portNumber).fit(P4InfoConstants.EGRESS_PORT_BITWIDTH))
+                        .build(),
+                PAD1,
+                PiPacketMetadata.builder()
+                        .withId(P4InfoConstants.QUEUE_ID)
+                        .withValue(copyFrom(queueId).fit(P4InfoConstants.QUEUE_ID_BITWIDTH))
+                        .build(),
+                PAD2,
+                CPU_LOOPBACK_MODE,
+                doForwarding ? DO_FORWARDING : DONT_FORWARD,
+                PAD3,
+                PAD4,
+                ETHER_TYPE);
+    }
+
+    private static PiPacketMetadata constant(PiPacketMetadataId id, int value, int bitWidth) {
+        final ImmutableByteSequence bytes;
+        try {
+            bytes = copyFrom(value).fit(bitWidth);
+        } catch (ByteSequenceTrimException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return PiPacketMetadata.builder()
+                .withId(id)
+                .withValue(bytes)
+                .build();
+    }
+}
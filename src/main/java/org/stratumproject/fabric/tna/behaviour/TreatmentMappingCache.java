@@ -0,0 +1,138 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.pi.model.PiPipelineInterpreter.PiInterpreterException;
+import org.onosproject.net.pi.model.PiTableId;
+import org.onosproject.net.pi.runtime.PiAction;
+
+import java.util.Objects;
+
+/**
+ * Bounded cache of the mapping of treatments to PI actions. The mapping of a
+ * treatment depends only on the table, hence it is shared by all devices.
+ * Treatments that cannot be mapped are not cached.
+ */
+public final class TreatmentMappingCache {
+
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final TreatmentMappingCache SHARED = new TreatmentMappingCache(DEFAULT_MAX_SIZE);
+
+    private final Cache<Key, PiAction> cache;
+
+    /**
+     * Mapping function of a treatment to a PI action.
+     */
+    @FunctionalInterface
+    interface Mapper {
+        PiAction map(TrafficTreatment treatment, PiTableId tableId) throws PiInterpreterException;
+    }
+
+    TreatmentMappingCache(int maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cache shared by all interpreters.
+     *
+     * @return treatment mapping cache
+     */
+    public static TreatmentMappingCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the PI action of the given treatment and table, mapping it
+     * with the given mapper if not cached.
+     *
+     * @param treatment treatment
+     * @param tableId   table ID
+     * @param mapper    mapping function
+     * @return PI action
+     * @throws PiInterpreterException if the treatment cannot be mapped
+     */
+    PiAction get(TrafficTreatment treatment, PiTableId tableId, Mapper mapper)
+            throws PiInterpreterException {
+        final Key key = new Key(tableId, treatment);
+        PiAction action = cache.getIfPresent(key);
+        if (action == null) {
+            action = mapper.map(treatment, tableId);
+            cache.put(key, action);
+        }
+        return action;
+    }
+
+    /**
+     * Returns the number of cached mappings.
+     *
+     * @return number of mappings
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of mappings found in the cache.
+     *
+     * @return hit count
+     */
+    public long hitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Returns the number of mappings not found in the cache.
+     *
+     * @return miss count
+     */
+    public long missCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Returns the ratio of mappings found in the cache, 1.0 if none was
+     * requested.
+     *
+     * @return hit rate
+     */
+    public double hitRate() {
+        return cache.stats().hitRate();
+    }
+
+    private static final class Key {
+        private final PiTableId tableId;
+        private final TrafficTreatment treatment;
+        private final int hash;
+
+        private Key(PiTableId tableId, TrafficTreatment treatment) {
+            this.tableId = tableId;
+            this.treatment = treatment;
+            this.hash = Objects.hash(tableId, treatment);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return tableId.equals(that.tableId) && treatment.equals(that.treatment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.cli;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.cli.net.DeviceIdCompleter;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.stratumproject.fabric.tna.behaviour.PacketInLimiter;
+import org.stratumproject.fabric.tna.behaviour.PacketOutBatcher;
+import org.stratumproject.fabric.tna.behaviour.TreatmentMappingCache;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.CompletionDispatcher;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.LatencyHistogram;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.PipelinerMetrics;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.TableOccupancy;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Lists fabric-tna pipeliner latency, error and table occupancy statistics.
+ */
+@Service
+@Command(scope = "fabric-tna", name = "pipeliner-stats",
+        description = "List pipeliner latency, error and table occupancy statistics")
+public class PipelinerStatsCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "deviceId",
+            description = "Device ID",
+            required = false, multiValued = false)
+    @Completion(DeviceIdCompleter.class)
+    String uri = null;
+
+    @Option(name = "-r", aliases = "--reset",
+            description = "Reset statistics after printing them",
+            required = false, multiValued = false)
+    boolean reset = false;
+
+    @Override
+    protected void doExecute() {
+        print("objectiveQueue=%d, completionQueue=%d",
+              ObjectiveExecutor.sharedPending(), CompletionDispatcher.sharedQueueDepth());
+        TreatmentMappingCache treatmentCache = TreatmentMappingCache.shared();
+        print("treatmentCache: size=%d, hits=%d, misses=%d, hitRate=%.2f",
+              treatmentCache.size(), treatmentCache.hitCount(), treatmentCache.missCount(),
+              treatmentCache.hitRate());
+        Collection<PipelinerMetrics> metrics;
+        if (uri != null) {
+            PipelinerMetrics deviceMetrics = PipelinerMetrics.all().get(DeviceId.deviceId(uri));
+            if (deviceMetrics == null) {
+                print("No pipeliner statistics for device %s", uri);
+                return;
+            }
+            metrics = Collections.singleton(deviceMetrics);
+        } else {
+            metrics = PipelinerMetrics.all().values();
+        }
+        metrics.stream()
+                .sorted(Comparator.comparing(m -> m.deviceId().toString()))
+                .forEach(this::printMetrics);
+    }
+
+    private void printMetrics(PipelinerMetrics metrics) {
+        print("%s", metrics.deviceId());
+        for (PipelinerMetrics.ObjectiveType type : PipelinerMetrics.ObjectiveType.values()) {
+            for (Objective.Operation op : Objective.Operation.values()) {
+                long successes = metrics.successes(type, op);
+                for (PipelinerMetrics.Stage stage : PipelinerMetrics.Stage.values()) {
+                    LatencyHistogram h = metrics.latency(type, op, stage);
+                    if (h.count() == 0) {
+                        continue;
+                    }
+                    print("  %s %s %s: count=%d, success=%d, mean=%.1fus, p50=%dus, p99=%dus, max=%dus",
+                          type, op, stage, h.count(), successes, h.meanMicros(),
+                          h.percentileMicros(50), h.percentileMicros(99), h.maxMicros());
+                }
+            }
+            for (ObjectiveError error : ObjectiveError.values()) {
+                long errors = metrics.errors(type, error);
+                if (errors > 0) {
+                    print("  %s %s: errors=%d", type, error, errors);
+                }
+            }
+        }
+        if (metrics.timeToFirstForwardingMillis() >= 0) {
+            print("  timeToFirstForwarding=%dms", metrics.timeToFirstForwardingMillis());
+        }
+        if (metrics.parked() > 0) {
+            print("  pending next: parked=%d, released=%d, expired=%d",
+                  metrics.parked(), metrics.released(), metrics.expired());
+        }
+        PacketOutBatcher batcher = PacketOutBatcher.all().get(metrics.deviceId());
+        if (batcher != null && batcher.batches() > 0) {
+            LatencyHistogram h = batcher.emitLatency();
+            print("  packet-out: batches=%d, packets=%d, meanBatch=%.1f, maxBatch=%d, rejected=%d, "
+                          + "pending=%d, mean=%.1fus, p99=%dus, max=%dus",
+                  batcher.batches(), batcher.packets(), batcher.meanBatchSize(), batcher.largestBatch(),
+                  batcher.rejected(), batcher.pending(), h.meanMicros(), h.percentileMicros(99),
+                  h.maxMicros());
+        }
+        PacketInLimiter limiter = PacketInLimiter.all().get(metrics.deviceId());
+        if (limiter != null) {
+            print("  packet-in limit: rate=%d/s, burst=%d", limiter.rate(), limiter.burst());
+            limiter.drops().entrySet().stream()
+                    .filter(e -> e.getValue() > 0)
+                    .sorted(Comparator.comparing(e -> e.getKey().toLong()))
+                    .forEach(e -> print("    port %s: dropped=%d", e.getKey(), e.getValue()));
+        }
+        TableOccupancy occupancy = TableOccupancy.all().get(metrics.deviceId());
+        if (occupancy != null) {
+            occupancy.tables().stream()
+                    .sorted(Comparator.comparing(Object::toString))
+                    .forEach(t -> print("  %s: entries=%d, size=%d",
+                                        t, occupancy.occupancy(t), occupancy.maxSize(t)));
+        }
+        if (reset) {
+            metrics.reset();
+            if (batcher != null) {
+                batcher.reset();
+            }
+            if (limiter != null) {
+                limiter.reset();
+            }
+        }
+    }
+}
@@ -2,6 +2,6 @@
 // SPDX-License-Identifier: Apache-2.0
 
 /**
- * CLI commands for fabric-tna UPF.
+ * CLI commands for fabric-tna UPF and pipeliner.
  */
 package org.stratumproject.fabric.tna.behaviour.cli;
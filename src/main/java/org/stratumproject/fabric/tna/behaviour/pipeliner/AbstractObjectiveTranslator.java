@@ -38,7 +38,7 @@ abstract class AbstractObjectiveTranslator<T extends Objective> {
     AbstractObjectiveTranslator(DeviceId deviceId, FabricCapabilities capabilities) {
         this.deviceId = checkNotNull(deviceId);
         this.capabilities = checkNotNull(capabilities);
-        this.interpreter = new FabricInterpreter(capabilities);
+        this.interpreter = FabricInterpreter.shared(capabilities);
     }
 
     public ObjectiveTranslation translate(T obj) {
@@ -0,0 +1,334 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TableId;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compiles the logical ACL rules, i.e., the flow rules obtained by
+ * translating versatile forwarding objectives, to the physical entries of the
+ * ACL table of a device, with the goal of using fewer TCAM entries and rule
+ * writes:
+ * <ul>
+ *     <li>rules entirely shadowed by higher-priority rules are not
+ *     installed, until the shadowing rules are removed;</li>
+ *     <li>rules with the same priority and treatment that differ only by one
+ *     bit of a field are merged into one entry with the bit wildcarded, e.g.,
+ *     TCP ports 80 and 81 become 80/0xfffe, repeatedly;</li>
+ *     <li>port ranges are converted to their minimal prefix cover (see
+ *     {@link AclMatch}).</li>
+ * </ul>
+ * The compiler keeps the logical rules and the logical-to-physical mapping.
+ * Changes are computed only for the groups of rules with the same priority
+ * and treatment affected by an update, and are returned as a {@link Delta}
+ * with respect to the physical entries of the previous updates.
+ */
+final class AclCompiler implements FlowRuleCompiler {
+
+    // Highest priority first.
+    private final NavigableMap<Integer, Set<LogicalRule>> byPriority =
+            new TreeMap<>(Comparator.reverseOrder());
+    private final Map<FlowId, LogicalRule> logicalRules = Maps.newHashMap();
+    private final Map<Partition, Set<LogicalRule>> partitions = Maps.newHashMap();
+    private final Map<Partition, Map<FlowRule, Set<FlowId>>> physicalRules = Maps.newHashMap();
+
+    @Override
+    public boolean handles(FlowRule rule) {
+        return rule.table().equals(P4InfoConstants.FABRIC_INGRESS_ACL_ACL);
+    }
+
+    @Override
+    public Delta add(ApplicationId appId, Collection<FlowRule> rules) {
+        final Set<Partition> dirty = Sets.newHashSet();
+        for (FlowRule rule : rules) {
+            final LogicalRule existing = logicalRules.get(rule.id());
+            if (existing != null) {
+                removeLogical(existing, dirty);
+            }
+            final LogicalRule logical = new LogicalRule(appId, rule);
+            markDirty(logical, dirty);
+            logicalRules.put(rule.id(), logical);
+            byPriority.computeIfAbsent(rule.priority(), p -> Sets.newHashSet()).add(logical);
+            partitions.computeIfAbsent(logical.partition, p -> Sets.newHashSet()).add(logical);
+        }
+        return recompile(dirty, ImmutableList.of());
+    }
+
+    @Override
+    public Delta remove(Collection<FlowRule> rules) {
+        final Set<Partition> dirty = Sets.newHashSet();
+        final List<FlowRule> unknown = Lists.newArrayList();
+        for (FlowRule rule : rules) {
+            final LogicalRule logical = logicalRules.get(rule.id());
+            if (logical == null) {
+                unknown.add(rule);
+            } else {
+                removeLogical(logical, dirty);
+            }
+        }
+        return recompile(dirty, unknown);
+    }
+
+    @Override
+    public Delta purge(ApplicationId appId) {
+        final Set<Partition> dirty = Sets.newHashSet();
+        ImmutableList.copyOf(logicalRules.values()).stream()
+                .filter(l -> l.appId.equals(appId))
+                .forEach(l -> removeLogical(l, dirty));
+        return recompile(dirty, ImmutableList.of());
+    }
+
+    /**
+     * Returns the physical entries currently implementing the given logical
+     * rule. The set is empty if the rule is shadowed or unknown.
+     *
+     * @param logicalRuleId ID of a logical rule
+     * @return physical entries
+     */
+    Set<FlowRule> physicalRules(FlowId logicalRuleId) {
+        final LogicalRule logical = logicalRules.get(logicalRuleId);
+        if (logical == null) {
+            return ImmutableSet.of();
+        }
+        final ImmutableSet.Builder<FlowRule> builder = ImmutableSet.builder();
+        physicalRules.getOrDefault(logical.partition, Map.of()).forEach((rule, sources) -> {
+            if (sources.contains(logicalRuleId)) {
+                builder.add(rule);
+            }
+        });
+        return builder.build();
+    }
+
+    @Override
+    public int logicalCount() {
+        return logicalRules.size();
+    }
+
+    @Override
+    public int physicalCount() {
+        return physicalRules.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void removeLogical(LogicalRule logical, Set<Partition> dirty) {
+        markDirty(logical, dirty);
+        logicalRules.remove(logical.rule.id());
+        byPriority.computeIfPresent(logical.rule.priority(), (p, s) -> {
+            s.remove(logical);
+            return s.isEmpty() ? null : s;
+        });
+        partitions.computeIfPresent(logical.partition, (p, s) -> {
+            s.remove(logical);
+            return s.isEmpty() ? null : s;
+        });
+    }
+
+    private void markDirty(LogicalRule changed, Set<Partition> dirty) {
+        dirty.add(changed.partition);
+        // Lower-priority rules may become shadowed or visible.
+        byPriority.tailMap(changed.rule.priority(), false).values().forEach(
+                rules -> rules.stream()
+                        .filter(r -> !dirty.contains(r.partition) && changed.coversAny(r))
+                        .forEach(r -> dirty.add(r.partition)));
+    }
+
+    private Delta recompile(Set<Partition> dirty, List<FlowRule> extraRemoved) {
+        final List<FlowRule> added = Lists.newArrayList();
+        final List<FlowRule> removed = Lists.newArrayList(extraRemoved);
+        for (Partition partition : dirty) {
+            final Map<FlowRule, Set<FlowId>> compiled = compile(partition);
+            final Map<FlowRule, Set<FlowId>> previous = compiled.isEmpty()
+                    ? physicalRules.remove(partition)
+                    : physicalRules.put(partition, compiled);
+            final Set<FlowRule> previousRules = previous == null ? Set.of() : previous.keySet();
+            compiled.keySet().stream().filter(r -> !previousRules.contains(r)).forEach(added::add);
+            previousRules.stream().filter(r -> !compiled.containsKey(r)).forEach(removed::add);
+        }
+        return new Delta(added, removed);
+    }
+
+    private Map<FlowRule, Set<FlowId>> compile(Partition partition) {
+        final Set<LogicalRule> rules = partitions.get(partition);
+        if (rules == null) {
+            return Map.of();
+        }
+        // Sorted for the merge to be deterministic.
+        final Map<AclMatch, Set<FlowId>> sources = Maps.newLinkedHashMap();
+        rules.stream()
+                .sorted(Comparator.comparingLong(r -> r.rule.id().value()))
+                .forEach(r -> r.matches.stream()
+                        .filter(m -> !isShadowed(m, partition.priority))
+                        .forEach(m -> sources.computeIfAbsent(m, k -> Sets.newHashSet())
+                                .add(r.rule.id())));
+
+        final Map<AclMatch, Set<FlowId>> merged = merge(sources);
+        final LogicalRule template = rules.iterator().next();
+        final Map<FlowRule, Set<FlowId>> compiled = Maps.newHashMap();
+        merged.forEach((match, ids) -> compiled.merge(
+                physicalRule(template, match, ids), ids, Sets::union));
+        return compiled;
+    }
+
+    private FlowRule physicalRule(LogicalRule template, AclMatch match, Set<FlowId> ids) {
+        if (ids.size() == 1) {
+            // Reuse the logical rule if not modified.
+            final FlowRule logical = logicalRules.get(ids.iterator().next()).rule;
+            if (logical.selector().equals(match.selector())) {
+                return logical;
+            }
+        }
+        return physicalRule(template, match);
+    }
+
+    private boolean isShadowed(AclMatch match, int priority) {
+        return byPriority.headMap(priority, false).values().stream()
+                .flatMap(Set::stream)
+                .anyMatch(r -> r.matches.stream().anyMatch(m -> m.covers(match)));
+    }
+
+    /**
+     * Merges the given matches, and the IDs of the logical rules they
+     * implement, until no more matches can be merged.
+     *
+     * @param sources matches and logical rule IDs
+     * @return merged matches and logical rule IDs
+     */
+    private static Map<AclMatch, Set<FlowId>> merge(Map<AclMatch, Set<FlowId>> sources) {
+        Map<AclMatch, Set<FlowId>> current = sources;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            // Drop the matches covered by another one.
+            final List<AclMatch> matches = ImmutableList.copyOf(current.keySet());
+            for (AclMatch m : matches) {
+                for (AclMatch other : matches) {
+                    if (other != m && current.containsKey(other) && other.covers(m)) {
+                        current.get(other).addAll(current.remove(m));
+                        break;
+                    }
+                }
+            }
+            // Merge pairs of matches differing by one bit.
+            final Set<AclMatch> available = Sets.newLinkedHashSet(current.keySet());
+            final Map<AclMatch, Set<FlowId>> next = Maps.newLinkedHashMap();
+            while (!available.isEmpty()) {
+                final AclMatch m = available.iterator().next();
+                available.remove(m);
+                final Set<FlowId> ids = Sets.newHashSet(current.get(m));
+                AclMatch result = m;
+                final AclMatch neighbour = m.mergeableIn(available);
+                if (neighbour != null) {
+                    available.remove(neighbour);
+                    ids.addAll(current.get(neighbour));
+                    result = m.mergeWith(neighbour);
+                    changed = true;
+                }
+                next.merge(result, ids, (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    private static FlowRule physicalRule(LogicalRule template, AclMatch match) {
+        final FlowRule rule = template.rule;
+        final FlowRule.Builder builder = DefaultFlowRule.builder()
+                .forDevice(rule.deviceId())
+                .forTable(rule.table())
+                .fromApp(template.appId)
+                .withPriority(rule.priority())
+                .withSelector(match.selector())
+                .withTreatment(rule.treatment());
+        if (rule.isPermanent()) {
+            builder.makePermanent();
+        } else {
+            builder.makeTemporary(rule.timeout());
+        }
+        return builder.build();
+    }
+
+    private static final class LogicalRule {
+        private final ApplicationId appId;
+        private final FlowRule rule;
+        private final Partition partition;
+        private final List<AclMatch> matches;
+
+        private LogicalRule(ApplicationId appId, FlowRule rule) {
+            this.appId = appId;
+            this.rule = rule;
+            this.partition = new Partition(rule, appId);
+            this.matches = AclMatch.of(rule.selector());
+        }
+
+        private boolean coversAny(LogicalRule other) {
+            return matches.stream().anyMatch(m -> other.matches.stream().anyMatch(m::covers));
+        }
+    }
+
+    /**
+     * Rules that can be merged together, i.e., with the same table, priority,
+     * treatment, application and timeout.
+     */
+    private static final class Partition {
+        private final TableId table;
+        private final int priority;
+        private final TrafficTreatment treatment;
+        private final ApplicationId appId;
+        private final boolean permanent;
+        private final int timeout;
+
+        private Partition(FlowRule rule, ApplicationId appId) {
+            this.table = rule.table();
+            this.priority = rule.priority();
+            this.treatment = rule.treatment();
+            this.appId = appId;
+            this.permanent = rule.isPermanent();
+            this.timeout = rule.timeout();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Partition other = (Partition) o;
+            return priority == other.priority
+                    && permanent == other.permanent
+                    && timeout == other.timeout
+                    && table.equals(other.table)
+                    && Objects.equals(treatment, other.treatment)
+                    && appId.equals(other.appId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(table, priority, treatment, appId, permanent, timeout);
+        }
+    }
+}
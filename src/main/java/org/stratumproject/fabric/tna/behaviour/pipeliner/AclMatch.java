@@ -0,0 +1,471 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.TpPort;
+import org.onlab.util.ImmutableByteSequence;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.criteria.Criteria;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthCriterion;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.onosproject.net.flow.criteria.PiCriterion;
+import org.onosproject.net.flow.criteria.TcpPortCriterion;
+import org.onosproject.net.flow.criteria.UdpPortCriterion;
+import org.onosproject.net.pi.model.PiMatchFieldId;
+import org.onosproject.net.pi.runtime.PiFieldMatch;
+import org.onosproject.net.pi.runtime.PiLpmFieldMatch;
+import org.onosproject.net.pi.runtime.PiRangeFieldMatch;
+import org.onosproject.net.pi.runtime.PiTernaryFieldMatch;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Match of an ACL entry, where the fields supporting masks are represented as
+ * value/mask pairs, so that matches can be compared and merged bit by bit.
+ * <p>
+ * Criteria that cannot be masked (e.g., ports or IPv6 addresses) are kept
+ * as-is, and two matches can only be merged if they have the same ones. Range
+ * matches are not supported by the ACL table, they are converted to the
+ * minimal prefix cover of the range, i.e., one match per prefix.
+ */
+final class AclMatch {
+
+    // Bit width of the ACL match fields that can be used with a mask or a range.
+    private static final Map<PiMatchFieldId, Integer> PI_FIELD_WIDTHS =
+            ImmutableMap.<PiMatchFieldId, Integer>builder()
+                    .put(P4InfoConstants.HDR_IG_PORT, P4InfoConstants.HDR_IG_PORT_BITWIDTH)
+                    .put(P4InfoConstants.HDR_ETH_DST, P4InfoConstants.HDR_ETH_DST_BITWIDTH)
+                    .put(P4InfoConstants.HDR_ETH_SRC, P4InfoConstants.HDR_ETH_SRC_BITWIDTH)
+                    .put(P4InfoConstants.HDR_VLAN_ID, P4InfoConstants.HDR_VLAN_ID_BITWIDTH)
+                    .put(P4InfoConstants.HDR_ETH_TYPE, P4InfoConstants.HDR_ETH_TYPE_BITWIDTH)
+                    .put(P4InfoConstants.HDR_IPV4_SRC, P4InfoConstants.HDR_IPV4_SRC_BITWIDTH)
+                    .put(P4InfoConstants.HDR_IPV4_DST, P4InfoConstants.HDR_IPV4_DST_BITWIDTH)
+                    .put(P4InfoConstants.HDR_IP_PROTO, P4InfoConstants.HDR_IP_PROTO_BITWIDTH)
+                    .put(P4InfoConstants.HDR_ICMP_TYPE, P4InfoConstants.HDR_ICMP_TYPE_BITWIDTH)
+                    .put(P4InfoConstants.HDR_ICMP_CODE, P4InfoConstants.HDR_ICMP_CODE_BITWIDTH)
+                    .put(P4InfoConstants.HDR_L4_SPORT, P4InfoConstants.HDR_L4_SPORT_BITWIDTH)
+                    .put(P4InfoConstants.HDR_L4_DPORT, P4InfoConstants.HDR_L4_DPORT_BITWIDTH)
+                    .put(P4InfoConstants.HDR_IG_PORT_TYPE, P4InfoConstants.HDR_IG_PORT_TYPE_BITWIDTH)
+                    .build();
+    private static final int MAC_WIDTH = 48;
+    private static final int IPV4_WIDTH = 32;
+    private static final int L4_PORT_WIDTH = 16;
+
+    // Keyed by Criterion.Type for ONOS criteria, by PiMatchFieldId for PI ones.
+    private final Map<Object, Field> fields;
+    // Criterion or PiFieldMatch.
+    private final Set<Object> others;
+    // Selector this match was parsed from, null if modified.
+    private final TrafficSelector selector;
+    private final int hashCode;
+
+    private AclMatch(Map<Object, Field> fields, Set<Object> others, TrafficSelector selector) {
+        this.fields = fields;
+        this.others = others;
+        this.selector = selector;
+        this.hashCode = Objects.hash(fields, others);
+    }
+
+    /**
+     * Returns the matches equivalent to the given selector. More than one
+     * match is returned if the selector includes range matches.
+     *
+     * @param selector selector of an ACL flow rule
+     * @return equivalent matches
+     */
+    static List<AclMatch> of(TrafficSelector selector) {
+        final Map<Object, Field> fields = Maps.newHashMap();
+        final ImmutableSet.Builder<Object> others = ImmutableSet.builder();
+        final Map<PiMatchFieldId, List<Field>> ranges = Maps.newHashMap();
+        for (Criterion c : selector.criteria()) {
+            switch (c.type()) {
+                case ETH_DST:
+                case ETH_DST_MASKED:
+                case ETH_SRC:
+                case ETH_SRC_MASKED:
+                    final EthCriterion eth = (EthCriterion) c;
+                    final Criterion.Type ethType = eth.type() == Criterion.Type.ETH_DST_MASKED
+                            ? Criterion.Type.ETH_DST
+                            : eth.type() == Criterion.Type.ETH_SRC_MASKED ? Criterion.Type.ETH_SRC : eth.type();
+                    put(fields, new Field(ethType, eth.mac().toLong(),
+                                          eth.mask() == null ? -1 : eth.mask().toLong(), MAC_WIDTH, false));
+                    break;
+                case TCP_SRC:
+                case TCP_SRC_MASKED:
+                case TCP_DST:
+                case TCP_DST_MASKED:
+                    final TcpPortCriterion tcp = (TcpPortCriterion) c;
+                    put(fields, new Field(
+                            tcp.type() == Criterion.Type.TCP_SRC_MASKED ? Criterion.Type.TCP_SRC
+                                    : tcp.type() == Criterion.Type.TCP_DST_MASKED ? Criterion.Type.TCP_DST
+                                    : tcp.type(),
+                            tcp.tcpPort().toInt(), tcp.mask() == null ? -1 : tcp.mask().toInt(),
+                            L4_PORT_WIDTH, false));
+                    break;
+                case UDP_SRC:
+                case UDP_SRC_MASKED:
+                case UDP_DST:
+                case UDP_DST_MASKED:
+                    final UdpPortCriterion udp = (UdpPortCriterion) c;
+                    put(fields, new Field(
+                            udp.type() == Criterion.Type.UDP_SRC_MASKED ? Criterion.Type.UDP_SRC
+                                    : udp.type() == Criterion.Type.UDP_DST_MASKED ? Criterion.Type.UDP_DST
+                                    : udp.type(),
+                            udp.udpPort().toInt(), udp.mask() == null ? -1 : udp.mask().toInt(),
+                            L4_PORT_WIDTH, false));
+                    break;
+                case IPV4_SRC:
+                case IPV4_DST:
+                    final IpPrefix prefix = ((IPCriterion) c).ip();
+                    put(fields, new Field(c.type(), prefix.address().getIp4Address().toInt(),
+                                          prefixMask(prefix.prefixLength(), IPV4_WIDTH), IPV4_WIDTH, true));
+                    break;
+                case PROTOCOL_INDEPENDENT:
+                    for (PiFieldMatch fm : ((PiCriterion) c).fieldMatches()) {
+                        if (!parse(fm, fields, ranges)) {
+                            others.add(fm);
+                        }
+                    }
+                    break;
+                default:
+                    others.add(c);
+            }
+        }
+        if (ranges.isEmpty()) {
+            return ImmutableList.of(new AclMatch(ImmutableMap.copyOf(fields), others.build(), selector));
+        }
+        // One match for each combination of the prefixes of the ranges.
+        List<Map<Object, Field>> expanded = ImmutableList.of(fields);
+        for (List<Field> cover : ranges.values()) {
+            final List<Map<Object, Field>> next = Lists.newArrayList();
+            for (Map<Object, Field> m : expanded) {
+                for (Field f : cover) {
+                    final Map<Object, Field> copy = Maps.newHashMap(m);
+                    copy.put(f.key, f);
+                    next.add(copy);
+                }
+            }
+            expanded = next;
+        }
+        final Set<Object> otherSet = others.build();
+        final ImmutableList.Builder<AclMatch> matches = ImmutableList.builder();
+        expanded.forEach(m -> matches.add(new AclMatch(ImmutableMap.copyOf(m), otherSet, null)));
+        return matches.build();
+    }
+
+    private static boolean parse(PiFieldMatch fm, Map<Object, Field> fields,
+                                 Map<PiMatchFieldId, List<Field>> ranges) {
+        final Integer width = PI_FIELD_WIDTHS.get(fm.fieldId());
+        if (width == null) {
+            return false;
+        }
+        switch (fm.type()) {
+            case TERNARY:
+                final PiTernaryFieldMatch ternary = (PiTernaryFieldMatch) fm;
+                if (!fitsLong(ternary.value()) || !fitsLong(ternary.mask())) {
+                    return false;
+                }
+                put(fields, new Field(fm.fieldId(), toLong(ternary.value()), toLong(ternary.mask()),
+                                      width, false));
+                return true;
+            case LPM:
+                final PiLpmFieldMatch lpm = (PiLpmFieldMatch) fm;
+                if (!fitsLong(lpm.value())) {
+                    return false;
+                }
+                put(fields, new Field(fm.fieldId(), toLong(lpm.value()),
+                                      prefixMask(lpm.prefixLength(), width), width, true));
+                return true;
+            case RANGE:
+                final PiRangeFieldMatch range = (PiRangeFieldMatch) fm;
+                if (!fitsLong(range.lowValue()) || !fitsLong(range.highValue())) {
+                    return false;
+                }
+                ranges.put(fm.fieldId(), prefixCover(fm.fieldId(), toLong(range.lowValue()),
+                                                     toLong(range.highValue()), width));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void put(Map<Object, Field> fields, Field field) {
+        if (field.mask != 0) {
+            fields.put(field.key, field);
+        }
+    }
+
+    /**
+     * Returns the minimal set of prefixes covering the given range.
+     *
+     * @param key   field key
+     * @param low   lower bound, inclusive
+     * @param high  upper bound, inclusive
+     * @param width field width
+     * @return prefixes as value/mask fields
+     */
+    static List<Field> prefixCover(Object key, long low, long high, int width) {
+        final List<Field> cover = Lists.newArrayList();
+        final long max = widthMask(width);
+        long value = Math.max(low, 0);
+        final long end = Math.min(high, max);
+        while (value <= end) {
+            // Largest aligned block starting at value and ending before end.
+            long size = value == 0 ? max + 1 : Long.lowestOneBit(value);
+            while (value + size - 1 > end) {
+                size >>= 1;
+            }
+            cover.add(new Field(key, value, max & ~(size - 1), width, false));
+            value += size;
+        }
+        return cover;
+    }
+
+    /**
+     * Returns true if every packet matched by the given match is also matched
+     * by this one.
+     *
+     * @param other ACL match
+     * @return true if this match covers the other
+     */
+    boolean covers(AclMatch other) {
+        if (!other.others.containsAll(others)) {
+            return false;
+        }
+        for (Field f : fields.values()) {
+            final Field o = other.fields.get(f.key);
+            if (o == null || (f.mask & ~o.mask) != 0 || ((f.value ^ o.value) & f.mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns one of the given matches that differs from this one only by one
+     * bit of a field, such that the two can be merged. Matches of prefixes can
+     * be merged only if the result is still a prefix.
+     *
+     * @param candidates matches to merge with
+     * @return mergeable match, or null if none
+     */
+    AclMatch mergeableIn(Set<AclMatch> candidates) {
+        for (Field f : fields.values()) {
+            long bits = f.prefix ? Long.lowestOneBit(f.mask) : f.mask;
+            while (bits != 0) {
+                final long bit = Long.lowestOneBit(bits);
+                bits &= ~bit;
+                final AclMatch neighbour = with(new Field(f.key, f.value ^ bit, f.mask, f.width, f.prefix));
+                if (candidates.contains(neighbour)) {
+                    return neighbour;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the match covering this one and the given one, which must have
+     * been returned by {@link #mergeableIn(Set)}, i.e., with the bit by which
+     * the two differ wildcarded.
+     *
+     * @param neighbour mergeable match
+     * @return merged match
+     */
+    AclMatch mergeWith(AclMatch neighbour) {
+        for (Field f : fields.values()) {
+            final long diff = f.value ^ neighbour.fields.get(f.key).value;
+            if (diff != 0) {
+                return with(new Field(f.key, f.value, f.mask & ~diff, f.width, f.prefix));
+            }
+        }
+        return this;
+    }
+
+    private AclMatch with(Field field) {
+        final Map<Object, Field> copy = Maps.newHashMap(fields);
+        if (field.mask == 0) {
+            // Wildcard.
+            copy.remove(field.key);
+        } else {
+            copy.put(field.key, field);
+        }
+        return new AclMatch(ImmutableMap.copyOf(copy), others, null);
+    }
+
+    /**
+     * Returns the selector of this match.
+     *
+     * @return selector
+     */
+    TrafficSelector selector() {
+        if (selector != null) {
+            return selector;
+        }
+        final TrafficSelector.Builder builder = DefaultTrafficSelector.builder();
+        PiCriterion.Builder piBuilder = null;
+        for (Object o : others) {
+            if (o instanceof PiFieldMatch) {
+                piBuilder = piBuilder == null ? PiCriterion.builder() : piBuilder;
+                piBuilder.add((PiFieldMatch) o);
+            } else {
+                builder.add((Criterion) o);
+            }
+        }
+        for (Field f : fields.values()) {
+            if (f.key instanceof PiMatchFieldId) {
+                piBuilder = piBuilder == null ? PiCriterion.builder() : piBuilder;
+                final PiMatchFieldId fieldId = (PiMatchFieldId) f.key;
+                if (f.prefix) {
+                    piBuilder.matchLpm(fieldId, f.value, Long.bitCount(f.mask));
+                } else {
+                    piBuilder.matchTernary(fieldId, f.value, f.mask);
+                }
+            } else {
+                builder.add(criterion(f));
+            }
+        }
+        if (piBuilder != null) {
+            builder.matchPi(piBuilder.build());
+        }
+        return builder.build();
+    }
+
+    private static Criterion criterion(Field f) {
+        final boolean exact = f.mask == widthMask(f.width);
+        switch ((Criterion.Type) f.key) {
+            case ETH_DST:
+                return exact ? Criteria.matchEthDst(MacAddress.valueOf(f.value))
+                        : Criteria.matchEthDstMasked(MacAddress.valueOf(f.value), MacAddress.valueOf(f.mask));
+            case ETH_SRC:
+                return exact ? Criteria.matchEthSrc(MacAddress.valueOf(f.value))
+                        : Criteria.matchEthSrcMasked(MacAddress.valueOf(f.value), MacAddress.valueOf(f.mask));
+            case TCP_SRC:
+                return exact ? Criteria.matchTcpSrc(TpPort.tpPort((int) f.value))
+                        : Criteria.matchTcpSrcMasked(TpPort.tpPort((int) f.value), TpPort.tpPort((int) f.mask));
+            case TCP_DST:
+                return exact ? Criteria.matchTcpDst(TpPort.tpPort((int) f.value))
+                        : Criteria.matchTcpDstMasked(TpPort.tpPort((int) f.value), TpPort.tpPort((int) f.mask));
+            case UDP_SRC:
+                return exact ? Criteria.matchUdpSrc(TpPort.tpPort((int) f.value))
+                        : Criteria.matchUdpSrcMasked(TpPort.tpPort((int) f.value), TpPort.tpPort((int) f.mask));
+            case UDP_DST:
+                return exact ? Criteria.matchUdpDst(TpPort.tpPort((int) f.value))
+                        : Criteria.matchUdpDstMasked(TpPort.tpPort((int) f.value), TpPort.tpPort((int) f.mask));
+            case IPV4_SRC:
+                return Criteria.matchIPSrc(IpPrefix.valueOf((int) f.value, Long.bitCount(f.mask)));
+            case IPV4_DST:
+                return Criteria.matchIPDst(IpPrefix.valueOf((int) f.value, Long.bitCount(f.mask)));
+            default:
+                throw new IllegalStateException("Unexpected ACL field " + f.key);
+        }
+    }
+
+    private static long widthMask(int width) {
+        return width == Long.SIZE ? -1 : (1L << width) - 1;
+    }
+
+    private static long prefixMask(int prefixLength, int width) {
+        return widthMask(width) & ~widthMask(width - prefixLength);
+    }
+
+    private static boolean fitsLong(ImmutableByteSequence bytes) {
+        final byte[] array = bytes.asArray();
+        for (int i = 0; i < array.length - Long.BYTES; i++) {
+            if (array[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long toLong(ImmutableByteSequence bytes) {
+        long value = 0;
+        for (byte b : bytes.asArray()) {
+            value = (value << Byte.SIZE) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final AclMatch other = (AclMatch) o;
+        return hashCode == other.hashCode
+                && fields.equals(other.fields)
+                && others.equals(other.others);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return selector().toString();
+    }
+
+    /**
+     * Value/mask pair of a field. Bits outside of the mask are always zero.
+     */
+    static final class Field {
+        private final Object key;
+        private final long value;
+        private final long mask;
+        private final int width;
+        private final boolean prefix;
+
+        Field(Object key, long value, long mask, int width, boolean prefix) {
+            this.key = key;
+            this.mask = mask & widthMask(width);
+            this.value = value & this.mask;
+            this.width = width;
+            this.prefix = prefix;
+        }
+
+        long value() {
+            return value;
+        }
+
+        long mask() {
+            return mask;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Field other = (Field) o;
+            return value == other.value && mask == other.mask && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, value, mask);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.group.DefaultGroupDescription;
+import org.onosproject.net.group.GroupDescription;
+import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Static flow rules and groups installed by the pipeliner when a device
+ * connects. They depend only on the pipeconf, e.g., CPU and recirculation
+ * ports, so they are built once per capabilities instance, i.e., per
+ * pipeconf, and instantiated for each device.
+ */
+final class BringUpTemplate {
+
+    // Capabilities are shared by the devices with the same pipeconf.
+    private static final Map<FabricCapabilities, BringUpTemplate> TEMPLATES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final List<FlowRule> flowRules;
+    private final List<GroupDescription> groups;
+
+    BringUpTemplate(Collection<FlowRule> flowRules, Collection<GroupDescription> groups) {
+        this.flowRules = ImmutableList.copyOf(flowRules);
+        this.groups = ImmutableList.copyOf(groups);
+    }
+
+    /**
+     * Returns the template of the given capabilities, built with the given
+     * supplier if not built yet.
+     *
+     * @param capabilities capabilities of the pipeconf
+     * @param builder      template builder
+     * @return bring-up template
+     */
+    static BringUpTemplate of(FabricCapabilities capabilities, Supplier<BringUpTemplate> builder) {
+        return TEMPLATES.computeIfAbsent(capabilities, c -> builder.get());
+    }
+
+    /**
+     * Returns the flow rules of the template for the given device, as a
+     * single stage of operations.
+     *
+     * @param deviceId device ID
+     * @param appId    application ID
+     * @return flow rule operations builder
+     */
+    FlowRuleOperations.Builder flowRuleOperations(DeviceId deviceId, ApplicationId appId) {
+        final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        flowRules.forEach(r -> ops.add(forDevice(r, deviceId, appId)));
+        return ops;
+    }
+
+    /**
+     * Returns the groups of the template for the given device.
+     *
+     * @param deviceId device ID
+     * @param appId    application ID
+     * @return group descriptions
+     */
+    List<GroupDescription> groups(DeviceId deviceId, ApplicationId appId) {
+        return groups.stream()
+                .map(g -> forDevice(g, deviceId, appId))
+                .collect(Collectors.toList());
+    }
+
+    private static FlowRule forDevice(FlowRule rule, DeviceId deviceId, ApplicationId appId) {
+        if (rule.deviceId().equals(deviceId) && rule.appId() == appId.id()) {
+            return rule;
+        }
+        return DefaultFlowRule.builder()
+                .forDevice(deviceId)
+                .fromApp(appId)
+                .forTable(rule.table())
+                .withPriority(rule.priority())
+                .withSelector(rule.selector())
+                .withTreatment(rule.treatment())
+                .makePermanent()
+                .build();
+    }
+
+    private static GroupDescription forDevice(GroupDescription group, DeviceId deviceId,
+                                              ApplicationId appId) {
+        if (group.deviceId().equals(deviceId) && group.appId().equals(appId)) {
+            return group;
+        }
+        return new DefaultGroupDescription(
+                deviceId, group.type(), group.buckets(), group.appCookie(),
+                group.givenGroupId(), appId);
+    }
+}
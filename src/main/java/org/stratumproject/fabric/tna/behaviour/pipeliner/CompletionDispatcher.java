@@ -0,0 +1,154 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import org.onosproject.net.DeviceId;
+import org.slf4j.Logger;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Dispatches objective completion callbacks on dedicated threads.
+ * <p>
+ * Completions are hashed by (device ID, key) to a lane backed by a lock-free
+ * queue. Each lane is drained in batches by at most one thread at a time, so
+ * completions with the same key are delivered in order, and a single executor
+ * task delivers many completions when objectives are programmed in bulk.
+ */
+public final class CompletionDispatcher {
+
+    private static final Logger log = getLogger(CompletionDispatcher.class);
+
+    static final int DEFAULT_LANES = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static CompletionDispatcher shared;
+
+    private final Lane[] lanes;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param lanes     number of lanes, i.e., of dispatching threads
+     * @param batchSize maximum number of completions delivered per task
+     */
+    CompletionDispatcher(int lanes, int batchSize) {
+        checkArgument(lanes > 0, "lanes must be positive");
+        checkArgument(batchSize > 0, "batchSize must be positive");
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane();
+        }
+        this.batchSize = batchSize;
+        this.executor = Executors.newFixedThreadPool(lanes, groupedThreads(
+                "fabric-tna-pipeliner", "completion-%d", log));
+    }
+
+    /**
+     * Returns the dispatcher shared by all pipeliner instances, creating it if
+     * needed.
+     *
+     * @return shared dispatcher
+     */
+    static synchronized CompletionDispatcher shared() {
+        if (shared == null) {
+            shared = new CompletionDispatcher(DEFAULT_LANES, DEFAULT_BATCH_SIZE);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the queue depth of the shared dispatcher.
+     *
+     * @return number of queued completions, 0 if the dispatcher is not running
+     */
+    public static synchronized int sharedQueueDepth() {
+        return shared == null ? 0 : shared.queueDepth();
+    }
+
+    /**
+     * Shuts down the shared dispatcher, if any. Queued completions are
+     * discarded.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.shutdown();
+            shared = null;
+        }
+    }
+
+    /**
+     * Queues the given completion after all completions previously dispatched
+     * for the same device and key.
+     *
+     * @param deviceId   device ID
+     * @param key        ordering key
+     * @param completion completion callback
+     */
+    void dispatch(DeviceId deviceId, Object key, Runnable completion) {
+        final Lane lane = lanes[Math.floorMod(Objects.hash(deviceId, key), lanes.length)];
+        queueDepth.incrementAndGet();
+        lane.queue.add(completion);
+        schedule(lane);
+    }
+
+    /**
+     * Returns the number of completions queued and not yet delivered.
+     *
+     * @return queue depth
+     */
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Shuts down this dispatcher. Queued completions are discarded.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void schedule(Lane lane) {
+        if (lane.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(lane));
+        }
+    }
+
+    private void drain(Lane lane) {
+        Runnable completion;
+        int delivered = 0;
+        while (delivered < batchSize && (completion = lane.queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            delivered++;
+            try {
+                completion.run();
+            } catch (RuntimeException e) {
+                log.error("Exception while delivering objective completion", e);
+            }
+        }
+        lane.scheduled.set(false);
+        // Completions might have been queued after the last poll.
+        if (!lane.queue.isEmpty()) {
+            schedule(lane);
+        }
+    }
+
+    private static final class Lane {
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,142 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.FlowRule;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reference-counted egress VLAN rules of a device. The same (port, VLAN)
+ * entry is generated for every next objective with an output to the port,
+ * the registry keeps the next objectives using each entry so that the entry
+ * is written only for its first reference, or when its treatment changes, and
+ * removed only with its last reference.
+ * <p>
+ * References are kept in memory, and taken again from the flow objective
+ * store when the pipeliner is initialized. Entries without references are
+ * unknown, and never removed. Not thread-safe, callers must serialize
+ * updates and the application of the resulting flow rule operations.
+ */
+final class EgressVlanRegistry {
+
+    private final Map<FabricNextGroup.EgressVlanKey, Entry> entries = Maps.newHashMap();
+    private final Map<Integer, Set<FabricNextGroup.EgressVlanKey>> byNext = Maps.newHashMap();
+
+    /**
+     * Adds a reference from the given next objective to the given egress
+     * VLAN rule.
+     *
+     * @param nextId next ID
+     * @param key    port and VLAN of the rule
+     * @param rule   egress VLAN rule
+     * @return true if the rule should be written, i.e., first reference or
+     * different treatment
+     */
+    boolean acquire(int nextId, FabricNextGroup.EgressVlanKey key, FlowRule rule) {
+        byNext.computeIfAbsent(nextId, n -> Sets.newHashSet()).add(key);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            entries.put(key, new Entry(rule, nextId));
+            return true;
+        }
+        entry.nextIds.add(nextId);
+        if (entry.rule.exactMatch(rule)) {
+            return false;
+        }
+        entry.rule = rule;
+        return true;
+    }
+
+    /**
+     * Removes the reference from the given next objective to the egress VLAN
+     * rule with the given key.
+     *
+     * @param nextId next ID
+     * @param key    port and VLAN of the rule
+     * @return the rule written for the key if this was the last reference,
+     * i.e., the rule should be removed, null otherwise
+     */
+    FlowRule release(int nextId, FabricNextGroup.EgressVlanKey key) {
+        final Set<FabricNextGroup.EgressVlanKey> keys = byNext.get(nextId);
+        if (keys == null || !keys.remove(key)) {
+            return null;
+        }
+        if (keys.isEmpty()) {
+            byNext.remove(nextId);
+        }
+        final Entry entry = entries.get(key);
+        entry.nextIds.remove(nextId);
+        if (entry.nextIds.isEmpty()) {
+            entries.remove(key);
+            return entry.rule;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the egress VLAN rule with the given key is referenced
+     * by any next objective.
+     *
+     * @param key port and VLAN of the rule
+     * @return true if referenced
+     */
+    boolean contains(FabricNextGroup.EgressVlanKey key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Returns the keys of the egress VLAN rules referenced by the given next
+     * objective.
+     *
+     * @param nextId next ID
+     * @return keys of the egress VLAN rules
+     */
+    Set<FabricNextGroup.EgressVlanKey> keys(int nextId) {
+        return ImmutableSet.copyOf(byNext.getOrDefault(nextId, Set.of()));
+    }
+
+    /**
+     * Returns the number of egress VLAN rules referenced.
+     *
+     * @return number of rules
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets the egress VLAN rules of the given application, e.g., when
+     * purged from the device.
+     *
+     * @param appId application ID
+     */
+    void purge(ApplicationId appId) {
+        entries.entrySet().removeIf(e -> {
+            if (e.getValue().rule.appId() != appId.id()) {
+                return false;
+            }
+            e.getValue().nextIds.forEach(n -> byNext.computeIfPresent(n, (id, keys) -> {
+                keys.remove(e.getKey());
+                return keys.isEmpty() ? null : keys;
+            }));
+            return true;
+        });
+    }
+
+    private static final class Entry {
+        private FlowRule rule;
+        private final Set<Integer> nextIds = Sets.newHashSet();
+
+        private Entry(FlowRule rule, int nextId) {
+            this.rule = rule;
+            this.nextIds.add(nextId);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.behaviour.NextGroup;
+import org.onosproject.net.flowobjective.NextObjective;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * NextGroup implementation stored in the flow objective store.
+ * <p>
+ * Entries are replicated across the cluster, hence they are encoded with a
+ * compact versioned binary layout (big-endian):
+ * <pre>
+ * version (1) | type (1) | group ID (4)
+ * | #ports (2) | port (8) ...
+ * | #next IDs (2) | next ID (4) ...
+ * | #egress VLAN rules (2) | port (8) vlan (2) ...
+ * </pre>
+ */
+public final class FabricNextGroup implements NextGroup {
+
+    static final byte VERSION = 1;
+    static final int NO_GROUP = -1;
+
+    private static final NextObjective.Type[] TYPES = NextObjective.Type.values();
+
+    private final NextObjective.Type type;
+    private final int groupId;
+    private final List<PortNumber> outputPorts;
+    private final List<Integer> nextIds;
+    private final List<EgressVlanKey> egressVlans;
+
+    FabricNextGroup(NextObjective.Type type, int groupId, List<PortNumber> outputPorts,
+                    List<Integer> nextIds, List<EgressVlanKey> egressVlans) {
+        this.type = checkNotNull(type);
+        this.groupId = groupId;
+        this.outputPorts = ImmutableList.copyOf(outputPorts);
+        this.nextIds = ImmutableList.copyOf(nextIds);
+        this.egressVlans = ImmutableList.copyOf(egressVlans);
+    }
+
+    NextObjective.Type type() {
+        return type;
+    }
+
+    int groupId() {
+        return groupId;
+    }
+
+    List<PortNumber> outputPorts() {
+        return outputPorts;
+    }
+
+    List<Integer> nextIds() {
+        return nextIds;
+    }
+
+    List<EgressVlanKey> egressVlans() {
+        return egressVlans;
+    }
+
+    /**
+     * Renders the human-readable mappings of this next group.
+     *
+     * @return list of mappings
+     */
+    List<String> nextMappings() {
+        final ImmutableList.Builder<String> mappings = ImmutableList.builder();
+        outputPorts.forEach(p -> mappings.add(format("%s -> OUTPUT:%s", type, p)));
+        nextIds.forEach(id -> mappings.add(format("%s -> NEXT_ID:%d", type, id)));
+        egressVlans.forEach(e -> mappings.add(format("%s -> EGRESS_VLAN:%s", type, e)));
+        return mappings.build();
+    }
+
+    @Override
+    public byte[] data() {
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                1 + 1 + Integer.BYTES
+                        + Short.BYTES + outputPorts.size() * Long.BYTES
+                        + Short.BYTES + nextIds.size() * Integer.BYTES
+                        + Short.BYTES + egressVlans.size() * (Long.BYTES + Short.BYTES));
+        buffer.put(VERSION);
+        buffer.put((byte) type.ordinal());
+        buffer.putInt(groupId);
+        buffer.putShort((short) outputPorts.size());
+        outputPorts.forEach(p -> buffer.putLong(p.toLong()));
+        buffer.putShort((short) nextIds.size());
+        nextIds.forEach(buffer::putInt);
+        buffer.putShort((short) egressVlans.size());
+        egressVlans.forEach(e -> {
+            buffer.putLong(e.port().toLong());
+            buffer.putShort(e.vlanId().toShort());
+        });
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a next group from the given data.
+     *
+     * @param data data as returned by {@link #data()}
+     * @return next group
+     * @throws IllegalArgumentException if the data cannot be decoded
+     */
+    static FabricNextGroup decode(byte[] data) {
+        checkNotNull(data);
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            final byte version = buffer.get();
+            checkArgument(version == VERSION, "Unsupported FabricNextGroup version %s", version);
+            final byte typeOrdinal = buffer.get();
+            checkArgument(typeOrdinal >= 0 && typeOrdinal < TYPES.length,
+                          "Invalid NextObjective type %s", typeOrdinal);
+            final int groupId = buffer.getInt();
+            final ImmutableList.Builder<PortNumber> ports = ImmutableList.builder();
+            for (int i = buffer.getShort() & 0xFFFF; i > 0; i--) {
+                ports.add(PortNumber.portNumber(buffer.getLong()));
+            }
+            final ImmutableList.Builder<Integer> nextIds = ImmutableList.builder();
+            for (int i = buffer.getShort() & 0xFFFF; i > 0; i--) {
+                nextIds.add(buffer.getInt());
+            }
+            final ImmutableList.Builder<EgressVlanKey> egressVlans = ImmutableList.builder();
+            for (int i = buffer.getShort() & 0xFFFF; i > 0; i--) {
+                final PortNumber port = PortNumber.portNumber(buffer.getLong());
+                egressVlans.add(new EgressVlanKey(port, VlanId.vlanId(buffer.getShort())));
+            }
+            return new FabricNextGroup(TYPES[typeOrdinal], groupId, ports.build(),
+                                       nextIds.build(), egressVlans.build());
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated FabricNextGroup data", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final FabricNextGroup that = (FabricNextGroup) o;
+        return groupId == that.groupId &&
+                type == that.type &&
+                outputPorts.equals(that.outputPorts) &&
+                nextIds.equals(that.nextIds) &&
+                egressVlans.equals(that.egressVlans);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, groupId, outputPorts, nextIds, egressVlans);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("type", type)
+                .add("groupId", groupId)
+                .add("outputPorts", outputPorts)
+                .add("nextIds", nextIds)
+                .add("egressVlans", egressVlans)
+                .toString();
+    }
+
+    /**
+     * Key of an egress VLAN rule, i.e., egress port and VLAN ID.
+     */
+    static final class EgressVlanKey {
+        private final PortNumber port;
+        private final VlanId vlanId;
+
+        EgressVlanKey(PortNumber port, VlanId vlanId) {
+            this.port = checkNotNull(port);
+            this.vlanId = checkNotNull(vlanId);
+        }
+
+        PortNumber port() {
+            return port;
+        }
+
+        VlanId vlanId() {
+            return vlanId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final EgressVlanKey that = (EgressVlanKey) o;
+            return port.equals(that.port) && vlanId.equals(that.vlanId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(port, vlanId);
+        }
+
+        @Override
+        public String toString() {
+            return format("%s/%s", port, vlanId);
+        }
+    }
+}
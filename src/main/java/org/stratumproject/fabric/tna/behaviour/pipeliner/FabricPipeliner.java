@@ -3,12 +3,16 @@
 
 package org.stratumproject.fabric.tna.behaviour.pipeliner;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import org.onlab.packet.Ethernet;
-import org.onlab.util.SharedExecutors;
+import org.onlab.util.SharedScheduledExecutors;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.DeviceId;
@@ -16,16 +20,22 @@ import org.onosproject.net.PortNumber;
 import org.onosproject.net.behaviour.NextGroup;
 import org.onosproject.net.behaviour.Pipeliner;
 import org.onosproject.net.behaviour.PipelinerContext;
+import org.onosproject.net.config.NetworkConfigService;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
 import org.onosproject.net.flow.FlowRule;
 import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.criteria.Criteria;
+import org.onosproject.net.flow.criteria.Criterion;
 import org.onosproject.net.flow.criteria.PiCriterion;
+import org.onosproject.net.flow.criteria.VlanIdCriterion;
 import org.onosproject.net.flowobjective.DefaultNextObjective;
 import org.onosproject.net.flowobjective.FilteringObjective;
 import org.onosproject.net.flowobjective.FlowObjectiveStore;
@@ -44,10 +54,14 @@ import org.onosproject.net.group.GroupBuckets;
 import org.onosproject.net.group.GroupDescription;
 import org.onosproject.net.group.GroupKey;
 import org.onosproject.net.group.GroupService;
+import org.onosproject.net.pi.model.PiMatchFieldId;
+import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
+import org.onosproject.net.pi.runtime.PiExactFieldMatch;
 import org.slf4j.Logger;
 import org.stratumproject.fabric.tna.Constants;
+import org.stratumproject.fabric.tna.PipelinerConfig;
 import org.stratumproject.fabric.tna.behaviour.AbstractFabricHandlerBehavior;
 import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
 import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
@@ -58,11 +72,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static java.lang.String.format;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.stratumproject.fabric.tna.Constants.DEFAULT_VLAN;
 import static org.stratumproject.fabric.tna.Constants.FWD_IPV4_ROUTING;
@@ -88,6 +100,9 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
 
     private static final Logger log = getLogger(FabricPipeliner.class);
     private static final int DEFAULT_FLOW_PRIORITY = 100;
+    // Shorter than the objective timeout of the flow objective manager, so
+    // that parked objectives fail with a meaningful error.
+    static final long PENDING_NEXT_TIMEOUT_MS = 10_000;
 
     protected DeviceId deviceId;
     protected ApplicationId appId;
@@ -95,12 +110,31 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
     protected GroupService groupService;
     protected FlowObjectiveStore flowObjectiveStore;
     protected CoreService coreService;
+    // Null if the pipeline model is unknown, e.g., in tests.
+    protected TableOccupancy occupancy;
 
     private FilteringObjectiveTranslator filteringTranslator;
     private ForwardingObjectiveTranslator forwardingTranslator;
     private NextObjectiveTranslator nextTranslator;
-
-    private final ExecutorService callbackExecutor = SharedExecutors.getPoolThreadExecutor();
+    private PipelinerMetrics metrics;
+    private ObjectiveExecutor objectiveExecutor;
+    private CompletionDispatcher completionDispatcher;
+
+    private final NextBucketCache bucketCache = new NextBucketCache();
+    private final EgressVlanRegistry egressVlans = new EgressVlanRegistry();
+    // Compilers of the logical rules of some tables, added at init if enabled
+    // by the device config. Updates of the compilers and the application of
+    // the resulting changes are serialized.
+    private final List<FlowRuleCompiler> compilers = Lists.newArrayList();
+    private final Object compilersLock = new Object();
+    // Forwarding objectives waiting for their next objective, released
+    // objectives are processed by tasks ordered by selector.
+    private final PendingForwards pendingForwards = new PendingForwards();
+    // Forwarding objectives submitted and not yet processed, by next ID.
+    // Next objectives of an ID with forwards in flight, from a removal on,
+    // wait for them so that a next is never removed under its forwards.
+    private final Multiset<Integer> forwardsInFlight = HashMultiset.create();
+    private final ListMultimap<Integer, NextObjective> deferredNexts = ArrayListMultimap.create();
 
     /**
      * Creates a new instance of this behavior with the given capabilities.
@@ -130,24 +164,168 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
         this.nextTranslator = new NextObjectiveTranslator(deviceId, capabilities);
         this.coreService = context.directory().get(CoreService.class);
         this.appId = coreService.getAppId(Constants.APP_NAME);
+        this.metrics = PipelinerMetrics.forDevice(deviceId);
+        this.metrics.recordInit();
+        this.objectiveExecutor = ObjectiveExecutor.shared();
+        this.completionDispatcher = CompletionDispatcher.shared();
+        if (pipeconf != null) {
+            this.occupancy = TableOccupancy.forDevice(deviceId);
+            this.occupancy.setMaxSizes(pipeconf.pipelineModel().tables());
+        }
+
+        final NetworkConfigService cfgService = context.directory().get(NetworkConfigService.class);
+        final PipelinerConfig config = cfgService.getConfig(deviceId, PipelinerConfig.class);
+        if (config != null && config.aclCompilation()) {
+            log.warn("ACL compilation enabled for {}, ACL entries installed before this " +
+                             "initialization will not be removed with their rules", deviceId);
+            addCompiler(new AclCompiler());
+        }
+        if (config != null && config.routeCompression()) {
+            log.warn("IPv4 route compression enabled for {}, routing entries installed before " +
+                             "this initialization will not be removed with their routes", deviceId);
+            addCompiler(new RouteCompressor());
+        }
+        objectiveExecutor.setConcurrency(deviceId, config == null ? Map.of() : config.concurrency());
+        seedEgressVlans();
 
         initializePipeline();
     }
 
+    /**
+     * Takes the references of the next objectives of this device to the
+     * egress VLAN rules installed on the device, as recorded in the flow
+     * objective store, so that the rules shared with other next objectives
+     * are not removed after the pipeliner is initialized again. Next
+     * objectives of this device are those with rules matching their ID.
+     */
+    void seedEgressVlans() {
+        final Map<FabricNextGroup.EgressVlanKey, FlowRule> installed = Maps.newHashMap();
+        final Set<Integer> nextIds = Sets.newHashSet();
+        for (FlowEntry entry : flowRuleService.getFlowEntries(deviceId)) {
+            final FabricNextGroup.EgressVlanKey key = egressVlanKey(entry);
+            if (key != null) {
+                installed.put(key, entry);
+            } else {
+                final Long nextId = exactMatch(entry, P4InfoConstants.HDR_NEXT_ID);
+                if (nextId != null) {
+                    nextIds.add(nextId.intValue());
+                }
+            }
+        }
+        synchronized (egressVlans) {
+            flowObjectiveStore.getAllGroups().forEach((nextId, nextGroup) -> {
+                if (!nextIds.contains(nextId)) {
+                    return;
+                }
+                final FabricNextGroup stored;
+                try {
+                    stored = FabricNextGroup.decode(nextGroup.data());
+                } catch (IllegalArgumentException e) {
+                    log.warn("Unable to decode next group {}: {}", nextId, e.getMessage());
+                    return;
+                }
+                for (FabricNextGroup.EgressVlanKey key : stored.egressVlans()) {
+                    final FlowRule rule = installed.get(key);
+                    if (rule != null) {
+                        egressVlans.acquire(nextId, key, rule);
+                    }
+                }
+            });
+            log.debug("Found {} egress VLAN rules used by next objectives of {}", egressVlans.size(), deviceId);
+        }
+    }
+
+    /**
+     * Adds a compiler of the logical rules of some tables.
+     *
+     * @param compiler flow rule compiler
+     */
+    void addCompiler(FlowRuleCompiler compiler) {
+        synchronized (compilersLock) {
+            compilers.add(compiler);
+        }
+    }
+
     @Override
     public void filter(FilteringObjective obj) {
+        execute(obj, () -> doFilter(obj));
+    }
+
+    private void doFilter(FilteringObjective obj) {
+        final long start = System.nanoTime();
         final ObjectiveTranslation result = filteringTranslator.translate(obj);
+        metrics().record(obj, PipelinerMetrics.Stage.TRANSLATE, start);
         handleResult(obj, result);
     }
 
     @Override
     public void forward(ForwardingObjective obj) {
-        final ObjectiveTranslation result = forwardingTranslator.translate(obj);
+        final Integer nextId = obj.nextId();
+        if (nextId == null) {
+            execute(obj, () -> doForward(obj));
+            return;
+        }
+        synchronized (forwardsInFlight) {
+            forwardsInFlight.add(nextId);
+        }
+        execute(obj, () -> {
+            try {
+                doForward(obj);
+            } finally {
+                forwardDone(nextId);
+            }
+        });
+    }
+
+    private void forwardDone(int nextId) {
+        final List<NextObjective> ready;
+        synchronized (forwardsInFlight) {
+            if (forwardsInFlight.remove(nextId, 1) > 1) {
+                return;
+            }
+            ready = deferredNexts.removeAll(nextId);
+        }
+        ready.forEach(next -> execute(next, () -> doNext(next)));
+    }
+
+    private void doForward(ForwardingObjective obj) {
+        if (flowObjectiveStore != null) {
+            synchronized (pendingForwards) {
+                if (pendingForwards.parkIfNeeded(obj, this::isNextInstalled)) {
+                    log.debug("Parking forwarding objective {} of {} until next {} is installed",
+                              obj.id(), deviceId, obj.nextId());
+                    metrics().recordParked();
+                    SharedScheduledExecutors.newTimeout(() -> execute(obj, () -> expireForward(obj)),
+                                                       PENDING_NEXT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+        }
+        translateForward(obj);
+    }
+
+    private void translateForward(ForwardingObjective obj) {
+        final long start = System.nanoTime();
+        final ObjectiveTranslation result = forwardingTranslator().translate(obj);
+        metrics().record(obj, PipelinerMetrics.Stage.TRANSLATE, start);
         handleResult(obj, result);
     }
 
     @Override
     public void next(NextObjective obj) {
+        synchronized (forwardsInFlight) {
+            if (deferredNexts.containsKey(obj.id()) ||
+                    obj.op() == Objective.Operation.REMOVE && forwardsInFlight.contains(obj.id())) {
+                log.debug("Deferring next objective {} of {} until its forwarding objectives are processed",
+                          obj.id(), deviceId);
+                deferredNexts.put(obj.id(), obj);
+                return;
+            }
+        }
+        execute(obj, () -> doNext(obj));
+    }
+
+    private void doNext(NextObjective obj) {
         if (obj.op() == Objective.Operation.VERIFY) {
 
             if (obj.type() != NextObjective.Type.HASHED) {
@@ -160,7 +338,9 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
             if (log.isTraceEnabled()) {
                 log.trace("Verify NextObjective {} in dev {}", obj, deviceId);
             }
+            final long start = System.nanoTime();
             ObjectiveError error = handleVerify(obj);
+            metrics().record(obj, PipelinerMetrics.Stage.TRANSLATE, start);
             if (error == null) {
                 success(obj);
             } else {
@@ -169,24 +349,37 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
             return;
         }
 
-        if (obj.op() == Objective.Operation.MODIFY && obj.type() != NextObjective.Type.SIMPLE) {
-
-            log.warn("MODIFY operation not yet supported for {} NextObjective, will return failure :(",
-                     obj.type());
-            if (log.isTraceEnabled()) {
-                log.trace("Objective {}", obj);
-            }
-            fail(obj, ObjectiveError.UNSUPPORTED);
-            return;
+        if (obj.op() == Objective.Operation.ADD || obj.op() == Objective.Operation.MODIFY ||
+                obj.op() == Objective.Operation.REMOVE) {
+            bucketCache.invalidate(obj.id());
         }
 
-        final ObjectiveTranslation result = nextTranslator.translate(obj);
+        final long start = System.nanoTime();
+        final ObjectiveTranslation result = nextTranslator().translate(obj);
+        metrics().record(obj, PipelinerMetrics.Stage.TRANSLATE, start);
         handleResult(obj, result);
     }
 
     @Override
     public void purgeAll(ApplicationId appId) {
+        synchronized (egressVlans) {
+            egressVlans.purge(appId);
+        }
+        synchronized (compilersLock) {
+            // Rules of other apps shadowed by, or merged with, the purged ones
+            // are installed again.
+            final List<FlowRule> toAdd = Lists.newArrayList();
+            compilers.forEach(c -> toAdd.addAll(c.purge(appId).toAdd()));
+            if (!toAdd.isEmpty()) {
+                final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+                toAdd.forEach(ops::add);
+                apply(ops.build());
+            }
+        }
         flowRuleService.purgeFlowRules(deviceId, appId);
+        if (occupancy != null) {
+            occupancy.purge(appId);
+        }
         groupService.purgeGroupEntries(deviceId, appId);
         //FIXME: purge flowObjectiveStore as well when addressing SDFAB-250.
         // Currently we don't have enough information in the store to purge by app and device ID
@@ -194,60 +387,260 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
 
     @Override
     public List<String> getNextMappings(NextGroup nextGroup) {
-        final FabricNextGroup fabricNextGroup = KRYO.deserialize(nextGroup.data());
-        return fabricNextGroup.nextMappings().stream()
-                .map(m -> format("%s -> %s", fabricNextGroup.type(), m))
-                .collect(Collectors.toList());
+        try {
+            return FabricNextGroup.decode(nextGroup.data()).nextMappings();
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to decode next group: {}", e.getMessage());
+            return Collections.emptyList();
+        }
     }
 
     protected void initializePipeline() {
+        // The whole bring-up is submitted at once: the clone group first, as
+        // it is not referenced by the rules, then all rules in one batch.
+        final BringUpTemplate template = BringUpTemplate.of(capabilities, this::bringUpTemplate);
+        template.groups(deviceId, appId).forEach(groupService::addGroup);
+        apply(template.flowRuleOperations(deviceId, appId).build(
+                new FlowRuleOperationsContext() {
+                    @Override
+                    public void onError(FlowRuleOperations ops) {
+                        log.warn("Unable to install the pipeline bring-up rules of {}", deviceId);
+                    }
+                }));
+    }
+
+    private BringUpTemplate bringUpTemplate() {
+        final List<FlowRule> flowRules = Lists.newArrayList();
         // Set up CPU port for packet-in/out. For packet-out, we support only
         // IPv4 routing when do_forwarding=1.
         final long cpuPort = capabilities.cpuPort().get();
-        flowRuleService.applyFlowRules(
-                egressSwitchInfoRule(cpuPort),
-                ingressVlanRule(cpuPort, false, DEFAULT_VLAN, PORT_TYPE_INTERNAL),
-                fwdClassifierRule(cpuPort, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING,
-                                  DEFAULT_FLOW_PRIORITY));
-        // Set up mirror session for packet-in.
-        groupService.addGroup(packetInCloneGroup());
+        flowRules.add(egressSwitchInfoRule(cpuPort));
+        flowRules.add(ingressVlanRule(cpuPort, false, DEFAULT_VLAN, PORT_TYPE_INTERNAL));
+        flowRules.add(fwdClassifierRule(cpuPort, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING,
+                                        DEFAULT_FLOW_PRIORITY));
 
         // Set up recirculation ports as untagged (used for INT reports and
         // UE-to-UE in UPF pipe).
         List<Long> recircPorts = capabilities.isArchTna() ? RECIRC_PORTS : V1MODEL_RECIRC_PORT;
         recircPorts.forEach(port -> {
-            flowRuleService.applyFlowRules(
-                    ingressVlanRule(port, false, DEFAULT_VLAN, PORT_TYPE_INTERNAL),
-                    egressVlanRule(port, DEFAULT_VLAN, false),
-                    fwdClassifierRule(port, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING,
-                                      DEFAULT_FLOW_PRIORITY),
-                    // Use higher priority for MPLS rule since the one for IPv4
-                    // matches all IPv4 traffic independently of the eth_type.
-                    fwdClassifierRule(port, Ethernet.MPLS_UNICAST, Ethernet.TYPE_IPV4, FWD_MPLS,
-                                      DEFAULT_FLOW_PRIORITY + 10));
+            flowRules.add(ingressVlanRule(port, false, DEFAULT_VLAN, PORT_TYPE_INTERNAL));
+            flowRules.add(egressVlanRule(port, DEFAULT_VLAN, false));
+            flowRules.add(fwdClassifierRule(port, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING,
+                                            DEFAULT_FLOW_PRIORITY));
+            // Use higher priority for MPLS rule since the one for IPv4
+            // matches all IPv4 traffic independently of the eth_type.
+            flowRules.add(fwdClassifierRule(port, Ethernet.MPLS_UNICAST, Ethernet.TYPE_IPV4, FWD_MPLS,
+                                            DEFAULT_FLOW_PRIORITY + 10));
         });
         // TODO: slicing.p4 DSCP tables for PORT_TYPE_INTERNAL
         //  PORT_TYPE_INTERNAL includes packet-outs that's part of the SYSTEM TC
         //  and should be directed to the System Queue (SDFAB-520), and recirculation
         //  traffic (SDFAB-398).
+
+        // Set up mirror session for packet-in.
+        return new BringUpTemplate(flowRules, ImmutableList.of(packetInCloneGroup()));
     }
 
-    private void handleResult(Objective obj, ObjectiveTranslation result) {
+    private static Object orderingKey(Objective obj) {
+        // Objectives for the same port, match or next ID are processed and
+        // completed in order.
+        if (obj instanceof FilteringObjective) {
+            return ((FilteringObjective) obj).key();
+        } else if (obj instanceof ForwardingObjective) {
+            return ((ForwardingObjective) obj).selector();
+        }
+        return obj.id();
+    }
+
+    private void execute(Objective obj, Runnable task) {
+        final Runnable safeTask = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Exception while processing {} in {}", obj, deviceId, e);
+                fail(obj, ObjectiveError.UNKNOWN);
+            }
+        };
+        if (objectiveExecutor == null) {
+            // Tests invoke the pipeliner without init().
+            safeTask.run();
+        } else {
+            objectiveExecutor.execute(deviceId, ObjectiveExecutor.Priority.of(obj), orderingKey(obj), safeTask);
+        }
+    }
+
+    void handleResult(Objective obj, ObjectiveTranslation result) {
         if (result.error().isPresent()) {
 
             fail(obj, result.error().get());
             return;
         }
 
-        processGroups(obj, result.groups());
-        processFlows(obj, result.flowRules());
+        // Entries are reserved until the flow rules are applied, so that
+        // objectives processed concurrently cannot overflow a table together.
+        TableOccupancy.Reservation reservation = null;
+        if (occupancy != null && obj.op() != Objective.Operation.REMOVE
+                && obj.op() != Objective.Operation.REMOVE_FROM_EXISTING) {
+            reservation = occupancy.reserve(result.flowRules());
+            final PiTableId fullTable = reservation.overflowingTable();
+            if (fullTable != null) {
+                log.warn("Table {} of {} is full, cannot process objective {}", fullTable, deviceId, obj.id());
+                fail(obj, ObjectiveError.UNSUPPORTED);
+                return;
+            }
+        }
+
+        try {
+            long start = System.nanoTime();
+            processGroups(obj, result.groups());
+            metrics().record(obj, PipelinerMetrics.Stage.GROUPS, start);
+            start = System.nanoTime();
+            processFlows(obj, result.flowRules());
+            metrics().record(obj, PipelinerMetrics.Stage.FLOWS, start);
+        } finally {
+            if (reservation != null) {
+                occupancy.release(reservation);
+            }
+        }
         if (obj instanceof NextObjective) {
-            handleNextGroup((NextObjective) obj);
+            handleNextGroup((NextObjective) obj, result);
         }
         success(obj);
+        if (obj instanceof NextObjective && obj.op() != Objective.Operation.REMOVE) {
+            releaseForwards(obj.id());
+        }
+    }
+
+    private boolean isNextInstalled(int nextId) {
+        return flowObjectiveStore.getNextGroup(nextId) != null;
+    }
+
+    private void releaseForwards(int nextId) {
+        final List<ForwardingObjective> heads;
+        synchronized (pendingForwards) {
+            heads = pendingForwards.release(nextId);
+        }
+        if (heads.isEmpty()) {
+            return;
+        }
+        // Drained in one batch. Objectives submitted meanwhile with the same
+        // selectors stay parked until the drained ones are processed.
+        final List<TrafficSelector> selectors = heads.stream()
+                .map(ForwardingObjective::selector)
+                .collect(Collectors.toList());
+        execute(heads.get(0), () -> drainForwards(selectors));
+    }
+
+    private void drainForwards(List<TrafficSelector> selectors) {
+        while (true) {
+            final List<ForwardingObjective> released;
+            synchronized (pendingForwards) {
+                released = pendingForwards.drain(selectors, this::isNextInstalled);
+            }
+            if (released.isEmpty()) {
+                return;
+            }
+            processReleased(released);
+        }
+    }
+
+    private void expireForward(ForwardingObjective obj) {
+        final List<ForwardingObjective> released;
+        synchronized (pendingForwards) {
+            released = pendingForwards.remove(obj, this::isNextInstalled);
+        }
+        if (released == null) {
+            // Already released.
+            return;
+        }
+        log.warn("Next {} of forwarding objective {} not installed in {} after {}ms",
+                 obj.nextId(), obj.id(), deviceId, PENDING_NEXT_TIMEOUT_MS);
+        metrics().recordExpired();
+        fail(obj, ObjectiveError.GROUPMISSING);
+        processReleased(released);
     }
 
-    private void handleNextGroup(NextObjective obj) {
+    /**
+     * Processes the given released objectives, in order, writing the flow
+     * rules of the ones not needing a compiler in a single batch.
+     */
+    private void processReleased(List<ForwardingObjective> released) {
+        final Batch batch = new Batch();
+        for (ForwardingObjective obj : released) {
+            metrics().recordReleased();
+            try {
+                final long start = System.nanoTime();
+                final ObjectiveTranslation result = forwardingTranslator().translate(obj);
+                metrics().record(obj, PipelinerMetrics.Stage.TRANSLATE, start);
+                if (result.error().isPresent() || !result.groups().isEmpty()
+                        || result.flowRules().stream().anyMatch(r -> compiler(r) != null)) {
+                    // Processed alone, after the previous ones.
+                    batch.flush();
+                    handleResult(obj, result);
+                } else {
+                    batch.add(obj, result.flowRules());
+                }
+            } catch (RuntimeException e) {
+                log.error("Exception while processing {} in {}", obj, deviceId, e);
+                fail(obj, ObjectiveError.UNKNOWN);
+            }
+        }
+        batch.flush();
+    }
+
+    /**
+     * Flow rules of forwarding objectives applied as one set of operations.
+     * A new stage is started when a rule is updated again, to preserve the
+     * order of the updates.
+     */
+    private final class Batch {
+        private FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        private final Set<FlowId> stage = Sets.newHashSet();
+        private final List<ForwardingObjective> objectives = Lists.newArrayList();
+        private final List<TableOccupancy.Reservation> reservations = Lists.newArrayList();
+
+        private void add(ForwardingObjective obj, Collection<FlowRule> flowRules) {
+            if (occupancy != null && obj.op() != Objective.Operation.REMOVE) {
+                final TableOccupancy.Reservation reservation = occupancy.reserve(flowRules);
+                if (reservation.overflowingTable() != null) {
+                    log.warn("Table {} of {} is full, cannot process objective {}",
+                             reservation.overflowingTable(), deviceId, obj.id());
+                    fail(obj, ObjectiveError.UNSUPPORTED);
+                    return;
+                }
+                reservations.add(reservation);
+            }
+            if (flowRules.stream().anyMatch(r -> stage.contains(r.id()))) {
+                ops.newStage();
+                stage.clear();
+            }
+            addFlowOps(obj, flowRules, ops);
+            flowRules.forEach(r -> stage.add(r.id()));
+            objectives.add(obj);
+        }
+
+        private void flush() {
+            if (objectives.isEmpty()) {
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                apply(ops.build());
+            } finally {
+                reservations.forEach(occupancy::release);
+                reservations.clear();
+            }
+            objectives.forEach(obj -> {
+                metrics().record(obj, PipelinerMetrics.Stage.FLOWS, start);
+                success(obj);
+            });
+            ops = FlowRuleOperations.builder();
+            stage.clear();
+            objectives.clear();
+        }
+    }
+
+    private void handleNextGroup(NextObjective obj, ObjectiveTranslation result) {
         // FIXME SDFAB-250 ADD_TO and REMOVE_FROM should update the content
         switch (obj.op()) {
             case REMOVE:
@@ -258,7 +651,7 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
             case ADD_TO_EXISTING:
             case REMOVE_FROM_EXISTING:
             case MODIFY:
-                putNextGroup(obj);
+                putNextGroup(obj, result);
                 break;
             case VERIFY:
                 break;
@@ -273,27 +666,167 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
             return;
         }
 
-        if (log.isTraceEnabled() || true) {
+        if (log.isTraceEnabled() && metrics().sampleTrace()) {
             log.trace("Objective {} -> Flows {}", objective, flowRules);
         }
 
+        if (objective instanceof ForwardingObjective
+                && flowRules.stream().anyMatch(r -> compiler(r) != null)) {
+            processCompiledFlows(objective, flowRules);
+            return;
+        }
+
+        if (objective instanceof NextObjective) {
+            // Next objectives are processed concurrently, the updates of the
+            // shared egress VLAN rules and the application of the resulting
+            // operations must be serialized.
+            synchronized (egressVlans) {
+                processNextFlows((NextObjective) objective, flowRules);
+            }
+            return;
+        }
+
         final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        if (addFlowOps(objective, flowRules, ops)) {
+            apply(ops.build());
+        }
+    }
+
+    /**
+     * Adds to the given operations the writes of the given flow rules for
+     * the operation of the given objective.
+     *
+     * @return false if the operation is not supported
+     */
+    private boolean addFlowOps(Objective objective, Collection<FlowRule> flowRules,
+                               FlowRuleOperations.Builder ops) {
         switch (objective.op()) {
+            case MODIFY:
             case ADD:
             case ADD_TO_EXISTING:
-            case MODIFY:
                 flowRules.forEach(ops::add);
-                break;
+                return true;
             case REMOVE:
             case REMOVE_FROM_EXISTING:
                 flowRules.forEach(ops::remove);
-                break;
+                return true;
             default:
                 log.warn("Unsupported Objective operation {}", objective.op());
+                return false;
+        }
+    }
+
+    private void processNextFlows(NextObjective obj, Collection<FlowRule> flowRules) {
+        final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        boolean changed = false;
+        switch (obj.op()) {
+            case MODIFY:
+                changed = modifyNextFlows(obj, flowRules, ops);
+                break;
+            case ADD:
+            case ADD_TO_EXISTING:
+                for (FlowRule flowRule : flowRules) {
+                    final FabricNextGroup.EgressVlanKey key = egressVlanKey(flowRule);
+                    // Egress VLAN rules already written for other next objectives are skipped.
+                    if (key == null || egressVlans.acquire(obj.id(), key, flowRule)) {
+                        ops.add(flowRule);
+                        changed = true;
+                    }
+                }
+                break;
+            case REMOVE:
+            case REMOVE_FROM_EXISTING:
+                for (FlowRule flowRule : flowRules) {
+                    final FabricNextGroup.EgressVlanKey key = egressVlanKey(flowRule);
+                    // Rules not known by the registry might be used by
+                    // other next objectives, hence they are never removed.
+                    final FlowRule toRemove = key == null ? flowRule : egressVlans.release(obj.id(), key);
+                    if (toRemove != null) {
+                        ops.remove(toRemove);
+                        changed = true;
+                    }
+                }
+                if (obj.op() == Objective.Operation.REMOVE) {
+                    // References not in the translation, e.g., when the
+                    // metadata of the next changed.
+                    for (FabricNextGroup.EgressVlanKey key : egressVlans.keys(obj.id())) {
+                        final FlowRule toRemove = egressVlans.release(obj.id(), key);
+                        if (toRemove != null) {
+                            ops.remove(toRemove);
+                            changed = true;
+                        }
+                    }
+                }
+                break;
+            default:
+                log.warn("Unsupported Objective operation {}", obj.op());
+                return;
+        }
+        if (changed) {
+            apply(ops.build());
+        }
+    }
+
+    private void processCompiledFlows(Objective objective, Collection<FlowRule> flowRules) {
+        final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        // Objectives with different selectors are processed concurrently, the
+        // compiler updates and the application of the resulting changes must
+        // be serialized.
+        synchronized (compilersLock) {
+            final Map<FlowRuleCompiler, List<FlowRule>> compiled = Maps.newLinkedHashMap();
+            final List<FlowRule> others = Lists.newArrayList();
+            flowRules.forEach(r -> {
+                final FlowRuleCompiler compiler = compiler(r);
+                if (compiler == null) {
+                    others.add(r);
+                } else {
+                    compiled.computeIfAbsent(compiler, c -> Lists.newArrayList()).add(r);
+                }
+            });
+            final List<FlowRuleCompiler.Delta> deltas = Lists.newArrayList();
+            switch (objective.op()) {
+                case ADD:
+                    compiled.forEach((c, rules) -> deltas.add(c.add(objective.appId(), rules)));
+                    others.forEach(ops::add);
+                    break;
+                case REMOVE:
+                    compiled.forEach((c, rules) -> deltas.add(c.remove(rules)));
+                    others.forEach(ops::remove);
+                    break;
+                default:
+                    log.warn("Unsupported Objective operation {}", objective.op());
+                    return;
+            }
+            if (others.isEmpty() && deltas.stream().allMatch(FlowRuleCompiler.Delta::isEmpty)) {
+                // E.g., shadowed rule.
                 return;
+            }
+            // New entries first, packets must not hit lower-priority or
+            // less-specific entries while merged or shadowing entries are
+            // replaced.
+            deltas.forEach(d -> d.toAdd().forEach(ops::add));
+            if (deltas.stream().anyMatch(d -> !d.toRemove().isEmpty())) {
+                ops.newStage();
+                deltas.forEach(d -> d.toRemove().forEach(ops::remove));
+            }
+            apply(ops.build());
         }
+    }
 
-        flowRuleService.apply(ops.build());
+    private FlowRuleCompiler compiler(FlowRule flowRule) {
+        for (FlowRuleCompiler compiler : compilers) {
+            if (compiler.handles(flowRule)) {
+                return compiler;
+            }
+        }
+        return null;
+    }
+
+    private void apply(FlowRuleOperations ops) {
+        flowRuleService.apply(ops);
+        if (occupancy != null) {
+            occupancy.update(ops);
+        }
     }
 
     private void processGroups(Objective objective, Collection<GroupDescription> groups) {
@@ -302,7 +835,7 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
             return;
         }
 
-        if (log.isTraceEnabled() || true) {
+        if (log.isTraceEnabled() && metrics().sampleTrace()) {
             log.trace("Objective {} -> Groups {}", objective, groups);
         }
 
@@ -325,11 +858,9 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
                 break;
             case MODIFY:
 
-                // Modify is only supported for simple next objective
-                // Replace group bucket directly
-                groups.forEach(group -> groupService.setBucketsForGroup(
-                        deviceId, group.appCookie(), group.buckets(),
-                        group.appCookie(), group.appId()));
+                // Replace group buckets directly, preserving the position of
+                // unchanged members of SELECT groups.
+                groups.forEach(this::modifyGroup);
                 break;
             case REMOVE_FROM_EXISTING:
 
@@ -343,18 +874,152 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
         }
     }
 
-    private void fail(Objective objective, ObjectiveError error) {
-        CompletableFuture.runAsync(
-                () -> objective.context().ifPresent(
-                        ctx -> ctx.onError(objective, error)), callbackExecutor);
+    private void modifyGroup(GroupDescription group) {
+        final Group current = groupService.getGroup(deviceId, group.appCookie());
+        if (current == null) {
+            groupService.addGroup(group);
+            return;
+        }
+        // Apply only the delta between the current and the new buckets.
+        final List<GroupBucket> currentBuckets = current.buckets().buckets();
+        final List<GroupBucket> newBuckets = group.buckets().buckets();
+        final List<GroupBucket> toAdd = newBuckets.stream()
+                .filter(b -> !currentBuckets.contains(b))
+                .collect(Collectors.toList());
+        final List<GroupBucket> toRemove = currentBuckets.stream()
+                .filter(b -> !newBuckets.contains(b))
+                .collect(Collectors.toList());
+        // Bucket equality does not consider the weight.
+        final boolean weightChanged = newBuckets.stream()
+                .anyMatch(b -> currentBuckets.stream()
+                        .anyMatch(c -> c.equals(b) && !c.hasSameParameters(b)));
+        if (!weightChanged && toAdd.isEmpty() && toRemove.isEmpty()) {
+            log.debug("Buckets of group {} are unchanged", group.givenGroupId());
+        } else if (!weightChanged && toRemove.isEmpty()) {
+            groupService.addBucketsToGroup(deviceId, group.appCookie(), new GroupBuckets(toAdd),
+                                           group.appCookie(), group.appId());
+        } else if (!weightChanged && toAdd.isEmpty()) {
+            groupService.removeBucketsFromGroup(deviceId, group.appCookie(), new GroupBuckets(toRemove),
+                                                group.appCookie(), group.appId());
+        } else {
+            // Members of SELECT groups are replaced in place, to keep the
+            // assignment of flows to the unchanged members.
+            final List<GroupBucket> buckets = group.type() == GroupDescription.Type.SELECT
+                    ? HashedGroupBuckets.stableReplace(currentBuckets, newBuckets)
+                    : newBuckets;
+            groupService.setBucketsForGroup(deviceId, group.appCookie(), new GroupBuckets(buckets),
+                                            group.appCookie(), group.appId());
+        }
+    }
+
+    /**
+     * Adds to the given operations the flow rules that differ from the
+     * installed ones, and the removal of the egress VLAN rules of the stored
+     * next group not used anymore by this or any other next.
+     *
+     * @return true if there is any operation to apply
+     */
+    private boolean modifyNextFlows(NextObjective obj, Collection<FlowRule> flowRules,
+                                    FlowRuleOperations.Builder ops) {
+        boolean changed = false;
+        final Set<FabricNextGroup.EgressVlanKey> keys = Sets.newHashSet();
+        for (FlowRule flowRule : flowRules) {
+            final FabricNextGroup.EgressVlanKey key = egressVlanKey(flowRule);
+            if (key != null) {
+                keys.add(key);
+                if (!egressVlans.acquire(obj.id(), key, flowRule)) {
+                    // Same rule already written for this or another next.
+                    continue;
+                }
+            }
+            final FlowEntry installed = flowRuleService.getFlowEntry(flowRule);
+            if (installed == null || !installed.exactMatch(flowRule)) {
+                ops.add(flowRule);
+                changed = true;
+            }
+        }
+        final Set<FabricNextGroup.EgressVlanKey> previous = Sets.newHashSet(egressVlans.keys(obj.id()));
+        final FabricNextGroup stored = storedNextGroup(obj.id());
+        if (stored != null) {
+            previous.addAll(stored.egressVlans());
+        }
+        for (FabricNextGroup.EgressVlanKey key : previous) {
+            if (keys.contains(key)) {
+                continue;
+            }
+            final FlowRule toRemove = egressVlans.release(obj.id(), key);
+            if (toRemove != null) {
+                ops.remove(toRemove);
+                changed = true;
+            }
+        }
+        return changed;
+    }
 
+    private FabricNextGroup storedNextGroup(int nextId) {
+        final NextGroup nextGroup = flowObjectiveStore.getNextGroup(nextId);
+        if (nextGroup == null) {
+            return null;
+        }
+        try {
+            return FabricNextGroup.decode(nextGroup.data());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to decode next group {}: {}", nextId, e.getMessage());
+            return null;
+        }
     }
 
+    private void fail(Objective objective, ObjectiveError error) {
+        final PipelinerMetrics m = metrics();
+        m.recordError(objective, error);
+        final long start = System.nanoTime();
+        complete(objective, () -> {
+            objective.context().ifPresent(ctx -> ctx.onError(objective, error));
+            m.record(objective, PipelinerMetrics.Stage.CALLBACK, start);
+        });
+    }
 
     private void success(Objective objective) {
-        CompletableFuture.runAsync(
-                () -> objective.context().ifPresent(
-                        ctx -> ctx.onSuccess(objective)), callbackExecutor);
+        final PipelinerMetrics m = metrics();
+        m.recordSuccess(objective);
+        final long start = System.nanoTime();
+        complete(objective, () -> {
+            objective.context().ifPresent(ctx -> ctx.onSuccess(objective));
+            m.record(objective, PipelinerMetrics.Stage.CALLBACK, start);
+        });
+    }
+
+    private void complete(Objective objective, Runnable completion) {
+        if (completionDispatcher == null) {
+            // Tests invoke the pipeliner without init().
+            completion.run();
+        } else {
+            completionDispatcher.dispatch(deviceId, orderingKey(objective), completion);
+        }
+    }
+
+    private ForwardingObjectiveTranslator forwardingTranslator() {
+        // Tests set the device ID without going through init().
+        if (forwardingTranslator == null) {
+            forwardingTranslator = new ForwardingObjectiveTranslator(deviceId, capabilities);
+        }
+        return forwardingTranslator;
+    }
+
+    private NextObjectiveTranslator nextTranslator() {
+        // Tests set the device ID without going through init().
+        if (nextTranslator == null) {
+            nextTranslator = new NextObjectiveTranslator(deviceId, capabilities);
+        }
+        return nextTranslator;
+    }
+
+    private PipelinerMetrics metrics() {
+        // Tests set the device ID without going through init().
+        if (metrics == null) {
+            metrics = PipelinerMetrics.forDevice(deviceId);
+        }
+        return metrics;
     }
 
     private void removeNextGroup(NextObjective obj) {
@@ -364,33 +1029,70 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
         }
     }
 
-    private void putNextGroup(NextObjective obj) {
-        final List<String> nextMappings = obj.nextTreatments().stream()
-                .map(this::nextTreatmentToMappingString)
+    private void putNextGroup(NextObjective obj, ObjectiveTranslation result) {
+        final List<PortNumber> outputPorts = Lists.newArrayList();
+        final List<Integer> nextIds = Lists.newArrayList();
+        for (NextTreatment n : obj.nextTreatments()) {
+            switch (n.type()) {
+                case TREATMENT:
+                    final PortNumber p = outputPort(n);
+                    if (p != null) {
+                        outputPorts.add(p);
+                    }
+                    break;
+                case ID:
+                    nextIds.add(((IdNextTreatment) n).nextId());
+                    break;
+                default:
+                    log.warn("Unknown NextTreatment type '{}'", n.type());
+            }
+        }
+        final int groupId = result.groups().stream()
+                .map(GroupDescription::givenGroupId)
                 .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-        final FabricNextGroup nextGroup = new FabricNextGroup(obj.type(), nextMappings);
-
-        flowObjectiveStore.putNextGroup(obj.id(), nextGroup);
+                .findFirst()
+                .orElse(FabricNextGroup.NO_GROUP);
+        // The registry holds the references of all members, while the
+        // translation of ADD_TO_EXISTING and REMOVE_FROM_EXISTING holds the
+        // rules of the changed members only. Stored with the lock held, so
+        // that the stored references match the registry when seeded again.
+        synchronized (egressVlans) {
+            final FabricNextGroup nextGroup = new FabricNextGroup(
+                    obj.type(), groupId, outputPorts, nextIds, ImmutableList.copyOf(egressVlans.keys(obj.id())));
+            flowObjectiveStore.putNextGroup(obj.id(), nextGroup);
+        }
     }
 
-    private String nextTreatmentToMappingString(NextTreatment n) {
-        switch (n.type()) {
-            case TREATMENT:
-                final PortNumber p = outputPort(n);
-
-                log.info("Getting out : {}", p == null ? "UNKNOWN"
-                        : format("OUTPUT:%s", p.toString()));
+    private FabricNextGroup.EgressVlanKey egressVlanKey(FlowRule egressVlanRule) {
+        if (!egressVlanRule.table().equals(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN)) {
+            return null;
+        }
+        final VlanIdCriterion vlanIdCriterion = (VlanIdCriterion) egressVlanRule.selector()
+                .getCriterion(Criterion.Type.VLAN_VID);
+        if (vlanIdCriterion == null) {
+            return null;
+        }
+        final Long port = exactMatch(egressVlanRule, P4InfoConstants.HDR_EG_PORT);
+        return port == null ? null : new FabricNextGroup.EgressVlanKey(
+                PortNumber.portNumber(port), vlanIdCriterion.vlanId());
+    }
 
-                return p == null ? "UNKNOWN"
-                        : format("OUTPUT:%s", p.toString());
-            case ID:
-                final IdNextTreatment id = (IdNextTreatment) n;
-                return format("NEXT_ID:%d", id.nextId());
-            default:
-                log.warn("Unknown NextTreatment type '{}'", n.type());
-                return "???";
+    private static Long exactMatch(FlowRule rule, PiMatchFieldId field) {
+        final PiCriterion piCriterion = (PiCriterion) rule.selector()
+                .getCriterion(Criterion.Type.PROTOCOL_INDEPENDENT);
+        if (piCriterion == null) {
+            return null;
         }
+        return piCriterion.fieldMatch(field)
+                .filter(m -> m instanceof PiExactFieldMatch)
+                .map(m -> {
+                    long value = 0;
+                    for (byte b : ((PiExactFieldMatch) m).value().asArray()) {
+                        value = (value << 8) | (b & 0xFF);
+                    }
+                    return value;
+                })
+                .orElse(null);
     }
 
     public FlowRule egressSwitchInfoRule(long cpuPort) {
@@ -512,7 +1214,7 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
             log.trace("Mapping bucketsToFlows {} has been generated ", bucketsToFlows);
         }
 
-        GroupKey groupKey = nextTranslator.getGroupKey(nextObjective);
+        GroupKey groupKey = nextTranslator().getGroupKey(nextObjective);
         if (groupKey == null) {
             log.warn("VERIFY failed due to translation error, unable to determine group key");
             return ObjectiveError.BADPARAMS;
@@ -544,7 +1246,6 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
         }
 
         // Looking for buckets missing in the next but defined in the group
-        // FIXME SDFAB-250 we cannot remove associated egress flows
         List<GroupBucket> toRemove = Lists.newArrayList();
         groupFromStore.buckets().buckets().forEach(bucket -> {
             if (!bucketsToFlows.containsKey(bucket)) {
@@ -559,27 +1260,56 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
                      toAdd.size(), toRemove.size());
         }
 
-        if (!toAdd.isEmpty()) {
-            if (log.isTraceEnabled()) {
-                log.trace("Adding missing buckets {} and flows {}", toAdd.keySet(), toAdd.values());
-            }
+        synchronized (egressVlans) {
             final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
-            final FlowRule dummyFlow = getDummyFlow(nextObjective);
-            toAdd.values().stream()
-                    .filter(flowRule -> !flowRule.equals(dummyFlow))
-                    .forEach(ops::add);
-            final GroupBuckets bucketsToAdd = new GroupBuckets(Lists.newArrayList(toAdd.keySet()));
-            groupService.addBucketsToGroup(deviceId, groupKey, bucketsToAdd, groupKey, nextObjective.appId());
-            flowRuleService.apply(ops.build());
-        }
+            boolean changed = false;
+            // References of all the buckets are taken, e.g., to know them
+            // again after a restart of the pipeliner, but only the rules of
+            // the missing buckets not written for another next are added.
+            final Set<FabricNextGroup.EgressVlanKey> keys = Sets.newHashSet();
+            for (Map.Entry<GroupBucket, FlowRule> entry : bucketsToFlows.entrySet()) {
+                final FabricNextGroup.EgressVlanKey key = egressVlanKey(entry.getValue());
+                if (key == null) {
+                    continue;
+                }
+                keys.add(key);
+                if (egressVlans.acquire(nextObjective.id(), key, entry.getValue())
+                        && toAdd.containsKey(entry.getKey())) {
+                    ops.add(entry.getValue());
+                    changed = true;
+                }
+            }
+            // Egress VLAN rules of the stale buckets, if known to be used by
+            // no other next.
+            for (FabricNextGroup.EgressVlanKey key : egressVlans.keys(nextObjective.id())) {
+                final FlowRule staleRule = keys.contains(key)
+                        ? null : egressVlans.release(nextObjective.id(), key);
+                if (staleRule != null) {
+                    ops.remove(staleRule);
+                    changed = true;
+                }
+            }
 
-        if (!toRemove.isEmpty()) {
-            if (log.isTraceEnabled()) {
-                log.trace("Removing stale buckets {}", toRemove);
+            if (!toAdd.isEmpty()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Adding missing buckets {} and flows {}", toAdd.keySet(), toAdd.values());
+                }
+                final GroupBuckets bucketsToAdd = new GroupBuckets(Lists.newArrayList(toAdd.keySet()));
+                groupService.addBucketsToGroup(deviceId, groupKey, bucketsToAdd, groupKey, nextObjective.appId());
+            }
+
+            if (!toRemove.isEmpty()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Removing stale buckets {}", toRemove);
+                }
+                final GroupBuckets bucketsToRemove = new GroupBuckets(toRemove);
+                groupService.removeBucketsFromGroup(deviceId, groupKey, bucketsToRemove, groupKey,
+                                                    nextObjective.appId());
+            }
+
+            if (changed) {
+                apply(ops.build());
             }
-            final GroupBuckets bucketsToRemove = new GroupBuckets(toRemove);
-            groupService.removeBucketsFromGroup(deviceId, groupKey, bucketsToRemove, groupKey,
-                                                nextObjective.appId());
         }
 
         return null;
@@ -587,43 +1317,48 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
 
     private Map<GroupBucket, FlowRule> getBucketToFlowMapping(NextObjective nextObjective) {
         Map<GroupBucket, FlowRule> mapping = Maps.newHashMap();
-        NextObjective newNextObjective;
-        ObjectiveTranslation result;
-        FlowRule dummyFlow = getDummyFlow(nextObjective);
-        FlowRule egFlow;
-        GroupBucket groupBucket;
-        GroupDescription group;
+        NextBucketCache.BucketMapping bucketMapping;
         for (NextTreatment nextTreatment : nextObjective.nextTreatments()) {
-            newNextObjective = DefaultNextObjective.builder()
-                    .withId(nextObjective.id())
-                    .withType(nextObjective.type())
-                    .fromApp(nextObjective.appId())
-                    .withMeta(nextObjective.meta())
-                    .addTreatment(nextTreatment)
-                    .verify();
-            result = nextTranslator.translate(newNextObjective);
-            if ((result.groups().isEmpty() && result.flowRules().isEmpty()) ||
-                    result.groups().size() > 1) {
-                return Collections.emptyMap();
-            }
-            group = result.groups().iterator().next();
-            egFlow = result.flowRules().stream()
-                    .filter(flowRule -> flowRule.table().equals(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN))
-                    .findFirst()
-                    .orElse(null);
-            if (group.buckets().buckets().isEmpty() || group.buckets().buckets().size() > 1) {
-                return Collections.emptyMap();
-            }
-            groupBucket = group.buckets().buckets().iterator().next();
-            if (egFlow == null) {
-                mapping.put(groupBucket, dummyFlow);
-            } else {
-                mapping.put(groupBucket, egFlow);
+            // Translate only the treatments not seen since the last ADD/MODIFY.
+            bucketMapping = bucketCache.get(nextObjective, nextTreatment);
+            if (bucketMapping == null) {
+                bucketMapping = translateBucket(nextObjective, nextTreatment);
+                if (bucketMapping == null) {
+                    return Collections.emptyMap();
+                }
+                bucketCache.put(nextObjective, nextTreatment, bucketMapping);
             }
+            mapping.put(bucketMapping.bucket(), bucketMapping.flowRule());
         }
         return mapping;
     }
 
+    private NextBucketCache.BucketMapping translateBucket(NextObjective nextObjective,
+                                                          NextTreatment nextTreatment) {
+        final NextObjective newNextObjective = DefaultNextObjective.builder()
+                .withId(nextObjective.id())
+                .withType(nextObjective.type())
+                .fromApp(nextObjective.appId())
+                .withMeta(nextObjective.meta())
+                .addTreatment(nextTreatment)
+                .verify();
+        final ObjectiveTranslation result = nextTranslator().translate(newNextObjective);
+        // A single group is expected, nothing to verify if the treatment is
+        // translated only to flow rules.
+        if (result.groups().size() != 1) {
+            return null;
+        }
+        final GroupDescription group = result.groups().iterator().next();
+        if (group.buckets().buckets().size() != 1) {
+            return null;
+        }
+        final FlowRule egFlow = result.flowRules().stream()
+                .filter(flowRule -> flowRule.table().equals(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN))
+                .findFirst()
+                .orElse(getDummyFlow(nextObjective));
+        return new NextBucketCache.BucketMapping(group.buckets().buckets().iterator().next(), egFlow);
+    }
+
     private FlowRule getDummyFlow(NextObjective nextObjective) {
         return DefaultFlowRule.builder()
                 .forDevice(deviceId)
@@ -634,31 +1369,4 @@ public class FabricPipeliner extends AbstractFabricHandlerBehavior
                 .makePermanent()
                 .build();
     }
-
-    /**
-     * NextGroup implementation.
-     */
-    public static class FabricNextGroup implements NextGroup {
-        // FIXME SDFAB-250 they are not very useful nor technically correct
-        private final NextObjective.Type type;
-        private final List<String> nextMappings;
-
-        FabricNextGroup(NextObjective.Type type, List<String> nextMappings) {
-            this.type = type;
-            this.nextMappings = ImmutableList.copyOf(nextMappings);
-        }
-
-        NextObjective.Type type() {
-            return type;
-        }
-
-        Collection<String> nextMappings() {
-            return nextMappings;
-        }
-
-        @Override
-        public byte[] data() {
-            return KRYO.serialize(this);
-        }
-    }
 }
@@ -0,0 +1,103 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compiler of the logical flow rules of a table, i.e., obtained by
+ * translating objectives, to the physical entries installed on the device.
+ * <p>
+ * Implementations are not thread-safe, callers must serialize updates and the
+ * application of the returned deltas.
+ */
+interface FlowRuleCompiler {
+
+    /**
+     * Returns true if the given logical rule is handled by this compiler.
+     *
+     * @param rule logical rule
+     * @return true if handled by this compiler
+     */
+    boolean handles(FlowRule rule);
+
+    /**
+     * Adds the given logical rules, replacing the ones with the same ID.
+     *
+     * @param appId application ID of the rules
+     * @param rules logical rules
+     * @return changes to the physical entries
+     */
+    Delta add(ApplicationId appId, Collection<FlowRule> rules);
+
+    /**
+     * Removes the given logical rules. Rules not known by the compiler, e.g.,
+     * installed by a previous instance of the pipeliner, are removed as-is.
+     *
+     * @param rules logical rules
+     * @return changes to the physical entries
+     */
+    Delta remove(Collection<FlowRule> rules);
+
+    /**
+     * Removes all the logical rules of the given application.
+     *
+     * @param appId application ID
+     * @return changes to the physical entries
+     */
+    Delta purge(ApplicationId appId);
+
+    /**
+     * Returns the number of logical rules.
+     *
+     * @return number of logical rules
+     */
+    int logicalCount();
+
+    /**
+     * Returns the number of physical entries.
+     *
+     * @return number of physical entries
+     */
+    int physicalCount();
+
+    /**
+     * Changes to the physical entries. Entries to add should be installed
+     * before removing the others, so that packets are never matched by
+     * less-specific or lower-priority entries during the update.
+     */
+    final class Delta {
+        private final List<FlowRule> toAdd;
+        private final List<FlowRule> toRemove;
+
+        Delta(List<FlowRule> toAdd, List<FlowRule> toRemove) {
+            this.toAdd = ImmutableList.copyOf(toAdd);
+            // Entries added with a different treatment are modified, not removed.
+            final Set<FlowId> added = toAdd.stream().map(FlowRule::id).collect(Collectors.toSet());
+            this.toRemove = toRemove.stream()
+                    .filter(r -> !added.contains(r.id()))
+                    .collect(ImmutableList.toImmutableList());
+        }
+
+        List<FlowRule> toAdd() {
+            return toAdd;
+        }
+
+        List<FlowRule> toRemove() {
+            return toRemove;
+        }
+
+        boolean isEmpty() {
+            return toAdd.isEmpty() && toRemove.isEmpty();
+        }
+    }
+}
@@ -3,15 +3,16 @@
 
 package org.stratumproject.fabric.tna.behaviour.pipeliner;
 
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 import com.google.common.collect.Sets;
+import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.criteria.Criterion;
 import org.onosproject.net.flowobjective.ForwardingObjective;
 import org.slf4j.Logger;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -145,10 +146,49 @@ public class ForwardingFunctionType {
 
     private static final Logger log = getLogger(ForwardingFunctionType.class);
 
+    // Decision index. Each criterion type expected by at least one FFT is
+    // assigned a bit, all other types share the OTHER bit. The bitmask of the
+    // criterion types found in a forwarding objective is used to directly
+    // select the (precomputed) FFT candidates, whose match/mismatch values are
+    // then checked one by one.
+    private static final int NO_BIT = -1;
+    private static final int[] TYPE_BITS = new int[Criterion.Type.values().length];
+    private static final int OTHER_BIT;
+    private static final ForwardingFunctionType[][] CANDIDATES;
+
+    static {
+        Arrays.fill(TYPE_BITS, NO_BIT);
+        int nextBit = 0;
+        for (ForwardingFunctionType fft : values()) {
+            for (Criterion.Type t : fft.expectedCriterionTypes) {
+                if (TYPE_BITS[t.ordinal()] == NO_BIT) {
+                    TYPE_BITS[t.ordinal()] = nextBit++;
+                }
+            }
+        }
+        OTHER_BIT = nextBit;
+        final List<List<ForwardingFunctionType>> candidates = Lists.newArrayList();
+        for (int mask = 0; mask < 1 << (OTHER_BIT + 1); mask++) {
+            candidates.add(Lists.newArrayList());
+        }
+        for (ForwardingFunctionType fft : values()) {
+            int mask = 0;
+            for (Criterion.Type t : fft.expectedCriterionTypes) {
+                mask |= 1 << TYPE_BITS[t.ordinal()];
+            }
+            candidates.get(mask).add(fft);
+        }
+        CANDIDATES = candidates.stream()
+                .map(l -> l.toArray(new ForwardingFunctionType[0]))
+                .toArray(ForwardingFunctionType[][]::new);
+    }
+
     private final Type type;
     private final Set<Criterion.Type> expectedCriterionTypes;
-    private final Map<Criterion.Type, List<Criterion>> matchCriteria;
-    private final Map<Criterion.Type, List<Criterion>> mismatchCriteria;
+    private final Criterion.Type[] matchTypes;
+    private final Criterion[][] matchCriteria;
+    private final Criterion.Type[] mismatchTypes;
+    private final Criterion[][] mismatchCriteria;
     private final ForwardingFunctionType originalType;
 
     /**
@@ -183,8 +223,12 @@ public class ForwardingFunctionType {
                            ForwardingFunctionType original) {
         this.type = type;
         this.expectedCriterionTypes = ImmutableSet.copyOf(expectedCriterionTypes);
-        this.matchCriteria = typeToCriteriaMap(matchCriteria);
-        this.mismatchCriteria = typeToCriteriaMap(mismatchCriteria);
+        final Map<Criterion.Type, List<Criterion>> matchMap = typeToCriteriaMap(matchCriteria);
+        this.matchTypes = matchMap.keySet().toArray(new Criterion.Type[0]);
+        this.matchCriteria = criteriaArray(matchTypes, matchMap);
+        final Map<Criterion.Type, List<Criterion>> mismatchMap = typeToCriteriaMap(mismatchCriteria);
+        this.mismatchTypes = mismatchMap.keySet().toArray(new Criterion.Type[0]);
+        this.mismatchCriteria = criteriaArray(mismatchTypes, mismatchMap);
         this.originalType = original == null ? this : original;
     }
 
@@ -214,74 +258,101 @@ public class ForwardingFunctionType {
      * determined.
      */
     public static ForwardingFunctionType getForwardingFunctionType(ForwardingObjective fwd) {
-        final Set<Criterion> criteria = criteriaIncludingMeta(fwd);
-        final Set<Criterion.Type> criterionTypes = criteria.stream()
-                .map(Criterion::type).collect(Collectors.toSet());
-
-        final List<ForwardingFunctionType> candidates = ForwardingFunctionType.values().stream()
-                // Keep FFTs which expected criterion types are the same found
-                // in the fwd objective.
-                .filter(fft -> fft.expectedCriterionTypes.equals(criterionTypes))
-                // Keep FFTs which match criteria are found in the fwd objective.
-                .filter(fft -> matchFft(criteria, fft))
-                // Keep FFTs which mismatch criteria are NOT found in the objective.
-                .filter(fft -> mismatchFft(criteria, fft))
-                .collect(Collectors.toList());
-
-        switch (candidates.size()) {
+        final TrafficSelector meta = fwd.meta();
+        int mask = criterionTypesMask(fwd.selector(), 0);
+        // FIXME: Is this really needed? Meta is such an ambiguous field...
+        if (meta != null) {
+            mask = criterionTypesMask(meta, mask);
+        }
+
+        ForwardingFunctionType found = null;
+        int count = 0;
+        for (ForwardingFunctionType fft : CANDIDATES[mask]) {
+            // Keep FFTs which match criteria are found in the fwd objective and
+            // which mismatch criteria are NOT found in the objective.
+            if (checkValues(fwd.selector(), meta, fft.matchTypes, fft.matchCriteria, false)
+                    && checkValues(fwd.selector(), meta, fft.mismatchTypes, fft.mismatchCriteria, true)) {
+                found = fft;
+                count++;
+            }
+        }
+
+        switch (count) {
             case 1:
-                return candidates.get(0).originalType;
+                return found.originalType;
             case 0:
                 return UNKNOWN;
             default:
-                log.warn("Multiple FFT candidates found: {} [{}]", candidates, fwd);
+                log.warn("Multiple FFT candidates found: {} [{}]",
+                         Arrays.toString(CANDIDATES[mask]), fwd);
                 return UNKNOWN;
         }
     }
 
     public static boolean matchFft(Collection<Criterion> criteria, ForwardingFunctionType fft) {
-        return matchOrMismatchFft(criteria, fft.matchCriteria, false);
+        for (int i = 0; i < fft.matchTypes.length; i++) {
+            boolean matchFound = false;
+            for (Criterion given : criteria) {
+                if (given.type() == fft.matchTypes[i]
+                        && anyEquals(given, fft.matchCriteria[i], false)) {
+                    matchFound = true;
+                    break;
+                }
+            }
+            if (!matchFound) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private static boolean mismatchFft(Collection<Criterion> criteria, ForwardingFunctionType fft) {
-        return matchOrMismatchFft(criteria, fft.mismatchCriteria, true);
+    private static int criterionTypesMask(TrafficSelector selector, int mask) {
+        for (Criterion c : selector.criteria()) {
+            final int bit = TYPE_BITS[c.type().ordinal()];
+            mask |= 1 << (bit == NO_BIT ? OTHER_BIT : bit);
+        }
+        return mask;
     }
 
-    private static boolean matchOrMismatchFft(
-            Collection<Criterion> criteria,
-            Map<Criterion.Type, List<Criterion>> criteriaToMatch,
-            boolean mismatch) {
-        final Map<Criterion.Type, Criterion> givenCriteria = typeToCriterionMap(criteria);
-        for (Criterion.Type typeToMatch : criteriaToMatch.keySet()) {
-            if (!givenCriteria.containsKey(typeToMatch)) {
+    private static boolean checkValues(TrafficSelector selector, TrafficSelector meta,
+                                       Criterion.Type[] types, Criterion[][] criteria,
+                                       boolean mismatch) {
+        for (int i = 0; i < types.length; i++) {
+            final Criterion fromSelector = selector.getCriterion(types[i]);
+            final Criterion fromMeta = meta == null ? null : meta.getCriterion(types[i]);
+            if (fromSelector == null && fromMeta == null) {
                 return false;
             }
-            final boolean matchFound = criteriaToMatch.get(typeToMatch).stream()
-                    .anyMatch(c -> mismatch != givenCriteria.get(c.type()).equals(c));
-            if (!matchFound) {
+            if (!anyEquals(fromSelector, criteria[i], mismatch)
+                    && !anyEquals(fromMeta, criteria[i], mismatch)) {
                 return false;
             }
         }
         return true;
     }
 
-    private static Set<Criterion> criteriaIncludingMeta(ForwardingObjective fwd) {
-        final Set<Criterion> criteria = Sets.newHashSet();
-        criteria.addAll(fwd.selector().criteria());
-        // FIXME: Is this really needed? Meta is such an ambiguous field...
-        if (fwd.meta() != null) {
-            criteria.addAll(fwd.meta().criteria());
+    private static boolean anyEquals(Criterion given, Criterion[] criteria, boolean mismatch) {
+        if (given == null) {
+            return false;
         }
-        return criteria;
+        for (Criterion c : criteria) {
+            if (mismatch != given.equals(c)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private static Map<Criterion.Type, List<Criterion>> typeToCriteriaMap(Collection<Criterion> criteria) {
-        return criteria.stream().collect(Collectors.groupingBy(Criterion::type));
+    private static Criterion[][] criteriaArray(Criterion.Type[] types,
+                                               Map<Criterion.Type, List<Criterion>> criteria) {
+        final Criterion[][] array = new Criterion[types.length][];
+        for (int i = 0; i < types.length; i++) {
+            array[i] = criteria.get(types[i]).toArray(new Criterion[0]);
+        }
+        return array;
     }
 
-    private static Map<Criterion.Type, Criterion> typeToCriterionMap(Collection<Criterion> criteria) {
-        final ImmutableMap.Builder<Criterion.Type, Criterion> mapBuilder = ImmutableMap.builder();
-        criteria.forEach(c -> mapBuilder.put(c.type(), c));
-        return mapBuilder.build();
+    private static Map<Criterion.Type, List<Criterion>> typeToCriteriaMap(Collection<Criterion> criteria) {
+        return criteria.stream().collect(Collectors.groupingBy(Criterion::type));
     }
 }
@@ -0,0 +1,126 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.group.GroupBucket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * Utilities to compute the buckets of the SELECT groups used to translate
+ * HASHED next objectives.
+ */
+final class HashedGroupBuckets {
+
+    private HashedGroupBuckets() {
+        // Hides constructor.
+    }
+
+    /**
+     * Returns the weight of each distinct member, in order of first
+     * appearance. Members repeated in a next objective are translated to a
+     * single bucket, with weight equal to the number of occurrences. If the sum
+     * of the weights exceeds the maximum group size, weights are scaled down
+     * proportionally, while preserving a weight of at least 1 for each member.
+     *
+     * @param members      members, possibly repeated
+     * @param maxGroupSize maximum sum of the weights
+     * @param <T>          type of the members
+     * @return weight of each distinct member
+     * @throws FabricPipelinerException if there are more distinct members than
+     *                                  the maximum group size
+     */
+    static <T> Map<T, Integer> weights(List<T> members, int maxGroupSize)
+            throws FabricPipelinerException {
+        final Map<T, Integer> weights = Maps.newLinkedHashMap();
+        members.forEach(m -> weights.merge(m, 1, Integer::sum));
+        if (weights.size() > maxGroupSize) {
+            throw new FabricPipelinerException(format(
+                    "Found HASHED NextObjective with %d distinct members, " +
+                            "but the maximum group size is %d",
+                    weights.size(), maxGroupSize), ObjectiveError.BADPARAMS);
+        }
+        final int total = members.size();
+        if (total <= maxGroupSize) {
+            return weights;
+        }
+        // Largest remainder method, with a minimum weight of 1.
+        final Map<T, Double> remainders = Maps.newHashMap();
+        int sum = 0;
+        for (Map.Entry<T, Integer> e : weights.entrySet()) {
+            final double exact = (double) e.getValue() * maxGroupSize / total;
+            final int scaled = Math.max(1, (int) exact);
+            remainders.put(e.getKey(), exact - scaled);
+            e.setValue(scaled);
+            sum += scaled;
+        }
+        while (sum > maxGroupSize) {
+            // Members rounded up to 1 might have exceeded the limit.
+            final T largest = weights.entrySet().stream()
+                    .filter(e -> e.getValue() > 1)
+                    .max(Map.Entry.comparingByValue())
+                    .map(Map.Entry::getKey)
+                    .orElseThrow();
+            weights.compute(largest, (k, w) -> w - 1);
+            sum--;
+        }
+        while (sum < maxGroupSize) {
+            final T next = remainders.entrySet().stream()
+                    .max(Map.Entry.comparingByValue())
+                    .map(Map.Entry::getKey)
+                    .orElseThrow();
+            weights.compute(next, (k, w) -> w + 1);
+            remainders.put(next, remainders.get(next) - 1);
+            sum++;
+        }
+        return weights;
+    }
+
+    /**
+     * Returns the buckets to set in a group currently having the given buckets
+     * so that it has the desired members. Members present in both lists keep
+     * their position, while new members replace the removed ones in place, and
+     * only the remaining ones are appended. This way, flows hashed to members
+     * that did not change keep being assigned to the same member.
+     *
+     * @param current buckets currently in the group
+     * @param desired desired buckets
+     * @return desired buckets, ordered to preserve the position of the
+     * current ones
+     */
+    static List<GroupBucket> stableReplace(Collection<GroupBucket> current,
+                                           Collection<GroupBucket> desired) {
+        // GroupBucket equality does not consider the weight, use the desired
+        // bucket to update it.
+        final Map<GroupBucket, GroupBucket> toPlace = Maps.newLinkedHashMap();
+        desired.forEach(b -> toPlace.putIfAbsent(b, b));
+        final List<GroupBucket> result = Lists.newArrayListWithCapacity(toPlace.size());
+        final List<Integer> freeSlots = Lists.newArrayList();
+        for (GroupBucket bucket : current) {
+            final GroupBucket kept = toPlace.remove(bucket);
+            if (kept == null) {
+                freeSlots.add(result.size());
+            }
+            result.add(kept);
+        }
+        final var newBuckets = toPlace.values().iterator();
+        for (int slot : freeSlots) {
+            if (newBuckets.hasNext()) {
+                result.set(slot, newBuckets.next());
+            }
+        }
+        newBuckets.forEachRemaining(result::add);
+        // Members removed and not replaced.
+        result.removeIf(Objects::isNull);
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * Bucket i counts samples in [2^(i-1), 2^i) us, bucket 0 counts samples below
+ * 1 us, and the last bucket counts everything above the largest bound.
+ */
+public final class LatencyHistogram {
+
+    // 2^23 us is ~8 s, anything slower ends up in the last bucket.
+    static final int BUCKETS = 25;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a sample.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Clears all samples.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return number of samples
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean latency in microseconds.
+     *
+     * @return mean latency, 0 if no samples
+     */
+    public double meanMicros() {
+        final long c = count.get();
+        return c == 0 ? 0 : (double) sumNanos.get() / c / 1000;
+    }
+
+    /**
+     * Returns the maximum latency in microseconds.
+     *
+     * @return max latency
+     */
+    public long maxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    /**
+     * Returns an upper bound of the given percentile in microseconds, i.e.,
+     * the upper bound of the bucket where the percentile falls.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return latency upper bound, 0 if no samples
+     */
+    public long percentileMicros(double percentile) {
+        final long c = count.get();
+        if (c == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(c * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    /**
+     * Returns the number of samples in the given bucket.
+     *
+     * @param bucket bucket index
+     * @return samples in bucket
+     */
+    long bucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    static int bucketOf(long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        final int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", count())
+                .add("meanUs", meanMicros())
+                .add("p50Us", percentileMicros(50))
+                .add("p99Us", percentileMicros(99))
+                .add("maxUs", maxMicros())
+                .toString();
+    }
+}
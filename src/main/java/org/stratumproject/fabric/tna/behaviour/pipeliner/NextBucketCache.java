@@ -0,0 +1,116 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.NextTreatment;
+import org.onosproject.net.group.GroupBucket;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Cache of the translation of next treatments to group buckets and egress
+ * flow rules, used to verify next objectives without translating them again.
+ * <p>
+ * Entries are kept per next ID and per treatment. All entries of a next ID are
+ * dropped when its metadata changes or when the next is invalidated.
+ */
+final class NextBucketCache {
+
+    private final ConcurrentMap<Integer, CachedNext> cache = Maps.newConcurrentMap();
+
+    /**
+     * Returns the cached mapping for the given treatment of the given next
+     * objective, or null if not cached.
+     *
+     * @param obj       next objective
+     * @param treatment next treatment
+     * @return bucket mapping or null
+     */
+    BucketMapping get(NextObjective obj, NextTreatment treatment) {
+        final CachedNext cachedNext = cache.get(obj.id());
+        if (cachedNext == null || !Objects.equals(cachedNext.meta, obj.meta())) {
+            return null;
+        }
+        return cachedNext.mappings.get(treatment);
+    }
+
+    /**
+     * Caches the mapping for the given treatment of the given next objective.
+     *
+     * @param obj       next objective
+     * @param treatment next treatment
+     * @param mapping   bucket mapping
+     */
+    void put(NextObjective obj, NextTreatment treatment, BucketMapping mapping) {
+        final CachedNext cachedNext = cache.compute(obj.id(), (id, cached) ->
+                cached == null || !Objects.equals(cached.meta, obj.meta())
+                        ? new CachedNext(obj.meta()) : cached);
+        cachedNext.mappings.put(treatment, mapping);
+    }
+
+    /**
+     * Drops all the mappings of the given next ID.
+     *
+     * @param nextId next ID
+     */
+    void invalidate(int nextId) {
+        cache.remove(nextId);
+    }
+
+    /**
+     * Returns the number of cached next IDs.
+     *
+     * @return number of cached next IDs
+     */
+    int size() {
+        return cache.size();
+    }
+
+    private static final class CachedNext {
+        private final TrafficSelector meta;
+        private final Map<NextTreatment, BucketMapping> mappings = Maps.newConcurrentMap();
+
+        private CachedNext(TrafficSelector meta) {
+            this.meta = meta;
+        }
+    }
+
+    /**
+     * Group bucket and egress flow rule derived from a next treatment.
+     */
+    static final class BucketMapping {
+        private final GroupBucket bucket;
+        private final FlowRule flowRule;
+
+        BucketMapping(GroupBucket bucket, FlowRule flowRule) {
+            this.bucket = checkNotNull(bucket);
+            this.flowRule = checkNotNull(flowRule);
+        }
+
+        GroupBucket bucket() {
+            return bucket;
+        }
+
+        FlowRule flowRule() {
+            return flowRule;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("bucket", bucket)
+                    .add("flowRule", flowRule)
+                    .toString();
+        }
+    }
+}
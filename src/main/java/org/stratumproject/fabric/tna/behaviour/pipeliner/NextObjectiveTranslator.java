@@ -272,7 +272,27 @@ class NextObjectiveTranslator
             return;
         }
 
-        selectGroup(obj, resultBuilder);
+        if (!capabilities.hasHashedSelector()) {
+            directHashedNext(obj, resultBuilder);
+            return;
+        }
+
+        // Updated result builder with hashed group.
+        final int groupId = selectGroup(obj, resultBuilder);
+
+        if (isGroupModifyOp(obj)) {
+            // Only the buckets of the group are added or removed.
+            return;
+        }
+
+        final TrafficSelector selector = nextIdSelector(obj.id());
+        final TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                .piTableAction(PiActionProfileGroupId.of(groupId))
+                .build();
+
+        resultBuilder.addFlowRule(flowRule(
+                obj, P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED,
+                selector, treatment));
     }
 
     private void handleEgress(NextObjective obj, TrafficTreatment treatment,
@@ -369,10 +389,51 @@ class NextObjectiveTranslator
                 selector, treatment));
     }
 
-    private void selectGroup(NextObjective obj,
+    private int selectGroup(NextObjective obj,
                             ObjectiveTranslation.Builder resultBuilder)
             throws FabricPipelinerException {
 
+        final PiTableId hashedTableId = P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED;
+        final List<DefaultNextTreatment> defaultNextTreatments =
+                defaultNextTreatments(obj.nextTreatments(), true);
+        final List<TrafficTreatment> piTreatments = Lists.newArrayList();
+        for (DefaultNextTreatment t : defaultNextTreatments) {
+            // Map treatment to PI...
+            piTreatments.add(mapTreatmentToPiIfNeeded(t.treatment(), hashedTableId));
+            // ...and handle egress if necessary.
+            handleEgress(obj, t.treatment(), resultBuilder, false);
+        }
+
+        // Repeated treatments are translated to weighted buckets. For
+        // *_TO_EXISTING operations, these are the only buckets added to or
+        // removed from the group.
+        final List<GroupBucket> bucketList = HashedGroupBuckets.weights(
+                piTreatments, capabilities.hashedSelectorMaxGroupSize())
+                .entrySet().stream()
+                .map(e -> DefaultGroupBucket.createSelectGroupBucket(
+                        e.getKey(), e.getValue().shortValue()))
+                .collect(Collectors.toList());
+
+        final int groupId = obj.id();
+        final PiGroupKey groupKey = (PiGroupKey) getGroupKey(obj);
+
+        resultBuilder.addGroup(new DefaultGroupDescription(
+                deviceId,
+                GroupDescription.Type.SELECT,
+                new GroupBuckets(bucketList),
+                groupKey,
+                groupId,
+                obj.appId()));
+
+        return groupId;
+    }
+
+    private void directHashedNext(NextObjective obj,
+                                  ObjectiveTranslation.Builder resultBuilder)
+            throws FabricPipelinerException {
+        // The hashed table has no action selector, hence it can hold only a
+        // single member per next ID.
+
         final PiTableId hashedTableId = P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED;
         final List<DefaultNextTreatment> nextTreatments =
                 defaultNextTreatments(obj.nextTreatments(), true);
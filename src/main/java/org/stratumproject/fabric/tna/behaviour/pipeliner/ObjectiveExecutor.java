@@ -0,0 +1,310 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onlab.util.PredictableExecutor;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flowobjective.FilteringObjective;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Executes pipeliner work on a pool of workers shared by all devices.
+ * <p>
+ * Tasks with the same (device ID, key) pair are always executed by the same
+ * worker, hence they are strictly ordered, while tasks with different keys can
+ * run in parallel. The number of pending tasks is bounded: when the limit is
+ * reached, callers block until a worker completes a task, which propagates
+ * backpressure to the flow objective manager. Tasks submitted by workers are
+ * queued like the others but never block.
+ * <p>
+ * Tasks are scheduled per device by {@link Priority}: a task is handed to the
+ * workers only when no task of a higher priority is waiting, and the number of
+ * tasks of each priority handed to the workers and not yet completed is
+ * bounded. This way, when a device connects, filtering objectives are not
+ * queued behind thousands of routes. Ordering is guaranteed only among tasks
+ * with the same priority.
+ */
+public final class ObjectiveExecutor {
+
+    private static final Logger log = getLogger(ObjectiveExecutor.class);
+
+    static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    static final int DEFAULT_MAX_PENDING = 10000;
+
+    private static ObjectiveExecutor shared;
+
+    /**
+     * Scheduling priorities of the pipeliner tasks, from the highest.
+     */
+    public enum Priority {
+        /**
+         * Filtering objectives, e.g., port VLAN and forwarding classifier.
+         */
+        FILTERING,
+        /**
+         * Next objectives.
+         */
+        NEXT,
+        /**
+         * Specific forwarding objectives, e.g., bridging and routing.
+         */
+        FORWARDING,
+        /**
+         * Versatile forwarding objectives, i.e., ACLs.
+         */
+        ACL;
+
+        /**
+         * Returns the priority of the given objective.
+         *
+         * @param obj objective
+         * @return scheduling priority
+         */
+        public static Priority of(Objective obj) {
+            if (obj instanceof FilteringObjective) {
+                return FILTERING;
+            } else if (obj instanceof NextObjective) {
+                return NEXT;
+            } else if (obj instanceof ForwardingObjective
+                    && ((ForwardingObjective) obj).flag() == ForwardingObjective.Flag.VERSATILE) {
+                return ACL;
+            }
+            return FORWARDING;
+        }
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final PredictableExecutor executor;
+    private final Semaphore permits;
+    private final int maxPending;
+    private final int workers;
+    private final ConcurrentMap<DeviceId, DeviceQueue> queues = Maps.newConcurrentMap();
+    private final ThreadLocal<Boolean> isWorker = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Creates a new executor.
+     *
+     * @param workers    number of workers
+     * @param maxPending maximum number of pending tasks
+     */
+    ObjectiveExecutor(int workers, int maxPending) {
+        checkArgument(workers > 0, "workers must be positive");
+        checkArgument(maxPending > 0, "maxPending must be positive");
+        this.executor = new PredictableExecutor(workers, groupedThreads(
+                "fabric-tna-pipeliner", "worker-%d", log));
+        this.permits = new Semaphore(maxPending);
+        this.maxPending = maxPending;
+        this.workers = workers;
+    }
+
+    /**
+     * Returns the executor shared by all pipeliner instances, creating it if
+     * needed.
+     *
+     * @return shared executor
+     */
+    static synchronized ObjectiveExecutor shared() {
+        if (shared == null) {
+            shared = new ObjectiveExecutor(DEFAULT_WORKERS, DEFAULT_MAX_PENDING);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the number of pending tasks of the shared executor.
+     *
+     * @return number of pending tasks, 0 if the executor is not running
+     */
+    public static synchronized int sharedPending() {
+        return shared == null ? 0 : shared.pending();
+    }
+
+    /**
+     * Shuts down the shared executor, if any. Pending tasks are discarded.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.shutdown();
+            shared = null;
+        }
+    }
+
+    /**
+     * Sets the maximum number of tasks of each priority executed at the same
+     * time for the given device. Priorities not in the given map default to
+     * the number of workers.
+     *
+     * @param deviceId    device ID
+     * @param concurrency maximum number of running tasks by priority
+     */
+    void setConcurrency(DeviceId deviceId, Map<Priority, Integer> concurrency) {
+        concurrency.values().forEach(n -> checkArgument(n > 0, "concurrency must be positive"));
+        final DeviceQueue queue = queue(deviceId);
+        synchronized (queue) {
+            for (Priority p : PRIORITIES) {
+                queue.limits[p.ordinal()] = concurrency.getOrDefault(p, workers);
+            }
+            dispatch(queue);
+        }
+    }
+
+    /**
+     * Executes the given task after all tasks previously submitted for the
+     * same device, priority and key, and after the tasks of higher priority
+     * waiting for the same device. Blocks if too many tasks are pending.
+     *
+     * @param deviceId device ID
+     * @param priority scheduling priority
+     * @param key      ordering key
+     * @param task     task
+     */
+    void execute(DeviceId deviceId, Priority priority, Object key, Runnable task) {
+        // Workers submitting follow-up tasks do not take a permit, blocking
+        // them could deadlock when the queue is full.
+        final boolean permit = !isWorker.get();
+        if (permit) {
+            permits.acquireUninterruptibly();
+        }
+        final DeviceQueue queue = queue(deviceId);
+        synchronized (queue) {
+            queue.waiting.get(priority.ordinal()).add(new Task(priority, key, task, permit));
+            dispatch(queue);
+        }
+    }
+
+    /**
+     * Forgets the scheduling state of the given device, e.g., when removed.
+     * Tasks already submitted are still executed.
+     *
+     * @param deviceId device ID
+     */
+    void remove(DeviceId deviceId) {
+        queues.remove(deviceId);
+    }
+
+    /**
+     * Forgets the scheduling state of the given device in the shared
+     * executor, if any.
+     *
+     * @param deviceId device ID
+     */
+    public static synchronized void removeShared(DeviceId deviceId) {
+        if (shared != null) {
+            shared.remove(deviceId);
+        }
+    }
+
+    private DeviceQueue queue(DeviceId deviceId) {
+        return queues.computeIfAbsent(deviceId, DeviceQueue::new);
+    }
+
+    // Must be called while holding the lock of the queue.
+    private void dispatch(DeviceQueue queue) {
+        for (Priority p : PRIORITIES) {
+            final int i = p.ordinal();
+            final Deque<Task> waiting = queue.waiting.get(i);
+            while (!waiting.isEmpty() && queue.running[i] < queue.limits[i]) {
+                submit(queue, waiting.poll());
+            }
+            if (!waiting.isEmpty()) {
+                // Lower priorities wait for this one to drain.
+                return;
+            }
+        }
+    }
+
+    private void submit(DeviceQueue queue, Task t) {
+        final int i = t.priority.ordinal();
+        queue.running[i]++;
+        try {
+            executor.execute(() -> {
+                isWorker.set(true);
+                try {
+                    t.task.run();
+                } catch (RuntimeException e) {
+                    log.error("Exception while executing pipeliner task for {}", queue.deviceId, e);
+                } finally {
+                    if (t.permit) {
+                        permits.release();
+                    }
+                    synchronized (queue) {
+                        queue.running[i]--;
+                        dispatch(queue);
+                    }
+                }
+            }, Objects.hash(queue.deviceId, t.key));
+        } catch (RuntimeException e) {
+            // Rejected, e.g., executor already shut down.
+            queue.running[i]--;
+            if (t.permit) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of tasks submitted and not yet completed.
+     *
+     * @return number of pending tasks
+     */
+    public int pending() {
+        return maxPending - permits.availablePermits();
+    }
+
+    /**
+     * Shuts down this executor. Pending tasks are discarded.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class Task {
+        private final Priority priority;
+        private final Object key;
+        private final Runnable task;
+        // False for tasks submitted by workers.
+        private final boolean permit;
+
+        private Task(Priority priority, Object key, Runnable task, boolean permit) {
+            this.priority = priority;
+            this.key = key;
+            this.task = task;
+            this.permit = permit;
+        }
+    }
+
+    private final class DeviceQueue {
+        private final DeviceId deviceId;
+        private final List<Deque<Task>> waiting = Lists.newArrayListWithCapacity(PRIORITIES.length);
+        private final int[] running = new int[PRIORITIES.length];
+        private final int[] limits = new int[PRIORITIES.length];
+
+        private DeviceQueue(DeviceId deviceId) {
+            this.deviceId = deviceId;
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                waiting.add(new ArrayDeque<>());
+                limits[i] = workers;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.Objective;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Forwarding objectives parked until the next objective they reference is
+ * installed. Objectives with the same selector as a parked one are parked
+ * behind it, so that objectives for the same selector are still processed in
+ * order, e.g., a REMOVE submitted after a parked ADD.
+ * <p>
+ * Objectives are released in two steps: when their next objective is
+ * installed, the first objective parked for each selector is returned, and
+ * the objectives of these selectors are then drained together, in the order
+ * of the objectives with the same selector. Until drained again with no
+ * objective left, i.e., until the caller processed the drained objectives,
+ * new objectives with the same selectors are still parked behind them.
+ * <p>
+ * Not thread-safe, callers must serialize updates.
+ */
+final class PendingForwards {
+
+    // Parked objectives of each selector, in arrival order.
+    private final Map<TrafficSelector, Deque<ForwardingObjective>> bySelector = Maps.newHashMap();
+    // Next ID the first parked objective of each selector is waiting for.
+    private final Map<TrafficSelector, Integer> headNextIds = Maps.newHashMap();
+    private final SetMultimap<Integer, TrafficSelector> waiting = HashMultimap.create();
+
+    /**
+     * Returns the next ID the given objective depends on, if not installed
+     * yet. Only ADD operations depend on their next objective.
+     *
+     * @param obj         forwarding objective
+     * @param isInstalled predicate telling if a next ID is installed
+     * @return missing next ID or null
+     */
+    static Integer missingNextId(ForwardingObjective obj, IntPredicate isInstalled) {
+        if (obj.op() != Objective.Operation.ADD || obj.nextId() == null
+                || isInstalled.test(obj.nextId())) {
+            return null;
+        }
+        return obj.nextId();
+    }
+
+    /**
+     * Parks the given objective if its next objective is not installed or if
+     * other objectives with the same selector are parked.
+     *
+     * @param obj         forwarding objective
+     * @param isInstalled predicate telling if a next ID is installed
+     * @return true if parked, false if the objective can be processed
+     */
+    boolean parkIfNeeded(ForwardingObjective obj, IntPredicate isInstalled) {
+        final Deque<ForwardingObjective> queue = bySelector.get(obj.selector());
+        if (queue != null) {
+            queue.add(obj);
+            return true;
+        }
+        final Integer nextId = missingNextId(obj, isInstalled);
+        if (nextId == null) {
+            return false;
+        }
+        final Deque<ForwardingObjective> newQueue = new ArrayDeque<>();
+        newQueue.add(obj);
+        bySelector.put(obj.selector(), newQueue);
+        headNextIds.put(obj.selector(), nextId);
+        waiting.put(nextId, obj.selector());
+        return true;
+    }
+
+    /**
+     * Stops waiting for the given next ID, now installed, and returns the
+     * first objective parked for each selector waiting for it. The
+     * objectives of these selectors must then be drained with
+     * {@link #drain(Collection, IntPredicate)}.
+     *
+     * @param nextId next ID
+     * @return first parked objective of each selector to drain
+     */
+    List<ForwardingObjective> release(int nextId) {
+        final List<ForwardingObjective> heads = Lists.newArrayList();
+        for (TrafficSelector selector : waiting.removeAll(nextId)) {
+            headNextIds.remove(selector);
+            heads.add(bySelector.get(selector).peekFirst());
+        }
+        return heads;
+    }
+
+    /**
+     * Removes the objectives of the given selectors that can be processed,
+     * i.e., up to the first one whose next objective is not installed. The
+     * selectors stay held until drained with no objective left, hence the
+     * caller must drain them again, after processing the returned
+     * objectives, until none is returned.
+     *
+     * @param selectors   selectors
+     * @param isInstalled predicate telling if a next ID is installed
+     * @return objectives to process, in the order of each selector
+     */
+    List<ForwardingObjective> drain(Collection<TrafficSelector> selectors, IntPredicate isInstalled) {
+        final List<ForwardingObjective> released = Lists.newArrayList();
+        for (TrafficSelector selector : selectors) {
+            final Deque<ForwardingObjective> queue = bySelector.get(selector);
+            if (queue == null) {
+                continue;
+            }
+            if (queue.isEmpty()) {
+                bySelector.remove(selector);
+                continue;
+            }
+            waiting.remove(headNextIds.remove(selector), selector);
+            drain(selector, isInstalled, released);
+        }
+        return released;
+    }
+
+    /**
+     * Removes the given objective, e.g., when its timeout expires, and
+     * releases the objectives parked behind it that can now be processed.
+     *
+     * @param obj         forwarding objective
+     * @param isInstalled predicate telling if a next ID is installed
+     * @return objectives to process, in order, or null if the objective was
+     * not parked
+     */
+    List<ForwardingObjective> remove(ForwardingObjective obj, IntPredicate isInstalled) {
+        final Deque<ForwardingObjective> queue = bySelector.get(obj.selector());
+        if (queue == null) {
+            return null;
+        }
+        if (queue.peekFirst() != obj) {
+            return queue.removeIf(o -> o == obj) ? List.of() : null;
+        }
+        queue.removeFirst();
+        waiting.remove(headNextIds.remove(obj.selector()), obj.selector());
+        final List<ForwardingObjective> released = Lists.newArrayList();
+        drain(obj.selector(), isInstalled, released);
+        if (queue.isEmpty()) {
+            bySelector.remove(obj.selector());
+        }
+        return released;
+    }
+
+    /**
+     * Returns the number of parked objectives.
+     *
+     * @return number of objectives
+     */
+    int size() {
+        return bySelector.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private void drain(TrafficSelector selector, IntPredicate isInstalled,
+                       List<ForwardingObjective> released) {
+        final Deque<ForwardingObjective> queue = bySelector.get(selector);
+        while (!queue.isEmpty()) {
+            final Integer nextId = missingNextId(queue.peekFirst(), isInstalled);
+            if (nextId != null) {
+                headNextIds.put(selector, nextId);
+                waiting.put(nextId, selector);
+                return;
+            }
+            released.add(queue.removeFirst());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flowobjective.FilteringObjective;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveError;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Per-device latency and outcome metrics of the fabric-tna pipeliner.
+ * <p>
+ * Latencies are tracked per objective type, objective operation and
+ * processing stage. Pipeliner instances are created by the flow objective
+ * manager, hence metrics are kept in a static registry that can be queried by
+ * CLI and REST.
+ */
+public final class PipelinerMetrics {
+
+    /**
+     * Pipeliner processing stages.
+     */
+    public enum Stage {
+        /**
+         * Translation of the objective to flow rules and groups.
+         */
+        TRANSLATE,
+        /**
+         * Submission of groups to the group service.
+         */
+        GROUPS,
+        /**
+         * Submission of flow rules to the flow rule service.
+         */
+        FLOWS,
+        /**
+         * Time from objective completion to the objective context callback.
+         */
+        CALLBACK
+    }
+
+    /**
+     * Objective types.
+     */
+    public enum ObjectiveType {
+        FILTERING,
+        FORWARDING,
+        NEXT;
+
+        static ObjectiveType of(Objective obj) {
+            if (obj instanceof FilteringObjective) {
+                return FILTERING;
+            } else if (obj instanceof ForwardingObjective) {
+                return FORWARDING;
+            }
+            return NEXT;
+        }
+    }
+
+    // Log one objective every TRACE_SAMPLING_RATE when trace is enabled.
+    static final int TRACE_SAMPLING_RATE = 100;
+
+    private static final int OBJ_TYPES = ObjectiveType.values().length;
+    private static final int OPS = Objective.Operation.values().length;
+    private static final int STAGES = Stage.values().length;
+    private static final int ERRORS = ObjectiveError.values().length;
+
+    private static final ConcurrentMap<DeviceId, PipelinerMetrics> METRICS =
+            Maps.newConcurrentMap();
+
+    private final DeviceId deviceId;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OBJ_TYPES * OPS * STAGES];
+    private final AtomicLongArray successes = new AtomicLongArray(OBJ_TYPES * OPS);
+    private final AtomicLongArray errors = new AtomicLongArray(OBJ_TYPES * ERRORS);
+    private final AtomicLong traceCounter = new AtomicLong();
+    private final AtomicLong parked = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    // Time of the last pipeliner initialization and time from it to the
+    // first forwarding objective completed, -1 if none yet.
+    private volatile long initNanos;
+    private volatile long timeToFirstForwarding = -1;
+
+    private PipelinerMetrics(DeviceId deviceId) {
+        this.deviceId = deviceId;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Returns the metrics of the given device, creating them if needed.
+     *
+     * @param deviceId device ID
+     * @return pipeliner metrics
+     */
+    public static PipelinerMetrics forDevice(DeviceId deviceId) {
+        checkNotNull(deviceId);
+        return METRICS.computeIfAbsent(deviceId, PipelinerMetrics::new);
+    }
+
+    /**
+     * Returns the metrics of all devices.
+     *
+     * @return map of device ID to pipeliner metrics
+     */
+    public static Map<DeviceId, PipelinerMetrics> all() {
+        return ImmutableMap.copyOf(METRICS);
+    }
+
+    /**
+     * Forgets the metrics of the given device, e.g., when removed.
+     *
+     * @param deviceId device ID
+     */
+    public static void remove(DeviceId deviceId) {
+        METRICS.remove(deviceId);
+    }
+
+    /**
+     * Forgets the metrics of all devices.
+     */
+    public static void clear() {
+        METRICS.clear();
+    }
+
+    /**
+     * Returns the device ID of these metrics.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the latency histogram of the given objective type, operation
+     * and stage.
+     *
+     * @param type objective type
+     * @param op   objective operation
+     * @param stage pipeliner stage
+     * @return latency histogram
+     */
+    public LatencyHistogram latency(ObjectiveType type, Objective.Operation op, Stage stage) {
+        return latencies[(type.ordinal() * OPS + op.ordinal()) * STAGES + stage.ordinal()];
+    }
+
+    /**
+     * Returns the number of objectives of the given type and operation
+     * completed with success.
+     *
+     * @param type objective type
+     * @param op   objective operation
+     * @return success count
+     */
+    public long successes(ObjectiveType type, Objective.Operation op) {
+        return successes.get(type.ordinal() * OPS + op.ordinal());
+    }
+
+    /**
+     * Returns the number of objectives of the given type failed with the
+     * given error.
+     *
+     * @param type  objective type
+     * @param error objective error
+     * @return error count
+     */
+    public long errors(ObjectiveType type, ObjectiveError error) {
+        return errors.get(type.ordinal() * ERRORS + error.ordinal());
+    }
+
+    /**
+     * Returns the number of forwarding objectives parked until their next
+     * objective is installed.
+     *
+     * @return parked count
+     */
+    public long parked() {
+        return parked.get();
+    }
+
+    /**
+     * Returns the number of parked forwarding objectives released.
+     *
+     * @return released count
+     */
+    public long released() {
+        return released.get();
+    }
+
+    /**
+     * Returns the number of parked forwarding objectives failed because
+     * their next objective was not installed in time.
+     *
+     * @return expired count
+     */
+    public long expired() {
+        return expired.get();
+    }
+
+    /**
+     * Returns the time from the last initialization of the pipeliner, i.e.,
+     * device connection, to the first forwarding objective completed with
+     * success.
+     *
+     * @return time in milliseconds, -1 if no forwarding objective completed
+     * since the initialization
+     */
+    public long timeToFirstForwardingMillis() {
+        final long t = timeToFirstForwarding;
+        return t < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(t);
+    }
+
+    /**
+     * Clears all metrics of this device.
+     */
+    public void reset() {
+        for (LatencyHistogram h : latencies) {
+            h.reset();
+        }
+        for (int i = 0; i < successes.length(); i++) {
+            successes.set(i, 0);
+        }
+        for (int i = 0; i < errors.length(); i++) {
+            errors.set(i, 0);
+        }
+        parked.set(0);
+        released.set(0);
+        expired.set(0);
+    }
+
+    /**
+     * Records the latency of a pipeliner stage for the given objective.
+     *
+     * @param obj        objective
+     * @param stage      pipeliner stage
+     * @param startNanos start of the stage, as returned by {@link System#nanoTime()}
+     */
+    void record(Objective obj, Stage stage, long startNanos) {
+        latency(ObjectiveType.of(obj), obj.op(), stage).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the successful completion of the given objective.
+     *
+     * @param obj objective
+     */
+    void recordSuccess(Objective obj) {
+        final ObjectiveType type = ObjectiveType.of(obj);
+        successes.incrementAndGet(type.ordinal() * OPS + obj.op().ordinal());
+        if (type == ObjectiveType.FORWARDING && timeToFirstForwarding < 0 && initNanos != 0) {
+            timeToFirstForwarding = System.nanoTime() - initNanos;
+        }
+    }
+
+    /**
+     * Records the initialization of the pipeliner, i.e., the device
+     * connection.
+     */
+    void recordInit() {
+        timeToFirstForwarding = -1;
+        initNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the failure of the given objective.
+     *
+     * @param obj   objective
+     * @param error objective error
+     */
+    void recordError(Objective obj, ObjectiveError error) {
+        errors.incrementAndGet(ObjectiveType.of(obj).ordinal() * ERRORS + error.ordinal());
+    }
+
+    /**
+     * Records a forwarding objective parked until its next objective is
+     * installed.
+     */
+    void recordParked() {
+        parked.incrementAndGet();
+    }
+
+    /**
+     * Records the release of a parked forwarding objective.
+     */
+    void recordReleased() {
+        released.incrementAndGet();
+    }
+
+    /**
+     * Records a parked forwarding objective failed after its timeout.
+     */
+    void recordExpired() {
+        expired.incrementAndGet();
+    }
+
+    /**
+     * Returns true if the current objective should be traced. Used to sample
+     * trace logs that would otherwise be built for every objective.
+     *
+     * @return true if the objective should be traced
+     */
+    boolean sampleTrace() {
+        return traceCounter.getAndIncrement() % TRACE_SAMPLING_RATE == 0;
+    }
+}
@@ -0,0 +1,409 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compresses the logical IPv4 routes of a device, i.e., the flow rules
+ * obtained by translating routing forwarding objectives, to fewer entries of
+ * the routing table with the same longest-prefix-match result for every
+ * address. Routes covered by a less-specific route with the same action are
+ * not installed, and sibling prefixes with the same action are merged into
+ * their parent prefix, e.g., 10.0.0.0/25 and 10.0.0.128/25 with the same next
+ * ID become 10.0.0.0/24.
+ * <p>
+ * This is the ORTC algorithm (Draves et al., "Constructing optimal IP routing
+ * tables"), restricted to the parts of the address space entirely covered by
+ * routes, since the table cannot express an entry without route. The
+ * candidate actions computed by the bottom-up pass are kept in a binary trie,
+ * so that a route change only recomputes the subtree of the changed prefix
+ * and its ancestors, and the top-down pass only visits the nodes whose
+ * candidates or inherited action changed. Only the entries that changed are
+ * returned.
+ * <p>
+ * The priority of routes is not part of their action, since it does not
+ * affect the matching of the LPM routing table, while segment routing derives
+ * it from the prefix length. Entries that are not routes get the prefix
+ * length as priority.
+ * <p>
+ * The default route (empty selector) is not compressed. The trie is kept in
+ * memory only, i.e., it is not rebuilt from the entries installed on the
+ * device when the pipeliner is initialized again.
+ */
+final class RouteCompressor implements FlowRuleCompiler {
+
+    private static final int IPV4_LENGTH = 32;
+
+    private final Node root = new Node(null, 0, 0);
+    private final Map<FlowId, Node> routes = Maps.newHashMap();
+    private int entryCount;
+
+    @Override
+    public boolean handles(FlowRule rule) {
+        return rule.table().equals(P4InfoConstants.FABRIC_INGRESS_FORWARDING_ROUTING_V4)
+                && rule.selector().criteria().size() == 1
+                && rule.selector().getCriterion(Criterion.Type.IPV4_DST) != null;
+    }
+
+    @Override
+    public Delta add(ApplicationId appId, Collection<FlowRule> rules) {
+        final Update update = new Update();
+        for (FlowRule rule : rules) {
+            final Node node = findOrCreate(prefix(rule));
+            if (node.route != null) {
+                routes.remove(node.route.rule.id());
+            }
+            node.route = new Route(rule, new Action(appId, rule));
+            routes.put(rule.id(), node);
+            changed(node, update);
+        }
+        return update.delta(root);
+    }
+
+    @Override
+    public Delta remove(Collection<FlowRule> rules) {
+        final Update update = new Update();
+        for (FlowRule rule : rules) {
+            final Node node = routes.remove(rule.id());
+            if (node == null) {
+                update.removed.add(rule);
+            } else {
+                node.route = null;
+                changed(node, update);
+            }
+        }
+        return update.delta(root);
+    }
+
+    @Override
+    public Delta purge(ApplicationId appId) {
+        final List<FlowRule> rules = Lists.newArrayList();
+        routes.values().stream()
+                .filter(n -> n.route.action.appId.equals(appId))
+                .forEach(n -> rules.add(n.route.rule));
+        return remove(rules);
+    }
+
+    @Override
+    public int logicalCount() {
+        return routes.size();
+    }
+
+    @Override
+    public int physicalCount() {
+        return entryCount;
+    }
+
+    private static IpPrefix prefix(FlowRule rule) {
+        return ((IPCriterion) rule.selector().getCriterion(Criterion.Type.IPV4_DST)).ip();
+    }
+
+    private Node findOrCreate(IpPrefix prefix) {
+        final int address = prefix.address().getIp4Address().toInt();
+        Node node = root;
+        while (node.length < prefix.prefixLength()) {
+            final int bit = bit(address, node.length);
+            if (node.children[bit] == null) {
+                node.children[bit] = new Node(node, address & mask(node.length + 1), node.length + 1);
+            }
+            node = node.children[bit];
+        }
+        return node;
+    }
+
+    private void changed(Node node, Update update) {
+        if (node.route == null && node.isLeaf()) {
+            // Prune the branch leading to this node.
+            Node parent = node.parent;
+            while (node != root && node.route == null && node.isLeaf()) {
+                update.entryChanged(node, null);
+                update.childEntryChanged(node, 0, null);
+                update.childEntryChanged(node, 1, null);
+                parent = node.parent;
+                parent.children[bit(node.address, parent.length)] = null;
+                node = parent;
+            }
+            candidatesUpTo(parent);
+        } else {
+            bottomUp(node, inheritedRoute(node));
+            candidatesUpTo(node.parent);
+        }
+    }
+
+    private static Action inheritedRoute(Node node) {
+        for (Node n = node.parent; n != null; n = n.parent) {
+            if (n.route != null) {
+                return n.route.action;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes again the candidates of the given subtree, given the action of
+     * the closest route above it.
+     */
+    private static void bottomUp(Node node, Action routeAbove) {
+        final Action effective = node.route != null ? node.route.action : routeAbove;
+        for (Node child : node.children) {
+            if (child != null) {
+                bottomUp(child, effective);
+            }
+        }
+        node.candidates(effective);
+    }
+
+    private static void candidatesUpTo(Node node) {
+        for (Node n = node; n != null; n = n.parent) {
+            n.candidates(n.route != null ? n.route.action : inheritedRoute(n));
+        }
+    }
+
+    private static int bit(int address, int index) {
+        return (address >>> (IPV4_LENGTH - 1 - index)) & 1;
+    }
+
+    private static int mask(int length) {
+        return length == 0 ? 0 : -1 << (IPV4_LENGTH - length);
+    }
+
+    /**
+     * Changes collected during an update.
+     */
+    private final class Update {
+        private final List<FlowRule> added = Lists.newArrayList();
+        private final List<FlowRule> removed = Lists.newArrayList();
+
+        private void entryChanged(Node node, FlowRule entry) {
+            if (changed(node.entry, entry)) {
+                node.entry = entry;
+            }
+        }
+
+        private void childEntryChanged(Node node, int bit, FlowRule entry) {
+            if (changed(node.childEntries[bit], entry)) {
+                node.childEntries[bit] = entry;
+            }
+        }
+
+        private boolean changed(FlowRule previous, FlowRule entry) {
+            if (sameEntry(previous, entry)) {
+                return false;
+            }
+            if (previous != null) {
+                removed.add(previous);
+                entryCount--;
+            }
+            if (entry != null) {
+                added.add(entry);
+                entryCount++;
+            }
+            return true;
+        }
+
+        private Delta delta(Node root) {
+            topDown(root, null);
+            return new Delta(added, removed);
+        }
+
+        private void topDown(Node node, Action inherited) {
+            if (!node.dirty && Objects.equals(node.inherited, inherited)) {
+                // Same entries as before in this subtree.
+                return;
+            }
+            node.dirty = false;
+            node.inherited = inherited;
+            Action chosen = null;
+            if (!node.partial && !node.actions.isEmpty()
+                    && (inherited == null || !node.actions.contains(inherited))) {
+                chosen = node.route != null && node.actions.contains(node.route.action)
+                        ? node.route.action
+                        : node.actions.stream().min(Action.ORDER).orElseThrow();
+            }
+            entryChanged(node, chosen == null ? null : entry(node, chosen));
+            final Action next = chosen != null ? chosen : inherited;
+            for (int bit = 0; bit < 2; bit++) {
+                final Node child = node.children[bit];
+                if (child != null) {
+                    topDown(child, next);
+                    childEntryChanged(node, bit, null);
+                } else if (!node.isLeaf() && node.effective != null && !node.effective.equals(next)) {
+                    // The missing child is covered by the effective route,
+                    // which is not the action passed down.
+                    final IpPrefix prefix = IpPrefix.valueOf(
+                            node.address | (bit << (IPV4_LENGTH - 1 - node.length)), node.length + 1);
+                    childEntryChanged(node, bit, entry(prefix, node.effective));
+                } else {
+                    childEntryChanged(node, bit, null);
+                }
+            }
+        }
+    }
+
+    private static boolean sameEntry(FlowRule a, FlowRule b) {
+        return a == null ? b == null : b != null && a.exactMatch(b);
+    }
+
+    private static FlowRule entry(Node node, Action action) {
+        if (node.route != null && node.route.action.equals(action)) {
+            return node.route.rule;
+        }
+        return entry(IpPrefix.valueOf(node.address, node.length), action);
+    }
+
+    private static FlowRule entry(IpPrefix prefix, Action action) {
+        final FlowRule template = action.template;
+        final FlowRule.Builder builder = DefaultFlowRule.builder()
+                .forDevice(template.deviceId())
+                .forTable(template.table())
+                .fromApp(action.appId)
+                .withPriority(prefix.prefixLength())
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchIPDst(prefix)
+                                      .build())
+                .withTreatment(template.treatment());
+        if (template.isPermanent()) {
+            builder.makePermanent();
+        } else {
+            builder.makeTemporary(template.timeout());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Node of the binary trie, i.e., a prefix. Nodes exist for the logical
+     * routes and their ancestors.
+     */
+    private static final class Node {
+        private final Node parent;
+        private final int address;
+        private final int length;
+        private final Node[] children = new Node[2];
+        private Route route;
+        // Result of the bottom-up pass: the actions for which a single entry
+        // at this prefix is enough for the whole subtree, or empty if no
+        // route covers the prefix. Partial if only some of it is covered.
+        private Set<Action> actions = ImmutableSet.of();
+        private boolean partial;
+        // Action of the closest route at or above this prefix.
+        private Action effective;
+        // Result of the top-down pass: the entries of this prefix, and of
+        // its missing children, if any.
+        private Action inherited;
+        private FlowRule entry;
+        private final FlowRule[] childEntries = new FlowRule[2];
+        private boolean dirty = true;
+
+        private Node(Node parent, int address, int length) {
+            this.parent = parent;
+            this.address = address;
+            this.length = length;
+        }
+
+        private boolean isLeaf() {
+            return children[0] == null && children[1] == null;
+        }
+
+        private void candidates(Action effective) {
+            dirty = true;
+            this.effective = effective;
+            final Set<Action> leaf = effective == null ? ImmutableSet.of() : ImmutableSet.of(effective);
+            if (length == IPV4_LENGTH || isLeaf()) {
+                actions = leaf;
+                partial = false;
+                return;
+            }
+            // Missing children are covered by the effective route only.
+            final Node c0 = children[0];
+            final Node c1 = children[1];
+            final Set<Action> a0 = c0 == null ? leaf : c0.actions;
+            final Set<Action> a1 = c1 == null ? leaf : c1.actions;
+            final boolean p0 = c0 != null && c0.partial;
+            final boolean p1 = c1 != null && c1.partial;
+            if (p0 || p1 || a0.isEmpty() != a1.isEmpty()) {
+                actions = ImmutableSet.of();
+                partial = true;
+            } else {
+                final Set<Action> intersection = Sets.intersection(a0, a1);
+                actions = ImmutableSet.copyOf(intersection.isEmpty() ? Sets.union(a0, a1) : intersection);
+                partial = false;
+            }
+        }
+    }
+
+    private static final class Route {
+        private final FlowRule rule;
+        private final Action action;
+
+        private Route(FlowRule rule, Action action) {
+            this.rule = rule;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Action of a route, i.e., what makes two routes interchangeable.
+     */
+    private static final class Action {
+        private static final Comparator<Action> ORDER = Comparator
+                .comparing((Action a) -> a.treatment.toString())
+                .thenComparingInt(a -> a.appId.id());
+
+        private final ApplicationId appId;
+        private final TrafficTreatment treatment;
+        private final boolean permanent;
+        private final int timeout;
+        // Rule the action was found in.
+        private final FlowRule template;
+
+        private Action(ApplicationId appId, FlowRule rule) {
+            this.appId = appId;
+            this.treatment = rule.treatment();
+            this.permanent = rule.isPermanent();
+            this.timeout = rule.timeout();
+            this.template = rule;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Action other = (Action) o;
+            return permanent == other.permanent
+                    && timeout == other.timeout
+                    && treatment.equals(other.treatment)
+                    && appId.equals(other.appId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(appId, treatment, permanent, timeout);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperation;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.pi.model.PiTableId;
+import org.onosproject.net.pi.model.PiTableModel;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Per-device occupancy of the tables written by the fabric-tna pipeliner,
+ * used to reject objectives that would overflow a table before writing to the
+ * device, instead of failing asynchronously on the device write.
+ * <p>
+ * Occupancy is derived from the flow rule operations submitted by the
+ * pipeliner, entries written by other components, e.g., UPF or INT, are not
+ * counted. Capacities are the table sizes of the pipeline model. Like
+ * {@link PipelinerMetrics}, occupancy is kept in a static registry that can
+ * be queried by CLI and REST.
+ */
+public final class TableOccupancy {
+
+    private static final ConcurrentMap<DeviceId, TableOccupancy> OCCUPANCY =
+            Maps.newConcurrentMap();
+
+    private final DeviceId deviceId;
+    private volatile Map<PiTableId, Long> maxSizes = ImmutableMap.of();
+    // Application of each entry, to forget them when purged.
+    private final ConcurrentMap<PiTableId, ConcurrentMap<FlowId, Short>> entries =
+            Maps.newConcurrentMap();
+    // Entries reserved by objectives being processed, guarded by this.
+    private final Map<PiTableId, Integer> reserved = Maps.newHashMap();
+
+    private TableOccupancy(DeviceId deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    /**
+     * Returns the occupancy of the given device, creating it if needed.
+     *
+     * @param deviceId device ID
+     * @return table occupancy
+     */
+    public static TableOccupancy forDevice(DeviceId deviceId) {
+        checkNotNull(deviceId);
+        return OCCUPANCY.computeIfAbsent(deviceId, TableOccupancy::new);
+    }
+
+    /**
+     * Forgets the occupancy of the given device, e.g., when removed.
+     *
+     * @param deviceId device ID
+     */
+    public static void remove(DeviceId deviceId) {
+        OCCUPANCY.remove(deviceId);
+    }
+
+    /**
+     * Forgets the occupancy of all devices.
+     */
+    public static void clear() {
+        OCCUPANCY.clear();
+    }
+
+    /**
+     * Returns the occupancy of all devices.
+     *
+     * @return map of device ID to table occupancy
+     */
+    public static Map<DeviceId, TableOccupancy> all() {
+        return ImmutableMap.copyOf(OCCUPANCY);
+    }
+
+    /**
+     * Returns the device ID of this occupancy.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the tables with at least one entry written by the pipeliner.
+     *
+     * @return table IDs
+     */
+    public Set<PiTableId> tables() {
+        return ImmutableMap.copyOf(entries).keySet();
+    }
+
+    /**
+     * Returns the number of entries of the given table.
+     *
+     * @param tableId table ID
+     * @return number of entries
+     */
+    public int occupancy(PiTableId tableId) {
+        final Map<FlowId, Short> tableEntries = entries.get(tableId);
+        return tableEntries == null ? 0 : tableEntries.size();
+    }
+
+    /**
+     * Returns the size of the given table, or -1 if unknown.
+     *
+     * @param tableId table ID
+     * @return table size or -1
+     */
+    public long maxSize(PiTableId tableId) {
+        return maxSizes.getOrDefault(tableId, -1L);
+    }
+
+    /**
+     * Sets the table sizes from the given table models.
+     *
+     * @param tables table models of the pipeline model
+     */
+    void setMaxSizes(Collection<PiTableModel> tables) {
+        final ImmutableMap.Builder<PiTableId, Long> builder = ImmutableMap.builder();
+        tables.stream()
+                .filter(t -> t.maxSize() > 0)
+                .forEach(t -> builder.put(t.id(), t.maxSize()));
+        maxSizes = builder.build();
+    }
+
+    /**
+     * Reserves the entries needed to add the given flow rules, unless a table
+     * would overflow, atomically with respect to other reservations. Rules
+     * already in a table do not use a new entry, while entries reserved for
+     * other objectives count as used. The reservation must be released once
+     * the rules are added, or not.
+     *
+     * @param flowRules flow rules to add
+     * @return reservation, with the overflowing table if nothing was reserved
+     */
+    synchronized Reservation reserve(Collection<FlowRule> flowRules) {
+        final Map<PiTableId, Integer> added = newEntries(flowRules);
+        final PiTableId overflowing = overflowingTable(added);
+        if (overflowing != null) {
+            return new Reservation(Map.of(), overflowing);
+        }
+        added.forEach((tableId, n) -> reserved.merge(tableId, n, Integer::sum));
+        return new Reservation(added, null);
+    }
+
+    /**
+     * Releases the given reservation. Entries actually added are counted by
+     * {@link #update(FlowRuleOperations)}.
+     *
+     * @param reservation reservation
+     */
+    synchronized void release(Reservation reservation) {
+        reservation.entries.forEach((tableId, n) -> reserved.computeIfPresent(
+                tableId, (id, r) -> r > n ? r - n : null));
+    }
+
+    private Map<PiTableId, Integer> newEntries(Collection<FlowRule> flowRules) {
+        final Map<PiTableId, Integer> added = Maps.newHashMap();
+        for (FlowRule flowRule : flowRules) {
+            if (!(flowRule.table() instanceof PiTableId)) {
+                continue;
+            }
+            final PiTableId tableId = (PiTableId) flowRule.table();
+            final Map<FlowId, Short> tableEntries = entries.get(tableId);
+            if (tableEntries == null || !tableEntries.containsKey(flowRule.id())) {
+                added.merge(tableId, 1, Integer::sum);
+            }
+        }
+        return added;
+    }
+
+    private PiTableId overflowingTable(Map<PiTableId, Integer> added) {
+        for (Map.Entry<PiTableId, Integer> e : added.entrySet()) {
+            final long maxSize = maxSize(e.getKey());
+            if (maxSize > 0 && occupancy(e.getKey()) + reserved.getOrDefault(e.getKey(), 0)
+                    + e.getValue() > maxSize) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Updates the occupancy with the given operations, submitted to the
+     * flow rule service.
+     *
+     * @param ops flow rule operations
+     */
+    void update(FlowRuleOperations ops) {
+        ops.stages().forEach(stage -> stage.forEach(op -> {
+            if (!(op.rule().table() instanceof PiTableId)) {
+                return;
+            }
+            final PiTableId tableId = (PiTableId) op.rule().table();
+            if (op.type() == FlowRuleOperation.Type.REMOVE) {
+                entries.computeIfPresent(tableId, (id, tableEntries) -> {
+                    tableEntries.remove(op.rule().id());
+                    return tableEntries.isEmpty() ? null : tableEntries;
+                });
+            } else {
+                entries.computeIfAbsent(tableId, id -> Maps.newConcurrentMap())
+                        .put(op.rule().id(), op.rule().appId());
+            }
+        }));
+    }
+
+    /**
+     * Forgets the entries of the given application, e.g., when purged from
+     * the device.
+     *
+     * @param appId application ID
+     */
+    void purge(ApplicationId appId) {
+        entries.values().forEach(tableEntries -> tableEntries.values().removeIf(a -> a == appId.id()));
+        entries.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * Entries reserved for the flow rules of an objective.
+     */
+    static final class Reservation {
+        private final Map<PiTableId, Integer> entries;
+        private final PiTableId overflowingTable;
+
+        private Reservation(Map<PiTableId, Integer> entries, PiTableId overflowingTable) {
+            this.entries = entries;
+            this.overflowingTable = overflowingTable;
+        }
+
+        /**
+         * Returns the table that would overflow, or null if the entries were
+         * reserved.
+         *
+         * @return table ID or null
+         */
+        PiTableId overflowingTable() {
+            return overflowingTable;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.onlab.packet.Ip4Prefix;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.drivers.p4runtime.AbstractP4RuntimeHandlerBehaviour;
+import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.behaviour.upf.UpfApplication;
 import org.onosproject.net.behaviour.upf.UpfCounter;
@@ -31,6 +32,7 @@ import org.onosproject.net.flow.DefaultTrafficTreatment;
 import org.onosproject.net.flow.FlowEntry;
 import org.onosproject.net.flow.FlowRule;
 import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.criteria.PiCriterion;
 import org.onosproject.net.meter.Meter;
 import org.onosproject.net.meter.MeterCellId;
@@ -44,17 +46,21 @@ import org.onosproject.net.packet.PacketService;
 import org.onosproject.net.pi.model.PiCounterId;
 import org.onosproject.net.pi.model.PiCounterModel;
 import org.onosproject.net.pi.model.PiMeterModel;
+import org.onosproject.net.pi.model.PiPipelineInterpreter;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.model.PiTableModel;
 import org.onosproject.net.pi.runtime.PiCounterCell;
 import org.onosproject.net.pi.runtime.PiCounterCellHandle;
 import org.onosproject.net.pi.runtime.PiCounterCellId;
 import org.onosproject.net.pi.runtime.PiMeterCellId;
+import org.onosproject.net.pi.runtime.PiPacketOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.stratumproject.fabric.tna.Constants;
 import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
+import org.stratumproject.fabric.tna.behaviour.FabricInterpreter;
 import org.stratumproject.fabric.tna.behaviour.FabricUtils;
+import org.stratumproject.fabric.tna.behaviour.PacketOutBatcher;
 import org.stratumproject.fabric.tna.slicing.api.SliceId;
 import org.stratumproject.fabric.tna.slicing.api.SlicingService;
 import org.stratumproject.fabric.tna.slicing.api.TrafficClass;
@@ -98,7 +104,7 @@ import static org.stratumproject.fabric.tna.behaviour.P4InfoConstants.HDR_UE_SES
  * Implementation of a UPF programmable device behavior.
  */
 public class FabricUpfProgrammable extends AbstractP4RuntimeHandlerBehaviour
-        implements UpfProgrammable {
+        implements UpfProgrammable, UpfPacketOutProgrammable {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private static final int DEFAULT_PRIORITY = 128;
@@ -106,10 +112,15 @@ public class FabricUpfProgrammable extends AbstractP4RuntimeHandlerBehaviour
 
     private static final ImmutableSet<UpfEntityType> COUNTER_TYPES =
             ImmutableSet.of(UpfEntityType.COUNTER, UpfEntityType.INGRESS_COUNTER, UpfEntityType.EGRESS_COUNTER);
+    // Use TABLE logical port to have pkt routed via pipeline tables.
+    private static final TrafficTreatment TABLE_OUTPUT = DefaultTrafficTreatment.builder()
+            .setOutput(PortNumber.TABLE)
+            .build();
 
     protected FlowRuleService flowRuleService;
     protected MeterService meterService;
     protected PacketService packetService;
+    protected MastershipService mastershipService;
     protected SlicingService slicingService;
     protected FabricUpfTranslator upfTranslator;
 
@@ -149,6 +160,7 @@ public class FabricUpfProgrammable extends AbstractP4RuntimeHandlerBehaviour
         flowRuleService = handler().get(FlowRuleService.class);
         meterService = handler().get(MeterService.class);
         packetService = handler().get(PacketService.class);
+        mastershipService = handler().get(MastershipService.class);
         slicingService = handler().get(SlicingService.class);
         upfTranslator = new FabricUpfTranslator();
         final CoreService coreService = handler().get(CoreService.class);
@@ -158,7 +170,7 @@ public class FabricUpfProgrammable extends AbstractP4RuntimeHandlerBehaviour
             return false;
         }
 
-        var capabilities = new FabricCapabilities(pipeconf);
+        var capabilities = FabricCapabilities.of(pipeconf);
         if (!capabilities.supportUpf()) {
             log.warn("Pipeconf {} on {} does not support UPF capabilities, " +
                              "cannot perform {}",
@@ -329,16 +341,74 @@ public class FabricUpfProgrammable extends AbstractP4RuntimeHandlerBehaviour
         if (!setupBehaviour("sendPacketOut()")) {
             return;
         }
-        final OutboundPacket pkt = new DefaultOutboundPacket(
-                deviceId,
-                // Use TABLE logical port to have pkt routed via pipeline tables.
-                DefaultTrafficTreatment.builder()
-                        .setOutput(PortNumber.TABLE)
-                        .build(),
-                data);
+        final OutboundPacket pkt = new DefaultOutboundPacket(deviceId, TABLE_OUTPUT, data);
         packetService.emit(pkt);
     }
 
+    /**
+     * Sends the given packets through the pipeline tables, in batches of
+     * packet-outs written to the P4Runtime stream of the device. Packets are
+     * sent via the packet service if this instance is not the master of the
+     * device.
+     *
+     * @param data packets
+     * @return false if any of the packets could not be mapped to packet-outs,
+     * or if the packets were dropped because too many packet-outs are pending
+     * for the device
+     */
+    @Override
+    public boolean sendPacketOuts(Collection<ByteBuffer> data) {
+        if (!setupBehaviour("sendPacketOuts()")) {
+            return false;
+        }
+        final List<OutboundPacket> packets = data.stream()
+                .map(d -> new DefaultOutboundPacket(deviceId, TABLE_OUTPUT, d))
+                .collect(Collectors.toList());
+        final PiPipelineInterpreter interpreter = handler().hasBehaviour(PiPipelineInterpreter.class)
+                ? handler().behaviour(PiPipelineInterpreter.class) : null;
+        if (!(interpreter instanceof FabricInterpreter) || !mastershipService.isLocalMaster(deviceId)) {
+            // The packet service relays packets to the master instance.
+            packets.forEach(packetService::emit);
+            return true;
+        }
+        final List<PiPacketOperation> operations = Lists.newArrayList();
+        final boolean mapped = mapOutboundPackets((FabricInterpreter) interpreter, packets, operations);
+        final PacketOutBatcher batcher = PacketOutBatcher.forDevice(deviceId);
+        if (!batcher.offer(operations, this::writeBatch)) {
+            log.warn("Dropping {} packet-outs for {}, too many pending", operations.size(), deviceId);
+            return false;
+        }
+        batcher.flush(this::writeBatch);
+        return mapped;
+    }
+
+    private boolean mapOutboundPackets(FabricInterpreter interpreter, List<OutboundPacket> packets,
+                                       List<PiPacketOperation> operations) {
+        try {
+            operations.addAll(interpreter.mapOutboundPackets(packets));
+            return true;
+        } catch (PiPipelineInterpreter.PiInterpreterException e) {
+            // Map again one packet at a time, to send all the valid ones.
+            log.debug("Unable to map {} packet-outs for {} at once: {}", packets.size(), deviceId, e.getMessage());
+        }
+        boolean mapped = true;
+        for (OutboundPacket packet : packets) {
+            try {
+                operations.addAll(interpreter.mapOutboundPacket(packet));
+            } catch (PiPipelineInterpreter.PiInterpreterException e) {
+                log.warn("Dropping packet-out for {}: {}", deviceId, e.getMessage());
+                mapped = false;
+            }
+        }
+        return mapped;
+    }
+
+    private void writeBatch(List<PiPacketOperation> batch) {
+        for (PiPacketOperation operation : batch) {
+            client.packetOut(p4DeviceId, operation, pipeconf);
+        }
+    }
+
     @Override
     public void cleanUp() {
         if (!setupBehaviour("cleanUp()")) {
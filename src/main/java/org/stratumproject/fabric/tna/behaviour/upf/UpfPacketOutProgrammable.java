@@ -0,0 +1,26 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.upf;
+
+import org.onosproject.net.driver.HandlerBehaviour;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Behaviour to send bursts of packets through the UPF pipeline of a device,
+ * e.g., the packets drained from dbuf. Complements
+ * {@link org.onosproject.net.behaviour.upf.UpfProgrammable#sendPacketOut(ByteBuffer)},
+ * which sends one packet at a time.
+ */
+public interface UpfPacketOutProgrammable extends HandlerBehaviour {
+
+    /**
+     * Sends the given packets through the pipeline tables, in order. Packets
+     * that cannot be sent are dropped, the other ones are still sent.
+     *
+     * @param data packets
+     * @return false if any of the packets was dropped
+     */
+    boolean sendPacketOuts(Collection<ByteBuffer> data);
+}
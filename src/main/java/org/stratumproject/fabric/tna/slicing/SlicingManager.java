@@ -526,7 +526,7 @@ public class SlicingManager implements SlicingService, SlicingProviderService, S
 
     private FabricCapabilities getCapabilities(DeviceId deviceId) throws RuntimeException {
         return pipeconfService.getPipeconf(deviceId)
-                .map(FabricCapabilities::new)
+                .map(FabricCapabilities::of)
                 .orElseThrow(() -> new RuntimeException(
                         "Cannot get capabilities for deviceId " + deviceId.toString()));
     }
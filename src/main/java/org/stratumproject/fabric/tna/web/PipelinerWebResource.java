@@ -0,0 +1,153 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna.web;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.pi.model.PiTableId;
+import org.onosproject.rest.AbstractWebResource;
+import org.stratumproject.fabric.tna.behaviour.PacketInLimiter;
+import org.stratumproject.fabric.tna.behaviour.PacketOutBatcher;
+import org.stratumproject.fabric.tna.behaviour.TreatmentMappingCache;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.CompletionDispatcher;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.LatencyHistogram;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.PipelinerMetrics;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.TableOccupancy;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+/**
+ * Query pipeliner latency, error and table occupancy statistics.
+ */
+@Path("pipeliner")
+public class PipelinerWebResource extends AbstractWebResource {
+
+    /**
+     * Get pipeliner statistics of all devices.
+     *
+     * @return 200 ok and pipeliner statistics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("stats")
+    public Response getStats() {
+        ObjectNode root = mapper().createObjectNode();
+        root.put("objectiveQueue", ObjectiveExecutor.sharedPending());
+        root.put("completionQueue", CompletionDispatcher.sharedQueueDepth());
+        TreatmentMappingCache treatmentCache = TreatmentMappingCache.shared();
+        root.putObject("treatmentCache")
+                .put("size", treatmentCache.size())
+                .put("hits", treatmentCache.hitCount())
+                .put("misses", treatmentCache.missCount())
+                .put("hitRate", treatmentCache.hitRate());
+        ArrayNode array = root.putArray("Devices");
+        for (Map.Entry<DeviceId, PipelinerMetrics> entry : PipelinerMetrics.all().entrySet()) {
+            array.add(encode(entry.getValue()));
+        }
+        return Response.ok(root).build();
+    }
+
+    /**
+     * Get pipeliner statistics of a device.
+     *
+     * @param deviceId ID of the device
+     * @return 200 ok and pipeliner statistics or 404 not found if there are no statistics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("stats/{deviceId}")
+    public Response getDeviceStats(@PathParam("deviceId") String deviceId) {
+        PipelinerMetrics metrics = PipelinerMetrics.all().get(DeviceId.deviceId(deviceId));
+        if (metrics == null) {
+            return Response.status(404).build();
+        }
+        return Response.ok(encode(metrics)).build();
+    }
+
+    private ObjectNode encode(PipelinerMetrics metrics) {
+        ObjectNode node = mapper().createObjectNode();
+        node.put("deviceId", metrics.deviceId().toString());
+        node.put("timeToFirstForwardingMs", metrics.timeToFirstForwardingMillis());
+        ArrayNode latencies = node.putArray("latencies");
+        ArrayNode errors = node.putArray("errors");
+        for (PipelinerMetrics.ObjectiveType type : PipelinerMetrics.ObjectiveType.values()) {
+            for (Objective.Operation op : Objective.Operation.values()) {
+                for (PipelinerMetrics.Stage stage : PipelinerMetrics.Stage.values()) {
+                    LatencyHistogram h = metrics.latency(type, op, stage);
+                    if (h.count() == 0) {
+                        continue;
+                    }
+                    latencies.addObject()
+                            .put("type", type.name())
+                            .put("op", op.name())
+                            .put("stage", stage.name())
+                            .put("count", h.count())
+                            .put("success", metrics.successes(type, op))
+                            .put("meanUs", h.meanMicros())
+                            .put("p50Us", h.percentileMicros(50))
+                            .put("p99Us", h.percentileMicros(99))
+                            .put("maxUs", h.maxMicros());
+                }
+            }
+            for (ObjectiveError error : ObjectiveError.values()) {
+                long count = metrics.errors(type, error);
+                if (count > 0) {
+                    errors.addObject()
+                            .put("type", type.name())
+                            .put("error", error.name())
+                            .put("count", count);
+                }
+            }
+        }
+        node.putObject("pendingNext")
+                .put("parked", metrics.parked())
+                .put("released", metrics.released())
+                .put("expired", metrics.expired());
+        PacketOutBatcher batcher = PacketOutBatcher.all().get(metrics.deviceId());
+        if (batcher != null) {
+            LatencyHistogram h = batcher.emitLatency();
+            node.putObject("packetOut")
+                    .put("batches", batcher.batches())
+                    .put("packets", batcher.packets())
+                    .put("meanBatchSize", batcher.meanBatchSize())
+                    .put("maxBatchSize", batcher.largestBatch())
+                    .put("rejected", batcher.rejected())
+                    .put("pending", batcher.pending())
+                    .put("meanUs", h.meanMicros())
+                    .put("p99Us", h.percentileMicros(99))
+                    .put("maxUs", h.maxMicros());
+        }
+        PacketInLimiter limiter = PacketInLimiter.all().get(metrics.deviceId());
+        if (limiter != null) {
+            ObjectNode limit = node.putObject("packetInLimit")
+                    .put("rate", limiter.rate())
+                    .put("burst", limiter.burst());
+            ArrayNode drops = limit.putArray("drops");
+            limiter.drops().forEach((port, count) -> drops.addObject()
+                    .put("port", port.toString())
+                    .put("dropped", count));
+        }
+        ArrayNode tables = node.putArray("tables");
+        TableOccupancy occupancy = TableOccupancy.all().get(metrics.deviceId());
+        if (occupancy != null) {
+            for (PiTableId tableId : occupancy.tables()) {
+                tables.addObject()
+                        .put("table", tableId.id())
+                        .put("entries", occupancy.occupancy(tableId))
+                        .put("size", occupancy.maxSize(tableId));
+            }
+        }
+        return node;
+    }
+}
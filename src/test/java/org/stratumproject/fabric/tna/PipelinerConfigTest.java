@@ -0,0 +1,61 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.stratumproject.fabric.tna;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.config.InvalidFieldException;
+import org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PipelinerConfig.
+ */
+public class PipelinerConfigTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    private static PipelinerConfig config(String json) throws IOException {
+        final JsonNode node = MAPPER.readTree(json);
+        final PipelinerConfig config = new PipelinerConfig();
+        config.init(DEVICE_ID, PipelinerConfig.KEY, node, MAPPER, null);
+        return config;
+    }
+
+    @Test
+    public void testConcurrency() throws IOException {
+        final PipelinerConfig config = config("{\"concurrency\": {\"filtering\": 4, \"acl\": 1}}");
+        assertTrue(config.isValid());
+        assertEquals(Map.of(ObjectiveExecutor.Priority.FILTERING, 4, ObjectiveExecutor.Priority.ACL, 1),
+                     config.concurrency());
+    }
+
+    @Test
+    public void testUnknownPriority() throws IOException {
+        exceptionRule.expect(InvalidFieldException.class);
+        exceptionRule.expectMessage("filtring");
+        config("{\"concurrency\": {\"filtring\": 4}}").isValid();
+    }
+
+    @Test
+    public void testInvalidConcurrency() throws IOException {
+        assertFalse(config("{\"concurrency\": {\"filtering\": 0}}").isValid());
+        assertFalse(config("{\"concurrency\": {\"filtering\": \"4\"}}").isValid());
+        assertFalse(config("{\"concurrency\": 4}").isValid());
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.onosproject.net.pi.model.PiPipeconf;
+import org.onosproject.net.pi.model.PiPipeconfId;
+import org.onosproject.net.pi.model.PiPipelineModel;
+import org.stratumproject.fabric.tna.behaviour.upf.MockPiPipelineModel;
+import org.stratumproject.fabric.tna.behaviour.upf.MockTableModel;
+
+import java.util.Collections;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.stratumproject.fabric.tna.Constants.TNA;
+
+/**
+ * Tests for FabricCapabilities.
+ */
+public class FabricCapabilitiesTest {
+
+    private static final PiPipeconfId PIPECONF_ID =
+            new PiPipeconfId("org.stratumproject.fabric.montara_sde_9_5_0");
+
+    /**
+     * Creates a mock pipeconf expecting the given number of calls to the
+     * pipeline model, or any number of calls if negative.
+     */
+    private PiPipeconf pipeconf(int pipelineModelCalls) {
+        PiPipelineModel pipelineModel = new MockPiPipelineModel(
+                ImmutableList.of(new MockTableModel(P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED, 1024)),
+                Collections.emptyList(), Collections.emptyList(), TNA);
+        PiPipeconf pipeconf = createMock(PiPipeconf.class);
+        expect(pipeconf.id()).andReturn(PIPECONF_ID).anyTimes();
+        if (pipelineModelCalls > 0) {
+            expect(pipeconf.pipelineModel()).andReturn(pipelineModel).times(pipelineModelCalls);
+        } else {
+            expect(pipeconf.pipelineModel()).andReturn(pipelineModel).anyTimes();
+        }
+        replay(pipeconf);
+        return pipeconf;
+    }
+
+    /**
+     * Checks that capabilities are derived from the pipeline model only once.
+     */
+    @Test
+    public void testCapabilitiesComputedOnce() {
+        // hasHashedTable, isArchTna, isArchV1model, supportUpf
+        PiPipeconf pipeconf = pipeconf(4);
+        FabricCapabilities capabilities = new FabricCapabilities(pipeconf);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(capabilities.hasHashedTable());
+            assertTrue(capabilities.isArchTna());
+            assertFalse(capabilities.isArchV1model());
+            assertFalse(capabilities.supportUpf());
+            assertEquals(2, capabilities.hwPipeCount());
+        }
+        verify(pipeconf);
+    }
+
+    /**
+     * Checks that capabilities and interpreters are shared per pipeconf.
+     */
+    @Test
+    public void testSharedPerPipeconf() {
+        PiPipeconf pipeconf = pipeconf(-1);
+        FabricCapabilities capabilities = FabricCapabilities.of(pipeconf);
+        assertSame(capabilities, FabricCapabilities.of(pipeconf));
+        assertEquals(PIPECONF_ID, capabilities.pipeconfId());
+        FabricInterpreter interpreter = FabricInterpreter.shared(capabilities);
+        assertSame(interpreter, FabricInterpreter.shared(capabilities));
+
+        // A pipeconf registered again with the same ID replaces the cached entries.
+        PiPipeconf newPipeconf = pipeconf(-1);
+        FabricCapabilities newCapabilities = FabricCapabilities.of(newPipeconf);
+        assertNotSame(capabilities, newCapabilities);
+        assertSame(newCapabilities, FabricCapabilities.of(newPipeconf));
+        assertNotSame(interpreter, FabricInterpreter.shared(newCapabilities));
+    }
+}
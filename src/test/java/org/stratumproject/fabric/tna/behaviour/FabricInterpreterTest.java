@@ -26,6 +26,7 @@ import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.OutboundPacket;
 import org.onosproject.net.pi.model.PiPacketOperationType;
 import org.onosproject.net.pi.model.PiPipeconf;
+import org.onosproject.net.pi.model.PiPipeconfId;
 import org.onosproject.net.pi.model.PiPipelineInterpreter;
 import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
@@ -38,12 +39,15 @@ import org.stratumproject.fabric.tna.slicing.api.TrafficClassDescription;
 
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 /**
  * Test for fabric interpreter.
@@ -67,6 +71,8 @@ public class FabricInterpreterTest {
         replay(data);
 
         PiPipeconf piPipeconf = createNiceMock(PiPipeconf.class);
+        expect(piPipeconf.id()).andReturn(new PiPipeconfId("org.stratumproject.fabric.test")).anyTimes();
+        replay(piPipeconf);
 
         PiPipeconfService piPipeconfService = createNiceMock(PiPipeconfService.class);
         expect(piPipeconfService.getPipeconf(DEVICE_ID)).andReturn(Optional.of(piPipeconf));
@@ -375,6 +381,35 @@ public class FabricInterpreterTest {
         assertEquals(expectedPktOp, result.iterator().next());
     }
 
+    @Test
+    public void testMapOutboundPackets()
+            throws PiPipelineInterpreter.PiInterpreterException,
+            ImmutableByteSequence.ByteSequenceTrimException {
+        TrafficTreatment tableTreatment = DefaultTrafficTreatment.builder()
+                .setOutput(PortNumber.TABLE)
+                .build();
+        TrafficTreatment portTreatment = DefaultTrafficTreatment.builder()
+                .setOutput(PortNumber.portNumber(1))
+                .build();
+        List<OutboundPacket> packets = List.of(
+                new DefaultOutboundPacket(DEVICE_ID, tableTreatment, ByteBuffer.allocate(64)),
+                new DefaultOutboundPacket(DEVICE_ID, portTreatment, ByteBuffer.allocate(80)),
+                new DefaultOutboundPacket(DEVICE_ID, tableTreatment, ByteBuffer.allocate(96)));
+        List<PiPacketOperation> result = interpreter.mapOutboundPackets(packets);
+        assertEquals(3, result.size());
+
+        List<PiPacketMetadata> tableMetadata = PacketOutMetadata.of(0, true, SYSTEM_QUEUE_ID);
+        List<PiPacketMetadata> portMetadata = PacketOutMetadata.of(1, false, SYSTEM_QUEUE_ID);
+        for (int i = 0; i < packets.size(); i++) {
+            PiPacketOperation expectedPktOp = PiPacketOperation.builder()
+                    .withType(PiPacketOperationType.PACKET_OUT)
+                    .withData(ImmutableByteSequence.copyFrom(packets.get(i).data()))
+                    .withMetadatas(i == 1 ? portMetadata : tableMetadata)
+                    .build();
+            assertEquals(expectedPktOp, result.get(i));
+        }
+    }
+
     @Test
     public void testMapInboundPacket() throws ImmutableByteSequence.ByteSequenceTrimException,
             PiPipelineInterpreter.PiInterpreterException {
@@ -408,6 +443,45 @@ public class FabricInterpreterTest {
         assertEquals(result.unparsed(), expectedInboundPacket.unparsed());
     }
 
+    @Test
+    public void testMapInboundPacketLimited() throws ImmutableByteSequence.ByteSequenceTrimException,
+            PiPipelineInterpreter.PiInterpreterException {
+        PiPacketOperation pktInOp = PiPacketOperation.builder()
+                .withMetadata(PiPacketMetadata.builder()
+                        .withId(P4InfoConstants.INGRESS_PORT)
+                        .withValue(ImmutableByteSequence.copyFrom(1L)
+                                .fit(P4InfoConstants.INGRESS_PORT_BITWIDTH))
+                        .build())
+                .withData(ImmutableByteSequence.ofZeros(Ethernet.ETHERNET_HEADER_LENGTH))
+                .withType(PiPacketOperationType.PACKET_IN)
+                .build();
+        PacketInLimiter.configure(DEVICE_ID, 1, 1);
+        try {
+            assertNotNull(interpreter.mapInboundPacket(pktInOp, DEVICE_ID));
+            assertNull(interpreter.mapInboundPacket(pktInOp, DEVICE_ID));
+            assertEquals(Long.valueOf(1),
+                         PacketInLimiter.all().get(DEVICE_ID).drops().get(PortNumber.portNumber(1)));
+        } finally {
+            PacketInLimiter.remove(DEVICE_ID);
+        }
+    }
+
+    @Test(expected = PiPipelineInterpreter.PiInterpreterException.class)
+    public void testMapInboundPacketTooShort() throws ImmutableByteSequence.ByteSequenceTrimException,
+            PiPipelineInterpreter.PiInterpreterException {
+        PiPacketMetadata pktInMetadata = PiPacketMetadata.builder()
+                .withId(P4InfoConstants.INGRESS_PORT)
+                .withValue(ImmutableByteSequence.copyFrom(1L)
+                        .fit(P4InfoConstants.INGRESS_PORT_BITWIDTH))
+                .build();
+        PiPacketOperation pktInOp = PiPacketOperation.builder()
+                .withMetadata(pktInMetadata)
+                .withData(ImmutableByteSequence.copyFrom(new byte[Ethernet.ETHERNET_HEADER_LENGTH - 1]))
+                .withType(PiPacketOperationType.PACKET_IN)
+                .build();
+        interpreter.mapInboundPacket(pktInOp, DEVICE_ID);
+    }
+
     @Test
     public void testMapInboundPacketWithShortMetadata() throws ImmutableByteSequence.ByteSequenceTrimException,
             PiPipelineInterpreter.PiInterpreterException {
@@ -0,0 +1,84 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultPort;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.provider.ProviderId;
+
+import java.util.List;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for FloodPortCache.
+ */
+public class FloodPortCacheTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+    private static final Device DEVICE = new DefaultDevice(
+            new ProviderId("of", "foo"), DEVICE_ID, Device.Type.SWITCH, "", "", "", "", null);
+
+    private FloodPortCache cache;
+    private DeviceService deviceService;
+
+    @Before
+    public void setUp() {
+        cache = new FloodPortCache();
+        deviceService = createMock(DeviceService.class);
+    }
+
+    private static Port port(long number) {
+        return new DefaultPort(DEVICE, PortNumber.portNumber(number), true);
+    }
+
+    @Test
+    public void testCachedUntilEvent() {
+        deviceService.addListener(cache);
+        expect(deviceService.getPorts(DEVICE_ID)).andReturn(ImmutableList.of(port(1), port(2))).once();
+        expect(deviceService.getPorts(DEVICE_ID)).andReturn(ImmutableList.of(port(1))).once();
+        replay(deviceService);
+        cache.start(deviceService);
+
+        final List<PortNumber> ports = ImmutableList.of(PortNumber.portNumber(1), PortNumber.portNumber(2));
+        assertEquals(ports, cache.floodPorts(DEVICE_ID, deviceService));
+        assertEquals(ports, cache.floodPorts(DEVICE_ID, deviceService));
+        cache.event(new DeviceEvent(DeviceEvent.Type.PORT_REMOVED, DEVICE, port(2)));
+        assertEquals(ImmutableList.of(PortNumber.portNumber(1)), cache.floodPorts(DEVICE_ID, deviceService));
+        verify(deviceService);
+    }
+
+    @Test
+    public void testRelevantEvents() {
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_ADDED, DEVICE, port(1))));
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_UPDATED, DEVICE, port(1))));
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_REMOVED, DEVICE, port(1))));
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.DEVICE_REMOVED, DEVICE)));
+        assertFalse(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_STATS_UPDATED, DEVICE)));
+        assertFalse(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.DEVICE_AVAILABILITY_CHANGED, DEVICE)));
+    }
+
+    @Test
+    public void testNotCachedWhenStopped() {
+        expect(deviceService.getPorts(DEVICE_ID)).andReturn(ImmutableList.of(port(1))).times(2);
+        replay(deviceService);
+        cache.floodPorts(DEVICE_ID, deviceService);
+        cache.floodPorts(DEVICE_ID, deviceService);
+        verify(deviceService);
+    }
+}
@@ -0,0 +1,71 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import org.junit.Test;
+import org.onlab.packet.Data;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.ImmutableByteSequence;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for LazyInboundPacket.
+ */
+public class LazyInboundPacketTest {
+
+    private static final ConnectPoint RECEIVED_FROM =
+            new ConnectPoint(DeviceId.deviceId("device:1"), PortNumber.portNumber(1));
+
+    private static Ethernet ethernet() {
+        Ethernet packet = new Ethernet();
+        packet.setDestinationMACAddress(MacAddress.valueOf("00:00:00:00:00:01"));
+        packet.setSourceMACAddress(MacAddress.valueOf("00:00:00:00:00:02"));
+        packet.setEtherType((short) 0xBA00);
+        packet.setPayload(new Data(new byte[]{1, 2, 3}));
+        return packet;
+    }
+
+    @Test
+    public void testParsedOnce() {
+        Ethernet packet = ethernet();
+        LazyInboundPacket inbound = new LazyInboundPacket(
+                RECEIVED_FROM, ImmutableByteSequence.copyFrom(packet.serialize()));
+        assertEquals(packet, inbound.parsed());
+        assertSame(inbound.parsed(), inbound.parsed());
+        assertEquals(RECEIVED_FROM, inbound.receivedFrom());
+        assertTrue(inbound.cookie().isEmpty());
+    }
+
+    @Test
+    public void testUnparsedIsArrayBacked() {
+        byte[] data = ethernet().serialize();
+        LazyInboundPacket inbound = new LazyInboundPacket(RECEIVED_FROM, ImmutableByteSequence.copyFrom(data));
+        ByteBuffer unparsed = inbound.unparsed();
+        assertTrue(unparsed.hasArray());
+        assertArrayEquals(data, unparsed.array());
+        // Each call returns a new buffer.
+        unparsed.get();
+        assertEquals(ByteBuffer.wrap(data), inbound.unparsed());
+    }
+
+    @Test
+    public void testUnparseable() {
+        // Truncated ethernet header.
+        LazyInboundPacket inbound = new LazyInboundPacket(
+                RECEIVED_FROM, ImmutableByteSequence.copyFrom(new byte[]{1, 2, 3}));
+        Ethernet parsed = inbound.parsed();
+        assertEquals(MacAddress.ZERO, parsed.getDestinationMAC());
+        assertEquals(new Data(new byte[]{1, 2, 3}), parsed.getPayload());
+        assertEquals(3, inbound.unparsed().remaining());
+    }
+}
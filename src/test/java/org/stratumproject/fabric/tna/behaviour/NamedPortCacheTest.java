@@ -0,0 +1,87 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultPort;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.provider.ProviderId;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for NamedPortCache.
+ */
+public class NamedPortCacheTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+    private static final Device DEVICE = new DefaultDevice(
+            new ProviderId("of", "foo"), DEVICE_ID, Device.Type.SWITCH, "", "", "", "", null);
+    private static final PortNumber PORT_1 = PortNumber.portNumber(1);
+    private static final PortNumber NAMED_PORT_1 = PortNumber.portNumber(1, "1/0");
+    private static final PortNumber RENAMED_PORT_1 = PortNumber.portNumber(1, "1/1");
+
+    private NamedPortCache cache;
+    private DeviceService deviceService;
+
+    @Before
+    public void setUp() {
+        cache = new NamedPortCache();
+        deviceService = createMock(DeviceService.class);
+    }
+
+    private static Port port(PortNumber number) {
+        return new DefaultPort(DEVICE, number, true, DefaultAnnotations.EMPTY);
+    }
+
+    @Test
+    public void testCachedUntilEvent() {
+        deviceService.addListener(cache);
+        expect(deviceService.getPort(DEVICE_ID, PORT_1)).andReturn(port(NAMED_PORT_1)).once();
+        expect(deviceService.getPort(DEVICE_ID, PORT_1)).andReturn(port(RENAMED_PORT_1)).once();
+        expect(deviceService.getPort(DEVICE_ID, PORT_1)).andReturn(null).once();
+        replay(deviceService);
+        cache.start(deviceService);
+
+        assertEquals(NAMED_PORT_1.name(), cache.namedPort(DEVICE_ID, PORT_1).name());
+        assertEquals(NAMED_PORT_1.name(), cache.namedPort(DEVICE_ID, PORT_1).name());
+        cache.event(new DeviceEvent(DeviceEvent.Type.PORT_UPDATED, DEVICE, port(RENAMED_PORT_1)));
+        assertEquals(RENAMED_PORT_1.name(), cache.namedPort(DEVICE_ID, PORT_1).name());
+        cache.event(new DeviceEvent(DeviceEvent.Type.DEVICE_REMOVED, DEVICE));
+        assertEquals(PORT_1, cache.namedPort(DEVICE_ID, PORT_1));
+        assertEquals(PORT_1, cache.namedPort(DEVICE_ID, PORT_1));
+        verify(deviceService);
+    }
+
+    @Test
+    public void testNotCachedWhenStopped() {
+        replay(deviceService);
+        assertNull(cache.namedPort(DEVICE_ID, PORT_1));
+        verify(deviceService);
+    }
+
+    @Test
+    public void testRelevantEvents() {
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_ADDED, DEVICE, port(NAMED_PORT_1))));
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_UPDATED, DEVICE, port(NAMED_PORT_1))));
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_REMOVED, DEVICE, port(NAMED_PORT_1))));
+        assertTrue(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.DEVICE_REMOVED, DEVICE)));
+        assertFalse(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.PORT_STATS_UPDATED, DEVICE)));
+        assertFalse(cache.isRelevant(new DeviceEvent(DeviceEvent.Type.DEVICE_AVAILABILITY_CHANGED, DEVICE)));
+    }
+}
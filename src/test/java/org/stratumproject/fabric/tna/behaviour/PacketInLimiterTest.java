@@ -0,0 +1,89 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PacketInLimiter.
+ */
+public class PacketInLimiterTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:limited");
+    private static final PortNumber PORT_1 = PortNumber.portNumber(1);
+    private static final PortNumber PORT_2 = PortNumber.portNumber(2);
+
+    private final AtomicLong now = new AtomicLong();
+    private PacketInLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new PacketInLimiter(10, 2, now::get);
+    }
+
+    @After
+    public void tearDown() {
+        PacketInLimiter.remove(DEVICE_ID);
+    }
+
+    /**
+     * Tests that bursts are limited and that tokens are refilled at the
+     * configured rate, independently for each port.
+     */
+    @Test
+    public void testTokenBucket() {
+        assertTrue(limiter.tryAcquire(PORT_1));
+        assertTrue(limiter.tryAcquire(PORT_1));
+        assertFalse(limiter.tryAcquire(PORT_1));
+        assertTrue(limiter.tryAcquire(PORT_2));
+
+        // 10 packets per second, one token every 100 ms.
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(limiter.tryAcquire(PORT_1));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(limiter.tryAcquire(PORT_1));
+        assertFalse(limiter.tryAcquire(PORT_1));
+
+        // Never more than the burst.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(limiter.tryAcquire(PORT_1));
+        assertTrue(limiter.tryAcquire(PORT_1));
+        assertFalse(limiter.tryAcquire(PORT_1));
+
+        assertEquals(Map.of(PORT_1, 4L, PORT_2, 0L), limiter.drops());
+        limiter.reset();
+        assertEquals(Map.of(PORT_1, 0L, PORT_2, 0L), limiter.drops());
+    }
+
+    /**
+     * Tests that only configured devices are limited.
+     */
+    @Test
+    public void testAdmit() {
+        assertTrue(PacketInLimiter.admit(DEVICE_ID, PORT_1));
+        PacketInLimiter.configure(DEVICE_ID, 1, 1);
+        assertTrue(PacketInLimiter.admit(DEVICE_ID, PORT_1));
+        assertFalse(PacketInLimiter.admit(DEVICE_ID, PORT_1));
+
+        PacketInLimiter.configure(DEVICE_ID, 100, 50);
+        PacketInLimiter configured = PacketInLimiter.all().get(DEVICE_ID);
+        assertEquals(100, configured.rate());
+        assertEquals(50, configured.burst());
+        assertEquals(Map.of(PORT_1, 1L), configured.drops());
+
+        PacketInLimiter.remove(DEVICE_ID);
+        assertTrue(PacketInLimiter.admit(DEVICE_ID, PORT_1));
+    }
+}
@@ -0,0 +1,108 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.util.ImmutableByteSequence;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.pi.model.PiPacketOperationType;
+import org.onosproject.net.pi.runtime.PiPacketOperation;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PacketOutBatcher.
+ */
+public class PacketOutBatcherTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+
+    private PacketOutBatcher batcher;
+    private List<List<PiPacketOperation>> sent;
+
+    @Before
+    public void setUp() {
+        batcher = new PacketOutBatcher(DEVICE_ID, 4, 8);
+        sent = Lists.newArrayList();
+    }
+
+    private static List<PiPacketOperation> packets(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> PiPacketOperation.builder()
+                        .withType(PiPacketOperationType.PACKET_OUT)
+                        .withData(ImmutableByteSequence.ofZeros(i + 1))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Tests that full batches are sent when offered and the rest when flushed.
+     */
+    @Test
+    public void testBatching() {
+        List<PiPacketOperation> packets = packets(6);
+        assertTrue(batcher.offer(packets, sent::add));
+        assertEquals(1, sent.size());
+        assertEquals(packets.subList(0, 4), sent.get(0));
+        assertEquals(2, batcher.pending());
+
+        assertEquals(2, batcher.flush(sent::add));
+        assertEquals(2, sent.size());
+        assertEquals(packets.subList(4, 6), sent.get(1));
+        assertEquals(0, batcher.pending());
+        assertEquals(0, batcher.flush(sent::add));
+
+        assertEquals(2, batcher.batches());
+        assertEquals(6, batcher.packets());
+        assertEquals(3.0, batcher.meanBatchSize(), 0);
+        assertEquals(4, batcher.largestBatch());
+        assertEquals(2, batcher.emitLatency().count());
+    }
+
+    /**
+     * Tests that packets are rejected when too many are pending.
+     */
+    @Test
+    public void testBackpressure() {
+        PacketOutBatcher.Sink blocked = batch -> {
+            throw new IllegalStateException("Not flushed");
+        };
+        batcher = new PacketOutBatcher(DEVICE_ID, 8, 8);
+        assertTrue(batcher.offer(packets(5), blocked));
+        assertFalse(batcher.offer(packets(4), blocked));
+        assertEquals(4, batcher.rejected());
+        assertEquals(5, batcher.pending());
+
+        assertEquals(5, batcher.flush(sent::add));
+        assertTrue(batcher.offer(packets(4), sent::add));
+
+        batcher.reset();
+        assertEquals(0, batcher.rejected());
+        assertEquals(0, batcher.batches());
+        assertEquals(4, batcher.pending());
+    }
+
+    /**
+     * Tests that the batcher of a removed device is forgotten.
+     */
+    @Test
+    public void testRemove() {
+        PacketOutBatcher shared = PacketOutBatcher.forDevice(DEVICE_ID);
+        assertSame(shared, PacketOutBatcher.forDevice(DEVICE_ID));
+        PacketOutBatcher.remove(DEVICE_ID);
+        assertFalse(PacketOutBatcher.all().containsKey(DEVICE_ID));
+        assertNotSame(shared, PacketOutBatcher.forDevice(DEVICE_ID));
+        PacketOutBatcher.clear();
+        assertTrue(PacketOutBatcher.all().isEmpty());
+    }
+}
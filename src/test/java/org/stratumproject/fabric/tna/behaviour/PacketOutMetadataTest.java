@@ -0,0 +1,56 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import org.junit.Test;
+import org.onlab.util.ImmutableByteSequence;
+import org.onlab.util.ImmutableByteSequence.ByteSequenceTrimException;
+import org.onosproject.net.pi.model.PiPacketMetadataId;
+import org.onosproject.net.pi.runtime.PiPacketMetadata;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for PacketOutMetadata.
+ */
+public class PacketOutMetadataTest {
+
+    private static ImmutableByteSequence value(List<PiPacketMetadata> metadata, PiPacketMetadataId id) {
+        return metadata.stream()
+                .filter(m -> m.id().equals(id))
+                .findFirst()
+                .orElseThrow()
+                .value();
+    }
+
+    @Test
+    public void testCached() throws ByteSequenceTrimException {
+        final List<PiPacketMetadata> metadata = PacketOutMetadata.of(1, false, 0);
+        assertSame(metadata, PacketOutMetadata.of(1, false, 0));
+        assertEquals(10, metadata.size());
+        assertEquals(ImmutableByteSequence.copyFrom(1).fit(P4InfoConstants.EGRESS_PORT_BITWIDTH),
+                     value(metadata, P4InfoConstants.EGRESS_PORT));
+    }
+
+    @Test
+    public void testVaryingFields() throws ByteSequenceTrimException {
+        final List<PiPacketMetadata> metadata = PacketOutMetadata.of(1, false, 0);
+        final List<PiPacketMetadata> forwarded = PacketOutMetadata.of(1, true, 0);
+        final List<PiPacketMetadata> otherQueue = PacketOutMetadata.of(1, false, 7);
+        assertNotEquals(metadata, forwarded);
+        assertEquals(ImmutableByteSequence.copyFrom(1).fit(P4InfoConstants.DO_FORWARDING_BITWIDTH),
+                     value(forwarded, P4InfoConstants.DO_FORWARDING));
+        assertEquals(ImmutableByteSequence.copyFrom(7).fit(P4InfoConstants.QUEUE_ID_BITWIDTH),
+                     value(otherQueue, P4InfoConstants.QUEUE_ID));
+        assertEquals(value(metadata, P4InfoConstants.ETHER_TYPE), value(otherQueue, P4InfoConstants.ETHER_TYPE));
+    }
+
+    @Test(expected = ByteSequenceTrimException.class)
+    public void testPortTooBig() throws ByteSequenceTrimException {
+        PacketOutMetadata.of(1L << 32, false, 0);
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.pi.model.PiPipelineInterpreter.PiInterpreterException;
+import org.onosproject.net.pi.model.PiTableId;
+import org.onosproject.net.pi.runtime.PiAction;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for TreatmentMappingCache.
+ */
+public class TreatmentMappingCacheTest {
+
+    private static final PiAction PUSH_VLAN = PiAction.builder()
+            .withId(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_PUSH_VLAN)
+            .build();
+
+    private final AtomicInteger mapped = new AtomicInteger();
+    private TreatmentMappingCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new TreatmentMappingCache(2);
+        mapped.set(0);
+    }
+
+    private PiAction map(TrafficTreatment treatment, PiTableId tableId) {
+        mapped.incrementAndGet();
+        return PUSH_VLAN;
+    }
+
+    private static TrafficTreatment treatment(int vlanId) {
+        return DefaultTrafficTreatment.builder()
+                .pushVlan()
+                .setVlanId(VlanId.vlanId((short) vlanId))
+                .build();
+    }
+
+    @Test
+    public void testHit() throws PiInterpreterException {
+        final PiTableId table = P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN;
+        assertSame(PUSH_VLAN, cache.get(treatment(100), table, this::map));
+        // Equal treatment, different instance.
+        assertSame(PUSH_VLAN, cache.get(treatment(100), table, this::map));
+        assertEquals(1, mapped.get());
+        // Different table.
+        cache.get(treatment(100), P4InfoConstants.FABRIC_INGRESS_ACL_ACL, this::map);
+        assertEquals(2, mapped.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBounded() throws PiInterpreterException {
+        for (int i = 1; i <= 10; i++) {
+            cache.get(treatment(i), P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN, this::map);
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testErrorNotCached() {
+        final TreatmentMappingCache.Mapper failing = (t, id) -> {
+            mapped.incrementAndGet();
+            throw new PiInterpreterException("unsupported");
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(treatment(100), P4InfoConstants.FABRIC_INGRESS_ACL_ACL, failing);
+                fail("Expected PiInterpreterException");
+            } catch (PiInterpreterException e) {
+                assertEquals("unsupported", e.getMessage());
+            }
+        }
+        assertEquals(2, mapped.get());
+        assertEquals(0, cache.size());
+    }
+}
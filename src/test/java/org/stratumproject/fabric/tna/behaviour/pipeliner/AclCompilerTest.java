@@ -0,0 +1,200 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.TpPort;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.PiCriterion;
+import org.onosproject.net.pi.model.PiActionId;
+import org.onosproject.net.pi.runtime.PiAction;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.APP_ID;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.DEVICE_ID;
+
+/**
+ * Tests for AclCompiler.
+ */
+public class AclCompilerTest {
+
+    private static final TrafficTreatment DROP = treatment(P4InfoConstants.FABRIC_INGRESS_ACL_DROP);
+    private static final TrafficTreatment PUNT = treatment(P4InfoConstants.FABRIC_INGRESS_ACL_PUNT_TO_CPU);
+
+    private AclCompiler compiler;
+
+    @Before
+    public void setUp() {
+        compiler = new AclCompiler();
+    }
+
+    private static TrafficTreatment treatment(PiActionId actionId) {
+        return DefaultTrafficTreatment.builder()
+                .piTableAction(PiAction.builder().withId(actionId).build())
+                .build();
+    }
+
+    private static TrafficSelector.Builder tcp() {
+        return DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.TYPE_IPV4)
+                .matchIPProtocol(IPv4.PROTOCOL_TCP);
+    }
+
+    private static FlowRule rule(TrafficSelector selector, TrafficTreatment treatment, int priority) {
+        return DefaultFlowRule.builder()
+                .forDevice(DEVICE_ID)
+                .forTable(P4InfoConstants.FABRIC_INGRESS_ACL_ACL)
+                .fromApp(APP_ID)
+                .withPriority(priority)
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .makePermanent()
+                .build();
+    }
+
+    private static FlowRule tcpDst(int port, TrafficTreatment treatment, int priority) {
+        return rule(tcp().matchTcpDst(TpPort.tpPort(port)).build(), treatment, priority);
+    }
+
+    private static Set<TrafficSelector> selectors(Iterable<FlowRule> rules) {
+        return ImmutableSet.copyOf(rules).stream().map(FlowRule::selector).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testSingleRuleUnchanged() {
+        FlowRule rule = tcpDst(80, DROP, 10);
+        AclCompiler.Delta delta = compiler.add(APP_ID, ImmutableList.of(rule));
+        assertEquals(ImmutableList.of(rule), delta.toAdd());
+        assertTrue(delta.toRemove().isEmpty());
+
+        delta = compiler.remove(ImmutableList.of(rule));
+        assertTrue(delta.toAdd().isEmpty());
+        assertEquals(ImmutableList.of(rule), delta.toRemove());
+        assertEquals(0, compiler.logicalCount());
+        assertEquals(0, compiler.physicalCount());
+    }
+
+    @Test
+    public void testMergeAdjacentPorts() {
+        FlowRule r80 = tcpDst(80, DROP, 10);
+        FlowRule r81 = tcpDst(81, DROP, 10);
+        FlowRule r82 = tcpDst(82, DROP, 10);
+        FlowRule r83 = tcpDst(83, DROP, 10);
+        compiler.add(APP_ID, ImmutableList.of(r80));
+        AclCompiler.Delta delta = compiler.add(APP_ID, ImmutableList.of(r81));
+        TrafficSelector merged = tcp().matchTcpDstMasked(TpPort.tpPort(80), TpPort.tpPort(0xfffe)).build();
+        assertEquals(ImmutableSet.of(merged), selectors(delta.toAdd()));
+        assertEquals(ImmutableList.of(r80), delta.toRemove());
+
+        compiler.add(APP_ID, ImmutableList.of(r82, r83));
+        assertEquals(4, compiler.logicalCount());
+        assertEquals(1, compiler.physicalCount());
+        assertEquals(ImmutableSet.of(tcp().matchTcpDstMasked(TpPort.tpPort(80), TpPort.tpPort(0xfffc)).build()),
+                     selectors(compiler.physicalRules(r82.id())));
+
+        // Removal splits the merged entry again.
+        delta = compiler.remove(ImmutableList.of(r81));
+        assertEquals(ImmutableSet.of(r80.selector(), tcp().matchTcpDstMasked(
+                TpPort.tpPort(82), TpPort.tpPort(0xfffe)).build()), selectors(delta.toAdd()));
+        assertEquals(1, delta.toRemove().size());
+        assertEquals(2, compiler.physicalCount());
+    }
+
+    @Test
+    public void testNoMergeWithDifferentTreatment() {
+        compiler.add(APP_ID, ImmutableList.of(tcpDst(80, DROP, 10), tcpDst(81, PUNT, 10)));
+        assertEquals(2, compiler.physicalCount());
+    }
+
+    @Test
+    public void testMergePrefixes() {
+        FlowRule r1 = rule(tcp().matchIPDst(IpPrefix.valueOf("10.0.0.0/24")).build(), DROP, 10);
+        FlowRule r2 = rule(tcp().matchIPDst(IpPrefix.valueOf("10.0.1.0/24")).build(), DROP, 10);
+        FlowRule r3 = rule(tcp().matchIPDst(IpPrefix.valueOf("10.0.3.0/24")).build(), DROP, 10);
+        compiler.add(APP_ID, ImmutableList.of(r1, r2, r3));
+        // 10.0.1.0/24 and 10.0.3.0/24 differ by one bit, but not at the end of the prefix.
+        assertEquals(ImmutableSet.of(tcp().matchIPDst(IpPrefix.valueOf("10.0.0.0/23")).build()),
+                     selectors(compiler.physicalRules(r2.id())));
+        assertEquals(ImmutableSet.of(r3), compiler.physicalRules(r3.id()));
+        assertEquals(2, compiler.physicalCount());
+    }
+
+    @Test
+    public void testShadowedRule() {
+        FlowRule wide = rule(tcp().build(), PUNT, 20);
+        FlowRule narrow = tcpDst(80, DROP, 10);
+        compiler.add(APP_ID, ImmutableList.of(wide));
+        AclCompiler.Delta delta = compiler.add(APP_ID, ImmutableList.of(narrow));
+        assertTrue(delta.isEmpty());
+        assertTrue(compiler.physicalRules(narrow.id()).isEmpty());
+
+        // Installed when the shadowing rule is removed.
+        delta = compiler.remove(ImmutableList.of(wide));
+        assertEquals(ImmutableList.of(narrow), delta.toAdd());
+        assertEquals(ImmutableList.of(wide), delta.toRemove());
+    }
+
+    @Test
+    public void testShadowingRuleAdded() {
+        FlowRule narrow = tcpDst(80, DROP, 10);
+        FlowRule wide = rule(tcp().build(), PUNT, 20);
+        compiler.add(APP_ID, ImmutableList.of(narrow));
+        AclCompiler.Delta delta = compiler.add(APP_ID, ImmutableList.of(wide));
+        assertEquals(ImmutableList.of(wide), delta.toAdd());
+        assertEquals(ImmutableList.of(narrow), delta.toRemove());
+        assertEquals(2, compiler.logicalCount());
+        assertEquals(1, compiler.physicalCount());
+    }
+
+    @Test
+    public void testPortRange() {
+        // 1000-1999: 1000/8, 1008/16, 1024/512, 1536/256, 1792/128, 1920/64, 1984/16
+        FlowRule range = rule(tcp().matchPi(PiCriterion.builder()
+                                                    .matchRange(P4InfoConstants.HDR_L4_DPORT, 1000, 1999)
+                                                    .build()).build(), DROP, 10);
+        AclCompiler.Delta delta = compiler.add(APP_ID, ImmutableList.of(range));
+        assertEquals(7, delta.toAdd().size());
+        assertEquals(7, compiler.physicalRules(range.id()).size());
+        assertTrue(delta.toAdd().contains(rule(tcp().matchPi(PiCriterion.builder()
+                .matchTernary(P4InfoConstants.HDR_L4_DPORT, 1024L, 0xfe00L)
+                .build()).build(), DROP, 10)));
+
+        delta = compiler.remove(ImmutableList.of(range));
+        assertEquals(7, delta.toRemove().size());
+        assertEquals(0, compiler.physicalCount());
+    }
+
+    @Test
+    public void testRemoveUnknownRule() {
+        FlowRule rule = tcpDst(80, DROP, 10);
+        AclCompiler.Delta delta = compiler.remove(ImmutableList.of(rule));
+        assertEquals(ImmutableList.of(rule), delta.toRemove());
+    }
+
+    @Test
+    public void testPurge() {
+        FlowRule r80 = tcpDst(80, DROP, 10);
+        FlowRule r81 = tcpDst(81, DROP, 10);
+        compiler.add(APP_ID, ImmutableList.of(r80, r81));
+        AclCompiler.Delta delta = compiler.purge(APP_ID);
+        assertTrue(delta.toAdd().isEmpty());
+        assertEquals(1, delta.toRemove().size());
+        assertEquals(0, compiler.logicalCount());
+    }
+}
@@ -0,0 +1,88 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the objective completion dispatcher.
+ */
+public class CompletionDispatcherTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+    private static final int COMPLETIONS = 1000;
+
+    private CompletionDispatcher dispatcher;
+
+    @Before
+    public void setup() {
+        dispatcher = new CompletionDispatcher(4, 8);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testSameKeyIsOrdered() throws InterruptedException {
+        List<Integer> delivered = Collections.synchronizedList(Lists.newArrayList());
+        CountDownLatch done = new CountDownLatch(COMPLETIONS);
+        for (int i = 0; i < COMPLETIONS; i++) {
+            final int n = i;
+            dispatcher.dispatch(DEVICE_ID, 1, () -> {
+                delivered.add(n);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < COMPLETIONS; i++) {
+            assertEquals(i, (int) delivered.get(i));
+        }
+    }
+
+    @Test
+    public void testQueueDepth() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher.dispatch(DEVICE_ID, 1, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch(DEVICE_ID, 1, done::countDown);
+        dispatcher.dispatch(DEVICE_ID, 1, done::countDown);
+        assertEquals(2, dispatcher.queueDepth());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.queueDepth());
+    }
+
+    @Test
+    public void testExceptionDoesNotStopLane() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(DEVICE_ID, 1, () -> {
+            throw new IllegalStateException("test");
+        });
+        dispatcher.dispatch(DEVICE_ID, 1, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,113 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.PiCriterion;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.APP_ID;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.DEVICE_ID;
+
+/**
+ * Tests for EgressVlanRegistry.
+ */
+public class EgressVlanRegistryTest {
+
+    private static final VlanId VLAN_100 = VlanId.vlanId((short) 100);
+    private static final FabricNextGroup.EgressVlanKey KEY_1 =
+            new FabricNextGroup.EgressVlanKey(PortNumber.portNumber(1), VLAN_100);
+    private static final FabricNextGroup.EgressVlanKey KEY_2 =
+            new FabricNextGroup.EgressVlanKey(PortNumber.portNumber(2), VLAN_100);
+
+    private EgressVlanRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new EgressVlanRegistry();
+    }
+
+    private static FlowRule rule(FabricNextGroup.EgressVlanKey key, boolean tagged) {
+        final TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
+        if (tagged) {
+            treatment.pushVlan();
+        } else {
+            treatment.popVlan();
+        }
+        return DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchPi(PiCriterion.builder()
+                                                       .matchExact(P4InfoConstants.HDR_EG_PORT,
+                                                                   key.port().toLong())
+                                                       .build())
+                                      .matchVlanId(key.vlanId())
+                                      .build())
+                .withTreatment(treatment.build())
+                .forTable(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN)
+                .makePermanent()
+                .withPriority(0)
+                .forDevice(DEVICE_ID)
+                .fromApp(APP_ID)
+                .build();
+    }
+
+    @Test
+    public void testSharedRule() {
+        assertTrue(registry.acquire(1, KEY_1, rule(KEY_1, false)));
+        assertFalse(registry.acquire(2, KEY_1, rule(KEY_1, false)));
+        // Same next again.
+        assertFalse(registry.acquire(1, KEY_1, rule(KEY_1, false)));
+        assertEquals(1, registry.size());
+
+        assertNull(registry.release(1, KEY_1));
+        assertTrue(registry.contains(KEY_1));
+        // Not referenced by next 1 anymore.
+        assertNull(registry.release(1, KEY_1));
+        assertEquals(rule(KEY_1, false), registry.release(2, KEY_1));
+        assertFalse(registry.contains(KEY_1));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testTreatmentChanged() {
+        assertTrue(registry.acquire(1, KEY_1, rule(KEY_1, false)));
+        assertTrue(registry.acquire(2, KEY_1, rule(KEY_1, true)));
+        assertFalse(registry.acquire(1, KEY_1, rule(KEY_1, true)));
+        registry.release(1, KEY_1);
+        // The rule written last is removed.
+        assertTrue(registry.release(2, KEY_1).exactMatch(rule(KEY_1, true)));
+    }
+
+    @Test
+    public void testReleaseUnknown() {
+        assertNull(registry.release(1, KEY_1));
+        assertFalse(registry.contains(KEY_1));
+    }
+
+    @Test
+    public void testKeysAndPurge() {
+        registry.acquire(1, KEY_1, rule(KEY_1, false));
+        registry.acquire(1, KEY_2, rule(KEY_2, false));
+        registry.acquire(2, KEY_2, rule(KEY_2, false));
+        assertEquals(ImmutableSet.of(KEY_1, KEY_2), registry.keys(1));
+        assertEquals(ImmutableSet.of(KEY_2), registry.keys(2));
+
+        registry.purge(APP_ID);
+        assertEquals(0, registry.size());
+        assertTrue(registry.keys(1).isEmpty());
+        assertTrue(registry.keys(2).isEmpty());
+    }
+}
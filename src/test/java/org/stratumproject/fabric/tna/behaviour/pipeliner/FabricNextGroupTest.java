@@ -0,0 +1,76 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flowobjective.NextObjective;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the binary encoding of FabricNextGroup.
+ */
+public class FabricNextGroupTest {
+
+    private static final FabricNextGroup NEXT_GROUP = new FabricNextGroup(
+            NextObjective.Type.BROADCAST, 10,
+            ImmutableList.of(PortNumber.portNumber(1), PortNumber.portNumber(0xFFFFFFFDL)),
+            ImmutableList.of(20),
+            ImmutableList.of(new FabricNextGroup.EgressVlanKey(
+                    PortNumber.portNumber(1), VlanId.vlanId((short) 100))));
+
+    @Test
+    public void testRoundTrip() {
+        byte[] data = NEXT_GROUP.data();
+        // 1 + 1 + 4 + (2 + 2 * 8) + (2 + 4) + (2 + 10)
+        assertEquals(42, data.length);
+        FabricNextGroup decoded = FabricNextGroup.decode(data);
+        assertEquals(NEXT_GROUP, decoded);
+        assertEquals(NextObjective.Type.BROADCAST, decoded.type());
+        assertEquals(10, decoded.groupId());
+    }
+
+    @Test
+    public void testEmpty() {
+        FabricNextGroup empty = new FabricNextGroup(
+                NextObjective.Type.HASHED, FabricNextGroup.NO_GROUP,
+                ImmutableList.of(), ImmutableList.of(), ImmutableList.of());
+        assertEquals(empty, FabricNextGroup.decode(empty.data()));
+        assertTrue(empty.nextMappings().isEmpty());
+    }
+
+    @Test
+    public void testNextMappings() {
+        assertEquals(ImmutableList.of(
+                "BROADCAST -> OUTPUT:1",
+                "BROADCAST -> OUTPUT:" + PortNumber.portNumber(0xFFFFFFFDL),
+                "BROADCAST -> NEXT_ID:20",
+                "BROADCAST -> EGRESS_VLAN:1/100"),
+                     NEXT_GROUP.nextMappings());
+    }
+
+    @Test
+    public void testInvalidData() {
+        byte[] data = NEXT_GROUP.data();
+        data[0] = FabricNextGroup.VERSION + 1;
+        assertInvalid(data);
+        assertInvalid(Arrays.copyOf(NEXT_GROUP.data(), 20));
+        assertInvalid(new byte[0]);
+    }
+
+    private void assertInvalid(byte[] data) {
+        try {
+            FabricNextGroup.decode(data);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -3,6 +3,8 @@
 package org.stratumproject.fabric.tna.behaviour.pipeliner;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 import org.easymock.Capture;
@@ -12,37 +14,66 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.onlab.packet.Ethernet;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.TpPort;
+import org.onlab.packet.VlanId;
 import org.onosproject.TestApplicationId;
 import org.onosproject.core.ApplicationId;
+import org.onosproject.core.GroupId;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.PortNumber;
+import org.onosproject.net.behaviour.NextGroup;
+import org.onosproject.net.flow.DefaultFlowEntry;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowId;
 import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperation;
+import org.onosproject.net.flow.FlowRuleOperations;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.criteria.Criteria;
+import org.onosproject.net.flow.criteria.Criterion;
 import org.onosproject.net.flow.criteria.PiCriterion;
+import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.DefaultNextObjective;
+import org.onosproject.net.flowobjective.FlowObjectiveStore;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveContext;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.group.DefaultGroup;
+import org.onosproject.net.group.DefaultGroupBucket;
 import org.onosproject.net.group.DefaultGroupDescription;
 import org.onosproject.net.group.DefaultGroupKey;
 import org.onosproject.net.group.GroupBucket;
 import org.onosproject.net.group.GroupBuckets;
 import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupKey;
 import org.onosproject.net.group.GroupService;
 import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
 import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
 import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+import org.stratumproject.fabric.tna.behaviour.upf.MockTableModel;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.newCapture;
@@ -70,7 +101,10 @@ public class FabricPipelinerTest {
     private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
     private static final int DEFAULT_FLOW_PRIORITY = 100;
     private static final long CPU_PORT = 0xFFFFFFFDL;
+    private static final int NEXT_ID = 10;
+    private static final VlanId VLAN_100 = VlanId.vlanId((short) 100);
 
+    private FabricCapabilities capabilities;
     private FabricPipeliner pipeliner;
     private FlowRuleService flowRuleService;
     private GroupService groupService;
@@ -93,10 +127,12 @@ public class FabricPipelinerTest {
     @Before
     public void setup() {
         // Common setup between TNA and bmv2
-        FabricCapabilities capabilities = createMock(FabricCapabilities.class);
+        capabilities = createMock(FabricCapabilities.class);
         expect(capabilities.cpuPort()).andReturn(Optional.of(PORT_CPU)).anyTimes();
         expect(capabilities.isArchV1model()).andReturn(this.isArchV1model).anyTimes();
         expect(capabilities.isArchTna()).andReturn(!this.isArchV1model).anyTimes();
+        // Not backed by a registered pipeconf.
+        expect(capabilities.pipeconfId()).andReturn(null).anyTimes();
         replay(capabilities);
 
         // Services mock
@@ -215,78 +251,621 @@ public class FabricPipelinerTest {
 
     @Test
     public void testInitializePipeline() {
-        final Capture<FlowRule> capturedSwitchInfoRule = newCapture(CaptureType.ALL);
-        final Capture<FlowRule> capturedCpuIgVlanRule = newCapture(CaptureType.ALL);
-        final Capture<FlowRule> capturedCpuFwdClsRule = newCapture(CaptureType.ALL);
-        final Capture<FlowRule> capturedIgPortVlanRule = newCapture(CaptureType.ALL);
-        final Capture<FlowRule> capturedEgVlanRule = newCapture(CaptureType.ALL);
-        final Capture<FlowRule> capturedFwdClsIpRules = newCapture(CaptureType.ALL);
-        final Capture<FlowRule> capturedFwdClsMplsRules = newCapture(CaptureType.ALL);
+        final Capture<FlowRuleOperations> capturedOps = newCapture(CaptureType.ALL);
         final Capture<GroupDescription> capturedCloneGroup = newCapture(CaptureType.FIRST);
 
-        final List<FlowRule> expectedIgPortVlanRules = Lists.newArrayList();
-        final List<FlowRule> expectedEgVlanRules = Lists.newArrayList();
-        final List<FlowRule> expectedFwdClsIpRules = Lists.newArrayList();
-        final List<FlowRule> expectedFwdClsMplsRules = Lists.newArrayList();
-        final FlowRule expectedSwitchInfoRule = switchInfoRule();
-        final FlowRule expectedCpuIgVlanRule = buildIngressVlanRule(CPU_PORT);
-        final FlowRule expectedCpuFwdClsRule =
-                buildFwdClsRule(CPU_PORT, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING, DEFAULT_FLOW_PRIORITY);
+        final List<FlowRule> expectedRules = Lists.newArrayList(
+                switchInfoRule(),
+                buildIngressVlanRule(CPU_PORT),
+                buildFwdClsRule(CPU_PORT, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING, DEFAULT_FLOW_PRIORITY));
         final GroupDescription expectedPacketInCloneGroup = buildPacketInCloneGroup();
         final List<Long> recircPorts = this.isArchV1model ? V1MODEL_RECIRC_PORT : RECIRC_PORTS;
-
-        flowRuleService.applyFlowRules(
-                capture(capturedSwitchInfoRule),
-                capture(capturedCpuIgVlanRule),
-                capture(capturedCpuFwdClsRule));
-
-        groupService.addGroup(capture(capturedCloneGroup));
-        expectLastCall().once();
-
         recircPorts.forEach(port -> {
-            expectedIgPortVlanRules.add(buildIngressVlanRule(port));
-            expectedEgVlanRules.add(buildEgressVlanRule(port));
-            expectedFwdClsIpRules.add(
+            expectedRules.add(buildIngressVlanRule(port));
+            expectedRules.add(buildEgressVlanRule(port));
+            expectedRules.add(
                     buildFwdClsRule(port, null, Ethernet.TYPE_IPV4, FWD_IPV4_ROUTING, DEFAULT_FLOW_PRIORITY));
-            expectedFwdClsMplsRules.add(
+            expectedRules.add(
                     buildFwdClsRule(port,
                                     Ethernet.MPLS_UNICAST,
                                     Ethernet.TYPE_IPV4,
                                     FWD_MPLS,
                                     DEFAULT_FLOW_PRIORITY + 10));
-            flowRuleService.applyFlowRules(
-                    capture(capturedIgPortVlanRule),
-                    capture(capturedEgVlanRule),
-                    capture(capturedFwdClsIpRules),
-                    capture(capturedFwdClsMplsRules));
         });
 
+        // One group and one batch of rules.
+        groupService.addGroup(capture(capturedCloneGroup));
+        expectLastCall().once();
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().once();
+
         replay(flowRuleService);
         replay(groupService);
         pipeliner.initializePipeline();
 
-        assertTrue(expectedSwitchInfoRule.exactMatch(capturedSwitchInfoRule.getValue()));
-        assertTrue(expectedCpuIgVlanRule.exactMatch(capturedCpuIgVlanRule.getValue()));
-        assertTrue(expectedCpuFwdClsRule.exactMatch(capturedCpuFwdClsRule.getValue()));
         assertEquals(expectedPacketInCloneGroup, capturedCloneGroup.getValue());
-
-        for (int i = 0; i < recircPorts.size(); i++) {
-            FlowRule expectIgPortVlanRule = expectedIgPortVlanRules.get(i);
-            FlowRule actualIgPortVlanRule = capturedIgPortVlanRule.getValues().get(i);
-            FlowRule expectEgVlanRule = expectedEgVlanRules.get(i);
-            FlowRule actualEgVlanRule = capturedEgVlanRule.getValues().get(i);
-            FlowRule expectedFwdClsIpRule = expectedFwdClsIpRules.get(i);
-            FlowRule actualFwdClsIpRule = capturedFwdClsIpRules.getValues().get(i);
-            FlowRule expectedFwdClsMplsRule = expectedFwdClsMplsRules.get(i);
-            FlowRule actualFwdClsMplsRule = capturedFwdClsMplsRules.getValues().get(i);
-            assertTrue(expectIgPortVlanRule.exactMatch(actualIgPortVlanRule));
-            assertEquals(expectEgVlanRule, actualEgVlanRule);
-            assertTrue(expectEgVlanRule.exactMatch(actualEgVlanRule));
-            assertTrue(expectedFwdClsIpRule.exactMatch(actualFwdClsIpRule));
-            assertTrue(expectedFwdClsMplsRule.exactMatch(actualFwdClsMplsRule));
+        final List<FlowRuleOperation> ops = Iterables.getOnlyElement(capturedOps.getValue().stages())
+                .stream().collect(Collectors.toList());
+        assertEquals(expectedRules.size(), ops.size());
+        final Map<FlowId, FlowRule> actualRules = ops.stream()
+                .peek(op -> assertEquals(FlowRuleOperation.Type.ADD, op.type()))
+                .collect(Collectors.toMap(op -> op.rule().id(), FlowRuleOperation::rule));
+        for (FlowRule expected : expectedRules) {
+            assertTrue(expected.exactMatch(actualRules.get(expected.id())));
         }
 
         verify(flowRuleService);
         reset(flowRuleService);
     }
+
+    @Test
+    public void testInitializePipelineSharedTemplate() {
+        final DeviceId otherDevice = DeviceId.deviceId("device:2");
+        final Capture<FlowRuleOperations> capturedOps = newCapture(CaptureType.ALL);
+        final Capture<GroupDescription> capturedGroups = newCapture(CaptureType.ALL);
+        groupService.addGroup(capture(capturedGroups));
+        expectLastCall().times(2);
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().times(2);
+        replay(flowRuleService, groupService);
+
+        pipeliner.initializePipeline();
+        // Another device with the same pipeconf.
+        pipeliner.deviceId = otherDevice;
+        pipeliner.initializePipeline();
+        verify(flowRuleService, groupService);
+
+        assertEquals(DEVICE_ID, capturedGroups.getValues().get(0).deviceId());
+        assertEquals(otherDevice, capturedGroups.getValues().get(1).deviceId());
+        final Set<FlowRuleOperation> first = Iterables.getOnlyElement(capturedOps.getValues().get(0).stages());
+        final Set<FlowRuleOperation> second = Iterables.getOnlyElement(capturedOps.getValues().get(1).stages());
+        assertEquals(first.size(), second.size());
+        assertTrue(first.stream().allMatch(op -> op.rule().deviceId().equals(DEVICE_ID)));
+        assertTrue(second.stream().allMatch(op -> op.rule().deviceId().equals(otherDevice)));
+    }
+
+    @Test
+    public void testModifyBroadcastNext() throws FabricPipelinerException {
+        final FlowObjectiveStore flowObjectiveStore = createMock(FlowObjectiveStore.class);
+        pipeliner.flowObjectiveStore = flowObjectiveStore;
+        final PortNumber port1 = PortNumber.portNumber(1);
+        final PortNumber port2 = PortNumber.portNumber(2);
+        final PortNumber port3 = PortNumber.portNumber(3);
+        final NextObjective modify = DefaultNextObjective.builder()
+                .withId(NEXT_ID)
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withType(NextObjective.Type.BROADCAST)
+                .addTreatment(DefaultTrafficTreatment.builder().setOutput(port1).build())
+                .addTreatment(DefaultTrafficTreatment.builder().setOutput(port3).build())
+                .fromApp(APP_ID)
+                .modify();
+
+        // Egress VLAN rule of port 1 is already installed, while the one of
+        // port 2 is not used anymore.
+        final FlowRule egressVlanRule1 = buildNextEgressVlanRule(port1);
+        final FlowRule egressVlanRule2 = buildNextEgressVlanRule(port2);
+        final FlowRule egressVlanRule3 = buildNextEgressVlanRule(port3);
+        final GroupKey groupKey = new DefaultGroupKey(KRYO.serialize(NEXT_ID));
+        final GroupDescription allGroup = new DefaultGroupDescription(
+                DEVICE_ID, GroupDescription.Type.ALL,
+                new GroupBuckets(ImmutableList.of(allBucket(port1), allBucket(port3))),
+                groupKey, NEXT_ID, APP_ID);
+        final ObjectiveTranslation translation = ObjectiveTranslation.builder()
+                .addGroup(allGroup)
+                .addFlowRule(egressVlanRule1)
+                .addFlowRule(egressVlanRule3)
+                .build();
+
+        final FabricNextGroup stored = new FabricNextGroup(
+                NextObjective.Type.BROADCAST, NEXT_ID, ImmutableList.of(port1, port2),
+                ImmutableList.of(), ImmutableList.of(
+                        new FabricNextGroup.EgressVlanKey(port1, VLAN_100),
+                        new FabricNextGroup.EgressVlanKey(port2, VLAN_100)));
+        expect(flowObjectiveStore.getNextGroup(NEXT_ID)).andReturn(stored).anyTimes();
+        // Installed before the pipeliner was initialized.
+        expect(flowObjectiveStore.getAllGroups()).andReturn(Map.of(NEXT_ID, stored));
+        expect(flowRuleService.getFlowEntries(DEVICE_ID)).andReturn(ImmutableList.of(
+                new DefaultFlowEntry(egressVlanRule1), new DefaultFlowEntry(egressVlanRule2),
+                new DefaultFlowEntry(buildNextVlanRule(NEXT_ID))));
+        final Capture<NextGroup> capturedNextGroup = newCapture();
+        flowObjectiveStore.putNextGroup(eq(NEXT_ID), capture(capturedNextGroup));
+        expectLastCall().once();
+
+        expect(groupService.getGroup(DEVICE_ID, groupKey)).andReturn(new DefaultGroup(
+                GroupId.valueOf(NEXT_ID), DEVICE_ID, GroupDescription.Type.ALL,
+                new GroupBuckets(ImmutableList.of(allBucket(port1), allBucket(port2)))));
+        final Capture<GroupBuckets> capturedBuckets = newCapture();
+        groupService.setBucketsForGroup(eq(DEVICE_ID), eq(groupKey), capture(capturedBuckets),
+                                        eq(groupKey), eq(APP_ID));
+        expectLastCall().once();
+
+        expect(flowRuleService.getFlowEntry(egressVlanRule3)).andReturn(null);
+        final Capture<FlowRuleOperations> capturedOps = newCapture();
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().once();
+
+        replay(flowObjectiveStore, groupService, flowRuleService);
+        pipeliner.seedEgressVlans();
+        pipeliner.handleResult(modify, translation);
+        verify(flowObjectiveStore, groupService, flowRuleService);
+
+        assertEquals(ImmutableList.of(allBucket(port1), allBucket(port3)),
+                     capturedBuckets.getValue().buckets());
+        // Only the egress VLAN rule of port 3 is added, the one of port 2 is removed.
+        final List<FlowRuleOperation> ops = capturedOps.getValue().stages().stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+        assertEquals(2, ops.size());
+        final FlowRuleOperation add = ops.stream()
+                .filter(op -> op.type() == FlowRuleOperation.Type.ADD)
+                .findFirst().orElseThrow();
+        final FlowRuleOperation remove = ops.stream()
+                .filter(op -> op.type() == FlowRuleOperation.Type.REMOVE)
+                .findFirst().orElseThrow();
+        assertTrue(egressVlanRule3.exactMatch(add.rule()));
+        assertEquals(egressVlanRule2.id(), remove.rule().id());
+        assertEquals(ImmutableSet.of("BROADCAST -> OUTPUT:1", "BROADCAST -> OUTPUT:3",
+                                     "BROADCAST -> EGRESS_VLAN:1/100",
+                                     "BROADCAST -> EGRESS_VLAN:3/100"),
+                     ImmutableSet.copyOf(FabricNextGroup.decode(
+                             capturedNextGroup.getValue().data()).nextMappings()));
+    }
+
+    @Test
+    public void testModifyBroadcastNextAddBucket() throws FabricPipelinerException {
+        final FlowObjectiveStore flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        pipeliner.flowObjectiveStore = flowObjectiveStore;
+        final PortNumber port1 = PortNumber.portNumber(1);
+        final PortNumber port2 = PortNumber.portNumber(2);
+        final NextObjective modify = DefaultNextObjective.builder()
+                .withId(NEXT_ID)
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withType(NextObjective.Type.BROADCAST)
+                .addTreatment(DefaultTrafficTreatment.builder().setOutput(port1).build())
+                .addTreatment(DefaultTrafficTreatment.builder().setOutput(port2).build())
+                .fromApp(APP_ID)
+                .modify();
+        final GroupKey groupKey = new DefaultGroupKey(KRYO.serialize(NEXT_ID));
+        final ObjectiveTranslation translation = ObjectiveTranslation.builder()
+                .addGroup(new DefaultGroupDescription(
+                        DEVICE_ID, GroupDescription.Type.ALL,
+                        new GroupBuckets(ImmutableList.of(allBucket(port1), allBucket(port2))),
+                        groupKey, NEXT_ID, APP_ID))
+                .build();
+
+        // Only the new bucket is added, the group is not rewritten.
+        expect(groupService.getGroup(DEVICE_ID, groupKey)).andReturn(new DefaultGroup(
+                GroupId.valueOf(NEXT_ID), DEVICE_ID, GroupDescription.Type.ALL,
+                new GroupBuckets(ImmutableList.of(allBucket(port1)))));
+        groupService.addBucketsToGroup(DEVICE_ID, groupKey,
+                                       new GroupBuckets(ImmutableList.of(allBucket(port2))),
+                                       groupKey, APP_ID);
+        expectLastCall().once();
+
+        replay(flowObjectiveStore, groupService, flowRuleService);
+        pipeliner.handleResult(modify, translation);
+        verify(groupService, flowRuleService);
+    }
+
+    @Test
+    public void testModifyHashedNext() throws FabricPipelinerException {
+        pipeliner.flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        final PortNumber port1 = PortNumber.portNumber(1);
+        final PortNumber port2 = PortNumber.portNumber(2);
+        final PortNumber port3 = PortNumber.portNumber(3);
+        final PortNumber port4 = PortNumber.portNumber(4);
+        final GroupKey groupKey = new DefaultGroupKey(KRYO.serialize(NEXT_ID));
+
+        // Port 2 is replaced by port 4 in place, ports 1 and 3 keep their position.
+        expect(groupService.getGroup(DEVICE_ID, groupKey)).andReturn(selectGroup(
+                selectBucket(port1, 1), selectBucket(port2, 1), selectBucket(port3, 1)));
+        final Capture<GroupBuckets> capturedBuckets = newCapture(CaptureType.ALL);
+        groupService.setBucketsForGroup(eq(DEVICE_ID), eq(groupKey), capture(capturedBuckets),
+                                        eq(groupKey), eq(APP_ID));
+        expectLastCall().times(2);
+        // Same members with a different weight, the group is rewritten.
+        expect(groupService.getGroup(DEVICE_ID, groupKey)).andReturn(selectGroup(
+                selectBucket(port1, 1), selectBucket(port4, 1), selectBucket(port3, 1)));
+        replay(pipeliner.flowObjectiveStore, groupService, flowRuleService);
+
+        pipeliner.handleResult(hashedNext(port3, port4, port1).modify(), hashedTranslation(
+                groupKey, selectBucket(port3, 1), selectBucket(port4, 1), selectBucket(port1, 1)));
+        pipeliner.handleResult(hashedNext(port1, port4, port3).modify(), hashedTranslation(
+                groupKey, selectBucket(port1, 1), selectBucket(port4, 2), selectBucket(port3, 1)));
+        verify(groupService, flowRuleService);
+
+        assertEquals(ImmutableList.of(selectBucket(port1, 1), selectBucket(port4, 1), selectBucket(port3, 1)),
+                     capturedBuckets.getValues().get(0).buckets());
+        final List<Short> weights = capturedBuckets.getValues().get(1).buckets().stream()
+                .map(GroupBucket::weight)
+                .collect(Collectors.toList());
+        assertEquals(ImmutableList.of((short) 1, (short) 2, (short) 1), weights);
+    }
+
+    @Test
+    public void testModifyMissingGroup() throws FabricPipelinerException {
+        pipeliner.flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        final PortNumber port1 = PortNumber.portNumber(1);
+        final GroupKey groupKey = new DefaultGroupKey(KRYO.serialize(NEXT_ID));
+        final ObjectiveTranslation translation = hashedTranslation(groupKey, selectBucket(port1, 1));
+
+        // Not in the store, e.g., removed from the device, the group is added.
+        expect(groupService.getGroup(DEVICE_ID, groupKey)).andReturn(null);
+        groupService.addGroup(Iterables.getOnlyElement(translation.groups()));
+        expectLastCall().once();
+        replay(pipeliner.flowObjectiveStore, groupService, flowRuleService);
+
+        pipeliner.handleResult(hashedNext(port1).modify(), translation);
+        verify(groupService, flowRuleService);
+    }
+
+    private DefaultNextObjective.Builder hashedNext(PortNumber... ports) {
+        final DefaultNextObjective.Builder builder = DefaultNextObjective.builder()
+                .withId(NEXT_ID)
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withType(NextObjective.Type.HASHED)
+                .fromApp(APP_ID);
+        Arrays.stream(ports).forEach(port -> builder.addTreatment(
+                DefaultTrafficTreatment.builder().setOutput(port).build()));
+        return builder;
+    }
+
+    private ObjectiveTranslation hashedTranslation(GroupKey groupKey, GroupBucket... buckets)
+            throws FabricPipelinerException {
+        return ObjectiveTranslation.builder()
+                .addGroup(new DefaultGroupDescription(
+                        DEVICE_ID, GroupDescription.Type.SELECT,
+                        new GroupBuckets(ImmutableList.copyOf(buckets)),
+                        groupKey, NEXT_ID, APP_ID))
+                .build();
+    }
+
+    private DefaultGroup selectGroup(GroupBucket... buckets) {
+        return new DefaultGroup(GroupId.valueOf(NEXT_ID), DEVICE_ID, GroupDescription.Type.SELECT,
+                                new GroupBuckets(ImmutableList.copyOf(buckets)));
+    }
+
+    private GroupBucket selectBucket(PortNumber port, int weight) {
+        return DefaultGroupBucket.createSelectGroupBucket(
+                DefaultTrafficTreatment.builder().setOutput(port).build(), (short) weight);
+    }
+
+    @Test
+    public void testSharedEgressVlanRule() throws FabricPipelinerException {
+        pipeliner.flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        final PortNumber port1 = PortNumber.portNumber(1);
+        final FlowRule egressVlanRule1 = buildNextEgressVlanRule(port1);
+        final ObjectiveTranslation translation = ObjectiveTranslation.builder()
+                .addFlowRule(egressVlanRule1)
+                .build();
+        final Capture<FlowRuleOperations> capturedOps = newCapture(CaptureType.ALL);
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().times(2);
+        replay(pipeliner.flowObjectiveStore, flowRuleService);
+
+        // Written for the first next only, removed with the last one.
+        pipeliner.handleResult(broadcastNext(NEXT_ID, port1).add(), translation);
+        pipeliner.handleResult(broadcastNext(NEXT_ID + 1, port1).add(), translation);
+        pipeliner.handleResult(broadcastNext(NEXT_ID, port1).remove(), translation);
+        pipeliner.handleResult(broadcastNext(NEXT_ID + 1, port1).remove(), translation);
+        verify(flowRuleService);
+
+        final List<FlowRuleOperation> add = Iterables.getOnlyElement(
+                capturedOps.getValues().get(0).stages()).stream().collect(Collectors.toList());
+        assertEquals(FlowRuleOperation.Type.ADD, Iterables.getOnlyElement(add).type());
+        final List<FlowRuleOperation> remove = Iterables.getOnlyElement(
+                capturedOps.getValues().get(1).stages()).stream().collect(Collectors.toList());
+        assertEquals(FlowRuleOperation.Type.REMOVE, Iterables.getOnlyElement(remove).type());
+        assertEquals(egressVlanRule1, Iterables.getOnlyElement(remove).rule());
+    }
+
+    @Test
+    public void testUnknownEgressVlanRuleNotRemoved() throws FabricPipelinerException {
+        pipeliner.flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        final PortNumber port1 = PortNumber.portNumber(1);
+        // Possibly used by another next objective installed before the
+        // pipeliner was initialized.
+        replay(pipeliner.flowObjectiveStore, flowRuleService);
+        pipeliner.handleResult(broadcastNext(NEXT_ID, port1).remove(), ObjectiveTranslation.builder()
+                .addFlowRule(buildNextEgressVlanRule(port1))
+                .build());
+        verify(flowRuleService);
+    }
+
+    @Test
+    public void testEgressVlansSeededAfterMembersChanged() throws FabricPipelinerException {
+        final FlowObjectiveStore flowObjectiveStore = new InMemoryFlowObjectiveStore();
+        pipeliner.flowObjectiveStore = flowObjectiveStore;
+        pipeliner.flowRuleService = createNiceMock(FlowRuleService.class);
+        replay(pipeliner.flowRuleService);
+        final PortNumber port1 = PortNumber.portNumber(1);
+        final PortNumber port2 = PortNumber.portNumber(2);
+        final FlowRule egressVlanRule1 = buildNextEgressVlanRule(port1);
+        final FlowRule egressVlanRule2 = buildNextEgressVlanRule(port2);
+        pipeliner.handleResult(broadcastNext(NEXT_ID, port1).add(),
+                               ObjectiveTranslation.builder().addFlowRule(egressVlanRule1).build());
+        pipeliner.handleResult(broadcastNext(NEXT_ID, port2).addToExisting(),
+                               ObjectiveTranslation.builder().addFlowRule(egressVlanRule2).build());
+        pipeliner.handleResult(broadcastNext(NEXT_ID, port1).removeFromExisting(),
+                               ObjectiveTranslation.builder().addFlowRule(egressVlanRule1).build());
+
+        // Initialized again, with the rule of port 2 only left on the device.
+        final FabricPipeliner reinitialized = new FabricPipeliner(capabilities);
+        reinitialized.flowRuleService = flowRuleService;
+        reinitialized.groupService = groupService;
+        reinitialized.flowObjectiveStore = flowObjectiveStore;
+        reinitialized.appId = APP_ID;
+        reinitialized.deviceId = DEVICE_ID;
+        expect(flowRuleService.getFlowEntries(DEVICE_ID)).andReturn(ImmutableList.of(
+                new DefaultFlowEntry(egressVlanRule2), new DefaultFlowEntry(buildNextVlanRule(NEXT_ID))));
+        final Capture<FlowRuleOperations> capturedOps = newCapture();
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().once();
+        replay(flowRuleService);
+        reinitialized.seedEgressVlans();
+        reinitialized.handleResult(broadcastNext(NEXT_ID, port2).remove(),
+                                   ObjectiveTranslation.builder().addFlowRule(egressVlanRule2).build());
+        verify(flowRuleService);
+
+        final FlowRuleOperation remove = Iterables.getOnlyElement(
+                Iterables.getOnlyElement(capturedOps.getValue().stages()));
+        assertEquals(FlowRuleOperation.Type.REMOVE, remove.type());
+        assertEquals(egressVlanRule2.id(), remove.rule().id());
+    }
+
+    private DefaultNextObjective.Builder broadcastNext(int nextId, PortNumber port) {
+        return DefaultNextObjective.builder()
+                .withId(nextId)
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withType(NextObjective.Type.BROADCAST)
+                .addTreatment(DefaultTrafficTreatment.builder().setOutput(port).build())
+                .fromApp(APP_ID);
+    }
+
+    @Test
+    public void testParkForwardUntilNext() {
+        final FlowObjectiveStore flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        pipeliner.flowObjectiveStore = flowObjectiveStore;
+        expect(flowObjectiveStore.getNextGroup(NEXT_ID)).andReturn(null).once();
+        expect(flowObjectiveStore.getNextGroup(NEXT_ID)).andReturn(createNiceMock(NextGroup.class)).anyTimes();
+        final Capture<FlowRuleOperations> capturedOps = newCapture(CaptureType.ALL);
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().once();
+        replay(flowObjectiveStore, flowRuleService);
+        final PipelinerMetrics metrics = PipelinerMetrics.forDevice(DEVICE_ID);
+        final long parked = metrics.parked();
+        final long released = metrics.released();
+
+        final DefaultForwardingObjective.Builder bridging = DefaultForwardingObjective.builder()
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchVlanId(VLAN_100)
+                                      .matchEthDst(MacAddress.valueOf("00:00:00:00:00:01"))
+                                      .build())
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                .nextStep(NEXT_ID)
+                .fromApp(APP_ID)
+                .makePermanent();
+        // Not written until the next is installed, the remove is kept in order.
+        pipeliner.forward(bridging.add());
+        pipeliner.forward(bridging.remove());
+        assertEquals(parked + 2, metrics.parked());
+        assertTrue(capturedOps.getValues().isEmpty());
+
+        pipeliner.handleResult(broadcastNext(NEXT_ID, PortNumber.portNumber(1)).add(),
+                               ObjectiveTranslation.builder().build());
+        verify(flowRuleService);
+        assertEquals(released + 2, metrics.released());
+        // Written in one batch, with the removal in a later stage.
+        final List<FlowRuleOperation.Type> types = capturedOps.getValue().stages().stream()
+                .map(stage -> Iterables.getOnlyElement(stage).type())
+                .collect(Collectors.toList());
+        assertEquals(ImmutableList.of(FlowRuleOperation.Type.ADD, FlowRuleOperation.Type.REMOVE), types);
+    }
+
+    @Test
+    public void testParkForwardsOfSeveralSelectors() {
+        final FlowObjectiveStore flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+        pipeliner.flowObjectiveStore = flowObjectiveStore;
+        expect(flowObjectiveStore.getNextGroup(NEXT_ID)).andReturn(null).times(3);
+        expect(flowObjectiveStore.getNextGroup(NEXT_ID)).andReturn(createNiceMock(NextGroup.class)).anyTimes();
+        final Capture<FlowRuleOperations> capturedOps = newCapture(CaptureType.ALL);
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().once();
+        replay(flowObjectiveStore, flowRuleService);
+
+        for (int host = 1; host <= 3; host++) {
+            pipeliner.forward(DefaultForwardingObjective.builder()
+                                      .withSelector(DefaultTrafficSelector.builder()
+                                                            .matchVlanId(VLAN_100)
+                                                            .matchEthDst(MacAddress.valueOf(host))
+                                                            .build())
+                                      .withPriority(DEFAULT_FLOW_PRIORITY)
+                                      .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                                      .nextStep(NEXT_ID)
+                                      .fromApp(APP_ID)
+                                      .makePermanent()
+                                      .add());
+        }
+        pipeliner.handleResult(broadcastNext(NEXT_ID, PortNumber.portNumber(1)).add(),
+                               ObjectiveTranslation.builder().build());
+        verify(flowRuleService);
+        // Written in one batch, in a single stage.
+        final List<FlowRuleOperation> ops = Iterables.getOnlyElement(capturedOps.getValue().stages())
+                .stream().collect(Collectors.toList());
+        assertEquals(3, ops.size());
+        assertTrue(ops.stream().allMatch(op -> op.type() == FlowRuleOperation.Type.ADD));
+    }
+
+    @Test
+    public void testNextRemovedAfterForwards() {
+        final NextObjective nextRemove = broadcastNext(NEXT_ID, PortNumber.portNumber(1)).remove();
+        final List<String> events = Lists.newArrayList();
+        flowRuleService.apply(anyObject(FlowRuleOperations.class));
+        expectLastCall().andAnswer(() -> {
+            // Removal of the next requested while its forward is in flight.
+            events.add("forward");
+            pipeliner.next(nextRemove);
+            events.add("forward done");
+            return null;
+        }).once();
+        flowRuleService.apply(anyObject(FlowRuleOperations.class));
+        expectLastCall().andAnswer(() -> {
+            events.add("next");
+            return null;
+        }).once();
+        groupService.removeGroup(eq(DEVICE_ID), anyObject(), eq(APP_ID));
+        expectLastCall().once();
+        replay(flowRuleService, groupService);
+
+        pipeliner.forward(DefaultForwardingObjective.builder()
+                                  .withSelector(DefaultTrafficSelector.builder()
+                                                        .matchVlanId(VLAN_100)
+                                                        .matchEthDst(MacAddress.valueOf("00:00:00:00:00:01"))
+                                                        .build())
+                                  .withPriority(DEFAULT_FLOW_PRIORITY)
+                                  .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                                  .nextStep(NEXT_ID)
+                                  .fromApp(APP_ID)
+                                  .makePermanent()
+                                  .remove());
+        verify(flowRuleService, groupService);
+        assertEquals(ImmutableList.of("forward", "forward done", "next"), events);
+    }
+
+    @Test
+    public void testTableFull() throws FabricPipelinerException {
+        final FlowRule acl80 = buildAclRule(80);
+        final FlowRule acl81 = buildAclRule(81);
+        pipeliner.occupancy = TableOccupancy.forDevice(DEVICE_ID);
+        pipeliner.occupancy.setMaxSizes(ImmutableList.of(
+                new MockTableModel(P4InfoConstants.FABRIC_INGRESS_ACL_ACL, 1)));
+        pipeliner.occupancy.update(FlowRuleOperations.builder().add(acl80).build());
+        final CompletableFuture<ObjectiveError> error = new CompletableFuture<>();
+        final ForwardingObjective obj = DefaultForwardingObjective.builder()
+                .withSelector(acl81.selector())
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withFlag(ForwardingObjective.Flag.VERSATILE)
+                .withTreatment(DefaultTrafficTreatment.builder().wipeDeferred().build())
+                .fromApp(APP_ID)
+                .makePermanent()
+                .add(new ObjectiveContext() {
+                    @Override
+                    public void onError(Objective objective, ObjectiveError e) {
+                        error.complete(e);
+                    }
+                });
+        // Rejected before writing to the device.
+        replay(flowRuleService, groupService);
+        pipeliner.handleResult(obj, ObjectiveTranslation.builder().addFlowRule(acl81).build());
+        verify(flowRuleService, groupService);
+        assertEquals(ObjectiveError.UNSUPPORTED, error.getNow(null));
+        pipeliner.occupancy.purge(APP_ID);
+    }
+
+    @Test
+    public void testAclRulesMerged() throws FabricPipelinerException {
+        final FlowRule acl80 = buildAclRule(80);
+        final FlowRule acl81 = buildAclRule(81);
+        pipeliner.addCompiler(new AclCompiler());
+        final Capture<FlowRuleOperations> capturedOps = newCapture(CaptureType.ALL);
+        flowRuleService.apply(capture(capturedOps));
+        expectLastCall().times(2);
+        replay(flowRuleService);
+        pipeliner.handleResult(aclObjective(acl80.selector()),
+                               ObjectiveTranslation.builder().addFlowRule(acl80).build());
+        pipeliner.handleResult(aclObjective(acl81.selector()),
+                               ObjectiveTranslation.builder().addFlowRule(acl81).build());
+        verify(flowRuleService);
+
+        assertEquals(ImmutableList.of(ImmutableSet.of(FlowRuleOperation.Type.ADD)),
+                     capturedOps.getValues().get(0).stages().stream()
+                             .map(stage -> stage.stream().map(FlowRuleOperation::type)
+                                     .collect(Collectors.toSet()))
+                             .collect(Collectors.toList()));
+        // The merged entry is added before removing the one of port 80.
+        final List<Set<FlowRuleOperation>> stages = capturedOps.getValues().get(1).stages();
+        assertEquals(2, stages.size());
+        final FlowRuleOperation add = stages.get(0).iterator().next();
+        assertEquals(FlowRuleOperation.Type.ADD, add.type());
+        assertEquals(Criteria.matchTcpDstMasked(TpPort.tpPort(80), TpPort.tpPort(0xfffe)),
+                     add.rule().selector().getCriterion(Criterion.Type.TCP_DST_MASKED));
+        final FlowRuleOperation remove = stages.get(1).iterator().next();
+        assertEquals(FlowRuleOperation.Type.REMOVE, remove.type());
+        assertEquals(acl80, remove.rule());
+    }
+
+    private ForwardingObjective aclObjective(TrafficSelector selector) {
+        return DefaultForwardingObjective.builder()
+                .withSelector(selector)
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .withFlag(ForwardingObjective.Flag.VERSATILE)
+                .withTreatment(DefaultTrafficTreatment.builder().wipeDeferred().build())
+                .fromApp(APP_ID)
+                .makePermanent()
+                .add();
+    }
+
+    private FlowRule buildAclRule(int tcpDst) {
+        return DefaultFlowRule.builder()
+                .forDevice(DEVICE_ID)
+                .forTable(P4InfoConstants.FABRIC_INGRESS_ACL_ACL)
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchEthType(Ethernet.TYPE_IPV4)
+                                      .matchIPProtocol((byte) 6)
+                                      .matchTcpDst(TpPort.tpPort(tcpDst))
+                                      .build())
+                .withTreatment(DefaultTrafficTreatment.builder()
+                                       .piTableAction(PiAction.builder()
+                                                              .withId(P4InfoConstants.FABRIC_INGRESS_ACL_DROP)
+                                                              .build())
+                                       .build())
+                .withPriority(DEFAULT_FLOW_PRIORITY)
+                .fromApp(APP_ID)
+                .makePermanent()
+                .build();
+    }
+
+    private GroupBucket allBucket(PortNumber port) {
+        return DefaultGroupBucket.createAllGroupBucket(
+                DefaultTrafficTreatment.builder().setOutput(port).build());
+    }
+
+    private FlowRule buildNextVlanRule(int nextId) {
+        return DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchPi(PiCriterion.builder()
+                                                       .matchExact(P4InfoConstants.HDR_NEXT_ID, nextId)
+                                                       .build())
+                                      .build())
+                .withTreatment(DefaultTrafficTreatment.builder().setVlanId(VLAN_100).build())
+                .forTable(P4InfoConstants.FABRIC_INGRESS_PRE_NEXT_NEXT_VLAN)
+                .makePermanent()
+                .withPriority(0)
+                .forDevice(DEVICE_ID)
+                .fromApp(APP_ID)
+                .build();
+    }
+
+    private FlowRule buildNextEgressVlanRule(PortNumber port) {
+        return DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchPi(PiCriterion.builder()
+                                                       .matchExact(P4InfoConstants.HDR_EG_PORT, port.toLong())
+                                                       .build())
+                                      .matchVlanId(VLAN_100)
+                                      .build())
+                .withTreatment(DefaultTrafficTreatment.builder()
+                                       .piTableAction(PiAction.builder()
+                                               .withId(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_POP_VLAN)
+                                               .build())
+                                       .build())
+                .forTable(P4InfoConstants.FABRIC_EGRESS_EGRESS_NEXT_EGRESS_VLAN)
+                .makePermanent()
+                // FIXME: currently next objective doesn't support priority, ignore this
+                .withPriority(0)
+                .forDevice(DEVICE_ID)
+                .fromApp(APP_ID)
+                .build();
+    }
 }
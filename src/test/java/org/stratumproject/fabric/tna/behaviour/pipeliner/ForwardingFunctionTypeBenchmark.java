@@ -0,0 +1,110 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.MplsLabel;
+import org.onlab.packet.VlanId;
+import org.onosproject.TestApplicationId;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the forwarding function type classification, using the
+ * same selectors as {@link ForwardingFunctionTypeTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardingFunctionTypeBenchmark {
+    private static final ApplicationId APP_ID = TestApplicationId.create("ForwardingFunctionTypeBenchmark");
+    private static final VlanId VLAN_100 = VlanId.vlanId((short) 100);
+    private static final MacAddress MAC_ADDR = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final IpPrefix IPV4_UNICAST_ADDR = IpPrefix.valueOf("10.0.0.1/32");
+    private static final MplsLabel MPLS_10 = MplsLabel.mplsLabel(10);
+
+    @Param({"L2_UNICAST", "L2_BROADCAST", "L2_BROADCAST_MAC_NONE", "IPV4_ROUTING", "MPLS_SEGMENT_ROUTING"})
+    public String fwdCase;
+
+    private ForwardingObjective fwd;
+
+    @Setup
+    public void setup() {
+        final TrafficSelector selector;
+        switch (fwdCase) {
+            case "L2_UNICAST":
+                selector = DefaultTrafficSelector.builder()
+                        .matchVlanId(VLAN_100)
+                        .matchEthDst(MAC_ADDR)
+                        .build();
+                break;
+            case "L2_BROADCAST":
+                selector = DefaultTrafficSelector.builder()
+                        .matchVlanId(VLAN_100)
+                        .build();
+                break;
+            case "L2_BROADCAST_MAC_NONE":
+                selector = DefaultTrafficSelector.builder()
+                        .matchVlanId(VLAN_100)
+                        .matchEthDst(MacAddress.NONE)
+                        .build();
+                break;
+            case "IPV4_ROUTING":
+                selector = DefaultTrafficSelector.builder()
+                        .matchEthType(Ethernet.TYPE_IPV4)
+                        .matchIPDst(IPV4_UNICAST_ADDR)
+                        .build();
+                break;
+            case "MPLS_SEGMENT_ROUTING":
+                selector = DefaultTrafficSelector.builder()
+                        .matchEthType(Ethernet.MPLS_UNICAST)
+                        .matchMplsLabel(MPLS_10)
+                        .matchMplsBos(true)
+                        .build();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown case " + fwdCase);
+        }
+        fwd = DefaultForwardingObjective.builder()
+                .withSelector(selector)
+                .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                .nextStep(0)
+                .fromApp(APP_ID)
+                .add();
+    }
+
+    @Benchmark
+    public ForwardingFunctionType getForwardingFunctionType() {
+        return ForwardingFunctionType.getForwardingFunctionType(fwd);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(ForwardingFunctionTypeBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
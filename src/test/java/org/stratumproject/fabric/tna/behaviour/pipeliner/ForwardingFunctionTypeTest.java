@@ -111,9 +111,64 @@ public class ForwardingFunctionTypeTest {
         testFft(selector, ForwardingFunctionType.MPLS_SEGMENT_ROUTING);
     }
 
+    @Test
+    public void testPseudoWire() {
+        selector = DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.MPLS_UNICAST)
+                .matchMplsLabel(MPLS_10)
+                .matchMplsBos(false)
+                .build();
+        testFft(selector, ForwardingFunctionType.PSEUDO_WIRE);
+    }
+
+    /**
+     * Match Vlan in meta + EthDst in selector.
+     */
+    @Test
+    public void testL2UnicastWithVlanInMeta() {
+        selector = DefaultTrafficSelector.builder()
+                .matchEthDst(MAC_ADDR)
+                .build();
+        final TrafficSelector meta = DefaultTrafficSelector.builder()
+                .matchVlanId(VLAN_100)
+                .build();
+        testFft(selector, meta, ForwardingFunctionType.L2_UNICAST);
+    }
+
+    /**
+     * Unexpected criterion types result in unknown FFT.
+     */
+    @Test
+    public void testUnknownWithExtraCriterion() {
+        selector = DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.TYPE_IPV4)
+                .matchIPDst(IPV4_UNICAST_ADDR)
+                .matchIPProtocol((byte) 6)
+                .build();
+        testFft(selector, ForwardingFunctionType.UNKNOWN);
+    }
+
+    /**
+     * Expected criterion types but values to match not found.
+     */
+    @Test
+    public void testUnknownWithWrongEthType() {
+        selector = DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.TYPE_IPV6)
+                .matchIPDst(IPV4_UNICAST_ADDR)
+                .build();
+        testFft(selector, ForwardingFunctionType.UNKNOWN);
+    }
+
     private void testFft(TrafficSelector selector, ForwardingFunctionType expectedFft) {
+        testFft(selector, null, expectedFft);
+    }
+
+    private void testFft(TrafficSelector selector, TrafficSelector meta,
+                         ForwardingFunctionType expectedFft) {
         ForwardingObjective fwd = DefaultForwardingObjective.builder()
                 .withSelector(selector)
+                .withMeta(meta)
                 .withFlag(ForwardingObjective.Flag.SPECIFIC)
                 .nextStep(0)
                 .fromApp(APP_ID)
@@ -0,0 +1,92 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.group.DefaultGroupBucket;
+import org.onosproject.net.group.GroupBucket;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for HashedGroupBuckets.
+ */
+public class HashedGroupBucketsTest {
+
+    private static final GroupBucket B1 = bucket(1);
+    private static final GroupBucket B2 = bucket(2);
+    private static final GroupBucket B3 = bucket(3);
+    private static final GroupBucket B4 = bucket(4);
+
+    private static GroupBucket bucket(long port) {
+        return DefaultGroupBucket.createSelectGroupBucket(
+                DefaultTrafficTreatment.builder()
+                        .setOutput(PortNumber.portNumber(port))
+                        .build());
+    }
+
+    @Test
+    public void testWeights() throws FabricPipelinerException {
+        assertEquals(ImmutableMap.of("a", 2, "b", 1),
+                     HashedGroupBuckets.weights(ImmutableList.of("a", "b", "a"), 16));
+        assertEquals(Collections.emptyMap(),
+                     HashedGroupBuckets.weights(ImmutableList.of(), 16));
+    }
+
+    @Test
+    public void testWeightsScaledDown() throws FabricPipelinerException {
+        // 6:3:1 scaled to 4 -> 2.4:1.2:0.4, with a minimum of 1.
+        Map<String, Integer> weights = HashedGroupBuckets.weights(ImmutableList.of(
+                "a", "a", "a", "a", "a", "a", "b", "b", "b", "c"), 4);
+        assertEquals(ImmutableMap.of("a", 2, "b", 1, "c", 1), weights);
+        // 3:1 scaled to 2 -> 1.5:0.5, the minimum weight takes precedence.
+        weights = HashedGroupBuckets.weights(ImmutableList.of("a", "a", "a", "b"), 2);
+        assertEquals(ImmutableMap.of("a", 1, "b", 1), weights);
+        // 5:4 scaled to 8 -> 4.44:3.56, using the largest remainder.
+        weights = HashedGroupBuckets.weights(ImmutableList.of(
+                "a", "a", "a", "a", "a", "b", "b", "b", "b"), 8);
+        assertEquals(ImmutableMap.of("a", 4, "b", 4), weights);
+    }
+
+    @Test
+    public void testTooManyMembers() {
+        try {
+            HashedGroupBuckets.weights(ImmutableList.of("a", "b", "c"), 2);
+            fail("Expected FabricPipelinerException");
+        } catch (FabricPipelinerException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testStableReplace() {
+        // B2 replaced by B4, B1 and B3 keep their position.
+        assertEquals(ImmutableList.of(B1, B4, B3), HashedGroupBuckets.stableReplace(
+                ImmutableList.of(B1, B2, B3), ImmutableList.of(B4, B3, B1)));
+        // B1 removed.
+        assertEquals(ImmutableList.of(B2, B3), HashedGroupBuckets.stableReplace(
+                ImmutableList.of(B1, B2, B3), ImmutableList.of(B3, B2)));
+        // B4 appended.
+        assertEquals(ImmutableList.of(B1, B2, B4), HashedGroupBuckets.stableReplace(
+                ImmutableList.of(B1, B2), ImmutableList.of(B4, B1, B2)));
+    }
+
+    @Test
+    public void testStableReplaceUpdatesWeight() {
+        GroupBucket weighted = DefaultGroupBucket.createSelectGroupBucket(
+                B2.treatment(), (short) 3);
+        List<GroupBucket> buckets = HashedGroupBuckets.stableReplace(
+                ImmutableList.of(B1, B2), ImmutableList.of(weighted, B1));
+        assertEquals(ImmutableList.of(B1, B2), buckets);
+        assertEquals(3, buckets.get(1).weight());
+    }
+}
@@ -0,0 +1,51 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.onosproject.net.behaviour.NextGroup;
+import org.onosproject.net.flowobjective.FlowObjectiveStore;
+import org.onosproject.net.flowobjective.FlowObjectiveStoreDelegate;
+import org.onosproject.net.flowobjective.ObjectiveEvent;
+import org.onosproject.store.AbstractStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe flow objective store keeping the next groups in memory.
+ */
+public class InMemoryFlowObjectiveStore
+        extends AbstractStore<ObjectiveEvent, FlowObjectiveStoreDelegate>
+        implements FlowObjectiveStore {
+
+    private final ConcurrentMap<Integer, NextGroup> nextGroups = Maps.newConcurrentMap();
+    private final AtomicInteger nextIds = new AtomicInteger();
+
+    @Override
+    public void putNextGroup(Integer nextId, NextGroup group) {
+        nextGroups.put(nextId, group);
+    }
+
+    @Override
+    public NextGroup getNextGroup(Integer nextId) {
+        return nextGroups.get(nextId);
+    }
+
+    @Override
+    public NextGroup removeNextGroup(Integer nextId) {
+        return nextGroups.remove(nextId);
+    }
+
+    @Override
+    public Map<Integer, NextGroup> getAllGroups() {
+        return ImmutableMap.copyOf(nextGroups);
+    }
+
+    @Override
+    public int allocateNextId() {
+        return nextIds.incrementAndGet();
+    }
+}
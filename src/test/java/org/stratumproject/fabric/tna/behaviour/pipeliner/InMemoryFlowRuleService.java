@@ -0,0 +1,89 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultFlowEntry;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Thread-safe flow rule service storing the flow rules in memory, as if they
+ * were immediately installed on the device.
+ */
+public class InMemoryFlowRuleService extends FlowRuleServiceAdapter {
+
+    private final ConcurrentMap<FlowId, FlowEntry> flowEntries = Maps.newConcurrentMap();
+
+    @Override
+    public void apply(FlowRuleOperations ops) {
+        ops.stages().forEach(stage -> stage.forEach(op -> {
+            switch (op.type()) {
+                case ADD:
+                case MODIFY:
+                    add(op.rule());
+                    break;
+                case REMOVE:
+                    flowEntries.remove(op.rule().id());
+                    break;
+                default:
+                    break;
+            }
+        }));
+        if (ops.callback() != null) {
+            ops.callback().onSuccess(ops);
+        }
+    }
+
+    @Override
+    public void applyFlowRules(FlowRule... flowRules) {
+        for (FlowRule flowRule : flowRules) {
+            add(flowRule);
+        }
+    }
+
+    @Override
+    public void removeFlowRules(FlowRule... flowRules) {
+        for (FlowRule flowRule : flowRules) {
+            flowEntries.remove(flowRule.id());
+        }
+    }
+
+    @Override
+    public FlowEntry getFlowEntry(FlowRule flowRule) {
+        return flowEntries.get(flowRule.id());
+    }
+
+    @Override
+    public Iterable<FlowEntry> getFlowEntries(DeviceId deviceId) {
+        return flowEntries.values().stream()
+                .filter(f -> f.deviceId().equals(deviceId))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int getFlowRuleCount() {
+        return flowEntries.size();
+    }
+
+    /**
+     * Returns all the flow entries.
+     *
+     * @return flow entries
+     */
+    public ImmutableList<FlowEntry> flowEntries() {
+        return ImmutableList.copyOf(flowEntries.values());
+    }
+
+    private void add(FlowRule flowRule) {
+        flowEntries.put(flowRule.id(), new DefaultFlowEntry(flowRule, FlowEntry.FlowEntryState.ADDED));
+    }
+}
@@ -0,0 +1,112 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.GroupId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.group.DefaultGroup;
+import org.onosproject.net.group.DefaultGroupDescription;
+import org.onosproject.net.group.Group;
+import org.onosproject.net.group.GroupBucket;
+import org.onosproject.net.group.GroupBuckets;
+import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupKey;
+import org.onosproject.net.group.GroupServiceAdapter;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Thread-safe group service storing the groups in memory, as if they were
+ * immediately installed on the device.
+ */
+public class InMemoryGroupService extends GroupServiceAdapter {
+
+    private final ConcurrentMap<GroupKey, Group> groups = Maps.newConcurrentMap();
+
+    @Override
+    public void addGroup(GroupDescription groupDesc) {
+        final DefaultGroup group = new DefaultGroup(
+                GroupId.valueOf(Objects.requireNonNullElse(groupDesc.givenGroupId(), 0)), groupDesc);
+        group.setState(Group.GroupState.ADDED);
+        groups.put(groupDesc.appCookie(), group);
+    }
+
+    @Override
+    public Group getGroup(DeviceId deviceId, GroupKey appCookie) {
+        return groups.get(appCookie);
+    }
+
+    @Override
+    public void addBucketsToGroup(DeviceId deviceId, GroupKey oldCookie, GroupBuckets buckets,
+                                  GroupKey newCookie, ApplicationId appId) {
+        updateBuckets(oldCookie, newCookie, current -> {
+            final List<GroupBucket> updated = Lists.newArrayList(current);
+            buckets.buckets().stream()
+                    .filter(b -> !updated.contains(b))
+                    .forEach(updated::add);
+            return updated;
+        });
+    }
+
+    @Override
+    public void removeBucketsFromGroup(DeviceId deviceId, GroupKey oldCookie, GroupBuckets buckets,
+                                       GroupKey newCookie, ApplicationId appId) {
+        updateBuckets(oldCookie, newCookie, current -> current.stream()
+                .filter(b -> !buckets.buckets().contains(b))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public void setBucketsForGroup(DeviceId deviceId, GroupKey oldCookie, GroupBuckets buckets,
+                                   GroupKey newCookie, ApplicationId appId) {
+        updateBuckets(oldCookie, newCookie, current -> buckets.buckets());
+    }
+
+    @Override
+    public void removeGroup(DeviceId deviceId, GroupKey appCookie, ApplicationId appId) {
+        groups.remove(appCookie);
+    }
+
+    @Override
+    public void purgeGroupEntries(DeviceId deviceId) {
+        groups.values().removeIf(g -> g.deviceId().equals(deviceId));
+    }
+
+    @Override
+    public Iterable<Group> getGroups(DeviceId deviceId) {
+        return groups.values().stream()
+                .filter(g -> g.deviceId().equals(deviceId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns all the groups.
+     *
+     * @return groups
+     */
+    public ImmutableList<Group> groups() {
+        return ImmutableList.copyOf(groups.values());
+    }
+
+    private void updateBuckets(GroupKey oldCookie, GroupKey newCookie,
+                               UnaryOperator<List<GroupBucket>> update) {
+        final Group current = groups.remove(oldCookie);
+        if (current == null) {
+            return;
+        }
+        final DefaultGroup updated = new DefaultGroup(current.id(), new DefaultGroupDescription(
+                current.deviceId(), current.type(),
+                new GroupBuckets(update.apply(current.buckets().buckets())),
+                newCookie, current.givenGroupId(), current.appId()));
+        updated.setState(Group.GroupState.ADDED);
+        groups.put(newCookie, updated);
+    }
+}
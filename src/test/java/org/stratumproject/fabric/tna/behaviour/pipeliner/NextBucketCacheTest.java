@@ -0,0 +1,101 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import org.junit.Test;
+import org.onlab.packet.VlanId;
+import org.onosproject.TestApplicationId;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flowobjective.DefaultNextObjective;
+import org.onosproject.net.flowobjective.DefaultNextTreatment;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.NextTreatment;
+import org.onosproject.net.group.DefaultGroupBucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the next bucket cache.
+ */
+public class NextBucketCacheTest {
+
+    private static final ApplicationId APP_ID = TestApplicationId.create("NextBucketCacheTest");
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+    private static final int NEXT_ID = 1;
+
+    private final NextBucketCache cache = new NextBucketCache();
+
+    private static final TrafficTreatment TREATMENT_1 = DefaultTrafficTreatment.builder()
+            .setOutput(PortNumber.portNumber(1))
+            .build();
+    private static final TrafficTreatment TREATMENT_2 = DefaultTrafficTreatment.builder()
+            .setOutput(PortNumber.portNumber(2))
+            .build();
+    private static final NextTreatment NEXT_TREATMENT_1 = DefaultNextTreatment.of(TREATMENT_1);
+    private static final NextTreatment NEXT_TREATMENT_2 = DefaultNextTreatment.of(TREATMENT_2);
+    private static final FlowRule FLOW_RULE = DefaultFlowRule.builder()
+            .forDevice(DEVICE_ID)
+            .forTable(0)
+            .fromApp(APP_ID)
+            .withPriority(1)
+            .withSelector(DefaultTrafficSelector.emptySelector())
+            .makePermanent()
+            .build();
+    private static final NextBucketCache.BucketMapping MAPPING = new NextBucketCache.BucketMapping(
+            DefaultGroupBucket.createSelectGroupBucket(TREATMENT_1), FLOW_RULE);
+
+    private NextObjective verify(TrafficSelector meta) {
+        return DefaultNextObjective.builder()
+                .withId(NEXT_ID)
+                .withType(NextObjective.Type.HASHED)
+                .fromApp(APP_ID)
+                .withMeta(meta)
+                .addTreatment(NEXT_TREATMENT_1)
+                .addTreatment(NEXT_TREATMENT_2)
+                .verify();
+    }
+
+    @Test
+    public void testGetPut() {
+        NextObjective obj = verify(null);
+        assertNull(cache.get(obj, NEXT_TREATMENT_1));
+        cache.put(obj, NEXT_TREATMENT_1, MAPPING);
+        assertEquals(MAPPING, cache.get(obj, NEXT_TREATMENT_1));
+        assertEquals(MAPPING, cache.get(obj, DefaultNextTreatment.of(TREATMENT_1)));
+        assertNull(cache.get(obj, NEXT_TREATMENT_2));
+    }
+
+    @Test
+    public void testInvalidate() {
+        NextObjective obj = verify(null);
+        cache.put(obj, NEXT_TREATMENT_1, MAPPING);
+        cache.invalidate(NEXT_ID);
+        assertNull(cache.get(obj, NEXT_TREATMENT_1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMetaChange() {
+        TrafficSelector meta = DefaultTrafficSelector.builder()
+                .matchVlanId(VlanId.vlanId((short) 100))
+                .build();
+        NextObjective obj = verify(null);
+        NextObjective objWithMeta = verify(meta);
+        cache.put(obj, NEXT_TREATMENT_1, MAPPING);
+        assertNull(cache.get(objWithMeta, NEXT_TREATMENT_1));
+        cache.put(objWithMeta, NEXT_TREATMENT_2, MAPPING);
+        // The entries computed with the old metadata are dropped.
+        assertNull(cache.get(objWithMeta, NEXT_TREATMENT_1));
+        assertEquals(MAPPING, cache.get(objWithMeta, NEXT_TREATMENT_2));
+        assertEquals(1, cache.size());
+    }
+}
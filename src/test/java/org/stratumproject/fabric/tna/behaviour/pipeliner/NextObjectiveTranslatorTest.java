@@ -5,6 +5,7 @@ package org.stratumproject.fabric.tna.behaviour.pipeliner;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
 import org.junit.Test;
+import org.onlab.packet.MacAddress;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
@@ -26,12 +27,16 @@ import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
 import org.onosproject.net.pi.runtime.PiActionProfileGroupId;
 import org.onosproject.net.pi.runtime.PiGroupKey;
+import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
 import org.stratumproject.fabric.tna.behaviour.FabricUtils;
 import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
 
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.stratumproject.fabric.tna.behaviour.FabricUtils.outputPort;
 
@@ -192,6 +197,136 @@ public class NextObjectiveTranslatorTest extends AbstractObjectiveTranslatorTest
 
     }
 
+    /**
+     * Test program weighted ecmp group when the hashed table has an action
+     * selector.
+     */
+    @Test
+    public void testHashedSelectorWeighted() throws Exception {
+        NextObjectiveTranslator translatorSelector =
+                new NextObjectiveTranslator(DEVICE_ID, selectorCapabilities());
+        TrafficTreatment treatment1 = routingHashedTreatment(PORT_1, SPINE1_MAC);
+        TrafficTreatment treatment2 = routingHashedTreatment(PORT_2, SPINE2_MAC);
+
+        // Treatment 1 is repeated to get twice the weight of treatment 2.
+        NextObjective nextObjective = DefaultNextObjective.builder()
+                .withId(NEXT_ID_1)
+                .withPriority(PRIORITY)
+                .withMeta(VLAN_META)
+                .addTreatment(treatment1)
+                .addTreatment(treatment2)
+                .addTreatment(treatment1)
+                .withType(NextObjective.Type.HASHED)
+                .makePermanent()
+                .fromApp(APP_ID)
+                .add();
+
+        ObjectiveTranslation actualTranslation = translatorSelector.doTranslate(nextObjective);
+
+        // Expected hashed table flow rule.
+        PiCriterion nextIdCriterion = PiCriterion.builder()
+                .matchExact(P4InfoConstants.HDR_NEXT_ID, NEXT_ID_1)
+                .build();
+        TrafficSelector nextIdSelector = DefaultTrafficSelector.builder()
+                .matchPi(nextIdCriterion)
+                .build();
+        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                .piTableAction(PiActionProfileGroupId.of(NEXT_ID_1))
+                .build();
+        FlowRule expectedFlowRule = DefaultFlowRule.builder()
+                .forDevice(DEVICE_ID)
+                .fromApp(APP_ID)
+                .makePermanent()
+                // FIXME: currently next objective doesn't support priority, ignore this
+                .withPriority(0)
+                .forTable(P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED)
+                .withSelector(nextIdSelector)
+                .withTreatment(treatment)
+                .build();
+
+        // Expected group
+        List<GroupBucket> buckets = ImmutableList.of(
+                DefaultGroupBucket.createSelectGroupBucket(treatment1, (short) 2),
+                DefaultGroupBucket.createSelectGroupBucket(treatment2, (short) 1));
+        GroupDescription expectedGroup = selectGroup(buckets);
+
+        ObjectiveTranslation expectedTranslation = ObjectiveTranslation.builder()
+                .addFlowRule(expectedFlowRule)
+                .addFlowRule(vlanMetaFlowRule)
+                .addGroup(expectedGroup)
+                .build();
+
+        assertEquals(expectedTranslation, actualTranslation);
+        assertWeights(buckets, actualTranslation.groups().iterator().next().buckets().buckets());
+
+        // Adding a member only translates to the new bucket.
+        TrafficTreatment treatment3 = routingHashedTreatment(PORT_2, HOST_MAC);
+        nextObjective = DefaultNextObjective.builder()
+                .withId(NEXT_ID_1)
+                .withPriority(PRIORITY)
+                .withMeta(VLAN_META)
+                .addTreatment(treatment3)
+                .withType(NextObjective.Type.HASHED)
+                .makePermanent()
+                .fromApp(APP_ID)
+                .addToExisting();
+
+        actualTranslation = translatorSelector.doTranslate(nextObjective);
+
+        expectedTranslation = ObjectiveTranslation.builder()
+                .addGroup(selectGroup(ImmutableList.of(
+                        DefaultGroupBucket.createSelectGroupBucket(treatment3, (short) 1))))
+                .build();
+
+        assertEquals(expectedTranslation, actualTranslation);
+    }
+
+    private FabricCapabilities selectorCapabilities() {
+        FabricCapabilities capabilities = createNiceMock(FabricCapabilities.class);
+        expect(capabilities.hasHashedTable()).andReturn(true).anyTimes();
+        expect(capabilities.hasHashedSelector()).andReturn(true).anyTimes();
+        expect(capabilities.hashedSelectorMaxGroupSize()).andReturn(16).anyTimes();
+        expect(capabilities.supportDoubleVlanTerm()).andReturn(true).anyTimes();
+        replay(capabilities);
+        return capabilities;
+    }
+
+    private TrafficTreatment routingHashedTreatment(PortNumber port, MacAddress dstMac) {
+        return DefaultTrafficTreatment.builder()
+                .piTableAction(PiAction.builder()
+                                       .withId(P4InfoConstants.FABRIC_INGRESS_NEXT_ROUTING_HASHED)
+                                       .withParameter(new PiActionParam(
+                                               P4InfoConstants.SMAC, ROUTER_MAC.toBytes()))
+                                       .withParameter(new PiActionParam(
+                                               P4InfoConstants.DMAC, dstMac.toBytes()))
+                                       .withParameter(new PiActionParam(
+                                               P4InfoConstants.PORT_NUM, port.toLong()))
+                                       .build())
+                .build();
+    }
+
+    private GroupDescription selectGroup(List<GroupBucket> buckets) {
+        PiGroupKey groupKey = new PiGroupKey(P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED,
+                                             P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED_PROFILE,
+                                             NEXT_ID_1);
+        return new DefaultGroupDescription(
+                DEVICE_ID,
+                GroupDescription.Type.SELECT,
+                new GroupBuckets(buckets),
+                groupKey,
+                NEXT_ID_1,
+                APP_ID
+        );
+    }
+
+    private void assertWeights(List<GroupBucket> expected, List<GroupBucket> actual) {
+        // Bucket equality does not consider the weight.
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).weight(), actual.get(i).weight());
+        }
+    }
+
     /**
      * Test program output group for Broadcast table.
      */
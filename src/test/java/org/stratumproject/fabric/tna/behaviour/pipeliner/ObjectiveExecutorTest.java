@@ -0,0 +1,203 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor.Priority.ACL;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor.Priority.FILTERING;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor.Priority.FORWARDING;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.ObjectiveExecutor.Priority.NEXT;
+
+/**
+ * Tests for the pipeliner objective executor.
+ */
+public class ObjectiveExecutorTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:1");
+    private static final int TASKS = 1000;
+
+    private ObjectiveExecutor executor;
+
+    @Before
+    public void setup() {
+        executor = new ObjectiveExecutor(4, 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSameKeyIsOrdered() throws InterruptedException {
+        List<Integer> executed = Collections.synchronizedList(Lists.newArrayList());
+        CountDownLatch done = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            final int n = i;
+            executor.execute(DEVICE_ID, FORWARDING, 1, () -> {
+                executed.add(n);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals(i, (int) executed.get(i));
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        // Fill the executor with blocked tasks.
+        for (int i = 0; i < 2; i++) {
+            executor.execute(DEVICE_ID, FORWARDING, i, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertEquals(2, executor.pending());
+
+        AtomicBoolean submitted = new AtomicBoolean();
+        CountDownLatch executed = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            executor.execute(DEVICE_ID, FORWARDING, 3, executed::countDown);
+            submitted.set(true);
+        });
+        producer.start();
+        producer.join(200);
+        assertFalse(submitted.get());
+
+        release.countDown();
+        producer.join(5000);
+        assertTrue(submitted.get());
+        assertTrue(executed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmitFromWorkerIsOrdered() throws InterruptedException {
+        List<Integer> executed = Collections.synchronizedList(Lists.newArrayList());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        executor.execute(DEVICE_ID, FORWARDING, 1, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(1);
+            done.countDown();
+            // Queued behind the task already waiting for the same key, even
+            // though the executor is full.
+            executor.execute(DEVICE_ID, FORWARDING, 1, () -> {
+                executed.add(3);
+                done.countDown();
+            });
+        });
+        executor.execute(DEVICE_ID, FORWARDING, 1, () -> {
+            executed.add(2);
+            done.countDown();
+        });
+        assertEquals(2, executor.pending());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(ImmutableList.of(1, 2, 3), executed);
+    }
+
+    @Test
+    public void testExceptionReleasesPermit() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            executor.execute(DEVICE_ID, FORWARDING, 1, () -> {
+                throw new IllegalStateException("test");
+            });
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(DEVICE_ID, FORWARDING, 1, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPriority() throws InterruptedException {
+        final ObjectiveExecutor single = new ObjectiveExecutor(1, 100);
+        try {
+            single.setConcurrency(DEVICE_ID, ImmutableMap.of(
+                    FILTERING, 1, NEXT, 1, FORWARDING, 1, ACL, 1));
+            final List<String> executed = Collections.synchronizedList(Lists.newArrayList());
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(4);
+            single.execute(DEVICE_ID, FILTERING, 0, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            single.execute(DEVICE_ID, FILTERING, 1, () -> {
+                executed.add("filtering");
+                done.countDown();
+            });
+            // Held while a filtering task is waiting.
+            single.execute(DEVICE_ID, ACL, 2, () -> {
+                executed.add("acl");
+                done.countDown();
+            });
+            single.execute(DEVICE_ID, FORWARDING, 3, () -> {
+                executed.add("forwarding");
+                done.countDown();
+            });
+            single.execute(DEVICE_ID, NEXT, 4, () -> {
+                executed.add("next");
+                done.countDown();
+            });
+            assertEquals(5, single.pending());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(ImmutableList.of("filtering", "next", "forwarding", "acl"), executed);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrency() throws InterruptedException {
+        final ObjectiveExecutor pool = new ObjectiveExecutor(4, 100);
+        try {
+            pool.setConcurrency(DEVICE_ID, ImmutableMap.of(ACL, 1));
+            final AtomicBoolean running = new AtomicBoolean();
+            final AtomicBoolean overlap = new AtomicBoolean();
+            final CountDownLatch done = new CountDownLatch(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                // Different keys, run on different workers.
+                pool.execute(DEVICE_ID, ACL, i, () -> {
+                    if (!running.compareAndSet(false, true)) {
+                        overlap.set(true);
+                    }
+                    running.set(false);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertFalse(overlap.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
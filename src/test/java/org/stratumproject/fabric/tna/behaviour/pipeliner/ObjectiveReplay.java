@@ -0,0 +1,604 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.onlab.osgi.ServiceDirectory;
+import org.onosproject.codec.impl.MockCodecContext;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.CoreService;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.core.DefaultApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.behaviour.PipelinerContext;
+import org.onosproject.net.config.NetworkConfigService;
+import org.onosproject.net.config.NetworkConfigServiceAdapter;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flowobjective.FilteringObjective;
+import org.onosproject.net.flowobjective.FlowObjectiveStore;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveContext;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.group.Group;
+import org.onosproject.net.group.GroupService;
+import org.onosproject.net.pi.model.DefaultPiPipeconf;
+import org.onosproject.net.pi.model.PiPipeconf;
+import org.onosproject.net.pi.model.PiPipeconfId;
+import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+import org.stratumproject.fabric.tna.behaviour.upf.MockPiPipelineModel;
+import org.stratumproject.fabric.tna.behaviour.upf.MockTableModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static org.stratumproject.fabric.tna.Constants.APP_NAME;
+import static org.stratumproject.fabric.tna.Constants.TNA;
+
+/**
+ * Replays flow objectives captured from real deployments through
+ * {@link FabricPipeliner}, against in-memory flow rule, group and flow
+ * objective store services, to measure the end-to-end throughput and latency
+ * of the pipeliner, and to compare the resulting flow rules and groups with
+ * golden outputs.
+ * <p>
+ * Objectives are loaded from:
+ * <ul>
+ *     <li>a directory of captures, such as util/requests/saved, where each
+ *     JSON file holds a single objective in the ONOS REST format, and the
+ *     objective kind is given by the file name prefix (filtering, forward or
+ *     next);</li>
+ *     <li>a recorded trace, i.e., a file with extension .jsonl where each line
+ *     is a JSON object with fields "kind" (filtering, forward or next),
+ *     "timeMs" (time since the beginning of the trace) and "objective".</li>
+ * </ul>
+ * The benchmark profile replays util/requests/saved, or the captures given
+ * by the replay.captures property:
+ * <pre>
+ * mvn -Pbenchmark verify -DskipTests -Dreplay.captures=trace.jsonl
+ * </pre>
+ * Or, from the test classpath:
+ * <pre>
+ * ObjectiveReplay &lt;captures&gt; [--recorded-timing] [--iterations N]
+ *                 [--golden FILE [--update-golden]]
+ * </pre>
+ */
+public final class ObjectiveReplay {
+
+    static final DeviceId DEVICE_ID = DeviceId.deviceId("device:replay");
+    static final String TRACE_EXTENSION = ".jsonl";
+    private static final PiPipeconfId PIPECONF_ID =
+            new PiPipeconfId("org.stratumproject.fabric.montara_sde_9_5_0.replay");
+    private static final long COMPLETION_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Kind of captured objective.
+     */
+    enum Kind {
+        FILTERING("filtering", FilteringObjective.class),
+        FORWARDING("forward", ForwardingObjective.class),
+        NEXT("next", NextObjective.class);
+
+        private final String prefix;
+        private final Class<? extends Objective> objectiveClass;
+
+        Kind(String prefix, Class<? extends Objective> objectiveClass) {
+            this.prefix = prefix;
+            this.objectiveClass = objectiveClass;
+        }
+
+        static Kind of(String name) {
+            for (Kind kind : values()) {
+                if (name.startsWith(kind.prefix)) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Unknown objective kind: " + name);
+        }
+    }
+
+    /**
+     * Captured objective.
+     */
+    static final class Entry {
+        private final String source;
+        private final Kind kind;
+        private final long offsetNanos;
+        private final Objective objective;
+
+        Entry(String source, Kind kind, long offsetNanos, Objective objective) {
+            this.source = source;
+            this.kind = kind;
+            this.offsetNanos = offsetNanos;
+            this.objective = objective;
+        }
+
+        String source() {
+            return source;
+        }
+
+        Objective objective() {
+            return objective;
+        }
+    }
+
+    /**
+     * Results of a replay.
+     */
+    static final class Report {
+        private final long submitted;
+        private final long succeeded;
+        private final long failed;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+
+        private Report(long submitted, long succeeded, long failed, long elapsedNanos,
+                       LatencyHistogram latency) {
+            this.submitted = submitted;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        long submitted() {
+            return submitted;
+        }
+
+        long succeeded() {
+            return succeeded;
+        }
+
+        long failed() {
+            return failed;
+        }
+
+        LatencyHistogram latency() {
+            return latency;
+        }
+
+        double throughput() {
+            return elapsedNanos == 0 ? 0 : (succeeded + failed) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper("Replay")
+                    .add("submitted", submitted)
+                    .add("succeeded", succeeded)
+                    .add("failed", failed)
+                    .add("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                    .add("objectivesPerSec", format("%.1f", throughput()))
+                    .add("latencyMeanUs", format("%.1f", latency.meanMicros()))
+                    .add("latencyP50Us", latency.percentileMicros(50))
+                    .add("latencyP99Us", latency.percentileMicros(99))
+                    .add("latencyMaxUs", latency.maxMicros())
+                    .toString();
+        }
+    }
+
+    private final MockCodecContext codecContext = new MockCodecContext();
+    private final FabricCapabilities capabilities;
+    private final InMemoryFlowRuleService flowRuleService = new InMemoryFlowRuleService();
+    private final InMemoryGroupService groupService = new InMemoryGroupService();
+    private final InMemoryFlowObjectiveStore flowObjectiveStore = new InMemoryFlowObjectiveStore();
+    private final CoreService coreService = new CoreServiceAdapter() {
+        @Override
+        public ApplicationId registerApplication(String name) {
+            return getAppId(name);
+        }
+
+        @Override
+        public ApplicationId getAppId(String name) {
+            return new DefaultApplicationId(name.hashCode() & 0x7FFF, name);
+        }
+    };
+
+    ObjectiveReplay() {
+        codecContext.registerService(CoreService.class, coreService);
+        final PiPipeconf pipeconf = DefaultPiPipeconf.builder()
+                .withId(PIPECONF_ID)
+                .withPipelineModel(new MockPiPipelineModel(
+                        ImmutableList.of(new MockTableModel(P4InfoConstants.FABRIC_INGRESS_NEXT_HASHED, 1024)),
+                        Collections.emptyList(), Collections.emptyList(), TNA))
+                .build();
+        capabilities = FabricCapabilities.of(pipeconf);
+    }
+
+    InMemoryFlowRuleService flowRuleService() {
+        return flowRuleService;
+    }
+
+    InMemoryGroupService groupService() {
+        return groupService;
+    }
+
+    /**
+     * Loads the objectives of a directory of captures, of a single capture,
+     * or of a recorded trace.
+     *
+     * @param path path of the captures
+     * @return captured objectives, in order
+     * @throws IOException if the captures cannot be read
+     */
+    List<Entry> load(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                final List<Entry> entries = Lists.newArrayList();
+                for (Path file : files.filter(f -> f.toString().endsWith(".json"))
+                        .sorted()
+                        .collect(Collectors.toList())) {
+                    entries.addAll(load(file));
+                }
+                return entries;
+            }
+        }
+        final String name = path.getFileName().toString();
+        if (!name.endsWith(TRACE_EXTENSION)) {
+            final JsonNode json = codecContext.mapper().readTree(Files.readString(path));
+            return ImmutableList.of(decode(name, Kind.of(name), 0, json));
+        }
+        final List<Entry> entries = Lists.newArrayList();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path)) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            final JsonNode json = codecContext.mapper().readTree(line);
+            final long offsetNanos = (long) (json.path("timeMs").asDouble() * 1e6);
+            entries.add(decode(name + ":" + lineNumber, Kind.of(json.path("kind").asText()),
+                               offsetNanos, json.get("objective")));
+        }
+        return entries;
+    }
+
+    private Entry decode(String source, Kind kind, long offsetNanos, JsonNode json) {
+        checkArgument(json instanceof ObjectNode, "Invalid objective in %s", source);
+        final Objective objective = codecContext.codec(kind.objectiveClass)
+                .decode((ObjectNode) json, codecContext);
+        return new Entry(source, kind, offsetNanos, objective);
+    }
+
+    /**
+     * Pushes the given objectives through a new pipeliner instance, and waits
+     * for all of them to complete.
+     *
+     * @param entries        captured objectives
+     * @param recordedTiming true to submit the objectives at the recorded
+     *                       time, false to submit them as fast as possible
+     * @param iterations     number of times the objectives are submitted
+     * @return replay results
+     * @throws InterruptedException if interrupted while waiting for completions
+     */
+    Report replay(List<Entry> entries, boolean recordedTiming, int iterations)
+            throws InterruptedException {
+        final FabricPipeliner pipeliner = new FabricPipeliner(capabilities);
+        pipeliner.init(DEVICE_ID, pipelinerContext());
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong lastCompletion = new AtomicLong();
+        final CountDownLatch completed = new CountDownLatch(entries.size() * iterations);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            final long iterationStart = System.nanoTime();
+            for (Entry entry : entries) {
+                if (recordedTiming) {
+                    final long wait = iterationStart + entry.offsetNanos - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                final ReplayContext context = new ReplayContext() {
+                    @Override
+                    void done(boolean success) {
+                        final long now = System.nanoTime();
+                        latency.record(now - submitted);
+                        (success ? succeeded : failed).incrementAndGet();
+                        lastCompletion.accumulateAndGet(now, Math::max);
+                        completed.countDown();
+                    }
+                };
+                final Objective objective = withContext(entry.objective, context);
+                context.submitted = System.nanoTime();
+                submit(pipeliner, entry.kind, objective);
+            }
+        }
+        if (!completed.await(COMPLETION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(format(
+                    "%d objectives not completed after %d seconds",
+                    completed.getCount(), COMPLETION_TIMEOUT_SECONDS));
+        }
+        return new Report(entries.size() * (long) iterations, succeeded.get(), failed.get(),
+                          lastCompletion.get() - start, latency);
+    }
+
+    private void submit(FabricPipeliner pipeliner, Kind kind, Objective objective) {
+        switch (kind) {
+            case FILTERING:
+                pipeliner.filter((FilteringObjective) objective);
+                break;
+            case FORWARDING:
+                pipeliner.forward((ForwardingObjective) objective);
+                break;
+            case NEXT:
+                pipeliner.next((NextObjective) objective);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown objective kind " + kind);
+        }
+    }
+
+    private Objective withContext(Objective objective, ObjectiveContext context) {
+        final Objective.Builder builder = objective.copy();
+        switch (objective.op()) {
+            case ADD:
+                return builder.add(context);
+            case REMOVE:
+                return builder.remove(context);
+            case ADD_TO_EXISTING:
+                return ((NextObjective.Builder) builder).addToExisting(context);
+            case REMOVE_FROM_EXISTING:
+                return ((NextObjective.Builder) builder).removeFromExisting(context);
+            case MODIFY:
+                return ((NextObjective.Builder) builder).modify(context);
+            case VERIFY:
+                return ((NextObjective.Builder) builder).verify(context);
+            default:
+                throw new IllegalArgumentException("Unknown objective operation " + objective.op());
+        }
+    }
+
+    private PipelinerContext pipelinerContext() {
+        final ServiceDirectory directory = new ServiceDirectory() {
+            @Override
+            public <T> T get(Class<T> serviceClass) {
+                if (serviceClass == FlowRuleService.class) {
+                    return serviceClass.cast(flowRuleService);
+                } else if (serviceClass == GroupService.class) {
+                    return serviceClass.cast(groupService);
+                } else if (serviceClass == FlowObjectiveStore.class) {
+                    return serviceClass.cast(flowObjectiveStore);
+                } else if (serviceClass == CoreService.class) {
+                    return serviceClass.cast(coreService);
+                } else if (serviceClass == NetworkConfigService.class) {
+                    // No device config, i.e., default pipeliner options.
+                    return serviceClass.cast(new NetworkConfigServiceAdapter());
+                }
+                throw new IllegalArgumentException("Unknown service " + serviceClass);
+            }
+        };
+        return new PipelinerContext() {
+            @Override
+            public ServiceDirectory directory() {
+                return directory;
+            }
+
+            @Override
+            public FlowObjectiveStore store() {
+                return flowObjectiveStore;
+            }
+        };
+    }
+
+    /**
+     * Pushes the given objectives, one at a time, through a new pipeliner
+     * instance backed by empty in-memory services and with all the compilers
+     * enabled, and renders the changes of the flow rules and groups caused by
+     * each objective in a stable text format suitable for golden files. The
+     * output thus covers the compilers, the sharing of the egress VLAN rules,
+     * and the deltas applied for MODIFY operations, in addition to the
+     * translations.
+     *
+     * @param entries captured objectives
+     * @return rendered changes
+     */
+    String translate(List<Entry> entries) {
+        final InMemoryFlowRuleService flows = new InMemoryFlowRuleService();
+        final InMemoryGroupService groups = new InMemoryGroupService();
+        // Not initialized, i.e., objectives are processed and completed in
+        // the calling thread.
+        final FabricPipeliner pipeliner = new FabricPipeliner(capabilities);
+        pipeliner.deviceId = DEVICE_ID;
+        pipeliner.appId = coreService.getAppId(APP_NAME);
+        pipeliner.flowRuleService = flows;
+        pipeliner.groupService = groups;
+        pipeliner.flowObjectiveStore = new InMemoryFlowObjectiveStore();
+        pipeliner.addCompiler(new AclCompiler());
+        pipeliner.addCompiler(new RouteCompressor());
+        final FilteringObjectiveTranslator filteringTranslator =
+                new FilteringObjectiveTranslator(DEVICE_ID, capabilities);
+        final ForwardingObjectiveTranslator forwardingTranslator =
+                new ForwardingObjectiveTranslator(DEVICE_ID, capabilities);
+        final NextObjectiveTranslator nextTranslator =
+                new NextObjectiveTranslator(DEVICE_ID, capabilities);
+        final StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries) {
+            final List<ObjectiveError> errors = Lists.newArrayList();
+            final Objective objective = withContext(entry.objective, new ObjectiveContext() {
+                @Override
+                public void onError(Objective objective, ObjectiveError error) {
+                    errors.add(error);
+                }
+            });
+            final ObjectiveTranslation translation;
+            switch (entry.kind) {
+                case FILTERING:
+                    translation = filteringTranslator.translate((FilteringObjective) objective);
+                    break;
+                case FORWARDING:
+                    translation = forwardingTranslator.translate((ForwardingObjective) objective);
+                    break;
+                default:
+                    translation = nextTranslator.translate((NextObjective) objective);
+            }
+            final Set<String> before = render(flows, groups);
+            pipeliner.handleResult(objective, translation);
+            final Set<String> after = render(flows, groups);
+            final List<String> lines = Lists.newArrayList();
+            Sets.difference(before, after).forEach(l -> lines.add("- " + l));
+            Sets.difference(after, before).forEach(l -> lines.add("+ " + l));
+            Collections.sort(lines, Comparator.comparing((String l) -> l.substring(2))
+                    .thenComparing(Comparator.naturalOrder()));
+            errors.forEach(e -> lines.add("ERROR " + e));
+            sb.append(format("%s %s %s%n", entry.source, entry.kind, entry.objective.op()));
+            lines.forEach(line -> sb.append("  ").append(line).append(System.lineSeparator()));
+        }
+        return sb.toString();
+    }
+
+    private Set<String> render(InMemoryFlowRuleService flows, InMemoryGroupService groups) {
+        final Set<String> lines = Sets.newHashSet();
+        for (FlowRule f : flows.flowEntries()) {
+            lines.add(format("FLOW %s priority=%d %s -> %s", f.table(), f.priority(),
+                             f.selector().criteria(), f.treatment().allInstructions()));
+        }
+        for (Group g : groups.groups()) {
+            lines.add(format("GROUP %s id=%s %s", g.type(), g.givenGroupId(),
+                             g.buckets().buckets().stream()
+                                     .map(b -> format("%s weight=%d",
+                                                      b.treatment().allInstructions(), b.weight()))
+                                     .collect(Collectors.toList())));
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the lines that differ between the expected and actual outputs,
+     * i.e., the lines not in their longest common subsequence, so that
+     * reordered lines are reported too.
+     *
+     * @param expected expected output
+     * @param actual   actual output
+     * @return differing lines, in order, prefixed by - if expected, + if
+     * actual
+     */
+    static List<String> diff(String expected, String actual) {
+        final List<String> a = expected.lines().collect(Collectors.toList());
+        final List<String> b = actual.lines().collect(Collectors.toList());
+        // lcs[i][j] is the length of the longest common subsequence of the
+        // lines of a from i and of b from j.
+        final int[][] lcs = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                lcs[i][j] = a.get(i).equals(b.get(j))
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        final List<String> diff = Lists.newArrayList();
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            if (i < a.size() && j < b.size() && a.get(i).equals(b.get(j))) {
+                i++;
+                j++;
+            } else if (j == b.size() || (i < a.size() && lcs[i + 1][j] >= lcs[i][j + 1])) {
+                diff.add("- " + a.get(i++));
+            } else {
+                diff.add("+ " + b.get(j++));
+            }
+        }
+        return diff;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: ObjectiveReplay <captures> [--recorded-timing] " +
+                                       "[--iterations N] [--golden FILE [--update-golden]]");
+            System.exit(1);
+        }
+        boolean recordedTiming = false;
+        boolean updateGolden = false;
+        int iterations = 1;
+        Path golden = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--recorded-timing":
+                    recordedTiming = true;
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--golden":
+                    golden = Paths.get(args[++i]);
+                    break;
+                case "--update-golden":
+                    updateGolden = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        final ObjectiveReplay replay = new ObjectiveReplay();
+        final List<Entry> entries = replay.load(Paths.get(args[0]));
+        int status = 0;
+        try {
+            if (golden != null) {
+                final String actual = replay.translate(entries);
+                if (updateGolden) {
+                    Files.writeString(golden, actual);
+                    System.out.println("Updated " + golden);
+                } else {
+                    final List<String> diff = diff(Files.readString(golden), actual);
+                    diff.forEach(System.out::println);
+                    System.out.println(diff.isEmpty() ? "Translations match " + golden
+                                               : "Translations differ from " + golden);
+                    status = diff.isEmpty() ? 0 : 2;
+                }
+            }
+            // Warm up with a first replay at full speed.
+            replay.replay(entries, false, iterations);
+            System.out.println(replay.replay(entries, recordedTiming, iterations));
+        } finally {
+            ObjectiveExecutor.shutdownShared();
+            CompletionDispatcher.shutdownShared();
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Objective context recording the completion of a submitted objective.
+     */
+    private abstract static class ReplayContext implements ObjectiveContext {
+        volatile long submitted;
+
+        abstract void done(boolean success);
+
+        @Override
+        public void onSuccess(Objective objective) {
+            done(true);
+        }
+
+        @Override
+        public void onError(Objective objective, ObjectiveError error) {
+            done(false);
+        }
+    }
+}
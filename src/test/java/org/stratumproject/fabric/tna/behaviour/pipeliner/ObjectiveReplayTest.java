@@ -0,0 +1,87 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the saved objective captures, and checks the translations against
+ * the golden output.
+ */
+public class ObjectiveReplayTest {
+
+    private static final String CAPTURES = "util/requests/saved";
+    private static final String GOLDEN = "/replay/saved.golden";
+
+    private ObjectiveReplay replay;
+    private List<ObjectiveReplay.Entry> entries;
+
+    @Before
+    public void setUp() throws Exception {
+        replay = new ObjectiveReplay();
+        entries = replay.load(Paths.get(CAPTURES));
+    }
+
+    @After
+    public void tearDown() {
+        ObjectiveExecutor.shutdownShared();
+        CompletionDispatcher.shutdownShared();
+    }
+
+    @Test
+    public void testGolden() throws Exception {
+        assertFalse(entries.isEmpty());
+        String expected = Resources.toString(
+                ObjectiveReplayTest.class.getResource(GOLDEN), StandardCharsets.UTF_8);
+        List<String> diff = ObjectiveReplay.diff(expected, replay.translate(entries));
+        assertTrue("Translations differ from " + GOLDEN + ":\n" + String.join("\n", diff),
+                   diff.isEmpty());
+    }
+
+    @Test
+    public void testDiffReportsReorderedLines() {
+        assertEquals(List.of(), ObjectiveReplay.diff("a\nb\nc", "a\nb\nc"));
+        assertEquals(List.of("- b", "+ b"), ObjectiveReplay.diff("a\nb\nc", "a\nc\nb"));
+        assertEquals(List.of("- b", "+ d"), ObjectiveReplay.diff("a\nb\nc", "a\nd\nc"));
+    }
+
+    @Test
+    public void testTranslateRemove() {
+        // Rules are rendered as removed only if installed by a previous objective.
+        ObjectiveReplay.Entry next = entries.stream()
+                .filter(e -> e.source().startsWith("next-"))
+                .findFirst().orElseThrow();
+        ObjectiveReplay.Entry remove = new ObjectiveReplay.Entry(
+                next.source(), ObjectiveReplay.Kind.NEXT, 0, next.objective().copy().remove());
+        List<String> lines = replay.translate(List.of(next, remove)).lines()
+                .collect(Collectors.toList());
+        int removeHeader = lines.indexOf(next.source() + " NEXT REMOVE");
+        assertTrue(removeHeader > 1);
+        assertTrue(lines.subList(1, removeHeader).stream().allMatch(l -> l.startsWith("  + FLOW")));
+        assertEquals(removeHeader - 1, lines.size() - removeHeader - 1);
+        assertTrue(lines.subList(removeHeader + 1, lines.size()).stream()
+                           .allMatch(l -> l.startsWith("  - FLOW")));
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        ObjectiveReplay.Report report = replay.replay(entries, false, 2);
+        assertEquals(entries.size() * 2, report.submitted());
+        assertEquals(report.submitted(), report.succeeded());
+        assertEquals(0, report.failed());
+        assertEquals(report.submitted(), report.latency().count());
+        assertFalse(replay.flowRuleService().flowEntries().isEmpty());
+    }
+}
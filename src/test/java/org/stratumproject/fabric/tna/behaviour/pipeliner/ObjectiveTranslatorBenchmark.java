@@ -0,0 +1,227 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.MacAddress;
+import org.onlab.packet.VlanId;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.Criteria;
+import org.onosproject.net.flowobjective.DefaultFilteringObjective;
+import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.DefaultNextObjective;
+import org.onosproject.net.flowobjective.FilteringObjective;
+import org.onosproject.net.flowobjective.FlowObjectiveStore;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.group.GroupServiceAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.onosproject.segmentrouting.metadata.SRObjectiveMetadata.EDGE_PORT;
+
+/**
+ * JMH benchmark of the objective translators and of the submission of the
+ * translated flow rules and groups by the pipeliner, using the same objectives
+ * as the translator tests.
+ * <p>
+ * Run with {@code mvn -Pbenchmark verify -DskipTests}, or via {@link #main(String[])}, to
+ * measure ns/op and bytes/op (gc.alloc.rate.norm) and write the results in
+ * JSON format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectiveTranslatorBenchmark extends AbstractObjectiveTranslatorTest {
+
+    @Param({"FILTERING_ROUTER_MAC_VLAN", "FORWARDING_IPV4_UNICAST", "FORWARDING_MPLS",
+            "FORWARDING_ACL", "NEXT_HASHED", "NEXT_BROADCAST"})
+    public String objectiveKind;
+
+    private FilteringObjectiveTranslator filteringTranslator;
+    private ForwardingObjectiveTranslator forwardingTranslator;
+    private NextObjectiveTranslator nextTranslator;
+
+    private Objective objective;
+    private ObjectiveTranslation translation;
+
+    @Setup
+    public void setup() {
+        doSetup();
+        filteringTranslator = new FilteringObjectiveTranslator(DEVICE_ID, capabilitiesHashed);
+        forwardingTranslator = new ForwardingObjectiveTranslator(DEVICE_ID, capabilitiesHashed);
+        nextTranslator = new NextObjectiveTranslator(DEVICE_ID, capabilitiesHashed);
+
+        objective = buildObjective();
+        translation = translate();
+        if (translation.error().isPresent()) {
+            throw new IllegalStateException(
+                    "Unable to translate " + objectiveKind + ": " + translation.error().get());
+        }
+    }
+
+    /**
+     * Pipeliner of {@link #handleResult(PipelinerState)}, created again before
+     * each invocation so that every invocation submits the objective for the
+     * first time rather than as a duplicate of the previous one. Kept apart
+     * from the benchmark state, so that {@link #translate()} is measured
+     * without this setup.
+     */
+    @State(Scope.Thread)
+    public static class PipelinerState {
+        private FabricPipeliner pipeliner;
+
+        @Setup(Level.Invocation)
+        public void setup(ObjectiveTranslatorBenchmark benchmark) {
+            pipeliner = new FabricPipeliner(benchmark.capabilitiesHashed);
+            pipeliner.deviceId = DEVICE_ID;
+            pipeliner.appId = APP_ID;
+            pipeliner.flowRuleService = new FlowRuleServiceAdapter();
+            pipeliner.groupService = new GroupServiceAdapter();
+            pipeliner.flowObjectiveStore = createNiceMock(FlowObjectiveStore.class);
+            replay(pipeliner.flowObjectiveStore);
+        }
+    }
+
+    private Objective buildObjective() {
+        switch (objectiveKind) {
+            case "FILTERING_ROUTER_MAC_VLAN":
+                return DefaultFilteringObjective.builder()
+                        .permit()
+                        .withPriority(PRIORITY)
+                        .withKey(Criteria.matchInPort(PORT_1))
+                        .addCondition(Criteria.matchEthDst(ROUTER_MAC))
+                        .addCondition(Criteria.matchVlanId(VlanId.NONE))
+                        .withMeta(DefaultTrafficTreatment.builder()
+                                          .pushVlan()
+                                          .setVlanId(VLAN_100)
+                                          .writeMetadata(EDGE_PORT, 0xffffffffffffffffL)
+                                          .build())
+                        .fromApp(APP_ID)
+                        .makePermanent()
+                        .add();
+            case "FORWARDING_IPV4_UNICAST":
+                return specificForward(DefaultTrafficSelector.builder()
+                                               .matchEthType(Ethernet.TYPE_IPV4)
+                                               .matchIPDst(IPV4_UNICAST_ADDR)
+                                               .build());
+            case "FORWARDING_MPLS":
+                return specificForward(DefaultTrafficSelector.builder()
+                                               .matchEthType(Ethernet.MPLS_UNICAST)
+                                               .matchMplsLabel(MPLS_10)
+                                               .matchMplsBos(true)
+                                               .build());
+            case "FORWARDING_ACL":
+                return DefaultForwardingObjective.builder()
+                        .withSelector(DefaultTrafficSelector.builder()
+                                              .matchEthType(Ethernet.TYPE_IPV4)
+                                              .matchIPDst(IPV4_UNICAST_ADDR)
+                                              .build())
+                        .withPriority(PRIORITY)
+                        .fromApp(APP_ID)
+                        .makePermanent()
+                        .withFlag(ForwardingObjective.Flag.VERSATILE)
+                        .nextStep(NEXT_ID_1)
+                        .add();
+            case "NEXT_HASHED":
+                return DefaultNextObjective.builder()
+                        .withId(NEXT_ID_1)
+                        .withPriority(PRIORITY)
+                        .withMeta(VLAN_META)
+                        .addTreatment(routingTreatment(SPINE1_MAC))
+                        .addTreatment(routingTreatment(SPINE2_MAC))
+                        .withType(NextObjective.Type.HASHED)
+                        .makePermanent()
+                        .fromApp(APP_ID)
+                        .add();
+            case "NEXT_BROADCAST":
+                return DefaultNextObjective.builder()
+                        .withId(NEXT_ID_1)
+                        .withPriority(PRIORITY)
+                        .addTreatment(DefaultTrafficTreatment.builder()
+                                              .setOutput(PORT_1)
+                                              .build())
+                        .addTreatment(DefaultTrafficTreatment.builder()
+                                              .popVlan()
+                                              .setOutput(PORT_2)
+                                              .build())
+                        .withMeta(VLAN_META)
+                        .withType(NextObjective.Type.BROADCAST)
+                        .makePermanent()
+                        .fromApp(APP_ID)
+                        .add();
+            default:
+                throw new IllegalArgumentException("Unknown objective kind " + objectiveKind);
+        }
+    }
+
+    private ForwardingObjective specificForward(TrafficSelector selector) {
+        return DefaultForwardingObjective.builder()
+                .withSelector(selector)
+                .withPriority(PRIORITY)
+                .fromApp(APP_ID)
+                .makePermanent()
+                .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                .nextStep(NEXT_ID_1)
+                .add();
+    }
+
+    private TrafficTreatment routingTreatment(MacAddress dstMac) {
+        return DefaultTrafficTreatment.builder()
+                .setEthSrc(ROUTER_MAC)
+                .setEthDst(dstMac)
+                .setOutput(PORT_1)
+                .build();
+    }
+
+    @Benchmark
+    public ObjectiveTranslation translate() {
+        if (objective instanceof FilteringObjective) {
+            return filteringTranslator.translate((FilteringObjective) objective);
+        } else if (objective instanceof ForwardingObjective) {
+            return forwardingTranslator.translate((ForwardingObjective) objective);
+        }
+        return nextTranslator.translate((NextObjective) objective);
+    }
+
+    @Benchmark
+    public void handleResult(PipelinerState state) {
+        state.pipeliner.handleResult(objective, translation);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(ObjectiveTranslatorBenchmark.class.getSimpleName())
+                           .addProfiler(GCProfiler.class)
+                           .resultFormat(ResultFormatType.JSON)
+                           .result("target/jmh-result.json")
+                           .build()).run();
+    }
+}
@@ -0,0 +1,143 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.APP_ID;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.HOST_MAC;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.PRIORITY;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.ROUTER_MAC;
+
+/**
+ * Tests for PendingForwards.
+ */
+public class PendingForwardsTest {
+
+    private final Set<Integer> installed = Sets.newHashSet();
+    private PendingForwards pending;
+
+    @Before
+    public void setUp() {
+        pending = new PendingForwards();
+        installed.clear();
+    }
+
+    private static DefaultForwardingObjective.Builder bridging(boolean host, int nextId) {
+        return DefaultForwardingObjective.builder()
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchEthDst(host ? HOST_MAC : ROUTER_MAC)
+                                      .build())
+                .withPriority(PRIORITY)
+                .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                .nextStep(nextId)
+                .fromApp(APP_ID)
+                .makePermanent();
+    }
+
+    @Test
+    public void testNotParked() {
+        installed.add(1);
+        assertFalse(pending.parkIfNeeded(bridging(true, 1).add(), installed::contains));
+        // Removals do not depend on the next.
+        assertFalse(pending.parkIfNeeded(bridging(true, 2).remove(), installed::contains));
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void testRelease() {
+        final ForwardingObjective add = bridging(true, 1).add();
+        final ForwardingObjective remove = bridging(true, 1).remove();
+        final ForwardingObjective other = bridging(false, 2).add();
+        assertTrue(pending.parkIfNeeded(add, installed::contains));
+        assertTrue(pending.parkIfNeeded(remove, installed::contains));
+        assertTrue(pending.parkIfNeeded(other, installed::contains));
+        assertEquals(3, pending.size());
+
+        installed.add(1);
+        assertEquals(ImmutableList.of(add), pending.release(1));
+        assertEquals(ImmutableList.of(add, remove), pending.drain(List.of(add.selector()), installed::contains));
+        assertEquals(1, pending.size());
+        assertTrue(pending.release(1).isEmpty());
+        assertTrue(pending.drain(List.of(add.selector()), installed::contains).isEmpty());
+    }
+
+    @Test
+    public void testParkedUntilDrained() {
+        final ForwardingObjective add = bridging(true, 1).add();
+        final ForwardingObjective remove = bridging(true, 1).remove();
+        pending.parkIfNeeded(add, installed::contains);
+        installed.add(1);
+        assertEquals(ImmutableList.of(add), pending.release(1));
+
+        // Submitted before the parked objectives are drained.
+        assertTrue(pending.parkIfNeeded(remove, installed::contains));
+        assertEquals(ImmutableList.of(add, remove), pending.drain(List.of(add.selector()), installed::contains));
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void testSelectorsHeldUntilProcessed() {
+        final ForwardingObjective host = bridging(true, 1).add();
+        final ForwardingObjective router = bridging(false, 1).add();
+        final ForwardingObjective hostRemove = bridging(true, 1).remove();
+        pending.parkIfNeeded(host, installed::contains);
+        pending.parkIfNeeded(router, installed::contains);
+        installed.add(1);
+        final List<ForwardingObjective> heads = pending.release(1);
+        assertEquals(Set.of(host, router), Set.copyOf(heads));
+        final List<TrafficSelector> selectors = List.of(host.selector(), router.selector());
+        assertEquals(Set.of(host, router), Set.copyOf(pending.drain(selectors, installed::contains)));
+
+        // Submitted while the drained objectives are processed.
+        assertTrue(pending.parkIfNeeded(hostRemove, installed::contains));
+        assertEquals(List.of(hostRemove), pending.drain(selectors, installed::contains));
+        assertTrue(pending.drain(selectors, installed::contains).isEmpty());
+        assertFalse(pending.parkIfNeeded(hostRemove, installed::contains));
+    }
+
+    @Test
+    public void testReleaseWaitsForNextDependency() {
+        final ForwardingObjective first = bridging(true, 1).add();
+        final ForwardingObjective second = bridging(true, 2).add();
+        pending.parkIfNeeded(first, installed::contains);
+        pending.parkIfNeeded(second, installed::contains);
+
+        installed.add(1);
+        assertEquals(ImmutableList.of(first), pending.release(1));
+        assertEquals(ImmutableList.of(first), pending.drain(List.of(first.selector()), installed::contains));
+        assertEquals(1, pending.size());
+        installed.add(2);
+        assertEquals(ImmutableList.of(second), pending.release(2));
+        assertEquals(ImmutableList.of(second), pending.drain(List.of(second.selector()), installed::contains));
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void testRemove() {
+        final ForwardingObjective add = bridging(true, 1).add();
+        final ForwardingObjective remove = bridging(true, 1).remove();
+        pending.parkIfNeeded(add, installed::contains);
+        pending.parkIfNeeded(remove, installed::contains);
+
+        // Objectives parked behind the expired one are released.
+        assertEquals(ImmutableList.of(remove), pending.remove(add, installed::contains));
+        assertNull(pending.remove(add, installed::contains));
+        assertEquals(0, pending.size());
+        assertTrue(pending.release(1).isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.TestApplicationId;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.DefaultNextObjective;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveError;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for pipeliner metrics and latency histograms.
+ */
+public class PipelinerMetricsTest {
+
+    private static final ApplicationId APP_ID = TestApplicationId.create("PipelinerMetricsTest");
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:metrics");
+
+    private PipelinerMetrics metrics;
+
+    @Before
+    public void setup() {
+        metrics = PipelinerMetrics.forDevice(DEVICE_ID);
+        metrics.reset();
+    }
+
+    @Test
+    public void testBucketOf() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(0, LatencyHistogram.bucketOf(999));
+        assertEquals(1, LatencyHistogram.bucketOf(1_000));
+        assertEquals(2, LatencyHistogram.bucketOf(2_000));
+        assertEquals(2, LatencyHistogram.bucketOf(3_999));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentileMicros(99));
+        for (int i = 0; i < 99; i++) {
+            h.record(TimeUnit.MICROSECONDS.toNanos(3));
+        }
+        h.record(TimeUnit.MICROSECONDS.toNanos(100));
+        assertEquals(100, h.count());
+        assertEquals(4, h.percentileMicros(50));
+        assertEquals(4, h.percentileMicros(99));
+        assertEquals(100, h.percentileMicros(100));
+        assertEquals(100, h.maxMicros());
+        assertEquals(3.97, h.meanMicros(), 0.001);
+    }
+
+    @Test
+    public void testRecord() {
+        NextObjective obj = DefaultNextObjective.builder()
+                .withId(1)
+                .withType(NextObjective.Type.SIMPLE)
+                .fromApp(APP_ID)
+                .addTreatment(DefaultTrafficTreatment.emptyTreatment())
+                .add();
+        metrics.record(obj, PipelinerMetrics.Stage.TRANSLATE, System.nanoTime());
+        metrics.recordSuccess(obj);
+        metrics.recordError(obj, ObjectiveError.BADPARAMS);
+
+        assertSame(metrics, PipelinerMetrics.forDevice(DEVICE_ID));
+        assertTrue(PipelinerMetrics.all().containsKey(DEVICE_ID));
+        assertEquals(1, metrics.latency(PipelinerMetrics.ObjectiveType.NEXT, Objective.Operation.ADD,
+                                        PipelinerMetrics.Stage.TRANSLATE).count());
+        assertEquals(0, metrics.latency(PipelinerMetrics.ObjectiveType.NEXT, Objective.Operation.ADD,
+                                        PipelinerMetrics.Stage.FLOWS).count());
+        assertEquals(1, metrics.successes(PipelinerMetrics.ObjectiveType.NEXT, Objective.Operation.ADD));
+        assertEquals(1, metrics.errors(PipelinerMetrics.ObjectiveType.NEXT, ObjectiveError.BADPARAMS));
+        assertEquals(0, metrics.errors(PipelinerMetrics.ObjectiveType.FORWARDING, ObjectiveError.BADPARAMS));
+
+        metrics.reset();
+        assertEquals(0, metrics.successes(PipelinerMetrics.ObjectiveType.NEXT, Objective.Operation.ADD));
+        assertEquals(0, metrics.errors(PipelinerMetrics.ObjectiveType.NEXT, ObjectiveError.BADPARAMS));
+    }
+
+    @Test
+    public void testSampleTrace() {
+        int sampled = 0;
+        for (int i = 0; i < PipelinerMetrics.TRACE_SAMPLING_RATE * 3; i++) {
+            if (metrics.sampleTrace()) {
+                sampled++;
+            }
+        }
+        assertEquals(3, sampled);
+    }
+
+    @Test
+    public void testTimeToFirstForwarding() {
+        ForwardingObjective fwd = DefaultForwardingObjective.builder()
+                .withSelector(DefaultTrafficSelector.emptySelector())
+                .withFlag(ForwardingObjective.Flag.SPECIFIC)
+                .nextStep(1)
+                .withPriority(10)
+                .fromApp(APP_ID)
+                .makePermanent()
+                .add();
+        metrics.recordInit();
+        assertEquals(-1, metrics.timeToFirstForwardingMillis());
+        metrics.recordSuccess(DefaultNextObjective.builder()
+                                      .withId(1)
+                                      .withType(NextObjective.Type.SIMPLE)
+                                      .fromApp(APP_ID)
+                                      .addTreatment(DefaultTrafficTreatment.emptyTreatment())
+                                      .add());
+        assertEquals(-1, metrics.timeToFirstForwardingMillis());
+        metrics.recordSuccess(fwd);
+        assertTrue(metrics.timeToFirstForwardingMillis() >= 0);
+        metrics.recordInit();
+        assertEquals(-1, metrics.timeToFirstForwardingMillis());
+    }
+
+    @Test
+    public void testRemove() {
+        DeviceId removed = DeviceId.deviceId("device:removed");
+        PipelinerMetrics.forDevice(removed);
+        assertTrue(PipelinerMetrics.all().containsKey(removed));
+        PipelinerMetrics.remove(removed);
+        assertFalse(PipelinerMetrics.all().containsKey(removed));
+    }
+}
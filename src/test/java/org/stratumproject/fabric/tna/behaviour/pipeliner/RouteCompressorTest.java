@@ -0,0 +1,237 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.MoreCollectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.onosproject.net.pi.runtime.PiAction;
+import org.onosproject.net.pi.runtime.PiActionParam;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.APP_ID;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.DEVICE_ID;
+
+/**
+ * Tests for RouteCompressor.
+ */
+public class RouteCompressorTest {
+
+    private RouteCompressor compressor;
+    // Physical entries, as installed by applying the deltas.
+    private Map<FlowId, FlowRule> installed;
+
+    @Before
+    public void setUp() {
+        compressor = new RouteCompressor();
+        installed = Maps.newHashMap();
+    }
+
+    private static TrafficTreatment nextId(int nextId) {
+        return DefaultTrafficTreatment.builder()
+                .piTableAction(PiAction.builder()
+                                       .withId(P4InfoConstants.FABRIC_INGRESS_FORWARDING_SET_NEXT_ID_ROUTING_V4)
+                                       .withParameter(new PiActionParam(P4InfoConstants.NEXT_ID, nextId))
+                                       .build())
+                .build();
+    }
+
+    private static FlowRule route(String prefix, int nextId) {
+        return route(prefix, nextId, 0);
+    }
+
+    private static FlowRule route(String prefix, int nextId, int priority) {
+        return DefaultFlowRule.builder()
+                .forDevice(DEVICE_ID)
+                .forTable(P4InfoConstants.FABRIC_INGRESS_FORWARDING_ROUTING_V4)
+                .fromApp(APP_ID)
+                .withPriority(priority)
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchIPDst(IpPrefix.valueOf(prefix))
+                                      .build())
+                .withTreatment(nextId(nextId))
+                .makePermanent()
+                .build();
+    }
+
+    private FlowRuleCompiler.Delta apply(FlowRuleCompiler.Delta delta) {
+        delta.toAdd().forEach(r -> installed.put(r.id(), r));
+        delta.toRemove().forEach(r -> installed.remove(r.id()));
+        return delta;
+    }
+
+    private FlowRuleCompiler.Delta add(FlowRule... routes) {
+        return apply(compressor.add(APP_ID, ImmutableList.copyOf(routes)));
+    }
+
+    private FlowRuleCompiler.Delta remove(FlowRule... routes) {
+        return apply(compressor.remove(ImmutableList.copyOf(routes)));
+    }
+
+    private Set<IpPrefix> installedPrefixes() {
+        return installed.values().stream()
+                .map(r -> ((IPCriterion) r.selector().getCriterion(Criterion.Type.IPV4_DST)).ip())
+                .collect(Collectors.toSet());
+    }
+
+    private static TrafficTreatment lookup(Iterable<FlowRule> rules, Ip4Address address) {
+        FlowRule best = null;
+        int bestLength = -1;
+        for (FlowRule r : rules) {
+            final IpPrefix prefix = ((IPCriterion) r.selector().getCriterion(Criterion.Type.IPV4_DST)).ip();
+            if (prefix.contains(address) && prefix.prefixLength() > bestLength) {
+                best = r;
+                bestLength = prefix.prefixLength();
+            }
+        }
+        return best == null ? null : best.treatment();
+    }
+
+    @Test
+    public void testHandles() {
+        assertTrue(compressor.handles(route("10.0.0.0/24", 1)));
+        assertFalse(compressor.handles(DefaultFlowRule.builder()
+                                               .forDevice(DEVICE_ID)
+                                               .forTable(P4InfoConstants.FABRIC_INGRESS_FORWARDING_ROUTING_V4)
+                                               .fromApp(APP_ID)
+                                               .withPriority(0)
+                                               .withSelector(DefaultTrafficSelector.emptySelector())
+                                               .withTreatment(nextId(1))
+                                               .makePermanent()
+                                               .build()));
+    }
+
+    @Test
+    public void testSingleRouteUnchanged() {
+        FlowRule route = route("10.0.0.0/24", 1);
+        FlowRuleCompiler.Delta delta = add(route);
+        assertEquals(ImmutableList.of(route), delta.toAdd());
+        assertTrue(delta.toRemove().isEmpty());
+        delta = remove(route);
+        assertEquals(ImmutableList.of(route), delta.toRemove());
+        assertEquals(0, compressor.logicalCount());
+        assertEquals(0, compressor.physicalCount());
+    }
+
+    @Test
+    public void testCoveredRouteDropped() {
+        FlowRule subnet = route("10.0.0.0/16", 1);
+        FlowRule host = route("10.0.1.1/32", 1);
+        add(subnet);
+        FlowRuleCompiler.Delta delta = add(host);
+        assertTrue(delta.isEmpty());
+        assertEquals(ImmutableSet.of(subnet.id()), installed.keySet());
+
+        // The host route is installed when the subnet one changes next.
+        FlowRule subnet2 = route("10.0.0.0/16", 2);
+        delta = add(subnet2);
+        assertEquals(ImmutableSet.of(subnet2, host), ImmutableSet.copyOf(delta.toAdd()));
+        assertEquals(ImmutableSet.of(subnet2.id(), host.id()), installed.keySet());
+        assertTrue(subnet2.exactMatch(installed.get(subnet2.id())));
+    }
+
+    @Test
+    public void testPriorityIgnored() {
+        // Priorities derived from the prefix length, as set by segment routing.
+        FlowRule subnet = route("10.0.0.0/24", 1, 24);
+        add(subnet, route("10.0.0.1/32", 1, 32));
+        assertEquals(ImmutableSet.of(subnet.id()), installed.keySet());
+
+        // Merged entries get the prefix length as priority.
+        add(route("10.0.2.0/25", 2, 25), route("10.0.2.128/25", 2, 25));
+        final FlowRule merged = installed.values().stream()
+                .filter(r -> !r.id().equals(subnet.id()))
+                .collect(MoreCollectors.onlyElement());
+        assertEquals(IpPrefix.valueOf("10.0.2.0/24"),
+                     ((IPCriterion) merged.selector().getCriterion(Criterion.Type.IPV4_DST)).ip());
+        assertEquals(24, merged.priority());
+    }
+
+    @Test
+    public void testSiblingsMerged() {
+        add(route("10.0.0.0/25", 1), route("10.0.0.128/25", 1));
+        assertEquals(ImmutableSet.of(IpPrefix.valueOf("10.0.0.0/24")), installedPrefixes());
+        add(route("10.0.1.0/24", 1));
+        assertEquals(ImmutableSet.of(IpPrefix.valueOf("10.0.0.0/23")), installedPrefixes());
+        assertEquals(3, compressor.logicalCount());
+        assertEquals(1, compressor.physicalCount());
+
+        // Different next in one half: a /23 and a /24 exception.
+        remove(route("10.0.1.0/24", 1));
+        add(route("10.0.1.0/24", 2));
+        assertEquals(2, installed.size());
+        assertEquals(nextId(2), lookup(installed.values(), Ip4Address.valueOf("10.0.1.1")));
+        assertEquals(nextId(1), lookup(installed.values(), Ip4Address.valueOf("10.0.0.1")));
+    }
+
+    @Test
+    public void testPartialCoverageNotMerged() {
+        // 10.0.0.128/25 has no route, the /24 must not be used.
+        add(route("10.0.0.0/26", 1), route("10.0.0.64/26", 1));
+        assertEquals(ImmutableSet.of(IpPrefix.valueOf("10.0.0.0/25")), installedPrefixes());
+        assertEquals(null, lookup(installed.values(), Ip4Address.valueOf("10.0.0.200")));
+    }
+
+    @Test
+    public void testRemoveUnknownRoute() {
+        FlowRule route = route("10.0.0.0/24", 1);
+        assertEquals(ImmutableList.of(route), compressor.remove(ImmutableList.of(route)).toRemove());
+    }
+
+    @Test
+    public void testPurge() {
+        add(route("10.0.0.0/25", 1), route("10.0.0.128/25", 1));
+        apply(compressor.purge(APP_ID));
+        assertTrue(installed.isEmpty());
+        assertEquals(0, compressor.logicalCount());
+        assertEquals(0, compressor.physicalCount());
+    }
+
+    @Test
+    public void testRandomChurnEquivalent() {
+        final Random random = new Random(42);
+        final List<FlowRule> logical = Lists.newArrayList();
+        for (int i = 0; i < 2000; i++) {
+            if (logical.isEmpty() || random.nextInt(3) > 0) {
+                // Routes in 10.0.0.0/16, to have many overlaps.
+                final int length = 16 + random.nextInt(17);
+                final int address = (10 << 24) | random.nextInt(1 << 16);
+                final FlowRule r = route(IpPrefix.valueOf(address, length).toString(), 1 + random.nextInt(3));
+                logical.removeIf(l -> l.id().equals(r.id()));
+                logical.add(r);
+                add(r);
+            } else {
+                remove(logical.remove(random.nextInt(logical.size())));
+            }
+            assertEquals(installed.size(), compressor.physicalCount());
+            for (int j = 0; j < 20; j++) {
+                final Ip4Address address = Ip4Address.valueOf((10 << 24) | random.nextInt(1 << 16));
+                assertEquals(lookup(logical, address), lookup(installed.values(), address));
+            }
+        }
+        assertTrue(compressor.physicalCount() < logical.size());
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright 2021-present Open Networking Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.stratumproject.fabric.tna.behaviour.pipeliner;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.pi.model.PiTableId;
+import org.stratumproject.fabric.tna.behaviour.P4InfoConstants;
+import org.stratumproject.fabric.tna.behaviour.upf.MockTableModel;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.stratumproject.fabric.tna.behaviour.pipeliner.AbstractObjectiveTranslatorTest.APP_ID;
+
+/**
+ * Tests for TableOccupancy.
+ */
+public class TableOccupancyTest {
+
+    private static final DeviceId DEVICE_ID = DeviceId.deviceId("device:occupancy");
+
+    private TableOccupancy occupancy;
+
+    @Before
+    public void setUp() {
+        occupancy = TableOccupancy.forDevice(DEVICE_ID);
+        occupancy.purge(APP_ID);
+        occupancy.setMaxSizes(ImmutableList.of(
+                new MockTableModel(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING, 2)));
+    }
+
+    private static FlowRule bridgingRule(int mac) {
+        return DefaultFlowRule.builder()
+                .forDevice(DEVICE_ID)
+                .forTable(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING)
+                .fromApp(APP_ID)
+                .withPriority(0)
+                .withSelector(DefaultTrafficSelector.builder()
+                                      .matchEthDst(MacAddress.valueOf(mac))
+                                      .build())
+                .withTreatment(DefaultTrafficTreatment.emptyTreatment())
+                .makePermanent()
+                .build();
+    }
+
+    private PiTableId overflowingTable(List<FlowRule> flowRules) {
+        final TableOccupancy.Reservation reservation = occupancy.reserve(flowRules);
+        occupancy.release(reservation);
+        return reservation.overflowingTable();
+    }
+
+    @Test
+    public void testOverflow() {
+        assertSame(occupancy, TableOccupancy.all().get(DEVICE_ID));
+        assertEquals(2, occupancy.maxSize(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING));
+        assertEquals(-1, occupancy.maxSize(P4InfoConstants.FABRIC_INGRESS_FORWARDING_ROUTING_V4));
+        assertNull(overflowingTable(ImmutableList.of(bridgingRule(1), bridgingRule(2))));
+        assertEquals(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING, overflowingTable(
+                ImmutableList.of(bridgingRule(1), bridgingRule(2), bridgingRule(3))));
+
+        occupancy.update(FlowRuleOperations.builder().add(bridgingRule(1)).add(bridgingRule(2)).build());
+        assertEquals(2, occupancy.occupancy(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING));
+        // Existing entries can be modified.
+        assertNull(overflowingTable(ImmutableList.of(bridgingRule(1))));
+        assertEquals(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING,
+                     overflowingTable(ImmutableList.of(bridgingRule(3))));
+
+        occupancy.update(FlowRuleOperations.builder().remove(bridgingRule(1)).build());
+        assertEquals(1, occupancy.occupancy(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING));
+        assertNull(overflowingTable(ImmutableList.of(bridgingRule(3))));
+    }
+
+    @Test
+    public void testReserve() {
+        TableOccupancy.Reservation first = occupancy.reserve(ImmutableList.of(bridgingRule(1), bridgingRule(2)));
+        assertNull(first.overflowingTable());
+        // Entries reserved by an objective being processed are not available.
+        TableOccupancy.Reservation second = occupancy.reserve(ImmutableList.of(bridgingRule(3)));
+        assertEquals(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING, second.overflowingTable());
+        occupancy.release(second);
+
+        occupancy.update(FlowRuleOperations.builder().add(bridgingRule(1)).build());
+        occupancy.release(first);
+        assertEquals(1, occupancy.occupancy(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING));
+        TableOccupancy.Reservation third = occupancy.reserve(ImmutableList.of(bridgingRule(3)));
+        assertNull(third.overflowingTable());
+        occupancy.release(third);
+    }
+
+    @Test
+    public void testRemove() {
+        assertSame(occupancy, TableOccupancy.all().get(DEVICE_ID));
+        TableOccupancy.remove(DEVICE_ID);
+        assertFalse(TableOccupancy.all().containsKey(DEVICE_ID));
+    }
+
+    @Test
+    public void testPurge() {
+        occupancy.update(FlowRuleOperations.builder().add(bridgingRule(1)).build());
+        assertEquals(1, occupancy.tables().size());
+        occupancy.purge(APP_ID);
+        assertEquals(0, occupancy.occupancy(P4InfoConstants.FABRIC_INGRESS_FORWARDING_BRIDGING));
+        assertEquals(0, occupancy.tables().size());
+    }
+}
@@ -13,6 +13,7 @@ import org.onlab.util.HexString;
 import org.onosproject.TestApplicationId;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
+import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.behaviour.upf.UpfApplication;
@@ -38,15 +39,20 @@ import org.onosproject.net.meter.MeterService;
 import org.onosproject.net.packet.PacketService;
 import org.onosproject.net.pi.model.PiCounterModel;
 import org.onosproject.net.pi.model.PiMeterModel;
+import org.onosproject.net.pi.model.PiPipelineInterpreter;
 import org.onosproject.net.pi.model.PiTableModel;
+import org.onosproject.net.pi.runtime.PiPacketOperation;
 import org.onosproject.net.pi.service.PiPipeconfService;
 import org.onosproject.net.pi.service.PiTranslationService;
 import org.onosproject.p4runtime.api.P4RuntimeController;
 import org.stratumproject.fabric.tna.Constants;
 import org.stratumproject.fabric.tna.behaviour.FabricCapabilities;
+import org.stratumproject.fabric.tna.behaviour.FabricInterpreter;
+import org.stratumproject.fabric.tna.behaviour.PacketOutBatcher;
 import org.stratumproject.fabric.tna.slicing.api.SliceId;
 import org.stratumproject.fabric.tna.slicing.api.SlicingService;
 import org.stratumproject.fabric.tna.slicing.api.TrafficClass;
+import org.stratumproject.fabric.tna.slicing.api.TrafficClassDescription;
 
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -62,6 +68,7 @@ import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.onosproject.net.behaviour.upf.UpfEntityType.COUNTER;
@@ -99,6 +106,7 @@ public class FabricUpfProgrammableTest {
             TestApplicationId.create(Constants.APP_NAME);
 
     private MockPacketService packetService;
+    private MastershipService mastershipService;
     private FabricUpfProgrammable upfProgrammable;
 
     private MockP4RuntimeController mockP4RtController = new MockP4RuntimeController(
@@ -163,12 +171,16 @@ public class FabricUpfProgrammableTest {
         expect(slicingService.getSlices()).andReturn(Set.of(SliceId.of(SLICE_MOBILE))).anyTimes();
         expect(slicingService.getTrafficClasses(SliceId.of(SLICE_MOBILE)))
                 .andReturn(Set.of(TrafficClass.ELASTIC)).anyTimes();
+        expect(slicingService.getSystemTrafficClass())
+                .andReturn(TrafficClassDescription.BEST_EFFORT).anyTimes();
         PiTranslationService piTranslationService = createMock(PiTranslationService.class);
+        mastershipService = createMock(MastershipService.class);
+        expect(mastershipService.isLocalMaster(TestUpfConstants.DEVICE_ID)).andReturn(true).anyTimes();
         expect(coreService.getAppId(anyString())).andReturn(APP_ID).anyTimes();
         expect(netcfgService.getConfig(TestUpfConstants.DEVICE_ID, BasicDeviceConfig.class))
                 .andReturn(TestUpfUtils.getBasicConfig(TestUpfConstants.DEVICE_ID, "/basic.json"))
                 .anyTimes();
-        replay(coreService, netcfgService, slicingService);
+        replay(coreService, netcfgService, slicingService, mastershipService);
 
         // Mock driverData to get the right device ID
         DriverData driverData = createMock(DriverData.class);
@@ -181,6 +193,7 @@ public class FabricUpfProgrammableTest {
         expect(driverHandler.get(MeterService.class)).andReturn(new MockMeterService()).anyTimes();
         expect(driverHandler.get(SlicingService.class)).andReturn(slicingService).anyTimes();
         expect(driverHandler.get(PacketService.class)).andReturn(packetService).anyTimes();
+        expect(driverHandler.get(MastershipService.class)).andReturn(mastershipService).anyTimes();
         expect(driverHandler.get(NetworkConfigService.class)).andReturn(netcfgService).anyTimes();
         expect(driverHandler.get(CoreService.class)).andReturn(coreService).anyTimes();
         expect(driverHandler.get(DeviceService.class)).andReturn(deviceService).anyTimes();
@@ -192,6 +205,9 @@ public class FabricUpfProgrammableTest {
         expect(driverHandler.get(P4RuntimeController.class))
                 .andReturn(mockP4RtController)
                 .anyTimes();
+        expect(driverHandler.hasBehaviour(PiPipelineInterpreter.class)).andReturn(true).anyTimes();
+        expect(driverHandler.behaviour(PiPipelineInterpreter.class))
+                .andReturn(interpreter(capabilities, slicingService)).anyTimes();
         expect(driverHandler.data()).andReturn(driverData).anyTimes();
         replay(driverHandler);
 
@@ -504,6 +520,13 @@ public class FabricUpfProgrammableTest {
         assertThat(allStats.size(), equalTo(TestUpfConstants.PHYSICAL_COUNTER_SIZE));
     }
 
+    private static FabricInterpreter interpreter(FabricCapabilities capabilities,
+                                                 SlicingService slicingService) {
+        FabricInterpreter interpreter = new FabricInterpreter(capabilities);
+        TestUtils.setField(interpreter, "slicingService", slicingService);
+        return interpreter;
+    }
+
     @Test
     public void testSendPacketOut() {
         upfProgrammable.sendPacketOut(ByteBuffer.wrap(ETH_FRAME_BYTES));
@@ -512,4 +535,31 @@ public class FabricUpfProgrammableTest {
         assertThat(emittedPkt.data().array(), equalTo(ETH_FRAME_BYTES));
         assertThat(emittedPkt.treatment(), equalTo(TABLE_OUTPUT_TREATMENT));
     }
+
+    @Test
+    public void testSendPacketOuts() {
+        List<ByteBuffer> data = List.of(ByteBuffer.wrap(ETH_FRAME_BYTES), ByteBuffer.wrap(ETH_FRAME_BYTES));
+        assertTrue(upfProgrammable.sendPacketOuts(data));
+        var packetOuts = mockP4RtController.mockP4rtClient.packetOuts;
+        assertEquals(2, packetOuts.size());
+        for (PiPacketOperation packetOut : packetOuts) {
+            assertThat(packetOut.data().asArray(), equalTo(ETH_FRAME_BYTES));
+        }
+        assertTrue(packetService.emittedPackets.isEmpty());
+        PacketOutBatcher batcher = PacketOutBatcher.forDevice(TestUpfConstants.DEVICE_ID);
+        assertEquals(0, batcher.pending());
+        assertTrue(batcher.packets() >= 2);
+    }
+
+    @Test
+    public void testSendPacketOutsNotMaster() {
+        reset(mastershipService);
+        expect(mastershipService.isLocalMaster(TestUpfConstants.DEVICE_ID)).andReturn(false).anyTimes();
+        replay(mastershipService);
+        List<ByteBuffer> data = List.of(ByteBuffer.wrap(ETH_FRAME_BYTES), ByteBuffer.wrap(ETH_FRAME_BYTES));
+        assertTrue(upfProgrammable.sendPacketOuts(data));
+        // Relayed to the master by the packet service.
+        assertEquals(2, packetService.emittedPackets.size());
+        assertTrue(mockP4RtController.mockP4rtClient.packetOuts.isEmpty());
+    }
 }
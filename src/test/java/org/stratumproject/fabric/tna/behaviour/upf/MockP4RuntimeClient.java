@@ -4,6 +4,7 @@
 package org.stratumproject.fabric.tna.behaviour.upf;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.pi.model.PiPipeconf;
 import org.onosproject.net.pi.runtime.PiCounterCell;
@@ -15,6 +16,7 @@ import org.onosproject.p4runtime.api.P4RuntimeClient;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.LongStream;
 
@@ -29,6 +31,7 @@ public class MockP4RuntimeClient implements P4RuntimeClient {
     private final DeviceId deviceId;
     final Map<Long, PiCounterCell> igCounters;
     final Map<Long, PiCounterCell> egCounters;
+    final Queue<PiPacketOperation> packetOuts = Queues.newArrayDeque();
 
     /**
      * Used to mock P4Runtime client.
@@ -107,7 +110,7 @@ public class MockP4RuntimeClient implements P4RuntimeClient {
 
     @Override
     public void packetOut(long p4DeviceId, PiPacketOperation packet, PiPipeconf pipeconf) {
-
+        packetOuts.add(packet);
     }
 
     @Override
@@ -30,6 +30,7 @@ public class MockPiPipeconfService implements PiPipeconfService {
         expect(mockPiPipeconf.pipelineModel())
                 .andReturn(new MockPiPipelineModel(tables, counters, meters, architecture))
                 .anyTimes();
+        expect(mockPiPipeconf.id()).andReturn(new PiPipeconfId("org.stratumproject.fabric.upf.test")).anyTimes();
         replay(mockPiPipeconf);
     }
 